@@ -0,0 +1,270 @@
+package self.heal.locators.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import lombok.Data;
+
+/**
+ * Configuration properties for the locator healing pipeline
+ */
+@ConfigurationProperties(prefix = "healing")
+@Data
+public class HealingConfiguration {
+
+    /**
+     * Maximum number of parsed page sources kept in memory, keyed by content hash
+     */
+    private int parsedPageCacheSize = 32;
+
+    /**
+     * Time-to-live of a parsed page source in the cache in milliseconds
+     */
+    private long parsedPageCacheTtlMs = 300000;
+
+    /**
+     * Serve previous healings for the same locator and page structure before calling the LLM
+     */
+    private boolean resultCacheEnabled = true;
+
+    /**
+     * Maximum number of healing results kept in the in-process (L1) cache
+     */
+    private int resultCacheSize = 2000;
+
+    /**
+     * Time-to-live of an L1 healing result in milliseconds
+     */
+    private long resultCacheTtlMs = 600000;
+
+    /**
+     * Minimum confidence score for a stored healing to be served from the cache
+     */
+    private double resultCacheMinConfidence = 0.6;
+
+    /**
+     * Concurrent requests for the same locator and page structure share one LLM call
+     */
+    private boolean coalesceEnabled = true;
+
+    /**
+     * Maximum number of locators accepted by the batch healing endpoint
+     */
+    private int batchMaxLocators = 50;
+
+    /**
+     * Local matcher confidence from which a batch locator is healed without the LLM
+     */
+    private double batchLocalConfidence = 0.9;
+
+    /**
+     * Threads resolving batch locators before the LLM (presence check, caches, local healing)
+     */
+    private int batchResolveThreads = 8;
+
+    /**
+     * Batch locators waiting for a resolve thread; past that the request thread resolves them itself
+     */
+    private int batchResolveQueueCapacity = 200;
+
+    /**
+     * Pick few-shot examples by locator similarity from an in-memory index of past healings
+     */
+    private boolean exampleIndexEnabled = true;
+
+    /**
+     * Minimum confidence of a healing to be used as a few-shot example
+     */
+    private double exampleMinConfidence = 0.8;
+
+    /**
+     * Number of few-shot examples retrieved per healing request
+     */
+    private int exampleCount = 3;
+
+    /**
+     * Length of the hashed locator embeddings
+     */
+    private int exampleIndexDimensions = 256;
+
+    /**
+     * Links per node of the HNSW graph (twice as many on the bottom layer)
+     */
+    private int exampleIndexMaxConnections = 16;
+
+    /**
+     * Beam width when inserting into the HNSW graph
+     */
+    private int exampleIndexEfConstruction = 100;
+
+    /**
+     * Beam width when querying the HNSW graph
+     */
+    private int exampleIndexEfSearch = 32;
+
+    /**
+     * Follow the element a locator matched on the page it last worked on to the current page before asking the LLM
+     */
+    private boolean pageDiffEnabled = true;
+
+    /**
+     * Alignment confidence from which the page diff heals without the LLM
+     */
+    private double pageDiffMinConfidence = 0.85;
+
+    /**
+     * Score every element of the page against the failed locator on weighted attributes before asking the LLM
+     */
+    private boolean localHealEnabled = true;
+
+    /**
+     * Local healer confidence from which a locator is healed without the LLM
+     */
+    private double localHealMinConfidence = 0.8;
+
+    /**
+     * Weight of each attribute in the local healer score (tag, resource-id, text, content-desc, parent, siblings,
+     * index, neighbour-text); 0 disables an attribute
+     */
+    private Map<String, Double> localHealWeights = defaultLocalHealWeights();
+
+    /**
+     * Use the attribute weights fitted from past healings (attribute_weights) instead of local-heal-weights
+     */
+    private boolean learnedWeightsEnabled = true;
+
+    /**
+     * Interval in milliseconds at which the fitted attribute weights are reloaded
+     */
+    private long weightRefreshMs = 60000;
+
+    /**
+     * Cron expression of the weight training job, "-" to only train on demand
+     */
+    private String weightTrainingCron = "-";
+
+    /**
+     * Minimum confidence of an LLM healing to be used as a training sample
+     */
+    private double weightTrainingMinConfidence = 0.8;
+
+    /**
+     * Samples an app needs before weights are fitted for it
+     */
+    private int weightTrainingMinSamples = 50;
+
+    /**
+     * Samples kept per app, the rest of the cursor only feeds the other apps
+     */
+    private int weightTrainingMaxSamples = 20000;
+
+    /**
+     * Highest-ranked wrong elements used as negatives per sample
+     */
+    private int weightTrainingNegatives = 20;
+
+    /**
+     * Strength of the pull of the fitted weights towards local-heal-weights
+     */
+    private double weightTrainingRegularization = 0.01;
+
+    /**
+     * Persist healings, RAG performance, training data and image links through a background writer instead of
+     * before answering
+     */
+    private boolean writeBehindEnabled = true;
+
+    /**
+     * Documents waiting for the background writer before callers are held back
+     */
+    private int writeBehindQueueCapacity = 10000;
+
+    /**
+     * Documents written per bulk
+     */
+    private int writeBehindBatchSize = 200;
+
+    /**
+     * Longest time in milliseconds a queued document waits for its batch to fill
+     */
+    private long writeBehindFlushMs = 200;
+
+    /**
+     * Time in milliseconds a caller waits for room in a full queue before its document goes to the spill file
+     */
+    private long writeBehindOfferTimeoutMs = 50;
+
+    /**
+     * Retries of a failed bulk before its documents go to the spill file
+     */
+    private int writeBehindMaxRetries = 3;
+
+    /**
+     * Delay in milliseconds before the first retry, doubled on every further retry
+     */
+    private long writeBehindRetryBackoffMs = 200;
+
+    /**
+     * Local file holding documents that could not be written, replayed once Mongo accepts writes again
+     */
+    private String writeBehindSpillFile = "data/write-behind-spill.jsonl";
+
+    /**
+     * Store page sources once per distinct page in page_source_blob, healings keep only the hash
+     */
+    private boolean pageSourceStoreEnabled = true;
+
+    /**
+     * Deflate level of stored page sources (1 fastest, 9 smallest)
+     */
+    private int pageSourceCompressionLevel = 6;
+
+    /**
+     * Inflated page sources kept in memory for lazy loads
+     */
+    private int pageSourceCacheSize = 16;
+
+    /**
+     * Serve /is_healed from an in-process cache of the best healing per locator, misses included
+     */
+    private boolean locatorCacheEnabled = true;
+
+    /**
+     * Locators kept in the /is_healed cache
+     */
+    private int locatorCacheSize = 20000;
+
+    /**
+     * Time-to-live of a cached locator lookup in ms, bounds staleness when change streams are unavailable
+     */
+    private long locatorCacheTtlMs = 300000;
+
+    /**
+     * Invalidate the /is_healed cache from a change stream on healed_element (needs a replica set)
+     */
+    private boolean locatorCacheChangeStreamEnabled = true;
+
+    /**
+     * Interval in ms between recomputes of the rag_performance rollups behind /rag/stats
+     */
+    private long ragStatsRollupMs = 60000;
+
+    /**
+     * Window in ms of rag_performance recomputed each time, covers operations written late by the write-behind store
+     */
+    private long ragStatsRollupLookbackMs = 900000;
+
+    private static Map<String, Double> defaultLocalHealWeights() {
+        Map<String, Double> weights = new LinkedHashMap<>();
+        weights.put("tag", 1.0);
+        weights.put("resource-id", 3.0);
+        weights.put("text", 2.0);
+        weights.put("content-desc", 2.0);
+        weights.put("parent", 1.0);
+        weights.put("siblings", 0.75);
+        weights.put("index", 0.5);
+        weights.put("neighbour-text", 1.0);
+        return weights;
+    }
+}
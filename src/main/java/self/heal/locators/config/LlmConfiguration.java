@@ -0,0 +1,98 @@
+package self.heal.locators.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import lombok.Data;
+import self.heal.locators.enums.DispatchPolicy;
+
+/**
+ * Configuration properties for the LLM providers (Groq / Gemini) client
+ */
+@ConfigurationProperties(prefix = "llm")
+@Data
+public class LlmConfiguration {
+
+    /**
+     * Whether /get-healed-locator releases the request thread while waiting for the LLM.
+     * When disabled the request thread waits for the result as before.
+     */
+    private boolean asyncEnabled = true;
+
+    /**
+     * TCP connect timeout in milliseconds for LLM provider connections
+     */
+    private long connectTimeoutMs = 3000;
+
+    /**
+     * Threads used to post-process LLM responses (parsing, persistence)
+     */
+    private int callbackThreads = 16;
+
+    /**
+     * How requests are spread over the providers: SEQUENTIAL, HEDGED or RACE
+     */
+    private DispatchPolicy dispatchPolicy = DispatchPolicy.HEDGED;
+
+    /**
+     * Hedge delay in milliseconds used until enough latency samples are collected
+     */
+    private long hedgeInitialDelayMs = 4000;
+
+    /**
+     * Lower bound of the adaptive hedge delay in milliseconds
+     */
+    private long hedgeMinDelayMs = 500;
+
+    /**
+     * Upper bound of the adaptive hedge delay in milliseconds
+     */
+    private long hedgeMaxDelayMs = 10000;
+
+    /**
+     * Latency percentile of the primary provider after which the hedge request is fired
+     */
+    private double hedgePercentile = 0.95;
+
+    /**
+     * Number of recent successful calls per provider kept to compute the hedge percentile
+     */
+    private int latencyWindowSize = 200;
+
+    /**
+     * Minimum number of latency samples before the hedge delay adapts
+     */
+    private int hedgeMinSamples = 20;
+
+    /**
+     * Groq provider settings
+     */
+    private ProviderSettings groq = new ProviderSettings();
+
+    /**
+     * Gemini provider settings
+     */
+    private ProviderSettings gemini = new ProviderSettings();
+
+    @Data
+    public static class ProviderSettings {
+
+        /**
+         * Request timeout in milliseconds for a single LLM call
+         */
+        private long requestTimeoutMs = 15000;
+
+        /**
+         * Maximum number of in-flight calls to the provider; further calls wait in queue
+         */
+        private int maxConcurrency = 32;
+
+        /**
+         * Maximum time in milliseconds a call waits for a free concurrency slot
+         */
+        private long queueTimeoutMs = 10000;
+
+        /**
+         * Prompt tokens (system + user) a single call may send; the page context is packed to fit
+         */
+        private int maxPromptTokens = 6000;
+    }
+}
@@ -4,6 +4,12 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import lombok.Data;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Configuration properties for RAG (Retrieval-Augmented Generation) system
  */
@@ -16,21 +22,79 @@ public class RagConfiguration {
      */
     private int maxContextLength = 4000;
     
+    /**
+     * Maximum size in characters of a structural chunk (run of whole sibling subtrees).
+     * A single element larger than this still forms a chunk of its own.
+     */
+    private int maxChunkLength = 4000;
+    
+    /**
+     * Number of best BM25 element hits packed (with their parents) into the context
+     */
+    private int retrievalTopK = 8;
+    
+    /**
+     * BM25 hits scoring below this fraction of the best hit are not packed into the context
+     */
+    private double retrievalMinScoreRatio = 0.2;
+    
+    /**
+     * BPE ranks file ({@code .tiktoken} format, e.g. cl100k_base.tiktoken) used to count prompt tokens, on the
+     * classpath ("classpath:...") or the file system. None is shipped: while it is empty token counts are a
+     * character-class estimate.
+     */
+    private String tokenizerRanksPath = "";
+    
+    /**
+     * Fraction of the prompt token budget kept free when token counts are estimated
+     */
+    private double tokenBudgetHeadroom = 0.15;
+    
+    /**
+     * Minify the retrieved context before it is put into a prompt
+     */
+    private boolean minifyEnabled = true;
+    
+    /**
+     * Attributes dropped from the context when they hold this value (Android defaults, empty strings)
+     */
+    private Map<String, String> minifyDefaultValues = new LinkedHashMap<>(Map.ofEntries(
+        Map.entry("checkable", "false"), Map.entry("checked", "false"), Map.entry("clickable", "false"),
+        Map.entry("enabled", "true"), Map.entry("focusable", "false"), Map.entry("focused", "false"),
+        Map.entry("long-clickable", "false"), Map.entry("password", "false"), Map.entry("scrollable", "false"),
+        Map.entry("selected", "false"), Map.entry("displayed", "true"), Map.entry("text", ""),
+        Map.entry("content-desc", ""), Map.entry("resource-id", "")));
+    
+    /**
+     * Volatile attributes always dropped from the context
+     */
+    private List<String> minifyDropAttributes = new ArrayList<>(Arrays.asList("bounds"));
+    
+    /**
+     * Class name prefixes cut from tag names and class values; restored in the healed locator
+     */
+    private List<String> minifyShortenedPrefixes = new ArrayList<>(Arrays.asList("android.widget."));
+    
+    /**
+     * Send the package once as a header instead of on every element
+     */
+    private boolean minifyCollapsePackage = true;
+    
     /**
      * Size of each chunk in characters when splitting page source (DEPRECATED)
-     * Kept for backward compatibility - now using 5-chunk approach
+     * Kept for backward compatibility - now using structural chunks (maxChunkLength)
      */
     private int chunkSize = 500;
     
     /**
      * Overlap size between chunks in characters (DEPRECATED)
-     * Kept for backward compatibility - now using 5-chunk approach
+     * Kept for backward compatibility - now using structural chunks (maxChunkLength)
      */
     private int overlapSize = 50;
     
     /**
      * Minimum relevance threshold for including chunks (DEPRECATED)
-     * Kept for backward compatibility - now using simple 5-chunk approach
+     * Kept for backward compatibility - now using structural chunks
      */
     private double relevanceThreshold = 0.1;
     
@@ -39,13 +103,18 @@ public class RagConfiguration {
      */
     private boolean enabled = true;
     
+    /**
+     * Weight for the whole locator appearing verbatim in a chunk
+     */
+    private double directLocatorMatchWeight = 4.0;
+    
     /**
      * Weight for ID attribute matches in relevance scoring
      */
     private double idMatchWeight = 3.0;
     
     /**
-     * Weight for resource-id attribute matches in relevance scoring
+     * Weight for resource-id part matches in relevance scoring (a full resource-id counts twice)
      */
     private double resourceIdMatchWeight = 2.5;
     
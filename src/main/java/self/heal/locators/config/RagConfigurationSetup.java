@@ -2,12 +2,15 @@ package self.heal.locators.config;
 
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
- * Configuration class to enable RAG configuration properties
+ * Configuration class to enable RAG, healing and LLM client configuration properties, and the scheduled
+ * healing jobs (attribute weight reload and training)
  */
 @Configuration
-@EnableConfigurationProperties(RagConfiguration.class)
+@EnableScheduling
+@EnableConfigurationProperties({RagConfiguration.class, HealingConfiguration.class, LlmConfiguration.class})
 public class RagConfigurationSetup {
-    // This class enables the RagConfiguration properties
-}
\ No newline at end of file
+    // This class enables the RagConfiguration, HealingConfiguration and LlmConfiguration properties
+}
@@ -2,9 +2,16 @@ package self.heal.locators.controller;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -16,9 +23,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.mongodb.gridfs.GridFsResource;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
@@ -30,7 +35,6 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -40,11 +44,17 @@ import com.mongodb.client.gridfs.model.GridFSFile;
 
 import lombok.Data;
 import self.heal.locators.JsonConfig;
+import self.heal.locators.config.HealingConfiguration;
+import self.heal.locators.config.LlmConfiguration;
 import self.heal.locators.config.RagConfiguration;
+import self.heal.locators.enums.LlmProvider;
 import self.heal.locators.model.BaseModel;
+import self.heal.locators.model.BatchHealingModel;
 import self.heal.locators.model.ErrorModel;
 import self.heal.locators.model.HealedElement;
+import self.heal.locators.model.HealedLocatorView;
 import self.heal.locators.model.HealingModel;
+import self.heal.locators.model.HealingStatusUpdate;
 import self.heal.locators.model.ImageDataModel;
 import self.heal.locators.model.TrainingModel;
 import self.heal.locators.repository.HealedElemetRepository;
@@ -52,16 +62,35 @@ import self.heal.locators.repository.ImageDataRepository;
 import self.heal.locators.repository.TrainingModelRepository;
 import self.heal.locators.utils.CommonUtility;
 import self.heal.locators.utils.ImageService;
+import self.heal.locators.utils.MdcRunnable;
+import self.heal.locators.utils.SingleFlight;
 import self.heal.locators.service.RagService;
+import self.heal.locators.service.BpeTokenizer;
+import self.heal.locators.service.ExampleIndex;
+import self.heal.locators.service.PageChunker;
+import self.heal.locators.service.PageDiff;
+import self.heal.locators.service.WeightedLocalHealer;
+import self.heal.locators.service.AttributeWeights;
+import self.heal.locators.service.AttributeWeightTrainer;
+import self.heal.locators.service.WriteBehindStore;
+import self.heal.locators.service.PageSourceStore;
+import self.heal.locators.service.LocatorLookupCache;
+import self.heal.locators.service.RagStatsRollups;
+import self.heal.locators.service.PipelineMetrics;
+import self.heal.locators.service.BatchResolveExecutor;
 import self.heal.locators.service.ContextAnalyzerService;
+import self.heal.locators.service.HealingResultCache;
+import self.heal.locators.service.LlmClient;
+import self.heal.locators.service.LlmDispatcher;
 import self.heal.locators.service.LocatorMatcher;
+import self.heal.locators.service.ParsedPage;
+import self.heal.locators.service.ParsedPageCache;
 import self.heal.locators.model.RagPerformanceModel;
 import self.heal.locators.repository.RagPerformanceRepository;
 
 @RestController
 @RequestMapping("/v1/openai/api")
 public class OpenAI {
-    private final RestTemplate restTemplate = new RestTemplate();
     @Autowired
     HealedElemetRepository healRepo ;
     @Autowired
@@ -76,6 +105,43 @@ public class OpenAI {
     ContextAnalyzerService contextAnalyzerService;
     @Autowired
     private RagConfiguration ragConfig;
+    @Autowired
+    ParsedPageCache parsedPageCache;
+    @Autowired
+    LlmClient llmClient;
+    @Autowired
+    LlmDispatcher llmDispatcher;
+    @Autowired
+    HealingResultCache healingResultCache;
+    @Autowired
+    private HealingConfiguration healingConfig;
+
+    // In-flight LLM healings keyed like the healing result cache
+    private final SingleFlight<String, LlmHealing> inFlightHealings = new SingleFlight<>();
+    @Autowired
+    private LlmConfiguration llmConfig;
+    @Autowired
+    BpeTokenizer tokenizer;
+    @Autowired
+    ExampleIndex exampleIndex;
+    @Autowired
+    WeightedLocalHealer localHealer;
+    @Autowired
+    AttributeWeights attributeWeights;
+    @Autowired
+    AttributeWeightTrainer weightTrainer;
+    @Autowired
+    WriteBehindStore writeBehind;
+    @Autowired
+    PageSourceStore pageSources;
+    @Autowired
+    LocatorLookupCache locatorCache;
+    @Autowired
+    RagStatsRollups ragStatsRollups;
+    @Autowired
+    PipelineMetrics pipelineMetrics;
+    @Autowired
+    BatchResolveExecutor batchResolveExecutor;
     
 
     private final ImageService imageService;
@@ -164,6 +230,22 @@ static String OUTPUT_FORMAT =
     "  \"confidence_score\": <decimal below 0.60>\n" +
     "}\n\n";
 
+// Output format of the batch endpoint: one result per locator, each following the rules of OUTPUT_FORMAT
+static String BATCH_OUTPUT_FORMAT = 
+    "RESPOND ONLY WITH VALID JSON. Heal every failed locator independently and return exactly one entry per locator, using its index:\n" +
+    "{\n" +
+    "  \"results\": [\n" +
+    "    {\n" +
+    "      \"index\": 0,\n" +
+    "      \"locator\": \"xpath_here\",\n" +
+    "      \"approach\": \"already_present|healing|not_match\",\n" +
+    "      \"confidence_score\": 0.0\n" +
+    "    }\n" +
+    "  ]\n" +
+    "}\n\n" +
+    "Apply the following rules to each entry of the results array.\n\n" +
+    OUTPUT_FORMAT.substring(OUTPUT_FORMAT.indexOf("## CRITICAL OUTPUT RULES"));
+
 
 // Updated examples with specific OR condition scenarios
 static String EXAMPLES = 
@@ -193,147 +275,511 @@ static String EXAMPLES =
 ;
 
     @PostMapping("/get-healed-locator")
-    public ResponseEntity<?> getHealedLocator(@RequestBody HealingModel request) {
+    public CompletableFuture<ResponseEntity<?>> getHealedLocator(@RequestBody HealingModel request) {
         if (request.getLocator().replaceAll("\"", "'") == null || request.getPageSource() == null) {
-            return new ResponseEntity<>(
+            return CompletableFuture.completedFuture(new ResponseEntity<>(
                 new ErrorModel().errorResp(400, "locator and page_source are mandatory fields"),
-                HttpStatusCode.valueOf(HttpStatus.BAD_REQUEST.value()));
+                HttpStatusCode.valueOf(HttpStatus.BAD_REQUEST.value())));
         }
-        Boolean isPresent = LocatorMatcher.isLocatorPresent(request.getLocator().replaceAll("\"", "'"), request.getPageSource(), ContextAnalyzerService.detectAutomationType(request.getPageSource()));
+        PipelineMetrics.Stages stages = pipelineMetrics.start();
+        // Parse the page once, every step below works on the same parsed view
+        ParsedPage page = stages.time("dom_parse", () -> parsedPageCache.get(request.getPageSource()));
+        Boolean isPresent = stages.time("presence_check", () -> LocatorMatcher.isLocatorPresent(request.getLocator().replaceAll("\"", "'"), page));
 
         if(isPresent){
-            String xpathLocator = LocatorMatcher.ensureXPath(request.getLocator().replaceAll("\"", "'"), request.getPageSource());
-            return new ResponseEntity<>(locatorPresentInPageSource(request.getLocator().replaceAll("\"", "'"),xpathLocator),HttpStatusCode.valueOf(HttpStatus.OK.value()));
+            String xpathLocator = LocatorMatcher.ensureXPath(request.getLocator().replaceAll("\"", "'"), page);
+            return CompletableFuture.completedFuture(new ResponseEntity<>(locatorPresentInPageSource(request.getLocator().replaceAll("\"", "'"),xpathLocator),HttpStatusCode.valueOf(HttpStatus.OK.value())));
         }
-        // Get similar examples for context
-        PageRequest topThree = PageRequest.of(0, 3);
-        List<HealedElement> examples = healRepo.findByConfidenceScoreGreaterThanEqualOrderByConfidenceScoreDesc(0.80, topThree);
-        
-        Optional<ImageDataModel> imageModel = imageRepo.findByImageHexId(request.getImageDataId());
+        // Same locator already healed on a page with the same structure: serve it without an LLM round trip
+        Optional<HealingResultCache.CacheHit> cached = stages.time("result_cache", () -> healingResultCache.lookup(request.getLocator().replaceAll("\"", "'"), page));
+        if (cached.isPresent()) {
+            Map<String, Object> mapResp = CommonUtility.convertDtoToMap(cached.get().element);
+            mapResp.put("source", "cache");
+            mapResp.put("cache_tier", cached.get().tier);
+            return CompletableFuture.completedFuture(new ResponseEntity<>(mapResp, HttpStatusCode.valueOf(HttpStatus.OK.value())));
+        }
+        Optional<ImageDataModel> imageModel = stages.time("mongo.image_lookup", () -> imageRepo.findByImageHexId(request.getImageDataId()));
 
-        try {
-            return callGroqAPI(request, examples, imageModel);
-        } catch (Exception e) {
-            LOGGER.warn("Groq API failed: " + e.getMessage() + ". Falling back to Gemini.");
-            try {
-                return callGeminiAPI(request, examples, imageModel);
-            } catch (Exception geminiException) {
-                LOGGER.error("Both APIs failed", geminiException);
+        // The element the locator matched on the page it last worked on, followed to this page
+        PageDiff.Heal diffHeal = stages.time("page_diff", () -> healFromPreviousPage(request.getLocator().replaceAll("\"", "'"), page));
+        if (diffHeal != null && diffHeal.getConfidence() >= healingConfig.getPageDiffMinConfidence()) {
+            Map<String, Object> mapResp = saveHealingWithoutLlm(request, page, imageModel, pageDiffHealing(request.getLocator().replaceAll("\"", "'"), diffHeal));
+            mapResp.put("source", "page_diff");
+            mapResp.put("page_diff", Map.of(
+                "match", diffHeal.kind.name().toLowerCase(),
+                "matched_elements", diffHeal.diff.matchedCount()));
+            return CompletableFuture.completedFuture(new ResponseEntity<>(mapResp, HttpStatusCode.valueOf(HttpStatus.OK.value())));
+        }
+        // Every element scored against the old element (or the locator) on weighted attributes
+        WeightedLocalHealer.Result localHeal = stages.time("local_heal", () -> healWeighted(request.getLocator().replaceAll("\"", "'"), page, diffHeal));
+        if (localHeal != null && localHeal.confidence >= healingConfig.getLocalHealMinConfidence()) {
+            Map<String, Object> mapResp = saveHealingWithoutLlm(request, page, imageModel, localHealing(request.getLocator().replaceAll("\"", "'"), localHeal));
+            mapResp.put("source", "local");
+            mapResp.put("local_heal", localHealDetails(localHeal));
+            return CompletableFuture.completedFuture(new ResponseEntity<>(mapResp, HttpStatusCode.valueOf(HttpStatus.OK.value())));
+        }
+        // Past healings of the most similar locators as few-shot examples
+        List<HealedElement> examples = stages.time("example_lookup", () -> exampleIndex.similarExamples(request.getLocator().replaceAll("\"", "'")));
+
+        // The request thread is released here, the LLM round trip completes on the LLM client callback pool.
+        // Concurrent requests for the same locator and page structure attach to the same pending call.
+        CompletableFuture<LlmHealing> llmCall = healingConfig.isCoalesceEnabled()
+            ? inFlightHealings.execute(healingResultCache.keyFor(request.getLocator().replaceAll("\"", "'"), page),
+                () -> healWithLlm(request, page, examples, diffHeal, imageModel, stages),
+                shared -> followHealing(shared, request, page, examples, diffHeal, imageModel, stages))
+            : healWithLlm(request, page, examples, diffHeal, imageModel, stages);
+        CompletableFuture<ResponseEntity<?>> healing = llmCall
+            .<ResponseEntity<?>>thenApply(llmHealing -> new ResponseEntity<>(llmHealing.response, HttpStatusCode.valueOf(HttpStatus.OK.value())))
+            .exceptionally(e -> {
+                LOGGER.error("Both APIs failed", rootCause(e));
                 Map<String,String> resp = new HashMap<>();
                 resp.put("healed_locator", request.getLocator().replaceAll("\"", "'"));
                 resp.put("message", "AI Service Failed");
                 return new ResponseEntity<>(
                     resp,
                     HttpStatusCode.valueOf(HttpStatus.OK.value()));
-            }
+            });
+        if (!llmConfig.isAsyncEnabled()) {
+            return CompletableFuture.completedFuture(healing.join());
         }
+        return healing;
     }
 
-    private ResponseEntity<?> callGroqAPI(HealingModel request, List<HealedElement> examples, Optional<ImageDataModel> imageModel) {
-        long startTime = System.currentTimeMillis();
-        RagPerformanceModel ragPerformance = new RagPerformanceModel();
-        
+    @PostMapping("/get-healed-locators/batch")
+    public CompletableFuture<ResponseEntity<?>> getHealedLocatorsBatch(@RequestBody BatchHealingModel request) {
+        if (request.getPageSource() == null || request.getLocators() == null || request.getLocators().isEmpty()) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(
+                new ErrorModel().errorResp(400, "locators and page_source are mandatory fields"),
+                HttpStatusCode.valueOf(HttpStatus.BAD_REQUEST.value())));
+        }
+        if (request.getLocators().size() > healingConfig.getBatchMaxLocators()) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(
+                new ErrorModel().errorResp(400, "at most " + healingConfig.getBatchMaxLocators() + " locators are allowed per batch"),
+                HttpStatusCode.valueOf(HttpStatus.BAD_REQUEST.value())));
+        }
+        PipelineMetrics.Stages stages = pipelineMetrics.start();
+        // Parse the page once for the whole batch
+        ParsedPage page = stages.time("dom_parse", () -> parsedPageCache.get(request.getPageSource()));
+        List<String> locators = request.getLocators().stream()
+            .filter(locator -> locator != null && !locator.trim().isEmpty())
+            .map(locator -> locator.replaceAll("\"", "'"))
+            .distinct()
+            .collect(Collectors.toList());
+        Optional<ImageDataModel> imageModel = request.getImageDataId() != null
+            ? stages.time("mongo.image_lookup", () -> imageRepo.findByImageHexId(request.getImageDataId())) : Optional.empty();
+
+        // Presence check, cache lookup and local healing of every locator in parallel on the shared page
+        Executor executor = MdcRunnable.withCurrentContext(batchResolveExecutor);
+        List<CompletableFuture<BatchItem>> checks = locators.stream()
+            .map(locator -> CompletableFuture.supplyAsync(() -> resolveWithoutLlm(locator, page), executor))
+            .collect(Collectors.toList());
+
+        CompletableFuture<ResponseEntity<?>> batch = CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0]))
+            .thenCompose(done -> {
+                List<BatchItem> items = checks.stream().map(CompletableFuture::join).collect(Collectors.toList());
+                List<BatchItem> unresolved = items.stream().filter(item -> item.result == null).collect(Collectors.toList());
+                CompletableFuture<Void> llm = unresolved.isEmpty()
+                    ? CompletableFuture.completedFuture(null)
+                    : healBatchWithLlm(unresolved, page, stages);
+                return llm.<ResponseEntity<?>>thenApply(ignored -> {
+                    stages.run("persist", () -> persistBatch(items, page, imageModel));
+                    return new ResponseEntity<>(buildBatchResponse(items, unresolved.size()), HttpStatusCode.valueOf(HttpStatus.OK.value()));
+                });
+            });
+        if (!llmConfig.isAsyncEnabled()) {
+            return CompletableFuture.completedFuture(batch.join());
+        }
+        return batch;
+    }
+
+    private BatchItem resolveWithoutLlm(String locator, ParsedPage page) {
+        BatchItem item = new BatchItem(locator);
         try {
-            String baseUrl = JsonConfig.config.getMockObject().get("GROQ_API_URL").toString();
-            
-            HttpHeaders header = new HttpHeaders();
-            header.setAll(setHeaders());
-            
-            AiRequestBody requestBody = new AiRequestBody();
-            requestBody.setModel(JsonConfig.config.getMockObject().get("GROQ_MODEL").toString());
-            requestBody.setTemperature(.05);
-            requestBody.setMax_tokens(5000);
-            
-            // Track RAG performance
-            ragPerformance.setLocator(request.getLocator().replaceAll("\"", "'"));
-            ragPerformance.setOriginalPageSourceLength(request.getPageSource() != null ? request.getPageSource().length() : 0);
-            
-            // Analyze page context
-            ContextAnalyzerService.PageAnalysis pageAnalysis = contextAnalyzerService.analyzePage(request.getPageSource());
-            ragPerformance.setAutomationType(pageAnalysis.automationType.toString());
-            
-            // Build RAG-optimized prompt
-            requestBody.setMessage("system", OPTIMIZED_SYSTEM_PROMPT + OUTPUT_FORMAT + EXAMPLES);
-            requestBody.setMessage("user", buildUserPrompt(request.getLocator().replaceAll("\"", "'"), request.getPageSource(), examples));
-        
-            // Get context statistics
-            RagService.ContextStats contextStats = ragService.getContextStats(request.getLocator().replaceAll("\"", "'"), request.getPageSource());
-            ragPerformance.setOptimizedContextLength(contextStats.optimizedLength);
-            ragPerformance.setCompressionRatio(100.0 - contextStats.compressionRatio); // Invert to show compression
-            
-            HttpEntity<AiRequestBody> entity = new HttpEntity<>(requestBody, header);
-            
-            ResponseEntity<String> response = restTemplate.exchange(baseUrl, HttpMethod.POST, entity, String.class);
-            
-            ragPerformance.setSuccess(true);
-            ragPerformance.setProcessingTimeMs(System.currentTimeMillis() - startTime);
-            
-            return processGroqResponse(response, request, imageModel, JsonConfig.config.getMockObject().get("GROQ_MODEL").toString(), ragPerformance);
-            
+            if (LocatorMatcher.isLocatorPresent(locator, page)) {
+                item.resolve(locatorPresentInPageSource(locator, LocatorMatcher.ensureXPath(locator, page)), "page_source", false);
+                return item;
+            }
+            Optional<HealingResultCache.CacheHit> cached = healingResultCache.lookup(locator, page);
+            if (cached.isPresent()) {
+                item.resolve(cached.get().element, "cache", false);
+                return item;
+            }
+            PageDiff.Heal diffHeal = healFromPreviousPage(locator, page);
+            if (diffHeal != null && diffHeal.getConfidence() >= healingConfig.getPageDiffMinConfidence()) {
+                item.resolve(pageDiffHealing(locator, diffHeal), "page_diff", true);
+                return item;
+            }
+            WeightedLocalHealer.Result localHeal = healWeighted(locator, page, diffHeal);
+            if (localHeal != null && localHeal.confidence >= healingConfig.getLocalHealMinConfidence()) {
+                item.resolve(localHealing(locator, localHeal), "local", true);
+                return item;
+            }
+            HashMap<String, Object> local = LocatorMatcher.healLocator(locator, page);
+            double confidence = ((Number) local.getOrDefault("confidence", 0.0)).doubleValue();
+            if (confidence >= healingConfig.getBatchLocalConfidence()) {
+                HealedElement healed = new HealedElement();
+                healed.setLocator(locator);
+                healed.setHealedLocator(String.valueOf(local.get("healedXPath")));
+                healed.setApproach("healing");
+                healed.setConfidenceScore(confidence);
+                healed.setModelName("local-matcher");
+                item.resolve(healed, "local", true);
+            }
         } catch (Exception e) {
-            ragPerformance.setSuccess(false);
-            ragPerformance.setErrorMessage(e.getMessage());
-            ragPerformance.setProcessingTimeMs(System.currentTimeMillis() - startTime);
-            ragPerformanceRepo.save(ragPerformance);
-            throw e;
+            LOGGER.warn("Local resolution failed for " + locator + ": " + e.getMessage());
         }
+        return item;
     }
 
-    private ResponseEntity<?> callGeminiAPI(HealingModel request, List<HealedElement> examples, Optional<ImageDataModel> imageModel) {
+    /**
+     * Heal all unresolved locators of a batch with one multi-locator prompt
+     */
+    private CompletableFuture<Void> healBatchWithLlm(List<BatchItem> unresolved, ParsedPage page, PipelineMetrics.Stages stages) {
+        long startTime = System.currentTimeMillis();
+        String automationType = stages.time("page_analysis", () -> contextAnalyzerService.analyzePage(page).automationType.toString());
+        String systemPrompt = OPTIMIZED_SYSTEM_PROMPT + BATCH_OUTPUT_FORMAT + EXAMPLES;
+
+        for (BatchItem item : unresolved) {
+            RagPerformanceModel ragPerformance = new RagPerformanceModel();
+            ragPerformance.setLocator(item.locator);
+            ragPerformance.setOriginalPageSourceLength(page.length());
+            ragPerformance.setAutomationType(automationType);
+            item.ragPerformance = ragPerformance;
+        }
+        int promptBudget = promptTokenBudget();
+        int systemTokens = tokenizer.count(systemPrompt);
+        long promptStart = System.nanoTime();
+        String userPrompt = buildBatchUserPrompt(unresolved, page, promptBudget - systemTokens, stages);
+        int promptTokens = systemTokens + tokenizer.count(userPrompt);
+        stages.record("prompt_build", System.nanoTime() - promptStart - stages.nanos("rag_retrieval"));
+        for (BatchItem item : unresolved) {
+            item.ragPerformance.setPromptTokens(promptTokens);
+            item.ragPerformance.setPromptTokenBudget(promptBudget);
+            item.ragPerformance.setTokenCounter(tokenizer.getName());
+        }
+
+        return llmDispatcher.dispatch(
+                LlmProvider.GROQ, () -> stages.timeAsync("llm_call", LlmProvider.GROQ.getValue(), () -> callGroqAPI(systemPrompt, userPrompt)),
+                LlmProvider.GEMINI, () -> stages.timeAsync("llm_call", LlmProvider.GEMINI.getValue(), () -> callGeminiAPI(systemPrompt, userPrompt)))
+            .thenAccept(result -> {
+                stages.run("response_parse", () -> applyBatchCompletion(unresolved, page, result.getValue(), result.getProvider().getValue()));
+                Map<String, Double> stageTimings = stages.breakdownMs();
+                for (BatchItem item : unresolved) {
+                    item.ragPerformance.setStageTimingsMs(stageTimings);
+                    item.ragPerformance.setSuccess(item.result != null);
+                    item.ragPerformance.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+                    item.ragPerformance.setProvider(result.getProvider().getValue());
+                    item.ragPerformance.setDispatchPolicy(result.getPolicy().name());
+                    item.ragPerformance.setHedged(result.isSecondaryLaunched());
+                    item.ragPerformance.setProviderLatencyMs(result.getLatencyMs());
+                    item.ragPerformance.setProviderPromptTokens(result.getValue().promptTokens);
+                }
+                TrainingModel trainingModel = new TrainingModel();
+                trainingModel.setPropmt(systemPrompt + "\n\n" + userPrompt);
+                trainingModel.setCompletion(result.getValue().content);
+                writeBehind.save(trainingModel);
+            })
+            .exceptionally(e -> {
+                LOGGER.error("Both APIs failed for batch", rootCause(e));
+                for (BatchItem item : unresolved) {
+                    item.message = "AI Service Failed";
+                    item.ragPerformance.setSuccess(false);
+                    item.ragPerformance.setErrorMessage(rootCause(e).getMessage());
+                    item.ragPerformance.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+                    item.ragPerformance.setStageTimingsMs(stages.breakdownMs());
+                }
+                return null;
+            });
+    }
+
+    private void applyBatchCompletion(List<BatchItem> unresolved, ParsedPage page, LlmCompletion completion, String source) {
+        JSONObject json = new JSONObject(completion.content);
+        org.json.JSONArray results = json.optJSONArray("results");
+        if (results == null) {
+            unresolved.forEach(item -> item.message = "Invalid AI response format");
+            return;
+        }
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject entry = results.optJSONObject(i);
+            if (entry == null) {
+                continue;
+            }
+            int index = entry.optInt("index", i);
+            if (index < 0 || index >= unresolved.size() || unresolved.get(index).result != null) {
+                continue;
+            }
+            BatchItem item = unresolved.get(index);
+            String healedLocator = ragService.restoreLocator(entry.optString("locator", item.locator), page);
+            String approach = entry.optString("approach", "not_match");
+            double score = entry.optDouble("confidence_score", 0.0);
+            if (healedLocator.isEmpty()) {
+                healedLocator = item.locator;
+            }
+            if ("healing".equals(approach) && healedLocator.equals(item.locator)) {
+                approach = "already_present";
+                score = 1.0;
+            }
+            HealedElement dataHeal = new HealedElement();
+            dataHeal.setLocator(item.locator);
+            dataHeal.setHealedLocator(healedLocator);
+            dataHeal.setApproach(approach);
+            dataHeal.setConfidenceScore(score);
+            dataHeal.setModelName(completion.modelName);
+            item.resolve(dataHeal, source, true);
+        }
+        unresolved.stream().filter(item -> item.result == null).forEach(item -> item.message = "No healing returned for locator");
+    }
+
+    /**
+     * Queue every healed locator of the batch, then the matching RAG performance records
+     */
+    private void persistBatch(List<BatchItem> items, ParsedPage page, Optional<ImageDataModel> imageModel) {
+        List<HealedElement> toSave = new ArrayList<>();
+        for (BatchItem item : items) {
+            if (item.persist && item.result != null) {
+                item.result.setPageSource(page.getPageSource());
+                item.result.setPageSourceHash(page.getContentHash());
+                imageModel.ifPresent(image -> item.result.setImageHexId(image.getImageHexId()));
+                healingResultCache.prepare(item.result, page);
+                toSave.add(item.result);
+            }
+        }
+        if (!toSave.isEmpty()) {
+            writeBehind.saveAll(toSave);
+            toSave.forEach(healingResultCache::remember);
+            toSave.forEach(exampleIndex::add);
+        }
+        List<RagPerformanceModel> performance = new ArrayList<>();
+        for (BatchItem item : items) {
+            if (item.ragPerformance != null) {
+                if (item.result != null) {
+                    item.ragPerformance.setHealedElementId(item.result.getId());
+                }
+                performance.add(item.ragPerformance);
+            }
+        }
+        if (!performance.isEmpty()) {
+            writeBehind.saveAll(performance);
+        }
+    }
+
+    private Map<String, Object> buildBatchResponse(List<BatchItem> items, int sentToLlm) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (BatchItem item : items) {
+            Map<String, Object> entry;
+            if (item.result != null) {
+                entry = CommonUtility.convertDtoToMap(item.result);
+                entry.remove("page_source");
+                entry.remove("page_source_hash");
+                entry.put("source", item.source);
+            } else {
+                entry = new HashMap<>();
+                entry.put("locator", item.locator);
+                entry.put("healed_locator", item.locator);
+            }
+            if (item.message != null) {
+                entry.put("message", item.message);
+            }
+            results.add(entry);
+        }
+        Map<String, Object> resp = new HashMap<>();
+        resp.put("results", results);
+        resp.put("total", items.size());
+        resp.put("sent_to_llm", sentToLlm);
+        return resp;
+    }
+
+    private String buildBatchUserPrompt(List<BatchItem> unresolved, ParsedPage page, int tokenBudget, PipelineMetrics.Stages stages) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("TASK: Analyze and heal each of the ").append(unresolved.size()).append(" failed locators below\n\n");
+        for (int i = 0; i < unresolved.size(); i++) {
+            String locator = unresolved.get(i).locator;
+            prompt.append("[").append(i).append("] Failed Locator: ").append(locator).append("\n");
+            if (locator.contains(" or ") || locator.contains("|")) {
+                prompt.append("    contains OR conditions: if ANY condition matches, return it unchanged as 'already_present'\n");
+            }
+            if (locator.contains("contains(@text,") || locator.contains("contains(translate(@text")) {
+                prompt.append("    text-based locator: ")
+                    .append(validateTextInPageSource(locator, page) ? "text appears to exist in page source, do not modify it" : "exact text may be missing from page source")
+                    .append("\n");
+            }
+        }
+        // Every locator gets an equal share of the remaining budget for its context.
+        // Contexts of locators pointing at the same region are usually identical, send each once
+        prompt.append("\nRelevant Page Context (RAG-optimized):\n");
+        int contextBudget = (tokenBudget - tokenizer.count(prompt.toString())) / unresolved.size();
+        Set<String> contexts = new LinkedHashSet<>();
+        for (BatchItem item : unresolved) {
+            RagService.PackedContext packed = stages.time("rag_retrieval", () -> ragService.packContext(item.locator, page, contextBudget));
+            recordContext(item.ragPerformance, page, packed);
+            contexts.add(packed.text);
+        }
+        prompt.append(String.join("\n---\n", contexts));
+        return prompt.toString();
+    }
+
+    private static final class BatchItem {
+        final String locator;
+        HealedElement result;
+        String source;
+        boolean persist;
+        String message;
+        RagPerformanceModel ragPerformance;
+
+        BatchItem(String locator) {
+            this.locator = locator;
+        }
+
+        void resolve(HealedElement result, String source, boolean persist) {
+            this.result = result;
+            this.source = source;
+            this.persist = persist;
+        }
+    }
+
+    /**
+     * Take over the healing of a coalesced call for a request that only attached to it. The coalescing key leaves
+     * the page text out, so the shared healing is checked against this request's page like a cache hit, and the
+     * request makes its own call when the healed locator does not resolve there.
+     */
+    private CompletableFuture<LlmHealing> followHealing(LlmHealing shared, HealingModel request, ParsedPage page,
+                                                        List<HealedElement> examples, PageDiff.Heal diffHeal,
+                                                        Optional<ImageDataModel> imageModel, PipelineMetrics.Stages stages) {
+        String healedLocator = shared.healed.getHealedLocator();
+        boolean resolves = page.getContentHash().equals(shared.healed.getPageSourceHash())
+            || (healedLocator != null && !healedLocator.isEmpty()
+                && stages.time("presence_check", () -> LocatorMatcher.isLocatorPresent(healedLocator, page)));
+        if (!resolves) {
+            LOGGER.info("Coalesced healing " + healedLocator + " does not resolve on the page of this request, healing it separately");
+            return healWithLlm(request, page, examples, diffHeal, imageModel, stages);
+        }
+        imageModel.ifPresent(image -> {
+            image.setHealedElementId(shared.healed.getId());
+            writeBehind.save(image);
+        });
+        return CompletableFuture.completedFuture(shared);
+    }
+
+    /**
+     * Build the prompt once and let the dispatcher decide how Groq and Gemini are called (sequential, hedged or raced)
+     */
+    private CompletableFuture<LlmHealing> healWithLlm(HealingModel request, ParsedPage page, List<HealedElement> examples,
+                                                      PageDiff.Heal diffHeal, Optional<ImageDataModel> imageModel,
+                                                      PipelineMetrics.Stages stages) {
         long startTime = System.currentTimeMillis();
         RagPerformanceModel ragPerformance = new RagPerformanceModel();
         
         try {
-            String baseUrl = JsonConfig.config.getMockObject().get("GEMENI_API_URL").toString();
-            
-            HttpHeaders header = new HttpHeaders();
-            header.setAll(setGeminiHeaders());
+            String locator = request.getLocator().replaceAll("\"", "'");
             
             // Track RAG performance
-            ragPerformance.setLocator(request.getLocator().replaceAll("\"", "'"));
-            ragPerformance.setOriginalPageSourceLength(request.getPageSource() != null ? request.getPageSource().length() : 0);
+            ragPerformance.setLocator(locator);
+            ragPerformance.setOriginalPageSourceLength(page.length());
             
             // Analyze page context
-            ContextAnalyzerService.PageAnalysis pageAnalysis = contextAnalyzerService.analyzePage(request.getPageSource());
+            ContextAnalyzerService.PageAnalysis pageAnalysis = stages.time("page_analysis", () -> contextAnalyzerService.analyzePage(page));
             ragPerformance.setAutomationType(pageAnalysis.automationType.toString());
             
+            // Build RAG-optimized prompt, shared by both providers; the context fills what the rest leaves of the budget
             String systemPrompt = OPTIMIZED_SYSTEM_PROMPT + OUTPUT_FORMAT + EXAMPLES;
-            String userPrompt = buildUserPrompt(request.getLocator().replaceAll("\"", "'"), request.getPageSource(), examples);
-            
-            // Get context statistics
-            RagService.ContextStats contextStats = ragService.getContextStats(request.getLocator().replaceAll("\"", "'"), request.getPageSource());
-            ragPerformance.setOptimizedContextLength(contextStats.optimizedLength);
-            ragPerformance.setCompressionRatio(100.0 - contextStats.compressionRatio);
-            
-            GeminiRequestBody reqBody = new GeminiRequestBody(systemPrompt, userPrompt);
-            
-            HttpEntity<GeminiRequestBody> entity = new HttpEntity<>(reqBody, header);
-            
-            ResponseEntity<String> response = restTemplate.exchange(
-                baseUrl + "?key=" + JsonConfig.config.getMockObject().get("GEMENI_API_KEY"), 
-                HttpMethod.POST, entity, String.class);
-            
-            ragPerformance.setSuccess(true);
-            ragPerformance.setProcessingTimeMs(System.currentTimeMillis() - startTime);
-            
-            return processGeminiResponse(response, request, imageModel, ragPerformance);
+            int promptBudget = promptTokenBudget();
+            int systemTokens = tokenizer.count(systemPrompt);
+            long promptStart = System.nanoTime();
+            String userPrompt = buildUserPrompt(locator, page, examples, diffHeal, promptBudget - systemTokens, ragPerformance, stages);
+            ragPerformance.setPromptTokens(systemTokens + tokenizer.count(userPrompt));
+            // retrieval is a stage of its own
+            stages.record("prompt_build", System.nanoTime() - promptStart - stages.nanos("rag_retrieval"));
+            ragPerformance.setPromptTokenBudget(promptBudget);
+            ragPerformance.setTokenCounter(tokenizer.getName());
+            
+            // Best earlier healing for the confidence improvement, read while the LLM call is in flight, before this
+            // healing is saved; nothing waits for it before answering
+            Executor followUp = MdcRunnable.withCurrentContext(llmClient.getCallbackExecutor());
+            CompletableFuture<Optional<HealedLocatorView>> previousAttempt = CompletableFuture.supplyAsync(
+                () -> stages.time("mongo.previous_attempt", () -> locatorCache.lookup(locator)), followUp);
+            
+            return llmDispatcher.dispatch(
+                    LlmProvider.GROQ, () -> stages.timeAsync("llm_call", LlmProvider.GROQ.getValue(), () -> callGroqAPI(systemPrompt, userPrompt)),
+                    LlmProvider.GEMINI, () -> stages.timeAsync("llm_call", LlmProvider.GEMINI.getValue(), () -> callGeminiAPI(systemPrompt, userPrompt)))
+                .thenApply(result -> {
+                    ragPerformance.setSuccess(true);
+                    ragPerformance.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+                    ragPerformance.setProvider(result.getProvider().getValue());
+                    ragPerformance.setDispatchPolicy(result.getPolicy().name());
+                    ragPerformance.setHedged(result.isSecondaryLaunched());
+                    ragPerformance.setProviderLatencyMs(result.getLatencyMs());
+                    LlmCompletion completion = result.getValue();
+                    ragPerformance.setProviderPromptTokens(completion.promptTokens);
+                    return processAIResponse(completion.content, request, page, imageModel,
+                        completion.modelName, result.getProvider().getValue(), ragPerformance, stages, previousAttempt, followUp);
+                })
+                .whenComplete((resp, e) -> {
+                    // processAIResponse already records its own failures
+                    if (e != null && !Boolean.FALSE.equals(ragPerformance.getSuccess())) {
+                        recordFailure(ragPerformance, rootCause(e), startTime, stages);
+                    }
+                });
             
         } catch (Exception e) {
-            ragPerformance.setSuccess(false);
-            ragPerformance.setErrorMessage(e.getMessage());
-            ragPerformance.setProcessingTimeMs(System.currentTimeMillis() - startTime);
-            ragPerformanceRepo.save(ragPerformance);
-            throw e;
+            recordFailure(ragPerformance, e, startTime, stages);
+            return CompletableFuture.failedFuture(e);
         }
     }
 
-    private ResponseEntity<?> processGroqResponse(ResponseEntity<String> response, HealingModel request, 
-                                                Optional<ImageDataModel> imageModel, String modelName, RagPerformanceModel ragPerformance) {
-        if (!response.getStatusCode().is2xxSuccessful()) {
-            throw new RuntimeException("Groq API returned: " + response.getStatusCode());
+    private CompletableFuture<LlmCompletion> callGroqAPI(String systemPrompt, String userPrompt) {
+        String baseUrl = JsonConfig.config.getMockObject().get("GROQ_API_URL").toString();
+        String modelName = JsonConfig.config.getMockObject().get("GROQ_MODEL").toString();
+        
+        AiRequestBody requestBody = new AiRequestBody();
+        requestBody.setModel(modelName);
+        requestBody.setTemperature(.05);
+        requestBody.setMax_tokens(5000);
+        requestBody.setMessage("system", systemPrompt);
+        requestBody.setMessage("user", userPrompt);
+        
+        CompletableFuture<String> exchange = llmClient.post(LlmProvider.GROQ, baseUrl, setHeaders(), requestBody);
+        return linkCancellation(exchange, exchange.thenApply(responseBody -> processGroqResponse(responseBody, modelName)));
+    }
+
+    private CompletableFuture<LlmCompletion> callGeminiAPI(String systemPrompt, String userPrompt) {
+        String baseUrl = JsonConfig.config.getMockObject().get("GEMENI_API_URL").toString();
+        GeminiRequestBody reqBody = new GeminiRequestBody(systemPrompt, userPrompt);
+        
+        CompletableFuture<String> exchange = llmClient.post(LlmProvider.GEMINI,
+                baseUrl + "?key=" + JsonConfig.config.getMockObject().get("GEMENI_API_KEY"),
+                setGeminiHeaders(), reqBody);
+        return linkCancellation(exchange, exchange.thenApply(this::processGeminiResponse));
+    }
+
+    /**
+     * Cancelling the parsed result (the dispatcher cancels the losing provider) must abort the HTTP exchange too
+     */
+    private static <T> CompletableFuture<T> linkCancellation(CompletableFuture<?> exchange, CompletableFuture<T> result) {
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private void recordFailure(RagPerformanceModel ragPerformance, Throwable e, long startTime, PipelineMetrics.Stages stages) {
+        ragPerformance.setSuccess(false);
+        ragPerformance.setErrorMessage(e.getMessage());
+        ragPerformance.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+        ragPerformance.setStageTimingsMs(stages.breakdownMs());
+        writeBehind.save(ragPerformance);
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
         }
+        return e;
+    }
 
-        JSONObject jsonObject = new JSONObject(response.getBody());
+    private LlmCompletion processGroqResponse(String responseBody, String modelName) {
+        JSONObject jsonObject = new JSONObject(responseBody);
         
         if (!jsonObject.has("choices")) {
             throw new RuntimeException("Invalid Groq response format");
@@ -344,16 +790,13 @@ static String EXAMPLES =
                                  .getJSONObject("message")
                                  .getString("content");
 
-        return processAIResponse(content, request, imageModel, modelName, "groq", ragPerformance);
+        JSONObject usage = jsonObject.optJSONObject("usage");
+        Integer promptTokens = usage != null && usage.has("prompt_tokens") ? usage.getInt("prompt_tokens") : null;
+        return new LlmCompletion(modelName, requireJsonObject(content, "Groq"), promptTokens);
     }
 
-    private ResponseEntity<?> processGeminiResponse(ResponseEntity<String> response, HealingModel request, 
-                                                  Optional<ImageDataModel> imageModel, RagPerformanceModel ragPerformance) {
-        if (!response.getStatusCode().is2xxSuccessful()) {
-            throw new RuntimeException("Gemini API returned: " + response.getStatusCode());
-        }
-        
-        JSONObject jsonObject = new JSONObject(response.getBody());
+    private LlmCompletion processGeminiResponse(String responseBody) {
+        JSONObject jsonObject = new JSONObject(responseBody);
         
         if (!jsonObject.has("candidates")) {
             throw new RuntimeException("Invalid Gemini response format");
@@ -371,16 +814,72 @@ static String EXAMPLES =
         
         String modelVersion = jsonObject.optString("modelVersion", "gemini-pro");
         
-        return processAIResponse(content, request, imageModel, modelVersion, "gemini", ragPerformance);
+        JSONObject usage = jsonObject.optJSONObject("usageMetadata");
+        Integer promptTokens = usage != null && usage.has("promptTokenCount") ? usage.getInt("promptTokenCount") : null;
+        return new LlmCompletion(modelVersion, requireJsonObject(content, "Gemini"), promptTokens);
+    }
+
+    /**
+     * Only a usable JSON answer counts as a win, otherwise the other provider gets its chance
+     */
+    private static String requireJsonObject(String content, String provider) {
+        try {
+            if (new ObjectMapper().readTree(content).isObject()) {
+                return content;
+            }
+        } catch (JsonProcessingException e) {
+            // fall through
+        }
+        throw new RuntimeException("Invalid " + provider + " response content: " + content);
+    }
+
+    private static final class LlmCompletion {
+        final String modelName;
+        final String content;
+        // as counted by the provider, null if it did not report usage
+        final Integer promptTokens;
+
+        LlmCompletion(String modelName, String content, Integer promptTokens) {
+            this.modelName = modelName;
+            this.content = content;
+            this.promptTokens = promptTokens;
+        }
+    }
+
+    /**
+     * A healing made by the LLM and the response of the request that asked for it, shared with coalesced requests
+     */
+    private static final class LlmHealing {
+        final HealedElement healed;
+        final Map<String, Object> response;
+
+        LlmHealing(HealedElement healed, Map<String, Object> response) {
+            this.healed = healed;
+            this.response = response;
+        }
+    }
+
+    /**
+     * Prompt tokens a request may send. The same prompt goes to both providers, so the smaller budget applies;
+     * estimated token counts keep some headroom.
+     */
+    private int promptTokenBudget() {
+        int budget = Math.min(llmConfig.getGroq().getMaxPromptTokens(), llmConfig.getGemini().getMaxPromptTokens());
+        return tokenizer.isExact() ? budget : (int) (budget * (1.0 - ragConfig.getTokenBudgetHeadroom()));
     }
 
-    private ResponseEntity<?> processAIResponse(String content, HealingModel request, 
-                                              Optional<ImageDataModel> imageModel, String modelName, String source, RagPerformanceModel ragPerformance) {
+    private LlmHealing processAIResponse(String content, HealingModel request, ParsedPage page,
+                                         Optional<ImageDataModel> imageModel, String modelName, String source, RagPerformanceModel ragPerformance,
+                                         PipelineMetrics.Stages stages, CompletableFuture<Optional<HealedLocatorView>> previousAttempt,
+                                         Executor followUp) {
         try {
+            long parseStart = System.nanoTime();
             ObjectMapper mapper = new ObjectMapper();
             JsonNode jsonResponse = mapper.readTree(content);
             
-            String healedLocator = jsonResponse.path("locator").asText(request.getLocator().replaceAll("\"", "'"));
+            // the context had class prefixes cut, the page has them
+            String healedLocator = ragService.restoreLocator(
+                jsonResponse.path("locator").asText(request.getLocator().replaceAll("\"", "'")), page);
             String approach = jsonResponse.path("approach").asText("not_match");
             double score = jsonResponse.path("confidence_score").asDouble(0.0);
             
@@ -402,77 +901,107 @@ static String EXAMPLES =
             dataHeal.setHealedLocator(healedLocator);
             dataHeal.setLocator(request.getLocator().replaceAll("\"", "'"));
             dataHeal.setPageSource(request.getPageSource());
+            dataHeal.setPageSourceHash(page.getContentHash());
             dataHeal.setConfidenceScore(score);
             dataHeal.setModelName(modelName);
             
             if (imageModel.isPresent()) {
                 dataHeal.setImageHexId(imageModel.get().getImageHexId());
             }
+            healingResultCache.prepare(dataHeal, page);
+            stages.record("response_parse", System.nanoTime() - parseStart);
             
-            healRepo.save(dataHeal);
+            stages.run("persist", () -> saveHealedElement(dataHeal));
+            healingResultCache.remember(dataHeal);
+            exampleIndex.add(dataHeal);
             
             // Update RAG performance with healing results
             ragPerformance.setHealedElementId(dataHeal.getId());
             ragPerformance.setSuccess(true);
             
-            // Calculate confidence improvement (if we have previous attempts)
-            Optional<HealedElement> previousAttempt = healRepo.findTopByLocatorOrderByConfidenceScoreDesc(request.getLocator().replaceAll("\"", "'"));
-            if (previousAttempt.isPresent() && !previousAttempt.get().getId().equals(dataHeal.getId())) {
-                double improvement = score - previousAttempt.get().getConfidenceScore();
-                ragPerformance.setConfidenceScoreImprovement(improvement);
-            }
-            
-            ragPerformanceRepo.save(ragPerformance);
-            
-            if (imageModel.isPresent()) {
-                imageModel.get().setHealedElementId(healRepo.findByLocator(request.getLocator().replaceAll("\"", "'")).get().getId());
-                imageRepo.save(imageModel.get());
-            }
+            stages.run("persist", () -> imageModel.ifPresent(image -> {
+                image.setHealedElementId(dataHeal.getId());
+                writeBehind.save(image);
+            }));
             
-            // Save training data with RAG-optimized context
-            TrainingModel trainingModel = new TrainingModel();
-            String ragOptimizedContext = ragService.retrieveRelevantContext(request.getLocator().replaceAll("\"", "'"), request.getPageSource());
-            trainingModel.setPropmt(OPTIMIZED_SYSTEM_PROMPT + OUTPUT_FORMAT + EXAMPLES + 
-                                  "\n\nFailed locator: " + request.getLocator().replaceAll("\"", "'") + 
-                                  "\nRAG-Optimized Context: " + ragOptimizedContext);
-            trainingModel.setCompletion(content);
-            trainingRepo.save(trainingModel);
+            // Confidence improvement and training data are recorded once the response is out
+            previousAttempt.whenCompleteAsync((previous, e) -> {
+                if (e != null) {
+                    LOGGER.warn("Previous attempt lookup failed for " + dataHeal.getLocator() + ": " + rootCause(e).getMessage());
+                }
+                recordLlmHealing(content, page, dataHeal, previous, ragPerformance, stages);
+            }, followUp);
             
             Map<String, Object> mapResp = CommonUtility.convertDtoToMap(dataHeal);
             mapResp.remove("page_source");
+            mapResp.remove("page_source_hash");
             mapResp.put("source", source); // Track which API was used
             mapResp.put("rag_stats", Map.of(
                 "original_length", ragPerformance.getOriginalPageSourceLength(),
                 "optimized_length", ragPerformance.getOptimizedContextLength(),
                 "compression_ratio", String.format("%.2f%%", ragPerformance.getCompressionRatio()),
-                "processing_time_ms", ragPerformance.getProcessingTimeMs()
+                "processing_time_ms", ragPerformance.getProcessingTimeMs(),
+                "stage_timings_ms", stages.breakdownMs()
             ));
             
-            return new ResponseEntity<>(mapResp, HttpStatusCode.valueOf(HttpStatus.OK.value()));
+            return new LlmHealing(dataHeal, mapResp);
             
         } catch (Exception e) {
             LOGGER.error("Failed to process AI response: " + content, e);
             ragPerformance.setSuccess(false);
             ragPerformance.setErrorMessage("Failed to process AI response: " + e.getMessage());
-            ragPerformanceRepo.save(ragPerformance);
+            ragPerformance.setStageTimingsMs(stages.breakdownMs());
+            writeBehind.save(ragPerformance);
             throw new RuntimeException("Invalid AI response format: " + e.getMessage());
         }
     }
 
+    /**
+     * Save the RAG performance of an LLM healing, with its confidence improvement over the best earlier healing of
+     * the locator, and the prompt and completion as training data
+     */
+    private void recordLlmHealing(String content, ParsedPage page, HealedElement dataHeal, Optional<HealedLocatorView> previousAttempt,
+                                  RagPerformanceModel ragPerformance, PipelineMetrics.Stages stages) {
+        try {
+            if (previousAttempt != null && previousAttempt.isPresent() && !previousAttempt.get().getId().equals(dataHeal.getId())) {
+                ragPerformance.setConfidenceScoreImprovement(dataHeal.getConfidenceScore() - previousAttempt.get().getConfidenceScore());
+            }
+            
+            // Save training data with RAG-optimized context
+            TrainingModel trainingModel = new TrainingModel();
+            String ragOptimizedContext = stages.time("training_context", () -> ragService.retrieveRelevantContext(dataHeal.getLocator(), page));
+            trainingModel.setPropmt(OPTIMIZED_SYSTEM_PROMPT + OUTPUT_FORMAT + EXAMPLES + 
+                                  "\n\nFailed locator: " + dataHeal.getLocator() + 
+                                  "\nRAG-Optimized Context: " + ragOptimizedContext);
+            trainingModel.setCompletion(content);
+            
+            ragPerformance.setStageTimingsMs(stages.breakdownMs());
+            stages.run("persist", () -> {
+                writeBehind.save(ragPerformance);
+                writeBehind.save(trainingModel);
+            });
+        } catch (Exception e) {
+            LOGGER.error("Failed to record the LLM healing of " + dataHeal.getLocator(), e);
+        }
+    }
+
+    /**
+     * Queue a healing for the background writer; its id is assigned right away. The (locator, confidenceScore)
+     * pair is unique, so a concurrent or repeated healing with the same score updates the existing document
+     * instead of failing on the unique_locator_score index; the writer then moves the healing, and the documents
+     * linked to it, to the id of that document.
+     */
+    private void saveHealedElement(HealedElement dataHeal) {
+        writeBehind.save(dataHeal);
+    }
+
     @PostMapping("/is_healed")
     public ResponseEntity<?> isLocatorHealed(@RequestBody HealingModel request){
-        Optional<HealedElement> isPresent = healRepo.findByLocatorAndConfidenceScoreGreaterThanEqual(request.getLocator().replaceAll("\"", "'"),.6);
-        Optional<HealedElement> isPresentWithFail = healRepo.findTopByLocatorOrderByConfidenceScoreDesc(request.getLocator().replaceAll("\"", "'"));
-        Map<String,Object> resMap = new HashMap<>();
-        if(isPresent.isPresent()){
-            resMap = CommonUtility.convertDtoToMap(isPresent.get());
-            resMap.remove("page_source");
-            return new ResponseEntity<>(resMap, HttpStatusCode.valueOf(HttpStatus.OK.value()));
-        }
-        else if(isPresentWithFail.isPresent()){
-            resMap = CommonUtility.convertDtoToMap(isPresentWithFail.get());
-            resMap.remove("page_source");
-            return new ResponseEntity<>(resMap, HttpStatusCode.valueOf(HttpStatus.OK.value()));
+        // the best healing is the one above .6 when there is one, else the best failed attempt
+        Optional<HealedLocatorView> best = pipelineMetrics.time("locator_lookup",
+            () -> locatorCache.lookup(request.getLocator().replaceAll("\"", "'")));
+        if(best.isPresent()){
+            return new ResponseEntity<>(best.get(), HttpStatusCode.valueOf(HttpStatus.OK.value()));
         }
         else{
             return new ResponseEntity<>(new ErrorModel().errorResp(400, "Locator not present in Healed DB : "+request.getLocator().replaceAll("\"", "'"))
@@ -482,15 +1011,22 @@ static String EXAMPLES =
     
     @PostMapping("/set-locator-status")
     public ResponseEntity<?> setLocatorStatusOnDB(@RequestBody HealingModel request) {
-        Optional<HealedElement> isPresentWithFail = healRepo.findTopByLocatorOrderByConfidenceScoreDesc(request.getLocator().replaceAll("\"", "'"));
-        if(isPresentWithFail.isPresent()){
-            HealedElement newObj =isPresentWithFail.get();
-            newObj.setStatus("Valid");
-            newObj.setPageSource(request.getPageSource());
-            return new ResponseEntity<>(healRepo.save(newObj), HttpStatusCode.valueOf(HttpStatus.OK.value()));
+        String locator = request.getLocator().replaceAll("\"", "'");
+        Optional<HealedLocatorView> best = locatorCache.lookup(locator);
+        if(best.isPresent()){
+            // only the status and page source change, queued behind any pending save of the healing
+            HealingStatusUpdate update = new HealingStatusUpdate();
+            update.setLocator(locator);
+            update.setConfidenceScore(best.get().getConfidenceScore());
+            update.setStatus("Valid");
+            update.setPageSource(request.getPageSource());
+            writeBehind.updateStatus(update);
+            Map<String, Object> mapResp = CommonUtility.convertDtoToMap(best.get());
+            mapResp.put("status", update.getStatus());
+            return new ResponseEntity<>(mapResp, HttpStatusCode.valueOf(HttpStatus.OK.value()));
             
         }
-         return new ResponseEntity<>(new ErrorModel().errorResp(400, "Locator not present in Healed DB : "+request.getLocator().replaceAll("\"", "'"))
+         return new ResponseEntity<>(new ErrorModel().errorResp(400, "Locator not present in Healed DB : "+locator)
             , HttpStatusCode.valueOf(HttpStatus.BAD_REQUEST.value()));
 
     }
@@ -552,68 +1088,16 @@ static String EXAMPLES =
     // RAG Performance and Statistics Endpoints
     
     @GetMapping("/rag/stats")
-    public ResponseEntity<?> getRagStatistics() {
+    public ResponseEntity<?> getRagStatistics(@RequestParam(value = "from", required = false) Long from,
+                                              @RequestParam(value = "to", required = false) Long to,
+                                              @RequestParam(value = "granularity", required = false) String granularity,
+                                              @RequestParam(value = "percentiles", defaultValue = "50,90,95,99") List<Double> percentiles,
+                                              @RequestParam(value = "series", defaultValue = "false") boolean series) {
         try {
-            Map<String, Object> stats = new HashMap<>();
-            
-            // Get recent successful operations
-            //PageRequest recent = PageRequest.of(0, 100);
-            List<RagPerformanceModel> recentOps = ragPerformanceRepo.findAllSuccessfulOperationsCompressionRatio();
-            
-            if (!recentOps.isEmpty()) {
-                // Calculate average compression ratio
-                double avgCompression = recentOps.stream()
-                    .filter(op -> op.getCompressionRatio() != null)
-                    .mapToDouble(RagPerformanceModel::getCompressionRatio)
-                    .average()
-                    .orElse(0.0);
-                
-                // Calculate average processing time
-                double avgProcessingTime = recentOps.stream()
-                    .filter(op -> op.getProcessingTimeMs() != null)
-                    .mapToLong(RagPerformanceModel::getProcessingTimeMs)
-                    .average()
-                    .orElse(0.0);
-                
-                // Calculate average context reduction
-                double avgOriginalLength = recentOps.stream()
-                    .filter(op -> op.getOriginalPageSourceLength() != null)
-                    .mapToInt(RagPerformanceModel::getOriginalPageSourceLength)
-                    .average()
-                    .orElse(0.0);
-                
-                double avgOptimizedLength = recentOps.stream()
-                    .filter(op -> op.getOptimizedContextLength() != null)
-                    .mapToInt(RagPerformanceModel::getOptimizedContextLength)
-                    .average()
-                    .orElse(0.0);
-                
-                stats.put("total_operations", recentOps.size());
-                stats.put("avg_compression_ratio", String.format("%.2f%%", avgCompression));
-                stats.put("avg_processing_time_ms", String.format("%.2f", avgProcessingTime));
-                stats.put("avg_original_length", String.format("%.0f", avgOriginalLength));
-                stats.put("avg_optimized_length", String.format("%.0f", avgOptimizedLength));
-                stats.put("avg_token_reduction", String.format("%.0f", avgOriginalLength - avgOptimizedLength));
-                
-                // Automation type distribution
-                Map<String, Long> automationTypeStats = recentOps.stream()
-                    .filter(op -> op.getAutomationType() != null)
-                    .collect(Collectors.groupingBy(
-                        RagPerformanceModel::getAutomationType,
-                        Collectors.counting()
-                    ));
-                stats.put("automation_type_distribution", automationTypeStats);
-                
-                // Success rate
-                long totalOps = ragPerformanceRepo.count();
-                long successfulOps = recentOps.size();
-                stats.put("success_rate", String.format("%.2f%%", (successfulOps * 100.0) / totalOps));
-            } else {
-                stats.put("message", "No RAG operations found");
-            }
-            
-            return new ResponseEntity<>(stats, HttpStatus.OK);
-            
+            // read from the minute/hour/day rollups, O(buckets) whatever the history
+            return new ResponseEntity<>(ragStatsRollups.statistics(from, to, granularity, percentiles, series), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(new ErrorModel().errorResp(400, e.getMessage()), HttpStatus.BAD_REQUEST);
         } catch (Exception e) {
             LOGGER.error("Error getting RAG statistics: " + e.getMessage(), e);
             return new ResponseEntity<>(
@@ -622,6 +1106,16 @@ static String EXAMPLES =
             );
         }
     }
+
+    @PostMapping("/rag/stats/rebuild")
+    public ResponseEntity<?> rebuildRagStatistics(@RequestParam(value = "from", defaultValue = "0") long from) {
+        Map<String, Object> resp = new HashMap<>();
+        boolean rebuilt = ragStatsRollups.rebuild(from);
+        resp.put("rebuilt", rebuilt);
+        resp.put("message", rebuilt ? "RAG statistics rollups recomputed" : "Rollup already running or failed, see logs");
+        resp.put("rollups", ragStatsRollups.getStats());
+        return new ResponseEntity<>(resp, rebuilt ? HttpStatus.OK : HttpStatus.CONFLICT);
+    }
     
     @GetMapping("/rag/performance/{locator}")
     public ResponseEntity<?> getRagPerformanceForLocator(@PathVariable String locator) {
@@ -683,6 +1177,17 @@ static String EXAMPLES =
             Map<String, Object> health = new HashMap<>();
             health.put("rag_enabled", ragService != null && contextAnalyzerService != null);
             health.put("configuration_loaded", ragConfig != null);
+            health.put("healing_result_cache", healingResultCache.getStats());
+            health.put("example_index", exampleIndex.getStats());
+            health.put("attribute_weights", attributeWeights.getStats());
+            health.put("write_behind", writeBehind.getStats());
+            health.put("page_source_store", pageSources.getStats());
+            health.put("locator_cache", locatorCache.getStats());
+            health.put("rag_stats_rollups", ragStatsRollups.getStats());
+            health.put("llm_coalescing", Map.of(
+                "originated", inFlightHealings.getOriginated(),
+                "coalesced", inFlightHealings.getCoalesced(),
+                "in_flight", inFlightHealings.getInFlight()));
             health.put("timestamp", System.currentTimeMillis());
             health.put("status", "RAG services are operational");
             
@@ -696,6 +1201,37 @@ static String EXAMPLES =
         }
     }
     
+    @GetMapping("/healing/weights")
+    public ResponseEntity<?> getAttributeWeights() {
+        return new ResponseEntity<>(attributeWeights.getStats(), HttpStatus.OK);
+    }
+    
+    @PostMapping("/healing/page-sources/migrate")
+    public ResponseEntity<?> migratePageSources() {
+        try {
+            return new ResponseEntity<>(pageSources.migrate(), HttpStatus.OK);
+        } catch (Exception e) {
+            LOGGER.error("Page source migration failed: " + e.getMessage(), e);
+            return new ResponseEntity<>(
+                new ErrorModel().errorResp(500, "Page source migration failed: " + e.getMessage()),
+                HttpStatus.INTERNAL_SERVER_ERROR
+            );
+        }
+    }
+    
+    @PostMapping("/healing/weights/train")
+    public ResponseEntity<?> trainAttributeWeights() {
+        try {
+            return new ResponseEntity<>(weightTrainer.train(), HttpStatus.OK);
+        } catch (Exception e) {
+            LOGGER.error("Attribute weight training failed: " + e.getMessage(), e);
+            return new ResponseEntity<>(
+                new ErrorModel().errorResp(500, "Attribute weight training failed: " + e.getMessage()),
+                HttpStatus.INTERNAL_SERVER_ERROR
+            );
+        }
+    }
+    
     @PostMapping("/rag/test")
     public ResponseEntity<?> testRagExtraction(@RequestBody Map<String, String> request) {
         try {
@@ -720,9 +1256,10 @@ static String EXAMPLES =
             }
             
             // Test RAG extraction
-            boolean isValid = ragService.validateRagOutput(locator, pageSource);
-            String extractedContext = ragService.retrieveRelevantContext(locator, pageSource);
-            RagService.ContextStats stats = ragService.getContextStats(locator, pageSource);
+            ParsedPage page = parsedPageCache.get(pageSource);
+            boolean isValid = ragService.validateRagOutput(locator, page);
+            String extractedContext = ragService.retrieveRelevantContext(locator, page);
+            RagService.ContextStats stats = ragService.getContextStats(locator, page);
             
             Map<String, Object> result = new HashMap<>();
             result.put("validation_passed", isValid);
@@ -738,8 +1275,8 @@ static String EXAMPLES =
                 result.put("locator_analysis", analyzeLocatorForDebug(locator));
                 result.put("page_source_preview", pageSource.substring(0, Math.min(500, pageSource.length())));
                 
-                // Show the 5 chunks analysis
-                result.put("chunk_analysis", analyzeChunksForDebug(locator, pageSource));
+                // The structural chunks the service falls back to when no element matches the locator terms
+                result.put("chunk_analysis", analyzeChunksForDebug(locator, page));
                 
                 // Check if the expected element is in the page source
                 boolean elementFound = pageSource.toLowerCase().contains("search_image") || 
@@ -777,7 +1314,8 @@ static String EXAMPLES =
             }
             
             // Analyze page structure
-            ContextAnalyzerService.PageAnalysis analysis = contextAnalyzerService.analyzePage(pageSource);
+            ParsedPage page = parsedPageCache.get(pageSource);
+            ContextAnalyzerService.PageAnalysis analysis = contextAnalyzerService.analyzePage(page);
             
             Map<String, Object> result = new HashMap<>();
             result.put("page_analysis", Map.of(
@@ -791,12 +1329,12 @@ static String EXAMPLES =
             
             // If locator is provided, get RAG context
             if (locator != null && !locator.trim().isEmpty()) {
-                RagService.ContextStats contextStats = ragService.getContextStats(locator, pageSource);
+                RagService.ContextStats contextStats = ragService.getContextStats(locator, page);
                 result.put("rag_optimization", Map.of(
                     "original_length", contextStats.originalLength,
                     "optimized_length", contextStats.optimizedLength,
                     "compression_achieved", String.format("%.2f%%", 100.0 - contextStats.compressionRatio),
-                    "relevant_context", ragService.retrieveRelevantContext(locator, pageSource)
+                    "relevant_context", ragService.retrieveRelevantContext(locator, page)
                 ));
                 
                 // Find similar elements
@@ -817,14 +1355,21 @@ static String EXAMPLES =
 
     @PostMapping("/is_already_present")
     public ResponseEntity<?> isLocatorPresent(@RequestBody HealingModel request){
-        Boolean isPresent = LocatorMatcher.isLocatorPresent(request.getLocator(), request.getPageSource(), ContextAnalyzerService.detectAutomationType(request.getPageSource()));
+        Boolean isPresent = LocatorMatcher.isLocatorPresent(request.getLocator(), parsedPageCache.get(request.getPageSource()));
         return new ResponseEntity<>(new ErrorModel().errorResp(200, "Locator not present in Page Source : "+isPresent)
             , HttpStatusCode.valueOf(HttpStatus.OK.value()));
     }
 
     @PostMapping("/heal_locally")
     public ResponseEntity<?> healLocally(@RequestBody HealingModel request){
-        HashMap<String,Object> map = LocatorMatcher.healLocator(request.getLocator(), request.getPageSource());
+        ParsedPage page = parsedPageCache.get(request.getPageSource());
+        HashMap<String,Object> map = LocatorMatcher.healLocator(request.getLocator(), page);
+        WeightedLocalHealer.Result localHeal = healWeighted(request.getLocator(), page, null);
+        if (localHeal != null && localHeal.confidence > ((Number) map.getOrDefault("confidence", 0.0)).doubleValue()) {
+            map.put("healedXPath", localHeal.healedLocator);
+            map.put("confidence", localHeal.confidence);
+            map.put("local_heal", localHealDetails(localHeal));
+        }
         return new ResponseEntity<>(map, HttpStatusCode.valueOf(HttpStatus.OK.value()));
     }
 
@@ -925,7 +1470,8 @@ static String EXAMPLES =
     }
 
     // Enhanced text validation methods
-    private boolean validateTextInPageSource(String locator, String pageSource) {
+    private boolean validateTextInPageSource(String locator, ParsedPage page) {
+        String pageSource = page.getPageSource();
         try {
             // Extract text values from locator using regex
             Pattern textPattern = Pattern.compile("contains\\([^,]+,\\s*['\"]([^'\"]+)['\"]\\)");
@@ -944,7 +1490,7 @@ static String EXAMPLES =
                 
                 // Check for case-insensitive match
                 String lowerSearchText = searchText.toLowerCase();
-                String lowerPageSource = pageSource.toLowerCase();
+                String lowerPageSource = page.getLowerCase();
                 
                 if (lowerPageSource.contains("text=\"" + lowerSearchText + "\"") || 
                     lowerPageSource.contains("text='" + lowerSearchText + "'")) {
@@ -972,7 +1518,8 @@ static String EXAMPLES =
     }
 
     // Enhanced prompt building with RAG-optimized context
-    private String buildUserPrompt(String locator, String pageSource, List<HealedElement> examples) {
+    private String buildUserPrompt(String locator, ParsedPage page, List<HealedElement> examples, PageDiff.Heal diffHeal, int tokenBudget,
+                                   RagPerformanceModel ragPerformance, PipelineMetrics.Stages stages) {
         StringBuilder prompt = new StringBuilder();
         
         prompt.append("TASK: Analyze and heal the failed locator\n\n");
@@ -995,7 +1542,7 @@ static String EXAMPLES =
             prompt.append("Preserve spacing, capitalization, and formatting exactly as provided.\n\n");
             
             // Pre-validate text existence
-            if (validateTextInPageSource(locator, pageSource)) {
+            if (validateTextInPageSource(locator, page)) {
                 prompt.append("✅ TEXT VALIDATION: The text in this locator appears to exist in the page source.\n");
                 prompt.append("This locator should likely be marked as 'already_present' - do not modify the text!\n\n");
             } else {
@@ -1016,13 +1563,35 @@ static String EXAMPLES =
             prompt.append("\n");
         }
         
-        // Use RAG-optimized context instead of full page source
-        String optimizedContext = ragService.retrieveRelevantContext(locator, pageSource);
-        LOGGER.info("Optimised Page Source"+optimizedContext);
-        prompt.append("Relevant Page Context (RAG-optimized):\n").append(optimizedContext);
+        // Only what changed around the element since the last known-good page, when the diff found that region;
+        // otherwise RAG-optimized context. Either is packed into what is left of the token budget
+        RagService.PackedContext packed;
+        if (diffHeal != null && diffHeal.region.cardinality() > 1) {
+            prompt.append("Element this locator matched on the last known-good page: ").append(diffHeal.describeOldTarget()).append("\n\n");
+            prompt.append("Changed Page Region (new or modified elements since then):\n");
+            int regionBudget = tokenBudget - tokenizer.count(prompt.toString());
+            packed = stages.time("rag_retrieval", () -> ragService.packRegion(page, diffHeal.region, regionBudget));
+        } else {
+            prompt.append("Relevant Page Context (RAG-optimized):\n");
+            int contextBudget = tokenBudget - tokenizer.count(prompt.toString());
+            packed = stages.time("rag_retrieval", () -> ragService.packContext(locator, page, contextBudget));
+        }
+        LOGGER.info("Optimised Page Source"+packed.text);
+        prompt.append(packed.text);
+        recordContext(ragPerformance, page, packed);
         return prompt.toString();
     }
 
+    private static void recordContext(RagPerformanceModel ragPerformance, ParsedPage page, RagService.PackedContext packed) {
+        ragPerformance.setOptimizedContextLength(packed.text.length());
+        // share of the page left out of the prompt
+        ragPerformance.setCompressionRatio(100.0 - (page.length() > 0 ? packed.text.length() * 100.0 / page.length() : 0.0));
+        ragPerformance.setContextTokens(packed.tokens);
+        ragPerformance.setRawContextLength(packed.rawLength);
+        ragPerformance.setRawContextTokens(packed.rawTokens);
+        ragPerformance.setMinificationTokenReduction(packed.rawTokens > 0 ? 100.0 - packed.tokens * 100.0 / packed.rawTokens : 0.0);
+    }
+
     Map<String, String> setHeaders() {
         Map<String, String> headers = new HashMap<>();
         headers.put("Content-Type", "application/json");
@@ -1076,49 +1645,28 @@ static String EXAMPLES =
         return analysis;
     }
     
-    private Map<String, Object> analyzeChunksForDebug(String locator, String pageSource) {
+    private Map<String, Object> analyzeChunksForDebug(String locator, ParsedPage page) {
         Map<String, Object> chunkAnalysis = new HashMap<>();
         
         try {
-            // Use the same logic as RAG service to divide into 5 chunks
-            int totalLength = pageSource.length();
-            int chunkSize = totalLength / 5;
+            List<PageChunker.Chunk> pageChunks = PageChunker.chunk(page, ragConfig.getMaxChunkLength());
+            double[] scores = ragService.scoreChunks(locator, page, pageChunks);
             
             List<Map<String, Object>> chunks = new ArrayList<>();
-            
-            for (int i = 0; i < 5; i++) {
-                int start = i * chunkSize;
-                int end = (i == 4) ? totalLength : Math.min(start + chunkSize, totalLength);
-                
-                if (start < totalLength) {
-                    String chunk = pageSource.substring(start, end);
-                    
-                    Map<String, Object> chunkInfo = new HashMap<>();
-                    chunkInfo.put("chunk_number", i + 1);
-                    chunkInfo.put("start_position", start);
-                    chunkInfo.put("end_position", end);
-                    chunkInfo.put("length", chunk.length());
-                    chunkInfo.put("preview", chunk.substring(0, Math.min(200, chunk.length())) + 
-                                           (chunk.length() > 200 ? "..." : ""));
-                    chunkInfo.put("contains_locator", chunk.toLowerCase().contains(locator.toLowerCase()));
-                    
-                    // Check for resource ID parts
-                    boolean containsResourceId = false;
-                    if (locator.contains(":id/")) {
-                        String[] parts = locator.split(":id/");
-                        if (parts.length == 2) {
-                            containsResourceId = chunk.toLowerCase().contains(parts[1].toLowerCase()) ||
-                                               chunk.toLowerCase().contains(parts[0].toLowerCase());
-                        }
-                    }
-                    chunkInfo.put("contains_resource_id_parts", containsResourceId);
-                    
-                    chunks.add(chunkInfo);
-                }
+            for (int i = 0; i < pageChunks.size(); i++) {
+                PageChunker.Chunk chunk = pageChunks.get(i);
+                Map<String, Object> chunkInfo = new LinkedHashMap<>();
+                chunkInfo.put("index", chunk.getIndex());
+                chunkInfo.put("path", chunk.getPath());
+                chunkInfo.put("length", chunk.length());
+                chunkInfo.put("score", scores[i]);
+                chunkInfo.put("preview", chunk.getContent().substring(0, Math.min(200, chunk.length())) + 
+                                       (chunk.length() > 200 ? "..." : ""));
+                chunks.add(chunkInfo);
             }
             
             chunkAnalysis.put("total_chunks", chunks.size());
-            chunkAnalysis.put("chunk_size_avg", chunkSize);
+            chunkAnalysis.put("max_chunk_length", ragConfig.getMaxChunkLength());
             chunkAnalysis.put("chunks", chunks);
             
         } catch (Exception e) {
@@ -1128,6 +1676,112 @@ static String EXAMPLES =
         return chunkAnalysis;
     }
 
+    /**
+     * Align the page the locator last worked (or was healed) on with the current one and follow its element
+     *
+     * @return the heal, or null when there is no previous page or the locator matched nothing on it
+     */
+    private PageDiff.Heal healFromPreviousPage(String locator, ParsedPage page) {
+        if (!healingConfig.isPageDiffEnabled()) {
+            return null;
+        }
+        try {
+            // the best healing from the locator cache; only a healing whose page source is still inline is read again
+            Optional<HealedLocatorView> previous = locatorCache.lookup(locator);
+            if (previous.isEmpty() || page.getContentHash().equals(previous.get().getPageSourceHash())) {
+                return null;
+            }
+            ParsedPage previousPage = previous.get().getPageSourceHash() != null
+                ? pageSources.page(previous.get().getPageSourceHash())
+                : healRepo.findPageSourceById(previous.get().getId()).map(pageSources::page).orElse(null);
+            if (previousPage == null || previousPage.getContentHash().equals(page.getContentHash())) {
+                return null;
+            }
+            List<String> oldLocators = new ArrayList<>();
+            if (previous.get().getHealedLocator() != null) {
+                oldLocators.add(previous.get().getHealedLocator());
+            }
+            oldLocators.add(locator);
+            PageDiff.Heal heal = PageDiff.healFromPrevious(oldLocators, previousPage, page);
+            if (heal != null) {
+                LOGGER.info("Page diff for " + locator + ": " + (heal.kind != null ? heal.kind + " -> " + heal.healedLocator : "element not found")
+                    + ", changed region of " + heal.region.cardinality() + " elements");
+            }
+            return heal;
+        } catch (Exception e) {
+            LOGGER.warn("Page diff failed for " + locator + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Score the page against the element the locator matched on its last known-good page when the diff found
+     * it, otherwise against the locator's own attributes
+     */
+    private WeightedLocalHealer.Result healWeighted(String locator, ParsedPage page, PageDiff.Heal diffHeal) {
+        if (!healingConfig.isLocalHealEnabled()) {
+            return null;
+        }
+        try {
+            return diffHeal != null
+                ? localHealer.heal(locator, page, diffHeal.diff.getOldPage(), diffHeal.oldTarget)
+                : localHealer.heal(locator, page, null, -1);
+        } catch (Exception e) {
+            LOGGER.warn("Local healing failed for " + locator + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Persist a healing found without the LLM and make it available to the cache and the example index
+     */
+    private Map<String, Object> saveHealingWithoutLlm(HealingModel request, ParsedPage page, Optional<ImageDataModel> imageModel,
+                                                      HealedElement healed) {
+        healed.setPageSource(request.getPageSource());
+        healed.setPageSourceHash(page.getContentHash());
+        imageModel.ifPresent(image -> healed.setImageHexId(image.getImageHexId()));
+        healingResultCache.prepare(healed, page);
+        saveHealedElement(healed);
+        healingResultCache.remember(healed);
+        exampleIndex.add(healed);
+        Map<String, Object> mapResp = CommonUtility.convertDtoToMap(healed);
+        mapResp.remove("page_source");
+        mapResp.remove("page_source_hash");
+        return mapResp;
+    }
+
+    private static HealedElement localHealing(String locator, WeightedLocalHealer.Result localHeal) {
+        HealedElement healed = new HealedElement();
+        healed.setLocator(locator);
+        healed.setHealedLocator(localHeal.healedLocator);
+        healed.setApproach("healing");
+        healed.setReasoning("Best weighted attribute match " + localHeal.features + " against the "
+            + (localHeal.fromPreviousPage ? "element on the last known-good page" : "locator"));
+        healed.setConfidenceScore(localHeal.confidence);
+        healed.setModelName("local-weighted");
+        return healed;
+    }
+
+    private static Map<String, Object> localHealDetails(WeightedLocalHealer.Result localHeal) {
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("score", localHeal.score);
+        details.put("runner_up_score", localHeal.runnerUpScore);
+        details.put("reference", localHeal.fromPreviousPage ? "previous_page" : "locator");
+        details.put("features", localHeal.features);
+        return details;
+    }
+
+    private static HealedElement pageDiffHealing(String locator, PageDiff.Heal diffHeal) {
+        HealedElement healed = new HealedElement();
+        healed.setLocator(locator);
+        healed.setHealedLocator(diffHeal.healedLocator);
+        healed.setApproach("healing");
+        healed.setReasoning("Same element as on the last known-good page (" + diffHeal.kind.name().toLowerCase() + " match)");
+        healed.setConfidenceScore(diffHeal.getConfidence());
+        healed.setModelName("page-diff");
+        return healed;
+    }
+
     private HealedElement locatorPresentInPageSource(String locator, String updatedLocator){
         HealedElement healedElement = new HealedElement();
         healedElement.setLocator(locator);
@@ -0,0 +1,13 @@
+package self.heal.locators.enums;
+
+/**
+ * How a healing request is dispatched to the LLM providers
+ */
+public enum DispatchPolicy {
+    /** Call the primary provider, call the secondary only after the primary failed */
+    SEQUENTIAL,
+    /** Call the primary provider, also call the secondary if the primary has not answered within its p95 latency */
+    HEDGED,
+    /** Call both providers at once and take the first valid answer */
+    RACE
+}
@@ -0,0 +1,26 @@
+package self.heal.locators.enums;
+
+public enum LlmProvider {
+    GROQ("groq"),
+    GEMINI("gemini");
+
+    private final String value;
+
+    LlmProvider(String valueEnum){
+        this.value=valueEnum;
+    }
+
+    public String getValue(){
+        return this.value;
+    }
+
+    // Static method to fetch enum from string
+    public static LlmProvider fromValue(String value) {
+        for (LlmProvider provider : LlmProvider.values()) {
+            if (provider.getValue().equalsIgnoreCase(value)) {
+                return provider;
+            }
+        }
+        throw new IllegalArgumentException("No enum constant with value: " + value);
+    }
+}
@@ -0,0 +1,39 @@
+package self.heal.locators.model;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Attribute weights of the local healer fitted for one app (its package name, "*" for all apps together)
+ */
+@Data
+@Document("attribute_weights")
+public class AttributeWeightsModel {
+
+    @Id
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String app;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Double> weights;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer samples;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("validation_accuracy")
+    private Double validationAccuracy;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("baseline_accuracy")
+    private Double baselineAccuracy;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("trained_at")
+    private Long trainedAt;
+}
@@ -0,0 +1,20 @@
+package self.heal.locators.model;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+@Data
+public class BatchHealingModel extends BaseModel{
+
+    @JsonProperty("locators")
+    private List<String> locators;
+
+    @JsonProperty("page_source")
+    private String pageSource;
+
+    @JsonProperty("image_data_id")
+    private String imageDataId;
+}
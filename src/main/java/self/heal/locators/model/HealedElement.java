@@ -1,5 +1,6 @@
 package self.heal.locators.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -13,6 +14,7 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @Data
 @CompoundIndexes({
     @CompoundIndex(name = "locator_confidence_idx", def = "{'locator': 1, 'confidenceScore': -1}"),
+    @CompoundIndex(name = "normalized_locator_fingerprint_idx", def = "{'normalizedLocator': 1, 'pageFingerprint': 1, 'confidenceScore': -1}"),
     @CompoundIndex(
         name = "unique_locator_score",
         def = "{'locator': 1, 'confidenceScore': 1}",
@@ -44,6 +46,11 @@ public class HealedElement extends BaseModel{
     @JsonProperty("page_source")
     private String pageSource;
 
+    // SHA-256 of the page source stored in page_source_blob; pageSource is only inline on documents not migrated yet
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("page_source_hash")
+    private String pageSourceHash;
+
     @Indexed
     @JsonInclude(JsonInclude.Include.NON_NULL)
     @JsonProperty("confidence_score")
@@ -59,4 +66,11 @@ public class HealedElement extends BaseModel{
     @JsonInclude(JsonInclude.Include.NON_NULL)
     @JsonProperty("image_id")
     private String imageHexId;
+
+    // Result cache keys, stored for the L2 lookup but not part of the API
+    @JsonIgnore
+    private String normalizedLocator;
+
+    @JsonIgnore
+    private String pageFingerprint;
 }
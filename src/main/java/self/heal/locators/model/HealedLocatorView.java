@@ -0,0 +1,37 @@
+package self.heal.locators.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+
+/**
+ * Read model of a healing for locator lookups: the healed_element fields a client needs to use the healed locator,
+ * without the page source, reasoning or cache keys. Serialized as is by /is_healed; the page source hash is only
+ * read by the page diff.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class HealedLocatorView extends BaseModel {
+
+    private String id;
+
+    private String locator;
+
+    @JsonProperty("healed_locator")
+    private String healedLocator;
+
+    private String approach;
+
+    @JsonProperty("confidence_score")
+    private Double confidenceScore;
+
+    @JsonProperty("model_name")
+    private String modelName;
+
+    private String status;
+
+    @JsonIgnore
+    private String pageSourceHash;
+}
@@ -0,0 +1,21 @@
+package self.heal.locators.model;
+
+import lombok.Data;
+
+/**
+ * Status change of a stored healing, identified by its (locator, confidenceScore) key, queued for the write-behind
+ * store. The page source it was confirmed on replaces the page source of the healing.
+ */
+@Data
+public class HealingStatusUpdate {
+
+    private String locator;
+
+    private Double confidenceScore;
+
+    private String status;
+
+    private String pageSource;
+
+    private String pageSourceHash;
+}
@@ -0,0 +1,37 @@
+package self.heal.locators.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A page source stored once, keyed by the SHA-256 of its text and deflate-compressed
+ */
+@Data
+@Document("page_source_blob")
+public class PageSourceBlob {
+
+    @Id
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String hash;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private byte[] data;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String encoding;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("original_length")
+    private Integer originalLength;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("compressed_length")
+    private Integer compressedLength;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("created_at")
+    private Long createdAt;
+}
@@ -1,5 +1,7 @@
 package self.heal.locators.model;
 
+import java.util.Map;
+
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
@@ -65,4 +67,58 @@ public class RagPerformanceModel extends BaseModel {
     @JsonInclude(JsonInclude.Include.NON_NULL)
     @JsonProperty("confidence_score_improvement")
     private Double confidenceScoreImprovement;
-}
\ No newline at end of file
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("provider")
+    private String provider;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("dispatch_policy")
+    private String dispatchPolicy;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("hedged")
+    private Boolean hedged;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("provider_latency_ms")
+    private Long providerLatencyMs;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("prompt_tokens")
+    private Integer promptTokens;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("context_tokens")
+    private Integer contextTokens;
+    
+    // Context size before minification
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("raw_context_length")
+    private Integer rawContextLength;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("raw_context_tokens")
+    private Integer rawContextTokens;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("minification_token_reduction")
+    private Double minificationTokenReduction;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("prompt_token_budget")
+    private Integer promptTokenBudget;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("token_counter")
+    private String tokenCounter;
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("provider_prompt_tokens")
+    private Integer providerPromptTokens;
+    
+    // Time per pipeline stage of the request in ms (dom_parse, rag_retrieval, llm_call.groq, persist...)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("stage_timings_ms")
+    private Map<String, Double> stageTimingsMs;
+}
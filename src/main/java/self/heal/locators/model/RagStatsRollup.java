@@ -0,0 +1,93 @@
+package self.heal.locators.model;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Pre-aggregated rag_performance bucket: one document per granularity (minute, hour, day), bucket start,
+ * automation type and provider. Sums, averages and the latency histogram only cover successful operations, as
+ * /rag/stats always reported.
+ */
+@Data
+@CompoundIndex(name = "granularity_bucket_idx", def = "{'granularity': 1, 'bucketStart': 1}")
+@Document("rag_stats_rollup")
+public class RagStatsRollup extends BaseModel {
+
+    // granularity|bucketStart|automationType|provider
+    @Id
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String id;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String granularity;
+
+    // Epoch ms
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("bucket_start")
+    private Long bucketStart;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("automation_type")
+    private String automationType;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String provider;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long operations;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long successes;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("compression_ratio_sum")
+    private Double compressionRatioSum;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("compression_ratio_count")
+    private Long compressionRatioCount;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("processing_time_sum")
+    private Long processingTimeSum;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("processing_time_count")
+    private Long processingTimeCount;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("processing_time_min")
+    private Long processingTimeMin;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("processing_time_max")
+    private Long processingTimeMax;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("original_length_sum")
+    private Long originalLengthSum;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("original_length_count")
+    private Long originalLengthCount;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("optimized_length_sum")
+    private Long optimizedLengthSum;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("optimized_length_count")
+    private Long optimizedLengthCount;
+
+    // Processing time histogram: log bucket index -> count, see RagStatsRollups.latencyBucket
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("latency_histogram")
+    private Map<String, Long> latencyHistogram;
+}
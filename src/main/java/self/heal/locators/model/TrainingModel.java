@@ -1,5 +1,6 @@
 package self.heal.locators.model;
 
+import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -10,6 +11,11 @@ import lombok.Data;
 @Document("training_model")
 public class TrainingModel {
 
+    // assigned before the write so a retried write replaces instead of duplicating
+    @Id
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String id;
+
     @JsonInclude(JsonInclude.Include.ALWAYS)
     private String propmt;
 
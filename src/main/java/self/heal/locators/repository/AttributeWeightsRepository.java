@@ -0,0 +1,13 @@
+package self.heal.locators.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import self.heal.locators.model.AttributeWeightsModel;
+
+/**
+ * Repository for the learned attribute weight table, one document per app
+ */
+@Repository
+public interface AttributeWeightsRepository extends MongoRepository<AttributeWeightsModel, String> {
+}
@@ -2,11 +2,15 @@ package self.heal.locators.repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Meta;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
 import self.heal.locators.model.HealedElement;
+import self.heal.locators.model.HealedLocatorView;
 
 public interface HealedElemetRepository extends MongoRepository<HealedElement,String>{
 
@@ -25,6 +29,16 @@ public interface HealedElemetRepository extends MongoRepository<HealedElement,St
      */
     List<HealedElement> findByConfidenceScoreGreaterThanEqualOrderByConfidenceScoreDesc(Double score, Pageable pageable);
 
+    /**
+     * Healings at or above a confidence score without their page source, read through one cursor to build the
+     * few-shot example index. The stream must be closed.
+     * @param score
+     * @return
+     */
+    @Meta(cursorBatchSize = 1000)
+    @Query(value = "{ 'confidenceScore': { $gte: ?0 } }", fields = "{ 'locator': 1, 'healedLocator': 1, 'approach': 1, 'confidenceScore': 1 }")
+    Stream<HealedElement> streamExamplesByConfidenceScoreGreaterThanEqual(Double score);
+
     /**
      * 
      * @param locator
@@ -33,9 +47,45 @@ public interface HealedElemetRepository extends MongoRepository<HealedElement,St
      */
     Optional<HealedElement> findByLocatorAndConfidenceScoreGreaterThanEqual(String locator, Double score);
 
+    /**
+     * 
+     * @param locator
+     * @param score
+     * @return element holding the (locator, confidenceScore) pair of the unique_locator_score index
+     */
+    Optional<HealedElement> findByLocatorAndConfidenceScore(String locator, Double score);
+
        // Returns the element with the highest confidenceScore for given locator
     Optional<HealedElement> findTopByLocatorOrderByConfidenceScoreDesc(String locator);
 
+    /**
+     * Best healing for a locator as a read model, served by locator_confidence_idx. The query is limited to one
+     * document (a locator usually has several healings) and only reads the fields of the view, not the page source
+     * @param locator
+     * @return
+     */
+    Optional<HealedLocatorView> findFirstByLocatorOrderByConfidenceScoreDesc(String locator);
+
+    /**
+     * Inline page source of a healing stored before page sources moved to page_source_blob
+     * @param id : healing id
+     * @return
+     */
+    @Query(fields = "{ 'pageSource': 1, 'pageSourceHash': 1 }")
+    Optional<HealedElement> findPageSourceById(String id);
+
+    /**
+     * Best healing recorded for the same normalized locator on a page with the same structure, without its
+     * page source
+     * @param normalizedLocator : locator normalized by HealingResultCache
+     * @param pageFingerprint : structural fingerprint of the page
+     * @param score : minimum confidence score
+     * @return
+     */
+    @Query(fields = "{ 'pageSource': 0 }")
+    Optional<HealedElement> findTopByNormalizedLocatorAndPageFingerprintAndConfidenceScoreGreaterThanEqualOrderByConfidenceScoreDesc(
+        String normalizedLocator, String pageFingerprint, Double score);
+
 
 
     
@@ -26,12 +26,6 @@ public interface RagPerformanceRepository extends MongoRepository<RagPerformance
     @Query("{'compressionRatio': {$gte: ?0}, 'success': true}")
     List<RagPerformanceModel> findHighCompressionRatioOperations(double minCompressionRatio, PageRequest pageRequest);
     
-    /**
-     * Get all fields for successful operations for statistics calculation
-     */
-    @Query("{'success': true}")
-    List<RagPerformanceModel> findAllSuccessfulOperationsCompressionRatio();
-    
     /**
      * Find operations by automation type
      */
@@ -0,0 +1,349 @@
+package self.heal.locators.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import self.heal.locators.config.HealingConfiguration;
+import self.heal.locators.model.AttributeWeightsModel;
+import self.heal.locators.model.HealedElement;
+import self.heal.locators.repository.AttributeWeightsRepository;
+
+/**
+ * Offline fit of the local healer attribute weights from LLM-confirmed healings.
+ * <p>
+ * healed_element is streamed through a cursor, one page source at a time (inline or from the page source store). For every healing the failed locator
+ * becomes the reference, the element its healed locator points at is the positive, and the elements the current
+ * weights rank highest are the negatives. The weights are fitted per app (and over all apps) as a conditional
+ * logit, i.e. a logistic regression of "is the healed element" on the per-attribute similarities normalized over
+ * the candidates of each healing, by projected gradient descent with non-negative weights and an L2 pull towards
+ * the configured weights. Every fifth healing is held out; a fit is only published when it ranks the healed
+ * element first at least as often as the configured weights do on the held-out healings.
+ */
+@Service
+public class AttributeWeightTrainer {
+
+    private static final Logger LOGGER = Logger.getLogger(AttributeWeightTrainer.class);
+
+    // Healings found without the LLM are what the weights produce, they cannot teach them
+    private static final List<String> DERIVED_MODELS = List.of("page-diff", "local-weighted", "local-matcher");
+    private static final int CURSOR_BATCH_SIZE = 50;
+    private static final int HOLD_OUT_EVERY = 5;
+    private static final int ITERATIONS = 300;
+    private static final double LEARNING_RATE = 0.5;
+
+    private static final WeightedLocalHealer.Feature[] FEATURES = WeightedLocalHealer.Feature.values();
+
+    private final HealingConfiguration healingConfig;
+    private final MongoTemplate mongoTemplate;
+    private final AttributeWeightsRepository weightsRepo;
+    private final AttributeWeights attributeWeights;
+    private final PageSourceStore pageSources;
+    private final SimilarityEngine similarity = new LevenshteinSimilarity();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Autowired
+    public AttributeWeightTrainer(HealingConfiguration healingConfig, MongoTemplate mongoTemplate,
+                                  AttributeWeightsRepository weightsRepo, AttributeWeights attributeWeights,
+                                  PageSourceStore pageSources) {
+        this.healingConfig = healingConfig;
+        this.mongoTemplate = mongoTemplate;
+        this.weightsRepo = weightsRepo;
+        this.attributeWeights = attributeWeights;
+        this.pageSources = pageSources;
+    }
+
+    @Scheduled(cron = "${healing.weight-training-cron:-}")
+    public void scheduledTraining() {
+        train();
+    }
+
+    /**
+     * Fit and publish the weights
+     *
+     * @return summary per app, or a message when a training is already running
+     */
+    public Map<String, Object> train() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        if (!running.compareAndSet(false, true)) {
+            summary.put("message", "Weight training already running");
+            return summary;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Map<String, List<Sample>> samples = collect();
+            List<AttributeWeightsModel> published = new ArrayList<>();
+            Map<String, Object> apps = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Sample>> entry : samples.entrySet()) {
+                Map<String, Object> result = new LinkedHashMap<>();
+                AttributeWeightsModel fitted = fit(entry.getKey(), entry.getValue(), result);
+                if (fitted != null) {
+                    published.add(fitted);
+                }
+                apps.put(entry.getKey(), result);
+            }
+            if (!published.isEmpty()) {
+                weightsRepo.saveAll(published);
+                attributeWeights.refresh();
+            }
+            summary.put("apps", apps);
+            summary.put("published", published.size());
+            summary.put("duration_ms", System.currentTimeMillis() - start);
+            LOGGER.info("Attribute weight training: " + summary);
+            return summary;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Stream the confirmed healings and turn each into a ranking sample, grouped by app
+    private Map<String, List<Sample>> collect() {
+        Map<String, List<Sample>> samples = new LinkedHashMap<>();
+        samples.put(AttributeWeights.ALL_APPS, new ArrayList<>());
+        Map<String, Double> prior = healingConfig.getLocalHealWeights();
+        Query query = new Query(Criteria.where("approach").is("healing")
+            .and("confidenceScore").gte(healingConfig.getWeightTrainingMinConfidence())
+            .and("modelName").nin(DERIVED_MODELS)
+            .orOperator(Criteria.where("pageSourceHash").exists(true), Criteria.where("pageSource").exists(true)));
+        query.fields().include("locator", "healedLocator", "pageSource", "pageSourceHash");
+        query.cursorBatchSize(CURSOR_BATCH_SIZE);
+        int read = 0;
+        int used = 0;
+        try (Stream<HealedElement> rows = mongoTemplate.stream(query, HealedElement.class)) {
+            for (HealedElement row : (Iterable<HealedElement>) rows::iterator) {
+                read++;
+                Sample sample = sample(row, prior);
+                if (sample == null) {
+                    continue;
+                }
+                used++;
+                addSample(samples, AttributeWeights.ALL_APPS, sample);
+                if (sample.app != null) {
+                    addSample(samples, sample.app, sample);
+                }
+            }
+        }
+        LOGGER.info("Weight training read " + read + " healings, " + used + " usable");
+        return samples;
+    }
+
+    private void addSample(Map<String, List<Sample>> samples, String app, Sample sample) {
+        List<Sample> list = samples.computeIfAbsent(app, k -> new ArrayList<>());
+        if (list.size() < healingConfig.getWeightTrainingMaxSamples()) {
+            list.add(sample);
+        }
+    }
+
+    /**
+     * Feature rows of the healed element (row 0) and of the elements the prior weights rank highest
+     */
+    Sample sample(HealedElement row, Map<String, Double> prior) {
+        if (row.getLocator() == null || row.getHealedLocator() == null) {
+            return null;
+        }
+        try {
+            // not through the page caches, training must not evict the pages being healed
+            String pageSource = row.getPageSource() != null ? row.getPageSource()
+                : row.getPageSourceHash() != null && pageSources != null ? pageSources.read(row.getPageSourceHash()) : null;
+            if (pageSource == null) {
+                return null;
+            }
+            ParsedPage page = ParsedPage.of(pageSource);
+            int target = PageDiff.locate(row.getHealedLocator(), page);
+            WeightedLocalHealer.Reference reference = WeightedLocalHealer.Reference.of(row.getLocator());
+            if (target < 0 || reference.isEmpty()) {
+                return null;
+            }
+            WeightedLocalHealer.ElementFeatures[] elements = WeightedLocalHealer.features(page);
+            double[][] rows = new double[elements.length][];
+            double[] scores = new double[elements.length];
+            double[] priorWeights = weightVector(prior);
+            for (int i = 0; i < elements.length; i++) {
+                rows[i] = featureRow(reference, elements[i]);
+                scores[i] = dot(rows[i], priorWeights);
+            }
+            int negatives = Math.min(healingConfig.getWeightTrainingNegatives(), elements.length - 1);
+            Integer[] order = new Integer[elements.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+            double[][] candidates = new double[negatives + 1][];
+            candidates[0] = rows[target];
+            int n = 1;
+            for (int i = 0; i < order.length && n <= negatives; i++) {
+                if (order[i] != target) {
+                    candidates[n++] = rows[order[i]];
+                }
+            }
+            return new Sample(AttributeWeights.appOf(page), candidates);
+        } catch (Exception e) {
+            LOGGER.debug("Skipping healing " + row.getId() + " for weight training: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Similarity per feature, 0 when the reference does not have it (the same for every candidate of a sample)
+    private double[] featureRow(WeightedLocalHealer.Reference reference, WeightedLocalHealer.ElementFeatures element) {
+        double[] row = new double[FEATURES.length];
+        for (int f = 0; f < FEATURES.length; f++) {
+            Double value = reference.similarity(FEATURES[f], element, similarity);
+            row[f] = value != null ? value : 0.0;
+        }
+        return row;
+    }
+
+    /**
+     * Conditional logit by projected gradient descent, validated on every fifth sample against the prior
+     *
+     * @return the weights to publish, or null when there are too few samples or the fit does not beat the prior
+     */
+    AttributeWeightsModel fit(String app, List<Sample> samples, Map<String, Object> result) {
+        result.put("samples", samples.size());
+        if (samples.size() < healingConfig.getWeightTrainingMinSamples()) {
+            result.put("published", false);
+            result.put("reason", "fewer than " + healingConfig.getWeightTrainingMinSamples() + " samples");
+            return null;
+        }
+        List<Sample> training = new ArrayList<>();
+        List<Sample> validation = new ArrayList<>();
+        for (int i = 0; i < samples.size(); i++) {
+            (i % HOLD_OUT_EVERY == HOLD_OUT_EVERY - 1 ? validation : training).add(samples.get(i));
+        }
+        double[] prior = weightVector(healingConfig.getLocalHealWeights());
+        double priorSum = Arrays.stream(prior).sum();
+        double lambda = healingConfig.getWeightTrainingRegularization();
+        double[] w = prior.clone();
+        double[] gradient = new double[w.length];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            Arrays.fill(gradient, 0.0);
+            for (Sample sample : training) {
+                // d(-log softmax_0)/dw = E_softmax[x] - x_0
+                double[] expected = expectedFeatures(sample.candidates, w);
+                for (int f = 0; f < w.length; f++) {
+                    gradient[f] += expected[f] - sample.candidates[0][f];
+                }
+            }
+            for (int f = 0; f < w.length; f++) {
+                double step = gradient[f] / training.size() + 2 * lambda * (w[f] - prior[f]);
+                w[f] = Math.max(0.0, w[f] - LEARNING_RATE * step);
+            }
+        }
+        // only the ratios matter to the weighted mean, keep the configured scale
+        double sum = Arrays.stream(w).sum();
+        if (sum <= 0) {
+            result.put("published", false);
+            result.put("reason", "degenerate fit");
+            return null;
+        }
+        for (int f = 0; f < w.length; f++) {
+            w[f] = Math.round(w[f] * priorSum / sum * 1000) / 1000.0;
+        }
+        double baseline = topOneAccuracy(validation, prior);
+        double accuracy = topOneAccuracy(validation, w);
+        Map<String, Double> weights = new LinkedHashMap<>();
+        for (int f = 0; f < FEATURES.length; f++) {
+            weights.put(FEATURES[f].getKey(), w[f]);
+        }
+        result.put("weights", weights);
+        result.put("validation_accuracy", accuracy);
+        result.put("baseline_accuracy", baseline);
+        if (accuracy < baseline) {
+            result.put("published", false);
+            result.put("reason", "does not beat the configured weights");
+            return null;
+        }
+        result.put("published", true);
+        AttributeWeightsModel model = new AttributeWeightsModel();
+        model.setApp(app);
+        model.setWeights(weights);
+        model.setSamples(samples.size());
+        model.setValidationAccuracy(accuracy);
+        model.setBaselineAccuracy(baseline);
+        model.setTrainedAt(System.currentTimeMillis());
+        return model;
+    }
+
+    private static double[] expectedFeatures(double[][] candidates, double[] w) {
+        double[] logits = new double[candidates.length];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < candidates.length; c++) {
+            logits[c] = dot(candidates[c], w);
+            max = Math.max(max, logits[c]);
+        }
+        double total = 0;
+        for (int c = 0; c < candidates.length; c++) {
+            logits[c] = Math.exp(logits[c] - max);
+            total += logits[c];
+        }
+        double[] expected = new double[w.length];
+        for (int c = 0; c < candidates.length; c++) {
+            double p = logits[c] / total;
+            for (int f = 0; f < w.length; f++) {
+                expected[f] += p * candidates[c][f];
+            }
+        }
+        return expected;
+    }
+
+    // Share of samples where the healed element strictly outranks every negative
+    private static double topOneAccuracy(List<Sample> samples, double[] w) {
+        if (samples.isEmpty()) {
+            return 0.0;
+        }
+        int correct = 0;
+        for (Sample sample : samples) {
+            double positive = dot(sample.candidates[0], w);
+            boolean first = true;
+            for (int c = 1; c < sample.candidates.length && first; c++) {
+                first = dot(sample.candidates[c], w) < positive;
+            }
+            if (first) {
+                correct++;
+            }
+        }
+        return Math.round(1000.0 * correct / samples.size()) / 1000.0;
+    }
+
+    private static double[] weightVector(Map<String, Double> weights) {
+        double[] w = new double[FEATURES.length];
+        for (int f = 0; f < FEATURES.length; f++) {
+            Double weight = weights != null ? weights.get(FEATURES[f].getKey()) : null;
+            w[f] = weight != null ? weight : 0.0;
+        }
+        return w;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * One healing: its app and the feature rows of its candidates, the healed element first
+     */
+    static final class Sample {
+        final String app;
+        final double[][] candidates;
+
+        Sample(String app, double[][] candidates) {
+            this.app = app;
+            this.candidates = candidates;
+        }
+    }
+}
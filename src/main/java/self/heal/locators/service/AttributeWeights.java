@@ -0,0 +1,149 @@
+package self.heal.locators.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import self.heal.locators.config.HealingConfiguration;
+import self.heal.locators.model.AttributeWeightsModel;
+import self.heal.locators.repository.AttributeWeightsRepository;
+
+/**
+ * Attribute weights in effect, per app. The table is fitted offline by {@link AttributeWeightTrainer}, stored in
+ * attribute_weights and reloaded every {@code healing.weight-refresh-ms}, so a new fit reaches every instance
+ * without a restart. Apps without a fit of their own use the fit over all apps, and without any fit the
+ * configured {@code healing.local-heal-weights}.
+ * <p>
+ * The RAG chunk scorer uses the same table as multipliers of its configured weights: a learned weight twice the
+ * configured local healer weight doubles the matching RAG weight.
+ */
+@Service
+public class AttributeWeights {
+
+    private static final Logger LOGGER = Logger.getLogger(AttributeWeights.class);
+
+    /** Key of the weights fitted over every app */
+    public static final String ALL_APPS = "*";
+
+    // RAG multipliers stay within this factor of the configured weights
+    private static final double MAX_RAG_FACTOR = 4.0;
+
+    private final HealingConfiguration healingConfig;
+    private final AttributeWeightsRepository weightsRepo;
+
+    private volatile Map<String, AttributeWeightsModel> table = Collections.emptyMap();
+
+    @Autowired
+    public AttributeWeights(HealingConfiguration healingConfig, AttributeWeightsRepository weightsRepo) {
+        this.healingConfig = healingConfig;
+        this.weightsRepo = weightsRepo;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${healing.weight-refresh-ms:60000}", initialDelayString = "${healing.weight-refresh-ms:60000}")
+    public void refresh() {
+        if (!healingConfig.isLearnedWeightsEnabled()) {
+            table = Collections.emptyMap();
+            return;
+        }
+        try {
+            publish(weightsRepo.findAll());
+        } catch (Exception e) {
+            LOGGER.warn("Could not reload the attribute weights, keeping the current ones: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replace the table in effect
+     */
+    public void publish(List<AttributeWeightsModel> rows) {
+        Map<String, AttributeWeightsModel> loaded = new HashMap<>();
+        for (AttributeWeightsModel row : rows) {
+            if (row.getApp() != null && row.getWeights() != null && !row.getWeights().isEmpty()) {
+                loaded.put(row.getApp(), row);
+            }
+        }
+        if (!loaded.keySet().equals(table.keySet())) {
+            LOGGER.info("Attribute weights loaded for " + loaded.keySet());
+        }
+        table = loaded;
+    }
+
+    /**
+     * Local healer weights for the app of a page
+     */
+    public Map<String, Double> localHealWeights(ParsedPage page) {
+        AttributeWeightsModel learned = lookup(page);
+        return learned != null ? learned.getWeights() : healingConfig.getLocalHealWeights();
+    }
+
+    /**
+     * Factor applied to a configured RAG weight for the app of a page, from the learned weight of the local
+     * healer feature it corresponds to
+     *
+     * @param feature : local healer feature key (tag, resource-id, text, ...)
+     */
+    public double ragMultiplier(ParsedPage page, String feature) {
+        AttributeWeightsModel learned = lookup(page);
+        if (learned == null) {
+            return 1.0;
+        }
+        Double weight = learned.getWeights().get(feature);
+        Double configured = healingConfig.getLocalHealWeights().get(feature);
+        if (weight == null || configured == null || configured <= 0) {
+            return 1.0;
+        }
+        return Math.max(1.0 / MAX_RAG_FACTOR, Math.min(MAX_RAG_FACTOR, weight / configured));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", healingConfig.isLearnedWeightsEnabled());
+        Map<String, Object> apps = new LinkedHashMap<>();
+        table.forEach((app, row) -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("weights", row.getWeights());
+            entry.put("samples", row.getSamples());
+            entry.put("validation_accuracy", row.getValidationAccuracy());
+            entry.put("baseline_accuracy", row.getBaselineAccuracy());
+            entry.put("trained_at", row.getTrainedAt());
+            apps.put(app, entry);
+        });
+        stats.put("apps", apps);
+        return stats;
+    }
+
+    private AttributeWeightsModel lookup(ParsedPage page) {
+        Map<String, AttributeWeightsModel> current = table;
+        if (current.isEmpty() || page == null) {
+            return null;
+        }
+        String app = appOf(page);
+        AttributeWeightsModel learned = app != null ? current.get(app) : null;
+        return learned != null ? learned : current.get(ALL_APPS);
+    }
+
+    /**
+     * App of a page: the first package attribute in document order
+     */
+    static String appOf(ParsedPage page) {
+        return page.derive("app-package", () -> {
+            for (ParsedPage.PageElement element : page.getElements()) {
+                String packageName = element.attr("package");
+                if (packageName != null && !packageName.isEmpty()) {
+                    return packageName;
+                }
+            }
+            return null;
+        });
+    }
+}
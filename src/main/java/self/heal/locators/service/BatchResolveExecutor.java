@@ -0,0 +1,50 @@
+package self.heal.locators.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import self.heal.locators.config.HealingConfiguration;
+
+/**
+ * Threads resolving the locators of a batch before the LLM (presence check, result cache, page diff, local
+ * healing). That work blocks on Mongo (L2 cache lookups, previous healings, page source blobs), so it has its own
+ * bounded pool instead of the common ForkJoin pool; when the queue is full the request thread runs the work itself.
+ */
+@Service
+public class BatchResolveExecutor implements Executor {
+
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public BatchResolveExecutor(HealingConfiguration healingConfig) {
+        int threads = Math.max(1, healingConfig.getBatchResolveThreads());
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, healingConfig.getBatchResolveQueueCapacity())),
+            runnable -> {
+                Thread thread = new Thread(runnable, "batch-resolve-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,212 @@
+package self.heal.locators.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import self.heal.locators.config.RagConfiguration;
+
+/**
+ * Offline byte-level BPE token counter used to size prompts in tokens rather than characters.
+ * Text is split with the cl100k pre-tokenization rules, then every piece is encoded by merging byte pairs
+ * in rank order, as tiktoken does. The ranks are read from a {@code .tiktoken} file (one
+ * {@code base64-token rank} pair per line) given by {@code rag.tokenizer-ranks-path}, from the classpath or
+ * the file system; nothing is fetched over the network, and no ranks file is shipped with the application.
+ * <p>
+ * Without a ranks file, which is the default, the pieces are still produced by the same pre-tokenizer but each
+ * piece is sized by a hand-tuned rule: a word of up to six letters is one token, longer words one more token per
+ * four letters, punctuation one token per two characters, non-ASCII characters count as three. This is a rough
+ * guess rather than a measured BPE ratio, so {@link #isExact()} reports it and callers keep
+ * {@code rag.token-budget-headroom} of the budget free.
+ */
+@Service
+public class BpeTokenizer {
+
+    private static final Logger LOGGER = Logger.getLogger(BpeTokenizer.class);
+
+    // cl100k_base pre-tokenizer: contractions, words with one leading non-letter, up to 3 digits, punctuation runs, whitespace
+    private static final Pattern PIECES = Pattern.compile(
+        "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+");
+
+    // Sizing of a piece without ranks: short words are one token, longer runs split every few bytes
+    private static final int LETTERS_IN_FIRST_TOKEN = 6;
+    private static final double LETTER_BYTES_PER_TOKEN = 4.0;
+    private static final double SYMBOL_BYTES_PER_TOKEN = 2.0;
+
+    // byte sequence (one char per byte) -> rank
+    private final Map<String, Integer> ranks;
+    private final String name;
+
+    @Autowired
+    public BpeTokenizer(RagConfiguration ragConfig) {
+        this(loadRanks(ragConfig.getTokenizerRanksPath()), ragConfig.getTokenizerRanksPath());
+    }
+
+    BpeTokenizer(Map<String, Integer> ranks, String source) {
+        this.ranks = ranks;
+        this.name = ranks != null ? "bpe:" + baseName(source) : "bpe-estimate";
+        LOGGER.info("Token counter initialized: " + name + (ranks != null ? " (" + ranks.size() + " ranks)" : ""));
+    }
+
+    /**
+     * Number of tokens of the text
+     */
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int tokens = 0;
+        Matcher m = PIECES.matcher(text);
+        while (m.find()) {
+            String piece = m.group();
+            tokens += ranks != null ? encodedLength(piece) : estimate(piece);
+        }
+        return tokens;
+    }
+
+    /**
+     * Longest prefix of the text, cut at a line break, that fits in the token budget
+     */
+    public String truncate(String text, int maxTokens) {
+        if (count(text) <= maxTokens) {
+            return text;
+        }
+        StringBuilder out = new StringBuilder();
+        int used = 0;
+        for (String line : text.split("\n", -1)) {
+            String next = out.length() == 0 ? line : "\n" + line;
+            int cost = count(next);
+            if (used + cost > maxTokens) {
+                break;
+            }
+            out.append(next);
+            used += cost;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Whether counts come from a BPE ranks file rather than the estimate
+     */
+    public boolean isExact() {
+        return ranks != null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private int encodedLength(String piece) {
+        String bytes = new String(piece.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        if (bytes.length() == 1 || ranks.containsKey(bytes)) {
+            return 1;
+        }
+        // boundaries between parts; merge the adjacent pair with the lowest rank until none is in the vocabulary
+        List<Integer> bounds = new ArrayList<>(bytes.length() + 1);
+        for (int i = 0; i <= bytes.length(); i++) {
+            bounds.add(i);
+        }
+        while (bounds.size() > 2) {
+            int bestRank = Integer.MAX_VALUE;
+            int bestIndex = -1;
+            for (int i = 0; i + 2 < bounds.size(); i++) {
+                Integer rank = ranks.get(bytes.substring(bounds.get(i), bounds.get(i + 2)));
+                if (rank != null && rank < bestRank) {
+                    bestRank = rank;
+                    bestIndex = i;
+                }
+            }
+            if (bestIndex < 0) {
+                break;
+            }
+            bounds.remove(bestIndex + 1);
+        }
+        return bounds.size() - 1;
+    }
+
+    private static int estimate(String piece) {
+        int letters = 0;
+        int symbols = 0;
+        boolean whitespaceOnly = true;
+        for (int i = 0; i < piece.length(); i++) {
+            char c = piece.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            whitespaceOnly = false;
+            // non-ASCII letters take two or more bytes
+            int weight = c < 128 ? 1 : 3;
+            if (Character.isLetter(c)) {
+                letters += weight;
+            } else if (!Character.isDigit(c)) {
+                symbols += weight;
+            }
+        }
+        if (whitespaceOnly) {
+            return 1;
+        }
+        // digits are split in runs of at most three by the pre-tokenizer, one token each
+        int tokens = (int) Math.ceil(symbols / SYMBOL_BYTES_PER_TOKEN);
+        if (letters > 0) {
+            tokens += 1 + (int) Math.ceil(Math.max(0, letters - LETTERS_IN_FIRST_TOKEN) / LETTER_BYTES_PER_TOKEN);
+        }
+        return Math.max(1, tokens);
+    }
+
+    private static Map<String, Integer> loadRanks(String path) {
+        if (path == null || path.isBlank()) {
+            return null;
+        }
+        try (InputStream in = open(path)) {
+            if (in == null) {
+                LOGGER.warn("Tokenizer ranks not found at " + path + ", token counts are estimated");
+                return null;
+            }
+            Map<String, Integer> ranks = new HashMap<>(131072);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                byte[] token = Base64.getDecoder().decode(line.substring(0, space));
+                ranks.put(new String(token, StandardCharsets.ISO_8859_1), Integer.parseInt(line.substring(space + 1).trim()));
+            }
+            return ranks.isEmpty() ? null : ranks;
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("Could not load tokenizer ranks from " + path + ", token counts are estimated: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static InputStream open(String path) throws IOException {
+        if (path.startsWith("classpath:")) {
+            return BpeTokenizer.class.getClassLoader().getResourceAsStream(path.substring("classpath:".length()));
+        }
+        Path file = Paths.get(path);
+        return Files.isReadable(file) ? Files.newInputStream(file) : null;
+    }
+
+    private static String baseName(String path) {
+        String file = path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf(':')) + 1);
+        int dot = file.indexOf('.');
+        return dot > 0 ? file.substring(0, dot) : file;
+    }
+}
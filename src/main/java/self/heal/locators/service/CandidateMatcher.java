@@ -0,0 +1,217 @@
+package self.heal.locators.service;
+
+import java.util.List;
+import java.util.Locale;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Single-pass replacement for probing the {@link LocatorMatcher#ensureXPath(String, ParsedPage)} candidate
+ * XPaths one by one. Every candidate predicate is tested per element while walking the page's element table
+ * once, and the highest-priority hit wins, with the same precedence as the sequential probing.
+ * <p>
+ * The predicates mirror the XPath 1.0 semantics of the templates they stand for (attribute equality,
+ * {@code contains}, {@code normalize-space}, ASCII-only {@code translate} lowercasing).
+ */
+public final class CandidateMatcher {
+
+    // Candidate templates in precedence order, the locator is bound as $value / $valueLower
+    static final String RESOURCE_ID = "//*[@resource-id=$value]";
+    static final String RESOURCE_ID_CONTAINS = "//*[contains(@resource-id,$value)]";
+    static final String TEXT = "//*[@text=$value]";
+    static final String TEXT_CONTAINS_IGNORE_CASE = "//*[contains(translate(normalize-space(@text),'ABCDEFGHIJKLMNOPQRSTUVWXYZ','abcdefghijklmnopqrstuvwxyz'), $valueLower)]";
+    static final String CONTENT_DESC = "//*[@content-desc=$value]";
+    static final String CONTENT_DESC_CONTAINS = "//*[contains(@content-desc,$value)]";
+    static final String STRING_VALUE_CONTAINS_IGNORE_CASE = "//*[contains(translate(normalize-space(.),'ABCDEFGHIJKLMNOPQRSTUVWXYZ','abcdefghijklmnopqrstuvwxyz'), $valueLower)]";
+    static final String ID = "//*[@id=$value]";
+    static final String NAME = "//*[@name=$value]";
+    static final String OWN_TEXT = "//*[normalize-space(text())=$value]";
+    static final String CLASS_TOKEN = "//*[contains(concat(' ', normalize-space(@class), ' '), concat(' ', $value, ' '))]";
+
+    private static final String[] MOBILE_ORDER = {
+        RESOURCE_ID, RESOURCE_ID_CONTAINS, TEXT, TEXT_CONTAINS_IGNORE_CASE, CONTENT_DESC, CONTENT_DESC_CONTAINS,
+        STRING_VALUE_CONTAINS_IGNORE_CASE
+    };
+    private static final String[] WEB_ORDER = {
+        null /* tag */, ID, NAME, OWN_TEXT, STRING_VALUE_CONTAINS_IGNORE_CASE, CLASS_TOKEN
+    };
+
+    private CandidateMatcher() {
+    }
+
+    /**
+     * Find the highest-priority candidate XPath that matches the locator on the page
+     *
+     * @param locator : trimmed, non empty locator
+     * @param page    : parsed page
+     * @return matching XPath with the locator inlined, or null if no candidate matches
+     */
+    public static String match(String locator, ParsedPage page) {
+        List<ParsedPage.PageElement> elements = page.getElements();
+        if (elements.isEmpty()) {
+            return null;
+        }
+        // same lowercasing as the $valueLower binding
+        String lower = locator.toLowerCase(Locale.ROOT);
+        boolean simpleTag = locator.matches("^[A-Za-z0-9_-]+$");
+        String classToken = " " + locator + " ";
+
+        boolean looksLikeMobile = false;
+        // best (lowest) rank seen so far per ordering
+        int bestMobile = Integer.MAX_VALUE;
+        int bestWeb = Integer.MAX_VALUE;
+
+        for (ParsedPage.PageElement element : elements) {
+            String resourceId = element.attr("resource-id");
+            if (resourceId != null) {
+                looksLikeMobile = true;
+            }
+            if (bestMobile > 0) {
+                bestMobile = Math.min(bestMobile, mobileRank(element, resourceId, locator, lower));
+            }
+            if (bestWeb > 0) {
+                bestWeb = Math.min(bestWeb, webRank(element, locator, simpleTag, classToken));
+            }
+            if (looksLikeMobile && bestMobile == 0) {
+                break;
+            }
+        }
+
+        // normalize-space(.) of any element is a substring of the document element's, so one check covers it
+        boolean stringValueMatch = false;
+        int stringValueMobileRank = indexOf(MOBILE_ORDER, STRING_VALUE_CONTAINS_IGNORE_CASE);
+        int stringValueWebRank = indexOf(WEB_ORDER, STRING_VALUE_CONTAINS_IGNORE_CASE);
+        if ((looksLikeMobile && bestMobile > stringValueMobileRank) || bestWeb > stringValueWebRank) {
+            stringValueMatch = asciiLower(normalizeSpace(elements.get(0).node.getTextContent())).contains(lower);
+        }
+
+        if (looksLikeMobile) {
+            if (stringValueMatch) {
+                bestMobile = Math.min(bestMobile, stringValueMobileRank);
+            }
+            if (bestMobile != Integer.MAX_VALUE) {
+                return XPathSupport.render(MOBILE_ORDER[bestMobile], locator);
+            }
+        }
+        if (stringValueMatch) {
+            bestWeb = Math.min(bestWeb, stringValueWebRank);
+        }
+        if (bestWeb != Integer.MAX_VALUE) {
+            return bestWeb == 0 ? "//" + locator : XPathSupport.render(WEB_ORDER[bestWeb], locator);
+        }
+        return null;
+    }
+
+    private static int mobileRank(ParsedPage.PageElement element, String resourceId, String locator, String lower) {
+        if (resourceId != null) {
+            if (resourceId.equals(locator)) {
+                return 0;
+            }
+        }
+        int rank = Integer.MAX_VALUE;
+        if (resourceId != null && resourceId.contains(locator)) {
+            rank = 1;
+        }
+        String text = element.attr("text");
+        if (rank > 2 && text != null) {
+            if (text.equals(locator)) {
+                rank = 2;
+            } else if (rank > 3 && asciiLower(normalizeSpace(text)).contains(lower)) {
+                rank = 3;
+            }
+        }
+        String contentDesc = element.attr("content-desc");
+        if (rank > 4 && contentDesc != null) {
+            if (contentDesc.equals(locator)) {
+                rank = 4;
+            } else if (contentDesc.contains(locator)) {
+                rank = 5;
+            }
+        }
+        return rank;
+    }
+
+    private static int webRank(ParsedPage.PageElement element, String locator, boolean simpleTag, String classToken) {
+        if (simpleTag && element.tagName.equals(locator)) {
+            return 0;
+        }
+        if (locator.equals(element.attr("id"))) {
+            return 1;
+        }
+        if (locator.equals(element.attr("name"))) {
+            return 2;
+        }
+        String firstText = firstTextChild(element.node);
+        if (firstText != null && normalizeSpace(firstText).equals(locator)) {
+            return 3;
+        }
+        // rank 4 (string value) is resolved once on the document element
+        String cssClass = element.attr("class");
+        if (cssClass != null && (" " + normalizeSpace(cssClass) + " ").contains(classToken)) {
+            return 5;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    // text() in XPath selects the first text (or CDATA) child
+    static String firstTextChild(Element node) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            short type = child.getNodeType();
+            if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                return child.getNodeValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * XPath normalize-space: trim XML whitespace and collapse inner runs to one space
+     */
+    static String normalizeSpace(String s) {
+        if (s == null || s.isEmpty()) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(s.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                pendingSpace = out.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    out.append(' ');
+                    pendingSpace = false;
+                }
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Lowercase A-Z only, like translate(., 'ABC..Z', 'abc..z')
+     */
+    static String asciiLower(String s) {
+        char[] chars = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                if (chars == null) {
+                    chars = s.toCharArray();
+                }
+                chars[i] = (char) (c + ('a' - 'A'));
+            }
+        }
+        return chars == null ? s : new String(chars);
+    }
+
+    private static int indexOf(String[] order, String template) {
+        for (int i = 0; i < order.length; i++) {
+            if (template.equals(order[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
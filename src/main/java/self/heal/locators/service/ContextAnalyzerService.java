@@ -23,6 +23,55 @@ public class ContextAnalyzerService {
     private static final Pattern CONTAINER_ELEMENTS = Pattern.compile(
         "<(div|section|article|nav|header|footer|main|aside)[^>]*>", Pattern.CASE_INSENSITIVE);
     
+    private static final Set<String> FORM_TAGS = Set.of("input", "button", "select", "textarea", "form");
+    private static final Set<String> INTERACTIVE_TAGS = Set.of("a", "button", "input", "select", "textarea");
+    private static final Set<String> CONTAINER_TAGS = Set.of("div", "section", "article", "nav", "header", "footer", "main", "aside");
+    
+    /**
+     * Analyze an already parsed page in a single walk over its element table.
+     * Falls back to the regex based analysis when the page could not be parsed.
+     */
+    public PageAnalysis analyzePage(ParsedPage page) {
+        if (page == null || page.isEmpty()) {
+            return new PageAnalysis();
+        }
+        return page.derive("page-analysis", () -> {
+            List<ParsedPage.PageElement> elements = page.getElements();
+            if (elements.isEmpty()) {
+                return analyzePage(page.getPageSource());
+            }
+            
+            PageAnalysis analysis = new PageAnalysis();
+            for (ParsedPage.PageElement element : elements) {
+                String tag = element.tagNameLower();
+                if (FORM_TAGS.contains(tag) && analysis.formElements.size() < 50) {
+                    analysis.formElements.add(renderStartTag(element));
+                }
+                if (INTERACTIVE_TAGS.contains(tag) && analysis.interactiveElements.size() < 50) {
+                    analysis.interactiveElements.add(renderStartTag(element));
+                }
+                if (CONTAINER_TAGS.contains(tag) && analysis.containerElements.size() < 50) {
+                    analysis.containerElements.add(renderStartTag(element));
+                }
+                String id = element.attr("id");
+                if (id != null && !id.isEmpty() && analysis.elementsWithIds.size() < 100) {
+                    analysis.elementsWithIds.put(id, element.tagName);
+                }
+                String classValue = element.attr("class");
+                if (classValue != null && !classValue.isEmpty() && analysis.elementsWithClasses.size() < 100) {
+                    analysis.elementsWithClasses.put(element.tagName, new HashSet<>(Arrays.asList(classValue.split("\\s+"))));
+                }
+                if (element.ownText.length() > 2 && analysis.textContent.size() < 50) {
+                    analysis.textContent.add(element.ownText);
+                }
+            }
+            analysis.automationType = page.getAutomationType();
+            
+            LOGGER.debug("Page analysis completed: " + analysis.getSummary());
+            return analysis;
+        });
+    }
+    
     /**
      * Analyze page structure and extract semantic context
      */
@@ -171,8 +220,13 @@ public class ContextAnalyzerService {
      * Detect the type of automation (Web/Mobile) based on page source
      */
     public static AutomationType detectAutomationType(String pageSource) {
-        String lower = pageSource.toLowerCase();
-        
+        return detectAutomationTypeInLowerCase(pageSource.toLowerCase());
+    }
+    
+    /**
+     * Same as {@link #detectAutomationType(String)} for a page source that is already lowercased
+     */
+    static AutomationType detectAutomationTypeInLowerCase(String lower) {
         // Mobile automation indicators
         if (lower.contains("resource-id") || 
             lower.contains("android.widget") || 
@@ -269,6 +323,17 @@ public class ContextAnalyzerService {
         return Math.min(similarity, 1.0);
     }
     
+    /**
+     * Render the start tag of an element the way the regex extraction returns it
+     */
+    private String renderStartTag(ParsedPage.PageElement element) {
+        StringBuilder sb = new StringBuilder("<").append(element.tagName);
+        for (Map.Entry<String, String> attr : element.attributes.entrySet()) {
+            sb.append(' ').append(attr.getKey()).append("=\"").append(attr.getValue()).append('"');
+        }
+        return sb.append('>').toString();
+    }
+    
     // Helper classes and enums
     public enum AutomationType {
         WEB, MOBILE_ANDROID, MOBILE_IOS, UNKNOWN
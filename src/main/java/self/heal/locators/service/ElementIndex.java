@@ -0,0 +1,235 @@
+package self.heal.locators.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * In-memory inverted index over the elements of one page, queried with BM25.
+ * Every element is a document whose terms come from its resource-id, id, name, class, text, content-desc
+ * and tag, split into lowercase word tokens ({@code com.app:id/searchButton} gives com, app, id, search,
+ * button, searchbutton). Whole attribute values are indexed as well, prefixed with {@link #EXACT}, so an
+ * exact value outranks partial word overlaps.
+ * <p>
+ * Terms found on more than half of the elements are ignored at query time, like stop words.
+ * The index is built in one pass over the element table and memoized on the page.
+ */
+public final class ElementIndex {
+
+    /** Prefix of the terms that hold a whole attribute value */
+    public static final String EXACT = "=";
+
+    private static final String[] TOKEN_ATTRIBUTES = {"resource-id", "id", "name", "class", "text", "content-desc"};
+    private static final String[] EXACT_ATTRIBUTES = {"resource-id", "id", "name", "text", "content-desc"};
+    // Long values (paragraphs, serialized data) are only indexed by their words
+    private static final int MAX_EXACT_LENGTH = 200;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, Postings> postings;
+    private final int[] documentLength;
+    private final double averageLength;
+
+    private ElementIndex(Map<String, Postings> postings, int[] documentLength) {
+        this.postings = postings;
+        this.documentLength = documentLength;
+        long total = 0;
+        for (int length : documentLength) {
+            total += length;
+        }
+        this.averageLength = documentLength.length == 0 ? 0 : Math.max(1.0, (double) total / documentLength.length);
+    }
+
+    /**
+     * Index of the page's elements, built on first use
+     */
+    public static ElementIndex of(ParsedPage page) {
+        return page.derive("element-index", () -> build(page.getElements()));
+    }
+
+    private static ElementIndex build(List<ParsedPage.PageElement> elements) {
+        Map<String, Postings> postings = new HashMap<>();
+        int[] documentLength = new int[elements.size()];
+        List<String> tokens = new ArrayList<>();
+        for (ParsedPage.PageElement element : elements) {
+            tokens.clear();
+            tokenize(element.tagName, tokens);
+            for (String name : TOKEN_ATTRIBUTES) {
+                String value = element.attr(name);
+                if (value != null && !value.isEmpty()) {
+                    tokenize(value, tokens);
+                }
+            }
+            for (String name : EXACT_ATTRIBUTES) {
+                String value = element.attr(name);
+                if (value != null && !value.isEmpty() && value.length() <= MAX_EXACT_LENGTH) {
+                    tokens.add(exact(value));
+                }
+            }
+            if (!element.ownText.isEmpty()) {
+                tokenize(element.ownText, tokens);
+                if (element.ownText.length() <= MAX_EXACT_LENGTH) {
+                    tokens.add(exact(element.ownText));
+                }
+            }
+            for (String token : tokens) {
+                postings.computeIfAbsent(token, t -> new Postings()).add(element.index);
+            }
+            documentLength[element.index] = tokens.size();
+        }
+        return new ElementIndex(postings, documentLength);
+    }
+
+    /**
+     * Rank elements against the query terms with BM25
+     *
+     * @param terms : query terms, as produced by {@link #tokenize(String, Collection)} and {@link #exact(String)}
+     * @param limit : maximum number of hits
+     * @return hits with a positive score, best first
+     */
+    public List<Hit> search(Collection<String> terms, int limit) {
+        if (terms.isEmpty() || documentLength.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        int n = documentLength.length;
+        double[] scores = null;
+        for (String term : new LinkedHashSet<>(terms)) {
+            Postings list = postings.get(term);
+            // terms on most elements (package, "id", widget) say nothing about which one is meant
+            if (list == null || list.size > n / 2) {
+                continue;
+            }
+            if (scores == null) {
+                scores = new double[n];
+            }
+            double idf = Math.log(1.0 + (n - list.size + 0.5) / (list.size + 0.5));
+            for (int i = 0; i < list.size; i++) {
+                int document = list.documents[i];
+                int tf = list.frequencies[i];
+                double norm = K1 * (1 - B + B * documentLength[document] / averageLength);
+                scores[document] += idf * tf * (K1 + 1) / (tf + norm);
+            }
+        }
+        if (scores == null) {
+            return Collections.emptyList();
+        }
+
+        // bounded min-heap keeps the top hits, ties go to the earlier element
+        PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, (a, b) -> a.score != b.score
+            ? Double.compare(a.score, b.score) : Integer.compare(b.elementIndex, a.elementIndex));
+        for (int i = 0; i < n; i++) {
+            if (scores[i] <= 0) {
+                continue;
+            }
+            if (top.size() < limit) {
+                top.add(new Hit(i, scores[i]));
+            } else if (scores[i] > top.peek().score) {
+                top.poll();
+                top.add(new Hit(i, scores[i]));
+            }
+        }
+        Hit[] hits = top.toArray(new Hit[0]);
+        Arrays.sort(hits, top.comparator().reversed());
+        return Arrays.asList(hits);
+    }
+
+    /**
+     * Number of distinct terms, for logging
+     */
+    public int termCount() {
+        return postings.size();
+    }
+
+    /**
+     * Split a value into lowercase letter/digit runs, at camelCase boundaries as well (keeping the whole run).
+     * Single characters are dropped.
+     */
+    public static void tokenize(String value, Collection<String> out) {
+        int length = value.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean word = i < length && Character.isLetterOrDigit(value.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                addRun(value, start, i, out);
+                start = -1;
+            }
+        }
+    }
+
+    private static void addRun(String value, int start, int end, Collection<String> out) {
+        int partStart = start;
+        boolean split = false;
+        for (int i = start + 1; i < end; i++) {
+            char previous = value.charAt(i - 1);
+            char c = value.charAt(i);
+            boolean boundary = (Character.isLowerCase(previous) && Character.isUpperCase(c))
+                || (Character.isLetter(previous) != Character.isLetter(c));
+            if (boundary) {
+                addToken(value.substring(partStart, i), out);
+                partStart = i;
+                split = true;
+            }
+        }
+        if (split) {
+            addToken(value.substring(partStart, end), out);
+        }
+        addToken(value.substring(start, end), out);
+    }
+
+    private static void addToken(String token, Collection<String> out) {
+        if (token.length() > 1) {
+            out.add(token.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Term standing for a whole attribute value
+     */
+    public static String exact(String value) {
+        return EXACT + value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * An element index of {@link ParsedPage#getElements()} and its BM25 score
+     */
+    public static final class Hit {
+        public final int elementIndex;
+        public final double score;
+
+        Hit(int elementIndex, double score) {
+            this.elementIndex = elementIndex;
+            this.score = score;
+        }
+    }
+
+    // Postings of one term: element indexes in document order with term frequencies
+    private static final class Postings {
+        int[] documents = new int[4];
+        int[] frequencies = new int[4];
+        int size;
+
+        void add(int document) {
+            if (size > 0 && documents[size - 1] == document) {
+                frequencies[size - 1]++;
+                return;
+            }
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = document;
+            frequencies[size] = 1;
+            size++;
+        }
+    }
+}
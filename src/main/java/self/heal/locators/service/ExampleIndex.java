@@ -0,0 +1,197 @@
+package self.heal.locators.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import self.heal.locators.config.HealingConfiguration;
+import self.heal.locators.model.HealedElement;
+import self.heal.locators.repository.HealedElemetRepository;
+import self.heal.locators.utils.HnswIndex;
+
+/**
+ * Few-shot examples for the healing prompt, chosen by similarity to the failing locator.
+ * Every past healing at or above {@code healing.example-min-confidence} is embedded from its locator (signed
+ * feature hashing of character trigrams and word tokens, L2-normalized) into an in-process HNSW index. The index
+ * is built from healed_element once the application is ready and extended on every save, so picking examples
+ * is an in-memory top-k query instead of a sort over the collection.
+ * <p>
+ * One entry is kept per locator, holding its best healing. Until the startup load has finished, examples come
+ * from the highest-confidence healings in Mongo as before.
+ */
+@Service
+public class ExampleIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(ExampleIndex.class);
+
+    private static final int WORD_WEIGHT = 2;
+
+    private final HealingConfiguration healingConfig;
+    private final HealedElemetRepository healRepo;
+    private final HnswIndex index;
+    private final int dimensions;
+    // vector id -> best healing of that locator, locator -> vector id
+    private final Map<Integer, HealedElement> examples = new ConcurrentHashMap<>();
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong queryNanos = new AtomicLong();
+
+    @Autowired
+    public ExampleIndex(HealingConfiguration healingConfig, HealedElemetRepository healRepo) {
+        this.healingConfig = healingConfig;
+        this.healRepo = healRepo;
+        this.dimensions = healingConfig.getExampleIndexDimensions();
+        this.index = new HnswIndex(dimensions, healingConfig.getExampleIndexMaxConnections(), healingConfig.getExampleIndexEfConstruction());
+    }
+
+    /**
+     * Load the stored healings in the background, requests are served meanwhile
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!healingConfig.isExampleIndexEnabled()) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            long start = System.currentTimeMillis();
+            // one cursor over the collection: skip/limit pages without a sort could skip or repeat healings
+            try (Stream<HealedElement> rows = healRepo.streamExamplesByConfidenceScoreGreaterThanEqual(healingConfig.getExampleMinConfidence())) {
+                int loaded = 0;
+                for (HealedElement row : (Iterable<HealedElement>) rows::iterator) {
+                    add(row);
+                    loaded++;
+                }
+                ready = true;
+                LOGGER.info("Example index built from " + loaded + " healings (" + ids.size() + " locators) in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            } catch (Exception e) {
+                LOGGER.error("Could not build the example index, examples stay on Mongo: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Index a saved healing. A locator already indexed keeps whichever healing has the higher confidence.
+     */
+    public void add(HealedElement element) {
+        if (!healingConfig.isExampleIndexEnabled() || element.getLocator() == null || element.getHealedLocator() == null
+            || element.getConfidenceScore() == null || element.getConfidenceScore() < healingConfig.getExampleMinConfidence()) {
+            return;
+        }
+        HealedElement example = slim(element);
+        Integer id = ids.get(element.getLocator());
+        if (id == null) {
+            synchronized (ids) {
+                id = ids.get(element.getLocator());
+                if (id == null) {
+                    int added = index.add(embed(element.getLocator(), dimensions));
+                    examples.put(added, example);
+                    ids.put(element.getLocator(), added);
+                    return;
+                }
+            }
+        }
+        examples.merge(id, example, (old, fresh) -> fresh.getConfidenceScore() >= old.getConfidenceScore() ? fresh : old);
+    }
+
+    /**
+     * Past healings whose locators are most similar to the failing one
+     *
+     * @param locator : failing locator
+     * @return up to {@code healing.example-count} healings, most similar first
+     */
+    public List<HealedElement> similarExamples(String locator) {
+        int k = healingConfig.getExampleCount();
+        if (!healingConfig.isExampleIndexEnabled() || !ready || index.size() == 0) {
+            fallbacks.incrementAndGet();
+            return healRepo.findByConfidenceScoreGreaterThanEqualOrderByConfidenceScoreDesc(
+                healingConfig.getExampleMinConfidence(), PageRequest.of(0, k));
+        }
+        long start = System.nanoTime();
+        List<HnswIndex.Scored> hits = index.search(embed(locator, dimensions), k, healingConfig.getExampleIndexEfSearch());
+        List<HealedElement> result = new ArrayList<>(hits.size());
+        for (HnswIndex.Scored hit : hits) {
+            HealedElement example = examples.get(hit.id);
+            if (example != null) {
+                result.add(example);
+            }
+        }
+        queries.incrementAndGet();
+        queryNanos.addAndGet(System.nanoTime() - start);
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long count = queries.get();
+        stats.put("enabled", healingConfig.isExampleIndexEnabled());
+        stats.put("ready", ready);
+        stats.put("locators", index.size());
+        stats.put("queries", count);
+        stats.put("mongo_fallbacks", fallbacks.get());
+        stats.put("avg_query_us", count > 0 ? queryNanos.get() / count / 1000 : 0);
+        return stats;
+    }
+
+    /**
+     * Unit vector of a locator: character trigrams of the normalized locator and, weighted higher, its word
+     * tokens, each hashed to a dimension and a sign
+     */
+    static float[] embed(String locator, int dimensions) {
+        float[] vector = new float[dimensions];
+        String normalized = HealingResultCache.normalizeLocator(locator);
+        String padded = " " + normalized.toLowerCase(Locale.ROOT) + " ";
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            addFeature(vector, padded.substring(i, i + 3), 1);
+        }
+        List<String> words = new ArrayList<>();
+        ElementIndex.tokenize(normalized, words);
+        for (String word : words) {
+            addFeature(vector, "w:" + word, WORD_WEIGHT);
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private static void addFeature(float[] vector, String feature, int weight) {
+        int h = feature.hashCode() * 0x9E3779B1;
+        int slot = (h >>> 1) % vector.length;
+        vector[slot] += (h & 1) == 0 ? weight : -weight;
+    }
+
+    // What the prompt uses of a healing, without the page source
+    private static HealedElement slim(HealedElement element) {
+        HealedElement slim = new HealedElement();
+        slim.setId(element.getId());
+        slim.setLocator(element.getLocator());
+        slim.setHealedLocator(element.getHealedLocator());
+        slim.setApproach(element.getApproach());
+        slim.setConfidenceScore(element.getConfidenceScore());
+        return slim;
+    }
+}
@@ -0,0 +1,225 @@
+package self.heal.locators.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import self.heal.locators.config.HealingConfiguration;
+import self.heal.locators.model.HealedElement;
+import self.heal.locators.repository.HealedElemetRepository;
+import self.heal.locators.utils.BoundedCache;
+
+/**
+ * Tiered cache of healing results keyed by (normalized locator, page structure fingerprint).
+ * L1 is an in-process LRU with TTL, L2 is the healed_element collection. Every hit is revalidated
+ * against the current page before it is served, so a stale healing never short-circuits the LLM.
+ */
+@Service
+public class HealingResultCache {
+
+    private static final Logger LOGGER = Logger.getLogger(HealingResultCache.class);
+
+    private final HealingConfiguration healingConfig;
+    private final HealedElemetRepository healRepo;
+    private final BoundedCache<String, HealedElement> l1;
+
+    private final AtomicLong l1Hits = new AtomicLong();
+    private final AtomicLong l2Hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidationFailures = new AtomicLong();
+
+    @Autowired
+    public HealingResultCache(HealingConfiguration healingConfig, HealedElemetRepository healRepo) {
+        this.healingConfig = healingConfig;
+        this.healRepo = healRepo;
+        this.l1 = new BoundedCache<>(healingConfig.getResultCacheSize(), healingConfig.getResultCacheTtlMs());
+    }
+
+    /**
+     * Look up a healing for the locator on this page structure
+     *
+     * @param locator : failed locator as received
+     * @param page    : current page
+     * @return the cached healing, only if its healed locator still resolves on the current page
+     */
+    public Optional<CacheHit> lookup(String locator, ParsedPage page) {
+        if (!healingConfig.isResultCacheEnabled()) {
+            return Optional.empty();
+        }
+        String normalizedLocator = normalizeLocator(locator);
+        String fingerprint = page.getStructureFingerprint();
+        String key = key(normalizedLocator, fingerprint);
+
+        HealedElement cached = l1.get(key);
+        if (cached != null) {
+            if (revalidate(cached, page)) {
+                l1Hits.incrementAndGet();
+                return Optional.of(new CacheHit(cached, "l1"));
+            }
+            l1.invalidate(key);
+        }
+
+        try {
+            Optional<HealedElement> stored = healRepo
+                .findTopByNormalizedLocatorAndPageFingerprintAndConfidenceScoreGreaterThanEqualOrderByConfidenceScoreDesc(
+                    normalizedLocator, fingerprint, healingConfig.getResultCacheMinConfidence());
+            if (stored.isPresent() && revalidate(stored.get(), page)) {
+                HealedElement slim = slim(stored.get());
+                l1.put(key, slim);
+                l2Hits.incrementAndGet();
+                return Optional.of(new CacheHit(slim, "l2"));
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Healing result lookup failed: " + e.getMessage());
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    /**
+     * Stamp the cache key fields on a healing before it is saved
+     */
+    public void prepare(HealedElement element, ParsedPage page) {
+        element.setNormalizedLocator(normalizeLocator(element.getLocator()));
+        element.setPageFingerprint(page.getStructureFingerprint());
+    }
+
+    /**
+     * Remember a freshly saved healing in L1
+     */
+    public void remember(HealedElement element) {
+        if (!healingConfig.isResultCacheEnabled() || element.getNormalizedLocator() == null || element.getPageFingerprint() == null
+            || element.getConfidenceScore() == null || element.getConfidenceScore() < healingConfig.getResultCacheMinConfidence()) {
+            return;
+        }
+        l1.put(key(element.getNormalizedLocator(), element.getPageFingerprint()), slim(element));
+    }
+
+    /**
+     * Give the L1 entry of a healing the id it ended up stored under, when the write-behind store found its
+     * (locator, confidenceScore) already stored under another id
+     *
+     * @param element     : healing carrying the stored id
+     * @param handedOutId : id the healing was saved with
+     */
+    public void settleId(HealedElement element, String handedOutId) {
+        if (element.getNormalizedLocator() == null || element.getPageFingerprint() == null) {
+            return;
+        }
+        HealedElement cached = l1.get(key(element.getNormalizedLocator(), element.getPageFingerprint()));
+        if (cached != null && handedOutId.equals(cached.getId())) {
+            cached.setId(element.getId());
+        }
+    }
+
+    /**
+     * Cache key of a locator on a page, also used to coalesce concurrent identical healing requests
+     */
+    public String keyFor(String locator, ParsedPage page) {
+        return key(normalizeLocator(locator), page.getStructureFingerprint());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", healingConfig.isResultCacheEnabled());
+        stats.put("l1_size", l1.size());
+        stats.put("l1_hits", l1Hits.get());
+        stats.put("l2_hits", l2Hits.get());
+        stats.put("misses", misses.get());
+        stats.put("revalidation_failures", revalidationFailures.get());
+        stats.put("l1_evictions", l1.getEvictions());
+        return stats;
+    }
+
+    /**
+     * Normalize a locator so cosmetic differences (quote style, whitespace around operators) share a cache entry.
+     * Quoted literals are kept verbatim.
+     */
+    public static String normalizeLocator(String locator) {
+        if (locator == null) {
+            return "";
+        }
+        String s = locator.trim();
+        StringBuilder out = new StringBuilder(s.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                c = '\'';
+            }
+            if (quote != 0) {
+                out.append(c);
+                if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace && out.length() > 0 && !isOperator(out.charAt(out.length() - 1)) && !isOperator(c)) {
+                out.append(' ');
+            }
+            pendingSpace = false;
+            out.append(c);
+            if (c == '\'') {
+                quote = c;
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean isOperator(char c) {
+        return "=[]()/,|@!<>".indexOf(c) >= 0;
+    }
+
+    private boolean revalidate(HealedElement element, ParsedPage page) {
+        String healed = element.getHealedLocator();
+        boolean valid = healed != null && !healed.isEmpty() && LocatorMatcher.isLocatorPresent(healed, page);
+        if (!valid) {
+            revalidationFailures.incrementAndGet();
+        }
+        return valid;
+    }
+
+    private static String key(String normalizedLocator, String fingerprint) {
+        return fingerprint + "|" + normalizedLocator;
+    }
+
+    // L1 entries do not need the page source
+    private static HealedElement slim(HealedElement element) {
+        HealedElement copy = new HealedElement();
+        copy.setId(element.getId());
+        copy.setLocator(element.getLocator());
+        copy.setHealedLocator(element.getHealedLocator());
+        copy.setApproach(element.getApproach());
+        copy.setReasoning(element.getReasoning());
+        copy.setConfidenceScore(element.getConfidenceScore());
+        copy.setModelName(element.getModelName());
+        copy.setStatus(element.getStatus());
+        copy.setImageHexId(element.getImageHexId());
+        copy.setNormalizedLocator(element.getNormalizedLocator());
+        copy.setPageFingerprint(element.getPageFingerprint());
+        return copy;
+    }
+
+    /**
+     * A cached healing and the tier it came from
+     */
+    public static class CacheHit {
+        public final HealedElement element;
+        public final String tier;
+
+        CacheHit(HealedElement element, String tier) {
+            this.element = element;
+            this.tier = tier;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package self.heal.locators.service;
+
+/**
+ * Normalized Levenshtein similarity, {@code 1 - distance / max(length)}.
+ * <p>
+ * Patterns of up to 64 chars use Hyyrö's bit-parallel variant of Myers' algorithm (one machine word per
+ * column, O(n)); longer strings use a banded DP (Ukkonen) limited to the distance that can still beat the
+ * current best. Both stop as soon as that distance is out of reach, and a length-difference prefilter
+ * skips candidates that cannot win at all.
+ */
+public class LevenshteinSimilarity implements SimilarityEngine {
+
+    private static final int WORD = 64;
+
+    // Per-thread buffers, nothing is allocated per comparison
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    @Override
+    public double similarity(String a, String b) {
+        return similarityAbove(a, b, -1.0);
+    }
+
+    @Override
+    public double similarityAbove(String a, String b, double mustBeat) {
+        if (a.equals(b)) {
+            return 1.0;
+        }
+        int max = Math.max(a.length(), b.length());
+        if (max == 0) {
+            return 1.0;
+        }
+        int limit = maxDistanceToBeat(max, mustBeat);
+        if (limit < 0 || Math.abs(a.length() - b.length()) > limit) {
+            return 0.0;
+        }
+        int dist = distance(a, b, limit);
+        if (dist > limit) {
+            return 0.0;
+        }
+        return Math.max(0.0, 1.0 - (double) dist / max);
+    }
+
+    /**
+     * Levenshtein distance of a and b, or any value greater than limit once it is known to exceed it
+     */
+    public static int distance(String a, String b, int limit) {
+        // the shorter string is the pattern
+        String pattern = a.length() <= b.length() ? a : b;
+        String text = pattern == a ? b : a;
+        if (pattern.isEmpty()) {
+            return text.length();
+        }
+        // the distance never exceeds the longer length
+        limit = Math.min(limit, text.length());
+        if (pattern.length() <= WORD) {
+            return bitParallel(pattern, text, limit);
+        }
+        return banded(pattern, text, limit);
+    }
+
+    // Largest distance d such that 1 - d / max > mustBeat
+    private static int maxDistanceToBeat(int max, double mustBeat) {
+        if (mustBeat < 0) {
+            return max;
+        }
+        int k = (int) Math.ceil((1.0 - mustBeat) * max) - 1;
+        while (k >= 0 && !(1.0 - (double) k / max > mustBeat)) {
+            k--;
+        }
+        while (k + 1 <= max && 1.0 - (double) (k + 1) / max > mustBeat) {
+            k++;
+        }
+        return Math.min(k, max);
+    }
+
+    private static int bitParallel(String pattern, String text, int limit) {
+        int m = pattern.length();
+        int n = text.length();
+        Buffers buffers = BUFFERS.get();
+        buffers.load(pattern);
+        try {
+            long pv = m == WORD ? -1L : (1L << m) - 1;
+            long mv = 0L;
+            long last = 1L << (m - 1);
+            int score = m;
+            for (int j = 0; j < n; j++) {
+                long eq = buffers.peq(text.charAt(j));
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if ((ph & last) != 0) {
+                    score++;
+                } else if ((mh & last) != 0) {
+                    score--;
+                }
+                // each remaining text char can lower the distance by one at most
+                if (score - (n - j - 1) > limit) {
+                    return limit + 1;
+                }
+                ph = (ph << 1) | 1L;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+            }
+            return score;
+        } finally {
+            buffers.unload(pattern);
+        }
+    }
+
+    // DP restricted to the diagonal band |i - j| <= limit, row by row with early exit
+    private static int banded(String pattern, String text, int limit) {
+        int m = pattern.length();
+        int n = text.length();
+        if (n - m > limit) {
+            return limit + 1;
+        }
+        int big = limit + 1;
+        Buffers buffers = BUFFERS.get();
+        int[] prev = buffers.row(0, n + 1);
+        int[] cur = buffers.row(1, n + 1);
+        for (int j = 0; j <= n; j++) {
+            prev[j] = j <= limit ? j : big;
+        }
+        for (int i = 1; i <= m; i++) {
+            int from = Math.max(1, i - limit);
+            int to = Math.min(n, i + limit);
+            cur[0] = i <= limit ? i : big;
+            if (from > 1) {
+                cur[from - 1] = big;
+            }
+            int rowMin = cur[0];
+            char pc = pattern.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = pc == text.charAt(j - 1) ? 0 : 1;
+                int v = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                cur[j] = Math.min(v, big);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (to < n) {
+                cur[to + 1] = big;
+            }
+            if (rowMin > limit) {
+                return big;
+            }
+            int[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+        return prev[n];
+    }
+
+    private static final class Buffers {
+        // match masks for chars < 256, other chars are looked up in the pattern itself
+        final long[] ascii = new long[256];
+        String pattern;
+        int[][] rows = {new int[0], new int[0]};
+
+        void load(String p) {
+            pattern = p;
+            for (int i = 0; i < p.length(); i++) {
+                char c = p.charAt(i);
+                if (c < 256) {
+                    ascii[c] |= 1L << i;
+                }
+            }
+        }
+
+        void unload(String p) {
+            for (int i = 0; i < p.length(); i++) {
+                char c = p.charAt(i);
+                if (c < 256) {
+                    ascii[c] = 0L;
+                }
+            }
+            pattern = null;
+        }
+
+        long peq(char c) {
+            if (c < 256) {
+                return ascii[c];
+            }
+            long mask = 0L;
+            for (int i = 0; i < pattern.length(); i++) {
+                if (pattern.charAt(i) == c) {
+                    mask |= 1L << i;
+                }
+            }
+            return mask;
+        }
+
+        int[] row(int index, int size) {
+            if (rows[index].length < size) {
+                rows[index] = new int[Math.max(size, rows[index].length * 2)];
+            }
+            return rows[index];
+        }
+    }
+}
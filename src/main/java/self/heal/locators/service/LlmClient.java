@@ -0,0 +1,241 @@
+package self.heal.locators.service;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+import self.heal.locators.config.LlmConfiguration;
+import self.heal.locators.enums.LlmProvider;
+import self.heal.locators.utils.MdcRunnable;
+
+/**
+ * Non-blocking HTTP client for the LLM providers.
+ * Calls go through the JDK {@link HttpClient} (pooled keep-alive connections, async I/O) so no servlet
+ * thread is parked for the duration of an LLM round trip. Every provider has its own concurrency limit,
+ * queue timeout and request timeout; responses are handed to a small callback pool that carries the
+ * request MDC context.
+ * <p>
+ * The connection pool of the JDK client is shared by the whole JVM and read once, so it is tuned with JVM
+ * flags rather than application properties: {@code -Djdk.httpclient.keepalive.timeout=<seconds>} for how long
+ * an idle connection is kept (JDK default 1200) and {@code -Djdk.httpclient.connectionPoolSize=<n>} to bound the
+ * pooled connections (JDK default 0, unbounded).
+ */
+@Service
+public class LlmClient {
+
+    private static final Logger LOGGER = Logger.getLogger(LlmClient.class);
+
+    private final LlmConfiguration llmConfig;
+    private final HttpClient httpClient;
+    private final ExecutorService callbackExecutor;
+    private final Map<LlmProvider, AsyncLimiter> limiters = new EnumMap<>(LlmProvider.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    public LlmClient(LlmConfiguration llmConfig) {
+        this.llmConfig = llmConfig;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.callbackExecutor = new ThreadPoolExecutor(
+            llmConfig.getCallbackThreads(), llmConfig.getCallbackThreads(), 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "llm-callback-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofMillis(llmConfig.getConnectTimeoutMs()))
+            .build();
+
+        for (LlmProvider provider : LlmProvider.values()) {
+            limiters.put(provider, new AsyncLimiter(settings(provider).getMaxConcurrency()));
+        }
+        LOGGER.info("LlmClient initialized: asyncEnabled=" + llmConfig.isAsyncEnabled()
+            + ", groqMaxConcurrency=" + llmConfig.getGroq().getMaxConcurrency()
+            + ", geminiMaxConcurrency=" + llmConfig.getGemini().getMaxConcurrency());
+    }
+
+    /**
+     * POST a JSON body to an LLM provider.
+     * Cancelling the returned future aborts the queued or in-flight exchange and frees its concurrency slot.
+     *
+     * @param provider : provider, selects concurrency limit and timeouts
+     * @param url      : endpoint url
+     * @param headers  : request headers
+     * @param body     : request body, serialized as JSON
+     * @return future completed with the raw response body on a 2xx, exceptionally with {@link LlmCallException} otherwise
+     */
+    public CompletableFuture<String> post(LlmProvider provider, String url, Map<String, String> headers, Object body) {
+        LlmConfiguration.ProviderSettings settings = settings(provider);
+        Executor executor = MdcRunnable.withCurrentContext(callbackExecutor);
+
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(settings.getRequestTimeoutMs()))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)));
+            headers.forEach(builder::header);
+            request = builder.build();
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new LlmCallException(provider, -1, "Invalid " + provider.getValue() + " request: " + e.getMessage()));
+        }
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        AsyncLimiter limiter = limiters.get(provider);
+        limiter.acquire(settings.getQueueTimeoutMs()).whenComplete((permit, acquireError) -> {
+            if (acquireError != null) {
+                result.completeExceptionally(new LlmCallException(provider, -1,
+                    "Timed out waiting for a free " + provider.getValue() + " slot"));
+                return;
+            }
+            if (result.isDone()) {
+                // caller gave up while the call was queued
+                limiter.release();
+                return;
+            }
+            CompletableFuture<HttpResponse<String>> exchange = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+            result.whenComplete((r, e) -> {
+                if (result.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+            exchange.whenComplete((response, error) -> {
+                limiter.release();
+                executor.execute(() -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        result.completeExceptionally(new LlmCallException(provider, -1,
+                            provider.getValue() + " call failed: " + cause));
+                    } else if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                        result.completeExceptionally(new LlmCallException(provider, response.statusCode(),
+                            provider.getValue() + " API returned: " + response.statusCode()));
+                    } else {
+                        result.complete(response.body());
+                    }
+                });
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Executor for continuation work (response parsing, persistence) of LLM calls
+     */
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    public int getInFlight(LlmProvider provider) {
+        return limiters.get(provider).inUse();
+    }
+
+    private LlmConfiguration.ProviderSettings settings(LlmProvider provider) {
+        return provider == LlmProvider.GEMINI ? llmConfig.getGemini() : llmConfig.getGroq();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        callbackExecutor.shutdown();
+    }
+
+    /**
+     * Raised when an LLM call cannot be completed (queue timeout, I/O error, non 2xx status)
+     */
+    public static class LlmCallException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final LlmProvider provider;
+        private final int statusCode;
+
+        public LlmCallException(LlmProvider provider, int statusCode, String message) {
+            super(message);
+            this.provider = provider;
+            this.statusCode = statusCode;
+        }
+
+        public LlmProvider getProvider() {
+            return provider;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    /**
+     * Counting limiter that hands out permits as futures instead of blocking the caller
+     */
+    private static final class AsyncLimiter {
+        private final int maxPermits;
+        private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+        private int inUse;
+
+        AsyncLimiter(int maxPermits) {
+            this.maxPermits = Math.max(1, maxPermits);
+        }
+
+        CompletableFuture<Void> acquire(long timeoutMs) {
+            CompletableFuture<Void> waiter;
+            synchronized (this) {
+                if (inUse < maxPermits) {
+                    inUse++;
+                    return CompletableFuture.completedFuture(null);
+                }
+                waiter = new CompletableFuture<>();
+                waiters.add(waiter);
+            }
+            waiter.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((r, e) -> {
+                if (e != null) {
+                    synchronized (this) {
+                        waiters.remove(waiter);
+                    }
+                }
+            });
+            return waiter;
+        }
+
+        void release() {
+            while (true) {
+                CompletableFuture<Void> next;
+                synchronized (this) {
+                    next = waiters.poll();
+                    if (next == null) {
+                        inUse--;
+                        return;
+                    }
+                }
+                // hand the permit straight to the next waiter unless it already timed out
+                if (next.complete(null)) {
+                    return;
+                }
+            }
+        }
+
+        synchronized int inUse() {
+            return inUse;
+        }
+    }
+}
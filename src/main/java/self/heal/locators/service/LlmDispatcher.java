@@ -0,0 +1,242 @@
+package self.heal.locators.service;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import self.heal.locators.config.LlmConfiguration;
+import self.heal.locators.enums.DispatchPolicy;
+import self.heal.locators.enums.LlmProvider;
+import self.heal.locators.utils.MdcRunnable;
+import self.heal.locators.utils.RollingLatencyWindow;
+
+/**
+ * Spreads one healing request over the LLM providers according to {@link DispatchPolicy}.
+ * SEQUENTIAL keeps the historical primary-then-fallback behaviour, HEDGED fires the secondary provider once the
+ * primary is slower than its rolling latency percentile, RACE fires both at once. The first successful attempt
+ * wins and the other one is cancelled.
+ */
+@Service
+public class LlmDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(LlmDispatcher.class);
+
+    private final LlmConfiguration llmConfig;
+    private final LlmClient llmClient;
+    private final Map<LlmProvider, RollingLatencyWindow> latencies = new EnumMap<>(LlmProvider.class);
+
+    @Autowired
+    public LlmDispatcher(LlmConfiguration llmConfig, LlmClient llmClient) {
+        this.llmConfig = llmConfig;
+        this.llmClient = llmClient;
+        for (LlmProvider provider : LlmProvider.values()) {
+            latencies.put(provider, new RollingLatencyWindow(llmConfig.getLatencyWindowSize()));
+        }
+    }
+
+    /**
+     * Dispatch a call to two providers. An attempt only counts as successful when its future completes normally,
+     * so callers should fail the future on an unusable (e.g. non JSON) answer to let the other provider win.
+     *
+     * @param primary       : preferred provider
+     * @param primaryCall   : starts the call to the preferred provider
+     * @param secondary     : fallback / hedge provider
+     * @param secondaryCall : starts the call to the fallback provider
+     * @return future of the winning attempt, failed when every launched attempt failed
+     */
+    public <T> CompletableFuture<DispatchResult<T>> dispatch(LlmProvider primary, Supplier<CompletableFuture<T>> primaryCall,
+                                                             LlmProvider secondary, Supplier<CompletableFuture<T>> secondaryCall) {
+        DispatchPolicy policy = llmConfig.getDispatchPolicy() != null ? llmConfig.getDispatchPolicy() : DispatchPolicy.SEQUENTIAL;
+        switch (policy) {
+            case RACE:
+                return compete(policy, primary, primaryCall, secondary, secondaryCall, 0);
+            case HEDGED:
+                return compete(policy, primary, primaryCall, secondary, secondaryCall, hedgeDelay(primary));
+            case SEQUENTIAL:
+            default:
+                return sequential(primary, primaryCall, secondary, secondaryCall);
+        }
+    }
+
+    /**
+     * Current hedge delay for a provider: its rolling latency percentile clamped to the configured bounds
+     */
+    public long hedgeDelay(LlmProvider provider) {
+        RollingLatencyWindow window = latencies.get(provider);
+        if (window.size() < llmConfig.getHedgeMinSamples()) {
+            return llmConfig.getHedgeInitialDelayMs();
+        }
+        long percentile = window.percentile(llmConfig.getHedgePercentile());
+        return Math.max(llmConfig.getHedgeMinDelayMs(), Math.min(llmConfig.getHedgeMaxDelayMs(), percentile));
+    }
+
+    public long latencyPercentile(LlmProvider provider, double percentile) {
+        return latencies.get(provider).percentile(percentile);
+    }
+
+    private <T> CompletableFuture<DispatchResult<T>> sequential(LlmProvider primary, Supplier<CompletableFuture<T>> primaryCall,
+                                                                LlmProvider secondary, Supplier<CompletableFuture<T>> secondaryCall) {
+        Attempt<T> first = launch(primary, primaryCall);
+        return first.future
+            .thenApply(value -> new DispatchResult<>(primary, value, DispatchPolicy.SEQUENTIAL, false, first.latency(), 0))
+            .exceptionallyCompose(e -> {
+                LOGGER.warn(primary.getValue() + " failed: " + e.getMessage() + ". Falling back to " + secondary.getValue() + ".");
+                Attempt<T> second = launch(secondary, secondaryCall);
+                return second.future.thenApply(value ->
+                    new DispatchResult<>(secondary, value, DispatchPolicy.SEQUENTIAL, true, second.latency(), 0));
+            });
+    }
+
+    private <T> CompletableFuture<DispatchResult<T>> compete(DispatchPolicy policy,
+                                                             LlmProvider primary, Supplier<CompletableFuture<T>> primaryCall,
+                                                             LlmProvider secondary, Supplier<CompletableFuture<T>> secondaryCall,
+                                                             long hedgeDelayMs) {
+        CompletableFuture<DispatchResult<T>> result = new CompletableFuture<>();
+        List<CompletableFuture<T>> inFlight = new CopyOnWriteArrayList<>();
+        AtomicBoolean secondaryLaunched = new AtomicBoolean(false);
+        AtomicInteger failures = new AtomicInteger();
+
+        Runnable launchSecondary = () -> {
+            if (result.isDone() || !secondaryLaunched.compareAndSet(false, true)) {
+                return;
+            }
+            if (policy == DispatchPolicy.HEDGED) {
+                LOGGER.info(primary.getValue() + " has not answered within " + hedgeDelayMs + " ms, hedging with " + secondary.getValue());
+            }
+            Attempt<T> attempt = launch(secondary, secondaryCall);
+            inFlight.add(attempt.future);
+            attempt.future.whenComplete((value, e) -> {
+                if (e == null) {
+                    result.complete(new DispatchResult<>(secondary, value, policy, true, attempt.latency(), hedgeDelayMs));
+                } else if (failures.incrementAndGet() >= 2) {
+                    result.completeExceptionally(e);
+                }
+            });
+        };
+
+        Attempt<T> first = launch(primary, primaryCall);
+        inFlight.add(first.future);
+        first.future.whenComplete((value, e) -> {
+            if (e == null) {
+                result.complete(new DispatchResult<>(primary, value, policy, secondaryLaunched.get(), first.latency(), hedgeDelayMs));
+                return;
+            }
+            if (result.isDone()) {
+                return;
+            }
+            LOGGER.warn(primary.getValue() + " failed: " + e.getMessage());
+            int failed = failures.incrementAndGet();
+            if (!secondaryLaunched.get()) {
+                // primary failed before the hedge fired, fall back immediately
+                launchSecondary.run();
+            } else if (failed >= 2) {
+                result.completeExceptionally(e);
+            }
+        });
+
+        if (hedgeDelayMs <= 0) {
+            launchSecondary.run();
+        } else {
+            Executor timer = CompletableFuture.delayedExecutor(hedgeDelayMs, TimeUnit.MILLISECONDS,
+                MdcRunnable.withCurrentContext(llmClient.getCallbackExecutor()));
+            timer.execute(launchSecondary);
+        }
+
+        // cancel the loser as soon as there is a winner
+        result.whenComplete((r, e) -> inFlight.forEach(f -> {
+            if (!f.isDone()) {
+                f.cancel(true);
+            }
+        }));
+        return result;
+    }
+
+    private <T> Attempt<T> launch(LlmProvider provider, Supplier<CompletableFuture<T>> call) {
+        long start = System.currentTimeMillis();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        Attempt<T> attempt = new Attempt<>(future, start);
+        future.whenComplete((value, e) -> {
+            attempt.end = System.currentTimeMillis();
+            if (e == null) {
+                latencies.get(provider).record(attempt.end - start);
+            }
+        });
+        return attempt;
+    }
+
+    private static final class Attempt<T> {
+        final CompletableFuture<T> future;
+        final long start;
+        volatile long end;
+
+        Attempt(CompletableFuture<T> future, long start) {
+            this.future = future;
+            this.start = start;
+        }
+
+        long latency() {
+            return (end > 0 ? end : System.currentTimeMillis()) - start;
+        }
+    }
+
+    /**
+     * Outcome of a dispatch: which provider won and how
+     */
+    public static class DispatchResult<T> {
+        private final LlmProvider provider;
+        private final T value;
+        private final DispatchPolicy policy;
+        private final boolean secondaryLaunched;
+        private final long latencyMs;
+        private final long hedgeDelayMs;
+
+        public DispatchResult(LlmProvider provider, T value, DispatchPolicy policy, boolean secondaryLaunched, long latencyMs, long hedgeDelayMs) {
+            this.provider = provider;
+            this.value = value;
+            this.policy = policy;
+            this.secondaryLaunched = secondaryLaunched;
+            this.latencyMs = latencyMs;
+            this.hedgeDelayMs = hedgeDelayMs;
+        }
+
+        public LlmProvider getProvider() {
+            return provider;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public DispatchPolicy getPolicy() {
+            return policy;
+        }
+
+        public boolean isSecondaryLaunched() {
+            return secondaryLaunched;
+        }
+
+        public long getLatencyMs() {
+            return latencyMs;
+        }
+
+        public long getHedgeDelayMs() {
+            return hedgeDelayMs;
+        }
+    }
+}
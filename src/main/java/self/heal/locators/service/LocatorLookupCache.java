@@ -0,0 +1,228 @@
+package self.heal.locators.service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jakarta.annotation.PreDestroy;
+
+import org.apache.log4j.Logger;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+
+import self.heal.locators.config.HealingConfiguration;
+import self.heal.locators.model.HealedLocatorView;
+import self.heal.locators.repository.HealedElemetRepository;
+import self.heal.locators.utils.BoundedCache;
+
+/**
+ * Read-through cache of the best healing per locator for /is_healed. Misses are cached too (as an empty result),
+ * so a locator that was never healed does not reach Mongo on every lookup either.
+ * <p>
+ * Entries are invalidated by locator:
+ * <ul>
+ *     <li>from a change stream on healed_element, which keeps every node consistent with the writes of the
+ *     others;</li>
+ *     <li>from this node's own writes once they are applied, which is all there is when Mongo is not a replica
+ *     set and change streams are unavailable. Writes of other nodes then show after
+ *     {@code healing.locator-cache-ttl-ms} at the latest.</li>
+ * </ul>
+ * A load that raced with an invalidation is returned but not cached.
+ */
+@Service
+public class LocatorLookupCache {
+
+    private static final Logger LOGGER = Logger.getLogger(LocatorLookupCache.class);
+
+    private static final String COLLECTION = "healed_element";
+    // Error code of $changeStream on a standalone server
+    private static final int CHANGE_STREAM_UNSUPPORTED = 40573;
+    private static final long MAX_RECONNECT_BACKOFF_MS = 30000;
+
+    private final HealingConfiguration healingConfig;
+    private final HealedElemetRepository healRepo;
+    private final MongoTemplate mongoTemplate;
+    private final BoundedCache<String, Optional<HealedLocatorView>> cache;
+    // Bumped by every invalidation, a load only caches its result when no invalidation happened meanwhile
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong changeEvents = new AtomicLong();
+    private final AtomicReference<String> changeStreamState = new AtomicReference<>("off");
+
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+    private volatile boolean running;
+
+    @Autowired
+    public LocatorLookupCache(HealingConfiguration healingConfig, HealedElemetRepository healRepo, MongoTemplate mongoTemplate) {
+        this.healingConfig = healingConfig;
+        this.healRepo = healRepo;
+        this.mongoTemplate = mongoTemplate;
+        this.cache = new BoundedCache<>(healingConfig.getLocatorCacheSize(), healingConfig.getLocatorCacheTtlMs());
+    }
+
+    /**
+     * Best healing for a locator, from memory when it was looked up before
+     *
+     * @param locator : locator as stored (double quotes replaced)
+     */
+    public Optional<HealedLocatorView> lookup(String locator) {
+        if (!healingConfig.isLocatorCacheEnabled()) {
+            return healRepo.findFirstByLocatorOrderByConfidenceScoreDesc(locator);
+        }
+        Optional<HealedLocatorView> cached = cache.get(locator);
+        if (cached != null) {
+            (cached.isPresent() ? hits : negativeHits).incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        long before = generation.get();
+        Optional<HealedLocatorView> loaded = healRepo.findFirstByLocatorOrderByConfidenceScoreDesc(locator);
+        if (generation.get() == before) {
+            cache.put(locator, loaded);
+        }
+        return loaded;
+    }
+
+    public void invalidate(String locator) {
+        if (locator == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        cache.invalidate(locator);
+        invalidations.incrementAndGet();
+    }
+
+    public void invalidateAll(Collection<String> locators) {
+        locators.forEach(this::invalidate);
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        cache.clear();
+        invalidations.incrementAndGet();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startChangeStream() {
+        if (!healingConfig.isLocatorCacheEnabled() || !healingConfig.isLocatorCacheChangeStreamEnabled()) {
+            return;
+        }
+        running = true;
+        Thread watcher = new Thread(this::watch, "locator-cache-change-stream");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> current = cursor;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (Exception e) {
+                // closing an interrupted cursor, nothing to do
+            }
+        }
+    }
+
+    private void watch() {
+        long backoff = 1000;
+        while (running) {
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> current = open()) {
+                cursor = current;
+                // what changed before the stream opened (or while it was down) is unknown
+                clear();
+                changeStreamState.set("watching");
+                backoff = 1000;
+                while (running) {
+                    apply(current.next());
+                }
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() == CHANGE_STREAM_UNSUPPORTED) {
+                    changeStreamState.set("unsupported");
+                    LOGGER.info("Change streams are not available on this Mongo deployment, the locator cache relies "
+                        + "on local invalidation and its TTL");
+                    return;
+                }
+                backoff = waitBeforeReconnect(e, backoff);
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                backoff = waitBeforeReconnect(e, backoff);
+            }
+        }
+        changeStreamState.set("off");
+    }
+
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> open() {
+        List<Bson> pipeline = List.of(
+            Aggregates.match(Filters.in("operationType", "insert", "update", "replace", "delete")),
+            Aggregates.project(Projections.include("operationType", "documentKey", "fullDocument.locator")));
+        return mongoTemplate.getCollection(COLLECTION).watch(pipeline)
+            .fullDocument(FullDocument.UPDATE_LOOKUP)
+            .cursor();
+    }
+
+    private void apply(ChangeStreamDocument<Document> event) {
+        changeEvents.incrementAndGet();
+        Document document = event.getFullDocument();
+        String locator = document != null ? document.getString("locator") : null;
+        if (locator != null) {
+            invalidate(locator);
+        } else {
+            // deletes only carry the id, they are rare enough to drop everything
+            clear();
+        }
+    }
+
+    private long waitBeforeReconnect(Exception e, long backoff) {
+        changeStreamState.set("reconnecting");
+        LOGGER.warn("Locator cache change stream failed, reconnecting in " + backoff + " ms: " + e.getMessage());
+        try {
+            Thread.sleep(backoff);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+        return Math.min(MAX_RECONNECT_BACKOFF_MS, backoff * 2);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", healingConfig.isLocatorCacheEnabled());
+        stats.put("size", cache.size());
+        stats.put("hits", hits.get());
+        stats.put("negative_hits", negativeHits.get());
+        stats.put("misses", misses.get());
+        long lookups = hits.get() + negativeHits.get() + misses.get();
+        stats.put("hit_rate", lookups == 0 ? 0.0 : (double) (hits.get() + negativeHits.get()) / lookups);
+        stats.put("evictions", cache.getEvictions());
+        stats.put("invalidations", invalidations.get());
+        stats.put("change_stream", changeStreamState.get());
+        stats.put("change_events", changeEvents.get());
+        return stats;
+    }
+}
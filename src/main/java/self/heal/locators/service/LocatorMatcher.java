@@ -1,15 +1,10 @@
 package self.heal.locators.service;
 
 import org.jsoup.Jsoup;
-import org.jsoup.helper.W3CDom;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
 import org.w3c.dom.*;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.xpath.*;
-import java.io.ByteArrayInputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -25,25 +20,52 @@ import java.util.Comparator;
 
 
 public class LocatorMatcher {
-   
+
+    // Minimum similarity for the fuzzy text healing of healLocator
+    private static final double FUZZY_TEXT_THRESHOLD = 0.25;
+
+    private static volatile SimilarityEngine similarityEngine = new LevenshteinSimilarity();
+
+    /**
+     * Replace the similarity engine used by the fuzzy text healing
+     */
+    public static void setSimilarityEngine(SimilarityEngine engine) {
+        similarityEngine = engine != null ? engine : new LevenshteinSimilarity();
+    }
 
     public static boolean isLocatorPresent(String locator, String pageSource, ContextAnalyzerService.AutomationType pageType) {
         if (locator == null || pageSource == null || pageSource.isEmpty()) return false;
+        return isLocatorPresent(locator, ParsedPage.of(pageSource), pageType);
+    }
+
+    public static boolean isLocatorPresent(String locator, ParsedPage page) {
+        if (locator == null || page == null || page.isEmpty()) return false;
+        return isLocatorPresent(locator, page, page.getAutomationType());
+    }
 
+    private static boolean isLocatorPresent(String locator, ParsedPage page, ContextAnalyzerService.AutomationType pageType) {
         try {
+            // Simple locators are answered by streaming the source, as long as nobody has built the DOM yet
+            if (!page.isDocumentParsed()) {
+                Boolean streamed = streamPresence(locator, page, pageType);
+                if (streamed != null) {
+                    return streamed;
+                }
+            }
+
             // Case 1: XPath
             if (locator.startsWith("/") || locator.startsWith("./")) {
-                return validateWithXPath(locator, pageSource);
+                return validateWithXPath(locator, page);
             }
 
             // Case 2: Web locators
             if (pageType == ContextAnalyzerService.AutomationType.WEB) {
-                return validateWebLocator(locator, pageSource);
+                return validateWebLocator(locator, page);
             }
 
             // Case 3: Mobile locators
             if (pageType == ContextAnalyzerService.AutomationType.MOBILE_ANDROID || pageType == ContextAnalyzerService.AutomationType.MOBILE_IOS) {
-                return validateMobileLocator(locator, pageSource);
+                return validateMobileLocator(locator, page);
             }
 
         } catch (Exception e) {
@@ -52,20 +74,28 @@ public class LocatorMatcher {
         return false;
     }
 
+    // Streaming (StAX) answer for attribute-equality locators, null when the DOM path has to decide
+    private static Boolean streamPresence(String locator, ParsedPage page, ContextAnalyzerService.AutomationType pageType) {
+        if (locator.startsWith("/")) {
+            return StreamingLocatorScanner.matchesSimpleXPath(locator, page);
+        }
+        if (!locator.startsWith("./") && (pageType == ContextAnalyzerService.AutomationType.MOBILE_ANDROID
+                || pageType == ContextAnalyzerService.AutomationType.MOBILE_IOS)) {
+            return StreamingLocatorScanner.matchesMobileValue(locator, page);
+        }
+        return null;
+    }
+
     // ✅ XPath evaluation for both Web + Mobile
     public static boolean validateWithXPath(String locator, String pageSource) {
-        try{
-            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            org.w3c.dom.Document xmlDoc = builder.parse(
-                new ByteArrayInputStream(pageSource.getBytes(StandardCharsets.UTF_8)));
+        return validateWithXPath(locator, ParsedPage.of(pageSource));
+    }
 
-        XPathFactory xPathFactory = XPathFactory.newInstance();
-        XPath xPath = xPathFactory.newXPath();
+    public static boolean validateWithXPath(String locator, ParsedPage page) {
+        try{
+            if (page.getDocument() == null) return false;
 
-        XPathExpression expr = xPath.compile(locator);
-        NodeList nodes = (NodeList) expr.evaluate(xmlDoc, XPathConstants.NODESET);
-        
-        return nodes.getLength() > 0;
+        return page.matches(locator, null);
         }
         catch(Exception e){
 
@@ -74,9 +104,15 @@ public class LocatorMatcher {
     }
 
         // ✅ Web-specific: id, name, css
-    private static boolean validateWebLocator(String locator, String pageSource) {
-        Document doc = Jsoup.parse(pageSource);
+    private static boolean validateWebLocator(String locator, ParsedPage page) {
+        Document doc = page.derive("jsoup-document", () -> Jsoup.parse(page.getPageSource()));
+        // jsoup caches child lists while selecting, a shared document is read by one thread at a time
+        synchronized (doc) {
+            return selectsAny(doc, locator);
+        }
+    }
 
+    private static boolean selectsAny(Document doc, String locator) {
         // By ID
         Elements elements = doc.select("#" + locator);
         if (!elements.isEmpty()) return true;
@@ -95,29 +131,21 @@ public class LocatorMatcher {
     }
 
     // ✅ Mobile-specific: resource-id, text, content-desc
-    private static boolean validateMobileLocator(String locator, String pageSource) throws Exception {
-        var builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        var xmlDoc = builder.parse(new ByteArrayInputStream(pageSource.getBytes(StandardCharsets.UTF_8)));
-        XPath xPath = XPathFactory.newInstance().newXPath();
+    private static boolean validateMobileLocator(String locator, ParsedPage page) throws Exception {
+        if (page.getDocument() == null) return false;
 
         // resource-id
-        if (nodeExists(xPath, xmlDoc, "//*[@resource-id='" + locator + "']")) return true;
+        if (page.matches("//*[@resource-id=$value]", locator)) return true;
 
         // text
-        if (nodeExists(xPath, xmlDoc, "//*[@text='" + locator + "']")) return true;
+        if (page.matches("//*[@text=$value]", locator)) return true;
 
         // content-desc
-        if (nodeExists(xPath, xmlDoc, "//*[@content-desc='" + locator + "']")) return true;
+        if (page.matches("//*[@content-desc=$value]", locator)) return true;
 
         return false;
     }
 
-    private static boolean nodeExists(XPath xPath, org.w3c.dom.Document xmlDoc, String expr) throws Exception {
-        XPathExpression expression = xPath.compile(expr);
-        NodeList nodes = (NodeList) expression.evaluate(xmlDoc, XPathConstants.NODESET);
-        return nodes.getLength() > 0;
-    }
-
 
     /**
      * Return a valid XPath (present in the given pageSource) for the provided locator.
@@ -132,93 +160,39 @@ public class LocatorMatcher {
         if (locator == null || locator.trim().isEmpty() || pageSource == null || pageSource.isEmpty()) {
             return null;
         }
+        return ensureXPath(locator, ParsedPage.of(pageSource));
+    }
+
+    /**
+     * Same as {@link #ensureXPath(String, String)} against an already parsed page
+     */
+    public static String ensureXPath(String locator, ParsedPage page) {
+        if (locator == null || locator.trim().isEmpty() || page == null || page.isEmpty()) {
+            return null;
+        }
         locator = locator.trim();
 
         try {
-            org.w3c.dom.Document doc = toW3cDocument(pageSource);
-            XPath xpath = XPathFactory.newInstance().newXPath();
+            // 1) If locator is already XPath and yields nodes -> return as-is (streamed for simple shapes)
+            if (!page.isDocumentParsed() && locator.startsWith("/")
+                    && Boolean.TRUE.equals(StreamingLocatorScanner.matchesSimpleXPath(locator, page))) {
+                return locator;
+            }
+            requireDocument(page);
 
-            // 1) If locator is already XPath and yields nodes -> return as-is
             try {
-                XPathExpression checkExpr = xpath.compile(locator);
-                NodeList checkNodes = (NodeList) checkExpr.evaluate(doc, XPathConstants.NODESET);
-                if (checkNodes != null && checkNodes.getLength() > 0) {
+                if (page.matches(locator, null)) {
                     return locator;
                 }
             } catch (XPathExpressionException ignored) {
                 // not a valid/parsable XPath -> we'll wrap
             }
 
-            // 2) Decide whether doc looks like mobile XML (presence of resource-id attr)
-            boolean looksLikeMobile = docHasAttribute(doc, "resource-id");
-
-            // 3) Build candidate xpaths
-            List<String> candidates = new ArrayList<>();
-
-            // If locator itself looks like an absolute/relative xpath string (starts with / or (// or .//) but did not match earlier)
-            // we still add a safe wrapper: search any node whose @resource-id or text contains that substring
-            // (but only if locator is not obviously xpath compileable)
-            // -> skip here, below we add attribute-based candidates.
-
-            // MOBILE-style candidate wrappers
-            String lit = xpathStringLiteral(locator);
-            String litLower = xpathStringLiteral(locator.toLowerCase(Locale.ROOT));
-
-            if (looksLikeMobile) {
-                // exact resource-id
-                candidates.add("//*[@" + "resource-id" + "=" + lit + "]");
-                // contains resource-id
-                candidates.add("//*[contains(@resource-id," + lit + ")]");
-
-                // exact text
-                candidates.add("//*[@" + "text" + "=" + lit + "]");
-                // case-insensitive contains on @text
-                candidates.add("//*[contains(translate(normalize-space(@text),'ABCDEFGHIJKLMNOPQRSTUVWXYZ','abcdefghijklmnopqrstuvwxyz'), " + litLower + ")]");
-
-                // content-desc
-                candidates.add("//*[@" + "content-desc" + "=" + lit + "]");
-                candidates.add("//*[contains(@content-desc," + lit + ")]");
-
-                // fallback: any attribute contains locator (generic)
-                candidates.add("//*[contains(translate(normalize-space(.),'ABCDEFGHIJKLMNOPQRSTUVWXYZ','abcdefghijklmnopqrstuvwxyz'), " + litLower + ")]");
-            }
-
-            // WEB-style candidate wrappers (also safe for XML if not mobile)
-            // tag (if locator is a simple tag name like 'div' or 'span')
-            if (locator.matches("^[A-Za-z0-9_-]+$")) {
-                candidates.add("//" + locator);
-            }
-
-            // id attribute
-            candidates.add("//*[@id=" + lit + "]");
-            // name
-            candidates.add("//*[@name=" + lit + "]");
-            // exact normalized text node (normalize-space(.))
-            candidates.add("//*[normalize-space(text())=" + lit + "]");
-            // case-insensitive contains on element text
-            candidates.add("//*[contains(translate(normalize-space(.),'ABCDEFGHIJKLMNOPQRSTUVWXYZ','abcdefghijklmnopqrstuvwxyz'), " + litLower + ")]");
-
-            // class token match (single token). safe pattern using concat trick
-            // matches when class attribute contains that token as a CSS class
-            candidates.add("//*[contains(concat(' ', normalize-space(@class), ' '), concat(' '," + lit + ", ' '))]");
-
-            // If locator looks like 'tag[@attr=..]' (e.g., div[@class='x']) it's probably XPath-ish; try it as an XPath
-            if (looksXpathLike(locator)) {
-                candidates.add(locator); // try once more (if earlier failed, this may still be OK)
-            }
-
-            // 4) Evaluate candidates in order and return the first that matches
-            for (String cand : candidates) {
-                try {
-                    XPathExpression expr = xpath.compile(cand);
-                    NodeList nodes = (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
-                    if (nodes != null && nodes.getLength() > 0) {
-                        return cand;
-                    }
-                } catch (XPathExpressionException ignore) {
-                    // skip invalid candidate
-                }
-            }
+            // 2) Test every candidate wrapper (resource-id, text, content-desc, id, name, text, class token ...)
+            //    in one walk over the page elements; the highest-priority match wins, mobile candidates first
+            //    when the page has resource-id attributes. Retrying the locator itself as XPath is pointless
+            //    here since step 1 already evaluated it.
+            return CandidateMatcher.match(locator, page);
 
         } catch (Exception e) {
             // parsing/evaluation error -> return null (or rethrow as needed)
@@ -228,22 +202,23 @@ public class LocatorMatcher {
     }
 
     public static HashMap<String,Object> healLocator(String locator, String pageSource) {
+        return healLocator(locator, pageSource != null ? ParsedPage.of(pageSource) : null);
+    }
+
+    public static HashMap<String,Object> healLocator(String locator, ParsedPage page) {
         HashMap<String,Object> result = new HashMap<>();
         result.put("originalLocator", locator);
-        if (locator == null || pageSource == null || locator.trim().isEmpty() || pageSource.isEmpty()) {
+        if (locator == null || page == null || locator.trim().isEmpty() || page.isEmpty()) {
             result.put("healedXPath", locator);
             result.put("confidence", 0.0);
             return result;
         }
         try {
-            org.w3c.dom.Document doc = toW3cDocument(pageSource);
-            XPath xp = XPathFactory.newInstance().newXPath();
+            requireDocument(page);
 
             // 1) If locator already XPath and matches -> return it
             try {
-                XPathExpression expr = xp.compile(locator);
-                NodeList matches = (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
-                if (matches != null && matches.getLength() > 0) {
+                if (page.matches(locator, null)) {
                     result.put("healedXPath", locator);
                     result.put("confidence", 1.0);
                     return result;
@@ -260,16 +235,16 @@ public class LocatorMatcher {
 
             // 3) Try exact resource-id match -> highest confidence
             if (resourceId != null) {
-                String expr = "//*[@resource-id=" + xpathStringLiteral(resourceId) + "]";
-                if (nodesExist(xp, doc, expr)) {
-                    result.put("healedXPath", expr);
+                String expr = "//*[@resource-id=$value]";
+                if (nodesExist(page, expr, resourceId)) {
+                    result.put("healedXPath", XPathSupport.render(expr, resourceId));
                     result.put("confidence", 1.0);
                     return result;
                 }
                 // contains resource-id
-                expr = "//*[contains(@resource-id," + xpathStringLiteral(resourceId) + ")]";
-                if (nodesExist(xp, doc, expr)) {
-                    result.put("healedXPath", expr);
+                expr = "//*[contains(@resource-id,$value)]";
+                if (nodesExist(page, expr, resourceId)) {
+                    result.put("healedXPath", XPathSupport.render(expr, resourceId));
                     result.put("confidence", 0.9);
                     return result;
                 }
@@ -277,9 +252,9 @@ public class LocatorMatcher {
 
             // 4) Try id attribute
             if (idAttr != null) {
-                String expr = "//*[@id=" + xpathStringLiteral(idAttr) + "]";
-                if (nodesExist(xp, doc, expr)) {
-                    result.put("healedXPath", expr);
+                String expr = "//*[@id=$value]";
+                if (nodesExist(page, expr, idAttr)) {
+                    result.put("healedXPath", XPathSupport.render(expr, idAttr));
                     result.put("confidence", 1.0);
                     return result;
                 }
@@ -288,21 +263,15 @@ public class LocatorMatcher {
             // 5) If text-like target, fuzzy search over nodes' text/@text
             if (textVal != null && !textVal.trim().isEmpty()) {
                 String targetNorm = normalize(textVal);
-                NodeList textNodes = (NodeList) xp.compile("//*[normalize-space(@text) or normalize-space(text())]").evaluate(doc, XPathConstants.NODESET);
-                double bestScore = 0.0;
+                SimilarityEngine engine = similarityEngine;
+                // Only candidates above the threshold can be returned, so it is also the first score to beat
+                double bestScore = FUZZY_TEXT_THRESHOLD;
                 Node bestNode = null;
-                for (int i = 0; i < textNodes.getLength(); i++) {
-                    Node n = textNodes.item(i);
-                    String candidate = "";
-                    NamedNodeMap attrs = n.getAttributes();
-                    if (attrs != null && attrs.getNamedItem("text") != null) candidate = attrs.getNamedItem("text").getNodeValue();
-                    if (candidate.isEmpty()) candidate = n.getTextContent();
-                    String candNorm = normalize(candidate);
-                    if (candNorm.isEmpty()) continue;
-                    double sim = similarity(targetNorm, candNorm);
-                    if (sim > bestScore) { bestScore = sim; bestNode = n; }
+                for (TextCandidate candidate : textCandidates(page)) {
+                    double sim = engine.similarityAbove(targetNorm, candidate.normalizedText, bestScore);
+                    if (sim > bestScore) { bestScore = sim; bestNode = candidate.node; }
                 }
-                if (bestNode != null && bestScore > 0.25) { // threshold, tuneable
+                if (bestNode != null) {
                     // Prefer resource-id on matched node for stable xpath
                     String rid = (bestNode.getAttributes() != null && bestNode.getAttributes().getNamedItem("resource-id") != null)
                             ? bestNode.getAttributes().getNamedItem("resource-id").getNodeValue() : null;
@@ -338,69 +307,23 @@ public class LocatorMatcher {
 
     // --- Helpers ---
 
-    // Convert pageSource to W3C DOM Document:
-    private static org.w3c.dom.Document toW3cDocument(String pageSource) throws Exception {
-        // try XML parse first (works for Android / iOS page sources)
-        try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(false);
-            // Prevent XXE
-            dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-            return (org.w3c.dom.Document) dbf.newDocumentBuilder().parse(new ByteArrayInputStream(pageSource.getBytes(StandardCharsets.UTF_8)));
-        } catch (Exception xmlEx) {
-            // fallback: parse as HTML with Jsoup and convert to W3C DOM
-            org.jsoup.nodes.Document jsoupDoc = Jsoup.parse(pageSource);
-            W3CDom w3cDom = new W3CDom();
-            return (org.w3c.dom.Document) w3cDom.fromJsoup(jsoupDoc);
-        }
-    }
-
-    // Detect if a DOM contains at least one node with the given attribute name
-    private static boolean docHasAttribute(org.w3c.dom.Document doc, String attribute) {
-        try {
-            XPath xp = XPathFactory.newInstance().newXPath();
-            String expr = "//*[@" + attribute + "]";
-            XPathExpression xpe = xp.compile(expr);
-            NodeList nl = (NodeList) xpe.evaluate(doc, XPathConstants.NODESET);
-            return nl != null && nl.getLength() > 0;
-        } catch (Exception e) {
-            return false;
+    // Shared W3C DOM of the page, parsed once per page source
+    private static org.w3c.dom.Document requireDocument(ParsedPage page) throws Exception {
+        org.w3c.dom.Document doc = page.getDocument();
+        if (doc == null) {
+            throw new IllegalArgumentException("page source could not be parsed");
         }
+        return doc;
     }
 
-    // Construct a safe XPath string literal for arbitrary input (handles single/double quotes via concat(...) if needed)
+    // Construct a safe XPath string literal for arbitrary input
     private static String xpathStringLiteral(String s) {
-        if (!s.contains("'")) {
-            return "'" + s + "'";
-        }
-        if (!s.contains("\"")) {
-            return "\"" + s + "\"";
-        }
-        // contains both single and double quotes -> use concat('a',"'",'b',...)
-        String[] parts = s.split("'");
-        StringBuilder sb = new StringBuilder("concat(");
-        for (int i = 0; i < parts.length; i++) {
-            if (i > 0) {
-                sb.append(", \"'\", ");
-            }
-            sb.append("'").append(parts[i]).append("'");
-        }
-        sb.append(")");
-        return sb.toString();
+        return XPathSupport.literal(s);
     }
 
-    // quick heuristic: does locator "look like" an xpath?
-    private static boolean looksXpathLike(String locator) {
-        String t = locator.trim();
-        return t.startsWith("/") || t.startsWith("(") || t.contains("::") || t.contains("()")
-                || t.contains("@") || t.contains("text()") || t.contains("contains(") || t.contains("normalize-space(")
-                || t.startsWith(".//") || t.startsWith("//*");
-    }
-
-    private static boolean nodesExist(XPath xp, org.w3c.dom.Document doc, String expr) {
+    private static boolean nodesExist(ParsedPage page, String template, String value) {
         try {
-            NodeList nl = (NodeList) xp.compile(expr).evaluate(doc, XPathConstants.NODESET);
-            return nl != null && nl.getLength() > 0;
+            return page.matches(template, value);
         } catch (Exception e) { return false; }
     }
 
@@ -409,33 +332,61 @@ public class LocatorMatcher {
         return m.find() ? m.group(2) : null;
     }
 
-        private static String normalize(String s) {
-        if (s == null) return "";
-        return s.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}\\s]+", " ").trim().replaceAll("\\s+", " ");
+    // Elements with a non blank @text or first text node, in document order, with their normalized text.
+    // Built once per page and shared by every fuzzy heal on it.
+    private static List<TextCandidate> textCandidates(ParsedPage page) {
+        return page.derive("fuzzy-text-candidates", () -> {
+            List<TextCandidate> candidates = new ArrayList<>();
+            for (ParsedPage.PageElement element : page.getElements()) {
+                String textAttr = element.attr("text");
+                if (CandidateMatcher.normalizeSpace(textAttr).isEmpty()
+                        && CandidateMatcher.normalizeSpace(CandidateMatcher.firstTextChild(element.node)).isEmpty()) {
+                    continue;
+                }
+                String candidate = textAttr != null && !textAttr.isEmpty() ? textAttr : element.node.getTextContent();
+                String candNorm = normalize(candidate);
+                if (!candNorm.isEmpty()) {
+                    candidates.add(new TextCandidate(element.node, candNorm));
+                }
+            }
+            return candidates;
+        });
     }
 
-    private static double similarity(String a, String b) {
-        if (a.equals(b)) return 1.0;
-        int dist = levenshtein(a, b);
-        int max = Math.max(a.length(), b.length());
-        return max == 0 ? 1.0 : Math.max(0.0, 1.0 - (double) dist / max);
+    private static final class TextCandidate {
+        final Node node;
+        final String normalizedText;
+
+        TextCandidate(Node node, String normalizedText) {
+            this.node = node;
+            this.normalizedText = normalizedText;
+        }
     }
 
-    private static int levenshtein(String s1, String s2) {
-        int[] prev = new int[s2.length() + 1];
-        for (int j = 0; j <= s2.length(); j++) prev[j] = j;
-        for (int i = 1; i <= s1.length(); i++) {
-            int[] cur = new int[s2.length() + 1];
-            cur[0] = i;
-            for (int j = 1; j <= s2.length(); j++) {
-                int cost = s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 1;
-                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+    // Lowercase letters / digits, every other run of characters becomes one space (single pass, no regex)
+    private static String normalize(String s) {
+        if (s == null || s.isEmpty()) return "";
+        StringBuilder out = new StringBuilder(s.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < s.length(); ) {
+            int cp = s.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isLetter(cp) || isNumber(cp)) {
+                if (pendingSpace && out.length() > 0) out.append(' ');
+                pendingSpace = false;
+                out.appendCodePoint(Character.toLowerCase(cp));
+            } else {
+                pendingSpace = true;
             }
-            prev = cur;
         }
-        return prev[s2.length()];
+        return out.toString();
     }
 
+    // \p{N}
+    private static boolean isNumber(int cp) {
+        int type = Character.getType(cp);
+        return type == Character.DECIMAL_DIGIT_NUMBER || type == Character.LETTER_NUMBER || type == Character.OTHER_NUMBER;
+    }
 
     private static String extractRegex(String s, String regex) {
         Matcher m = Pattern.compile(regex).matcher(s);
@@ -0,0 +1,330 @@
+package self.heal.locators.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits a parsed page into subtree-aligned chunks. Every chunk is a run of consecutive sibling subtrees whose
+ * rendered size fits the limit, so an element is never cut in half, and it carries the path of its ancestors
+ * as a header so the LLM still sees where the fragment sits in the hierarchy.
+ * <p>
+ * Subtree sizes are accumulated bottom-up over the element table (document order, parents before children),
+ * so chunking is linear in the number of elements. The result is memoized on the page.
+ */
+public final class PageChunker {
+
+    private static final String INDENT = "  ";
+    private static final String[] PATH_ATTRIBUTES = {"resource-id", "id", "name"};
+
+    private PageChunker() {
+    }
+
+    /**
+     * Chunks of the page, each at most maxChunkLength characters unless a single element is larger on its own
+     *
+     * @param page           : parsed page
+     * @param maxChunkLength : size bound in characters of the rendered chunk content
+     * @return chunks in document order, empty if the page has no elements
+     */
+    public static List<Chunk> chunk(ParsedPage page, int maxChunkLength) {
+        int limit = Math.max(1, maxChunkLength);
+        return page.derive("page-chunks:" + limit, () -> build(page.getElements(), limit));
+    }
+
+    private static List<Chunk> build(List<ParsedPage.PageElement> elements, int limit) {
+        if (elements.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Builder builder = new Builder(elements, limit);
+        // A parsed document has a single root; the loop also covers partial tables
+        for (int i = 0; i < elements.size(); i = builder.subtreeEnd[i]) {
+            builder.split(i);
+        }
+        builder.flush();
+        return Collections.unmodifiableList(builder.chunks);
+    }
+
+    /**
+     * Render an arbitrary set of elements in document order. An element whose parent is rendered right above it
+     * in the same group is indented under it, any other element starts a new group with its ancestor path header.
+     *
+     * @param page     : parsed page
+     * @param selected : indexes into {@link ParsedPage#getElements()}
+     */
+    public static String renderSelection(ParsedPage page, BitSet selected) {
+        List<ParsedPage.PageElement> elements = page.getElements();
+        Map<Integer, Integer> indent = new HashMap<>();
+        Map<Integer, Integer> group = new HashMap<>();
+        int currentGroup = -1;
+        StringBuilder out = new StringBuilder();
+        for (int i = selected.nextSetBit(0); i >= 0 && i < elements.size(); i = selected.nextSetBit(i + 1)) {
+            ParsedPage.PageElement element = elements.get(i);
+            Integer parentGroup = group.get(element.parentIndex);
+            int level;
+            if (parentGroup != null && parentGroup == currentGroup) {
+                level = indent.get(element.parentIndex) + 1;
+            } else {
+                currentGroup = i;
+                level = 0;
+                if (out.length() > 0) {
+                    out.append('\n');
+                }
+                out.append("<!-- path: ").append(ancestorPath(elements, i)).append(" -->");
+            }
+            indent.put(i, level);
+            group.put(i, currentGroup);
+            out.append('\n');
+            for (int d = level; d > 0; d--) {
+                out.append(INDENT);
+            }
+            out.append(render(element));
+        }
+        return out.toString();
+    }
+
+    private static String ancestorPath(List<ParsedPage.PageElement> elements, int start) {
+        List<String> segments = new ArrayList<>();
+        for (int p = elements.get(start).parentIndex; p >= 0; p = elements.get(p).parentIndex) {
+            segments.add(pathSegment(elements.get(p)));
+        }
+        Collections.reverse(segments);
+        return "/" + String.join("/", segments);
+    }
+
+    static String render(ParsedPage.PageElement element) {
+        StringBuilder sb = new StringBuilder(64).append('<').append(element.tagName);
+        for (Map.Entry<String, String> attr : element.attributes.entrySet()) {
+            sb.append(' ').append(attr.getKey()).append("=\"");
+            escape(attr.getValue(), true, sb);
+            sb.append('"');
+        }
+        sb.append('>');
+        if (!element.ownText.isEmpty()) {
+            escape(element.ownText, false, sb);
+        }
+        return sb.toString();
+    }
+
+    private static void escape(String value, boolean attribute, StringBuilder sb) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '&') {
+                sb.append("&amp;");
+            } else if (c == '<') {
+                sb.append("&lt;");
+            } else if (attribute && c == '"') {
+                sb.append("&quot;");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    static String pathSegment(ParsedPage.PageElement element) {
+        for (String name : PATH_ATTRIBUTES) {
+            String value = element.attr(name);
+            if (value != null && !value.isEmpty()) {
+                return element.tagName + "[@" + name + "=" + XPathSupport.literal(value) + "]";
+            }
+        }
+        return element.tagName;
+    }
+
+    /**
+     * Per-element tables filled in two linear passes, and the chunk currently being packed.
+     * A chunk is either a run of whole sibling subtrees, or an oversized container's start tag followed by
+     * as many of its leading child subtrees as fit.
+     */
+    private static final class Builder {
+        final List<ParsedPage.PageElement> elements;
+        final int limit;
+        final String[] lines;
+        // rendered size of the subtree without indentation, element count and depth sum to add it per base depth
+        final int[] subtreeSize;
+        final int[] subtreeCount;
+        final long[] subtreeDepthSum;
+        final int[] subtreeEnd;
+        final int[] firstChild;
+        final int[] nextSibling;
+        final List<Chunk> chunks = new ArrayList<>();
+
+        // chunk being packed: elements [from, to), children of joinParent may be appended
+        int from = -1;
+        int to;
+        int size;
+        int joinParent;
+
+        Builder(List<ParsedPage.PageElement> elements, int limit) {
+            int n = elements.size();
+            this.elements = elements;
+            this.limit = limit;
+            lines = new String[n];
+            subtreeSize = new int[n];
+            subtreeCount = new int[n];
+            subtreeDepthSum = new long[n];
+            subtreeEnd = new int[n];
+            firstChild = new int[n];
+            nextSibling = new int[n];
+            for (int i = 0; i < n; i++) {
+                lines[i] = render(elements.get(i));
+                firstChild[i] = -1;
+                nextSibling[i] = -1;
+            }
+            // children follow their parent in document order, so walking backwards completes a subtree before its root
+            for (int i = n - 1; i >= 0; i--) {
+                ParsedPage.PageElement element = elements.get(i);
+                subtreeSize[i] += lines[i].length() + 1;
+                subtreeCount[i] += 1;
+                subtreeDepthSum[i] += element.depth;
+                if (subtreeEnd[i] == 0) {
+                    subtreeEnd[i] = i + 1;
+                }
+                int parent = element.parentIndex;
+                if (parent >= 0) {
+                    subtreeSize[parent] += subtreeSize[i];
+                    subtreeCount[parent] += subtreeCount[i];
+                    subtreeDepthSum[parent] += subtreeDepthSum[i];
+                    subtreeEnd[parent] = Math.max(subtreeEnd[parent], subtreeEnd[i]);
+                    // prepending while walking backwards keeps siblings in document order
+                    nextSibling[i] = firstChild[parent];
+                    firstChild[parent] = i;
+                }
+            }
+        }
+
+        // Rendered size of a subtree when indented relative to baseDepth
+        long sizeAt(int root, int baseDepth) {
+            return subtreeSize[root] + (long) INDENT.length() * (subtreeDepthSum[root] - (long) baseDepth * subtreeCount[root]);
+        }
+
+        // Pack the subtree whole if it fits, otherwise open a chunk with its start tag and split the children
+        void split(int root) {
+            ParsedPage.PageElement element = elements.get(root);
+            if (joinable(root)) {
+                long joined = sizeAt(root, elements.get(from).depth);
+                if (size + joined <= limit) {
+                    to = subtreeEnd[root];
+                    size += joined;
+                    return;
+                }
+            }
+            long whole = sizeAt(root, element.depth);
+            if (whole <= limit || firstChild[root] < 0) {
+                flush();
+                open(root, subtreeEnd[root], whole, element.parentIndex);
+                return;
+            }
+            if (joinable(root)) {
+                // nested oversized containers share one chunk of start tags
+                long lead = lines[root].length() + 1 + (long) INDENT.length() * (element.depth - elements.get(from).depth);
+                if (size + lead <= limit) {
+                    to = root + 1;
+                    size += (int) lead;
+                    joinParent = root;
+                    splitChildren(root);
+                    return;
+                }
+            }
+            flush();
+            open(root, root + 1, lines[root].length() + 1, root);
+            splitChildren(root);
+        }
+
+        // The chunk being packed ends right before root and accepts children of root's parent
+        private boolean joinable(int root) {
+            return from >= 0 && root == to && elements.get(root).parentIndex == joinParent;
+        }
+
+        private void splitChildren(int root) {
+            for (int child = firstChild[root]; child >= 0; child = nextSibling[child]) {
+                split(child);
+            }
+        }
+
+        void open(int start, int end, long rangeSize, int parent) {
+            from = start;
+            to = end;
+            size = (int) Math.min(Integer.MAX_VALUE, rangeSize);
+            joinParent = parent;
+        }
+
+        void flush() {
+            if (from < 0) {
+                return;
+            }
+            int baseDepth = elements.get(from).depth;
+            StringBuilder content = new StringBuilder(size);
+            for (int i = from; i < to; i++) {
+                if (i > from) {
+                    content.append('\n');
+                }
+                for (int d = elements.get(i).depth - baseDepth; d > 0; d--) {
+                    content.append(INDENT);
+                }
+                content.append(lines[i]);
+            }
+            chunks.add(new Chunk(chunks.size(), ancestorPath(elements, from), from, to, content.toString()));
+            from = -1;
+        }
+    }
+
+    /**
+     * A run of whole sibling subtrees, elements [startIndex, endIndex) of {@link ParsedPage#getElements()}
+     */
+    public static final class Chunk {
+        private final int index;
+        private final String path;
+        private final int startIndex;
+        private final int endIndex;
+        private final String content;
+
+        Chunk(int index, String path, int startIndex, int endIndex, String content) {
+            this.index = index;
+            this.path = path;
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+            this.content = content;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * XPath-like path of the ancestors of the chunk ("/" for the document element)
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public int getStartIndex() {
+            return startIndex;
+        }
+
+        public int getEndIndex() {
+            return endIndex;
+        }
+
+        /**
+         * Start tags and own text of the elements, indented by depth relative to the first one
+         */
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * Content with the ancestor path header, as sent to the LLM
+         */
+        public String render() {
+            return "<!-- path: " + path + " -->\n" + content;
+        }
+
+        public int length() {
+            return content.length();
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package self.heal.locators.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.w3c.dom.Node;
+
+/**
+ * Alignment of a previously seen page (where a locator worked) with the current one, to follow the element
+ * the locator used to match across a release.
+ * <p>
+ * Every element gets a label hash (tag and identifying attributes, not bounds or state) and a subtree hash
+ * (label and children's subtree hashes in order), computed in one backward pass over each element table.
+ * Elements are then matched in three passes:
+ * <ol>
+ *     <li>subtrees whose hash is unique on both pages are matched whole ({@link Kind#IDENTICAL})</li>
+ *     <li>parents of matched elements are matched bottom-up when they have the same tag ({@link Kind#CONTAINER},
+ *     or {@link Kind#SAME_CHILDREN} when all their children are unchanged)</li>
+ *     <li>children of matched elements are matched top-down, by equal label ({@link Kind#LABEL}), then
+ *     by the same children ({@link Kind#SAME_CHILDREN}), then by tag and order among the unmatched siblings
+ *     ({@link Kind#POSITION})</li>
+ * </ol>
+ * The alignment is linear in the size of both pages apart from sibling matching, and is memoized on the current
+ * page per previous page.
+ */
+public final class PageDiff {
+
+    private static final Logger LOGGER = Logger.getLogger(PageDiff.class);
+
+    private static final long LEAF_SHAPE = 17;
+
+    private static final String[] LABEL_ATTRIBUTES = {"resource-id", "content-desc", "text", "id", "name"};
+    // Attributes tried, in order, to address the counterpart with a single predicate
+    private static final String[] UNIQUE_ATTRIBUTES = {"resource-id", "content-desc", "text", "id", "name"};
+
+    /**
+     * How an old element was paired with its counterpart, from most to least reliable
+     */
+    public enum Kind {
+        IDENTICAL(0.95), LABEL(0.9), SAME_CHILDREN(0.85), CONTAINER(0.75), POSITION(0.7);
+
+        private final double confidence;
+
+        Kind(double confidence) {
+            this.confidence = confidence;
+        }
+
+        public double getConfidence() {
+            return confidence;
+        }
+    }
+
+    private final ParsedPage oldPage;
+    private final ParsedPage newPage;
+    private final int[] oldToNew;
+    private final int[] newToOld;
+    private final Kind[] kinds;
+
+    private PageDiff(ParsedPage oldPage, ParsedPage newPage) {
+        this.oldPage = oldPage;
+        this.newPage = newPage;
+        this.oldToNew = new int[oldPage.getElements().size()];
+        this.newToOld = new int[newPage.getElements().size()];
+        this.kinds = new Kind[oldToNew.length];
+        Arrays.fill(oldToNew, -1);
+        Arrays.fill(newToOld, -1);
+    }
+
+    /**
+     * Align a previous page with the current one
+     */
+    public static PageDiff align(ParsedPage oldPage, ParsedPage newPage) {
+        return newPage.derive("page-diff:" + oldPage.getContentHash(), () -> {
+            long start = System.nanoTime();
+            PageDiff diff = new PageDiff(oldPage, newPage);
+            diff.match();
+            LOGGER.debug("Aligned " + diff.oldToNew.length + " -> " + diff.newToOld.length + " elements ("
+                + diff.matchedCount() + " matched) in " + (System.nanoTime() - start) / 1000 + " us");
+            return diff;
+        });
+    }
+
+    /**
+     * Follow the element a previously working locator matched on the old page to the current page
+     *
+     * @param oldLocators : locators that worked on the old page, tried in order (healed locator, then original)
+     * @return the heal, or null if no locator matches on the old page
+     */
+    public static Heal healFromPrevious(List<String> oldLocators, ParsedPage oldPage, ParsedPage newPage) {
+        int oldTarget = -1;
+        for (String locator : oldLocators) {
+            oldTarget = locate(locator, oldPage);
+            if (oldTarget >= 0) {
+                break;
+            }
+        }
+        if (oldTarget < 0) {
+            return null;
+        }
+        PageDiff diff = align(oldPage, newPage);
+        int newTarget = diff.oldToNew[oldTarget];
+        String xpath = newTarget >= 0 ? uniqueXPath(newPage, newTarget) : null;
+        Kind kind = newTarget >= 0 ? diff.kinds[oldTarget] : null;
+        return new Heal(diff, oldTarget, newTarget, xpath, kind, diff.changedRegion(oldTarget));
+    }
+
+    public ParsedPage getOldPage() {
+        return oldPage;
+    }
+
+    public int counterpart(int oldIndex) {
+        return oldToNew[oldIndex];
+    }
+
+    public Kind kindOf(int oldIndex) {
+        return kinds[oldIndex];
+    }
+
+    public int matchedCount() {
+        int count = 0;
+        for (int n : oldToNew) {
+            if (n >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Elements of the current page around where the old element was: the counterpart of its closest matched
+     * ancestor (or the target's own counterpart) and every element below it that is new or changed
+     */
+    public BitSet changedRegion(int oldIndex) {
+        List<ParsedPage.PageElement> oldElements = oldPage.getElements();
+        List<ParsedPage.PageElement> newElements = newPage.getElements();
+        BitSet region = new BitSet(newElements.size());
+        int anchor = -1;
+        for (int o = oldIndex; o >= 0 && anchor < 0; o = oldElements.get(o).parentIndex) {
+            if (oldToNew[o] >= 0 && (o != oldIndex || kinds[o] != Kind.IDENTICAL)) {
+                anchor = oldToNew[o];
+            }
+        }
+        if (anchor < 0) {
+            return region;
+        }
+        region.set(anchor);
+        int end = subtreeEnd(newElements, anchor);
+        for (int n = anchor + 1; n < end; n++) {
+            int o = newToOld[n];
+            if (o < 0 || kinds[o] != Kind.IDENTICAL) {
+                region.set(n);
+            }
+        }
+        return region;
+    }
+
+    private void match() {
+        List<ParsedPage.PageElement> oldElements = oldPage.getElements();
+        List<ParsedPage.PageElement> newElements = newPage.getElements();
+        if (oldElements.isEmpty() || newElements.isEmpty()) {
+            return;
+        }
+        long[] oldLabels = labels(oldElements);
+        long[] newLabels = labels(newElements);
+        long[] oldShapes = new long[oldElements.size()];
+        long[] newShapes = new long[newElements.size()];
+        long[] oldHashes = subtreeHashes(oldElements, oldLabels, oldShapes);
+        long[] newHashes = subtreeHashes(newElements, newLabels, newShapes);
+
+        // 1. unique identical subtrees, largest first thanks to document order
+        Map<Long, Integer> oldCounts = counts(oldHashes);
+        Map<Long, Integer> newFirst = new HashMap<>();
+        Map<Long, Integer> newCounts = new HashMap<>();
+        for (int n = 0; n < newHashes.length; n++) {
+            newFirst.putIfAbsent(newHashes[n], n);
+            newCounts.merge(newHashes[n], 1, Integer::sum);
+        }
+        for (int o = 0; o < oldHashes.length; o++) {
+            if (oldToNew[o] >= 0 || oldCounts.get(oldHashes[o]) != 1 || !Integer.valueOf(1).equals(newCounts.get(oldHashes[o]))) {
+                continue;
+            }
+            int n = newFirst.get(oldHashes[o]);
+            if (newToOld[n] >= 0) {
+                continue;
+            }
+            int size = subtreeEnd(oldElements, o) - o;
+            for (int k = 0; k < size; k++) {
+                pair(o + k, n + k, Kind.IDENTICAL);
+            }
+        }
+
+        // 2. containers of matched elements, walking up
+        for (int o = oldElements.size() - 1; o >= 0; o--) {
+            int n = oldToNew[o];
+            if (n < 0) {
+                continue;
+            }
+            int op = oldElements.get(o).parentIndex;
+            int np = newElements.get(n).parentIndex;
+            if (op >= 0 && np >= 0 && oldToNew[op] < 0 && newToOld[np] < 0
+                && oldElements.get(op).tagName.equals(newElements.get(np).tagName)) {
+                pair(op, np, containerKind(oldLabels[op] == newLabels[np], oldShapes[op], newShapes[np]));
+            }
+        }
+        if (oldToNew[0] < 0 && newToOld[0] < 0 && oldElements.get(0).tagName.equals(newElements.get(0).tagName)) {
+            pair(0, 0, containerKind(oldLabels[0] == newLabels[0], oldShapes[0], newShapes[0]));
+        }
+
+        // 3. children of matched elements, walking down
+        List<List<Integer>> oldChildren = children(oldElements);
+        List<List<Integer>> newChildren = children(newElements);
+        for (int o = 0; o < oldElements.size(); o++) {
+            int n = oldToNew[o];
+            if (n < 0) {
+                continue;
+            }
+            List<Integer> oldFree = unmatched(oldChildren.get(o), oldToNew);
+            List<Integer> newFree = unmatched(newChildren.get(n), newToOld);
+            if (oldFree.isEmpty() || newFree.isEmpty()) {
+                continue;
+            }
+            pairSiblings(oldFree, newFree, oldLabels, newLabels, Kind.LABEL);
+            pairSiblings(unmatched(oldFree, oldToNew), unmatched(newFree, newToOld), oldShapes, newShapes, Kind.SAME_CHILDREN);
+            pairByPosition(unmatched(oldFree, oldToNew), unmatched(newFree, newToOld));
+        }
+    }
+
+    private static Kind containerKind(boolean sameLabel, long oldShape, long newShape) {
+        if (sameLabel) {
+            return Kind.LABEL;
+        }
+        return oldShape == newShape ? Kind.SAME_CHILDREN : Kind.CONTAINER;
+    }
+
+    // First unmatched sibling with an equal key, in order; leaves all share one shape and never pair by it
+    private void pairSiblings(List<Integer> oldFree, List<Integer> newFree, long[] oldKeys, long[] newKeys, Kind kind) {
+        for (int o : oldFree) {
+            if (kind == Kind.SAME_CHILDREN && oldKeys[o] == LEAF_SHAPE) {
+                continue;
+            }
+            for (int n : newFree) {
+                if (newToOld[n] < 0 && oldKeys[o] == newKeys[n]
+                    && oldPage.getElements().get(o).tagName.equals(newPage.getElements().get(n).tagName)) {
+                    pair(o, n, kind);
+                    break;
+                }
+            }
+        }
+    }
+
+    // k-th unmatched sibling of a tag with the k-th one, only when both sides have as many of that tag
+    private void pairByPosition(List<Integer> oldFree, List<Integer> newFree) {
+        Map<String, List<Integer>> oldByTag = byTag(oldFree, oldPage.getElements());
+        Map<String, List<Integer>> newByTag = byTag(newFree, newPage.getElements());
+        for (Map.Entry<String, List<Integer>> entry : oldByTag.entrySet()) {
+            List<Integer> candidates = newByTag.get(entry.getKey());
+            if (candidates != null && candidates.size() == entry.getValue().size()) {
+                for (int k = 0; k < candidates.size(); k++) {
+                    pair(entry.getValue().get(k), candidates.get(k), Kind.POSITION);
+                }
+            }
+        }
+    }
+
+    private void pair(int o, int n, Kind kind) {
+        oldToNew[o] = n;
+        newToOld[n] = o;
+        kinds[o] = kind;
+    }
+
+    private static Map<String, List<Integer>> byTag(List<Integer> indexes, List<ParsedPage.PageElement> elements) {
+        Map<String, List<Integer>> byTag = new HashMap<>();
+        for (int i : indexes) {
+            byTag.computeIfAbsent(elements.get(i).tagName, t -> new ArrayList<>()).add(i);
+        }
+        return byTag;
+    }
+
+    private static List<Integer> unmatched(List<Integer> indexes, int[] mapping) {
+        List<Integer> free = new ArrayList<>(indexes.size());
+        for (int i : indexes) {
+            if (mapping[i] < 0) {
+                free.add(i);
+            }
+        }
+        return free;
+    }
+
+    private static List<List<Integer>> children(List<ParsedPage.PageElement> elements) {
+        List<List<Integer>> children = new ArrayList<>(elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            children.add(new ArrayList<>(2));
+        }
+        for (ParsedPage.PageElement element : elements) {
+            if (element.parentIndex >= 0) {
+                children.get(element.parentIndex).add(element.index);
+            }
+        }
+        return children;
+    }
+
+    private static long[] labels(List<ParsedPage.PageElement> elements) {
+        long[] labels = new long[elements.size()];
+        for (ParsedPage.PageElement element : elements) {
+            long h = mix(element.tagName.hashCode());
+            for (String name : LABEL_ATTRIBUTES) {
+                String value = element.attr(name);
+                h = mix(h * 31 + (value != null ? value.hashCode() : 0));
+            }
+            labels[element.index] = mix(h * 31 + element.ownText.hashCode());
+        }
+        return labels;
+    }
+
+    // Subtree hash: label then children's subtree hashes in order; shape: children only, ignoring the own label
+    private static long[] subtreeHashes(List<ParsedPage.PageElement> elements, long[] labels, long[] shapes) {
+        int n = elements.size();
+        long[] hashes = new long[n];
+        Arrays.fill(shapes, LEAF_SHAPE);
+        // children follow their parent in document order, so a backward walk completes every subtree first;
+        // children are folded last to first, the same on both pages
+        for (int i = n - 1; i >= 0; i--) {
+            hashes[i] = mix(labels[i] * 31 + shapes[i]);
+            int parent = elements.get(i).parentIndex;
+            if (parent >= 0) {
+                shapes[parent] = mix(shapes[parent] * 31 + hashes[i]);
+            }
+        }
+        return hashes;
+    }
+
+    private static Map<Long, Integer> counts(long[] hashes) {
+        Map<Long, Integer> counts = new HashMap<>(hashes.length * 2);
+        for (long h : hashes) {
+            counts.merge(h, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static int subtreeEnd(List<ParsedPage.PageElement> elements, int root) {
+        int depth = elements.get(root).depth;
+        int end = root + 1;
+        while (end < elements.size() && elements.get(end).depth > depth) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Element index of the first element the locator matches on a page, or -1
+     */
+    static int locate(String locator, ParsedPage page) {
+        if (locator == null || locator.isBlank()) {
+            return -1;
+        }
+        try {
+            String xpath = LocatorMatcher.ensureXPath(locator, page);
+            if (xpath == null) {
+                return -1;
+            }
+            List<Integer> selected = page.select(xpath, null);
+            if (!selected.isEmpty()) {
+                return selected.get(0);
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Could not evaluate " + locator + " on the previous page: " + e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * Shortest XPath of the form {@code //*[@attr='v']}, or an ancestor addressed that way followed by
+     * positional child steps, that selects exactly the element
+     */
+    static String uniqueXPath(ParsedPage page, int index) {
+        List<ParsedPage.PageElement> elements = page.getElements();
+        String steps = "";
+        for (int i = index; i >= 0; i = elements.get(i).parentIndex) {
+            String anchor = uniquePredicate(page, elements.get(i));
+            if (anchor != null) {
+                return "//*" + anchor + steps;
+            }
+            steps = "/" + elements.get(i).tagName + "[" + positionAmongSameTag(elements.get(i)) + "]" + steps;
+        }
+        return steps;
+    }
+
+    private static String uniquePredicate(ParsedPage page, ParsedPage.PageElement element) {
+        for (String name : UNIQUE_ATTRIBUTES) {
+            String value = element.attr(name);
+            if (value == null || value.isEmpty()) {
+                continue;
+            }
+            Map<String, Integer> counts = page.derive("attribute-counts:" + name, () -> {
+                Map<String, Integer> byValue = new HashMap<>();
+                for (ParsedPage.PageElement e : page.getElements()) {
+                    String v = e.attr(name);
+                    if (v != null && !v.isEmpty()) {
+                        byValue.merge(v, 1, Integer::sum);
+                    }
+                }
+                return byValue;
+            });
+            if (counts.getOrDefault(value, 0) == 1) {
+                return "[@" + name + "=" + XPathSupport.literal(value) + "]";
+            }
+        }
+        return null;
+    }
+
+    private static int positionAmongSameTag(ParsedPage.PageElement element) {
+        int position = 1;
+        for (Node sibling = element.node.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling()) {
+            if (sibling.getNodeType() == Node.ELEMENT_NODE && sibling.getNodeName().equals(element.tagName)) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Outcome of following an old target to the current page
+     */
+    public static final class Heal {
+        public final PageDiff diff;
+        public final int oldTarget;
+        /** Counterpart on the current page, -1 when the element is gone or changed beyond matching */
+        public final int newTarget;
+        public final String healedLocator;
+        public final Kind kind;
+        /** New or changed elements around the target on the current page, for the LLM when the heal is not trusted */
+        public final BitSet region;
+
+        Heal(PageDiff diff, int oldTarget, int newTarget, String healedLocator, Kind kind, BitSet region) {
+            this.diff = diff;
+            this.oldTarget = oldTarget;
+            this.newTarget = newTarget;
+            this.healedLocator = healedLocator;
+            this.kind = kind;
+            this.region = region;
+        }
+
+        public double getConfidence() {
+            return kind != null && healedLocator != null ? kind.getConfidence() : 0.0;
+        }
+
+        /**
+         * The element the locator matched on the previous page, rendered like the context
+         */
+        public String describeOldTarget() {
+            return PageChunker.render(diff.oldPage.getElements().get(oldTarget));
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package self.heal.locators.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import self.heal.locators.config.RagConfiguration;
+
+/**
+ * Shrinks retrieved page context before it goes into a prompt. One pass over the markup:
+ * <ul>
+ *     <li>attributes holding their default value ({@code clickable="false"}, {@code enabled="true"}, empty text)
+ *     and volatile ones ({@code bounds}) are dropped</li>
+ *     <li>the first {@code package} value becomes a header, elements of that package no longer repeat it</li>
+ *     <li>class name prefixes such as {@code android.widget.} are cut from tag names and class values, and a
+ *     {@code class} equal to the tag name is dropped</li>
+ *     <li>runs of spaces outside of attribute values are collapsed, trailing spaces and blank lines removed</li>
+ * </ul>
+ * Attribute values are never rewritten apart from the class prefix, so an XPath written against the minified
+ * context still holds on the page once {@link #restoreLocator(String, ParsedPage)} has put the prefixes back.
+ * Instances are immutable and thread-safe.
+ */
+public final class PageMinifier {
+
+    private static final String PACKAGE = "package";
+    private static final String CLASS = "class";
+
+    // @class='TextView' in a healed XPath
+    private static final Pattern CLASS_LITERAL = Pattern.compile("(@class\\s*=\\s*)(['\"])([A-Za-z_][\\w$]*)\\2");
+
+    private final Map<String, String> defaultValues;
+    private final Set<String> droppedAttributes;
+    private final List<String> shortenedPrefixes;
+    private final boolean collapsePackage;
+
+    public PageMinifier(Map<String, String> defaultValues, Collection<String> droppedAttributes,
+                        List<String> shortenedPrefixes, boolean collapsePackage) {
+        this.defaultValues = defaultValues != null ? new LinkedHashMap<>(defaultValues) : Collections.emptyMap();
+        this.droppedAttributes = droppedAttributes != null ? new HashSet<>(droppedAttributes) : Collections.emptySet();
+        this.shortenedPrefixes = shortenedPrefixes != null ? List.copyOf(shortenedPrefixes) : Collections.emptyList();
+        this.collapsePackage = collapsePackage;
+    }
+
+    public static PageMinifier of(RagConfiguration ragConfig) {
+        return new PageMinifier(ragConfig.getMinifyDefaultValues(), ragConfig.getMinifyDropAttributes(),
+            ragConfig.getMinifyShortenedPrefixes(), ragConfig.isMinifyCollapsePackage());
+    }
+
+    /**
+     * Minify page markup (rendered context or raw page source)
+     */
+    public Minified minify(String markup) {
+        if (markup == null || markup.isEmpty()) {
+            return new Minified("", "", 0);
+        }
+        return new Scan(markup).run();
+    }
+
+    /**
+     * Put the shortened class prefixes back into an XPath written against minified context. A step or
+     * {@code @class} literal is only expanded when the short name is no tag of the page and the prefixed one is,
+     * so locators already valid on the page are returned unchanged.
+     */
+    public String restoreLocator(String locator, ParsedPage page) {
+        if (locator == null || locator.isEmpty() || shortenedPrefixes.isEmpty() || page == null) {
+            return locator;
+        }
+        Set<String> tags = page.derive("tag-names", () -> {
+            Set<String> names = new HashSet<>();
+            for (ParsedPage.PageElement element : page.getElements()) {
+                names.add(element.tagName);
+            }
+            return names;
+        });
+        StringBuilder out = new StringBuilder(locator.length() + 16);
+        int length = locator.length();
+        int i = 0;
+        while (i < length) {
+            char c = locator.charAt(i);
+            if (c == '\'' || c == '"') {
+                int close = locator.indexOf(c, i + 1);
+                int end = close < 0 ? length : close + 1;
+                out.append(locator, i, end);
+                i = end;
+            } else if (Character.isLetter(c) || c == '_') {
+                int end = i + 1;
+                while (end < length && isNameChar(locator.charAt(end))) {
+                    end++;
+                }
+                String name = locator.substring(i, end);
+                out.append(isStep(locator, i, end) ? expand(name, tags) : name);
+                i = end;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        Matcher m = CLASS_LITERAL.matcher(out);
+        StringBuilder restored = new StringBuilder(out.length() + 16);
+        while (m.find()) {
+            m.appendReplacement(restored, Matcher.quoteReplacement(m.group(1) + m.group(2) + expand(m.group(3), tags) + m.group(2)));
+        }
+        m.appendTail(restored);
+        return restored.toString();
+    }
+
+    private String expand(String name, Set<String> tags) {
+        if (tags.contains(name)) {
+            return name;
+        }
+        for (String prefix : shortenedPrefixes) {
+            if (tags.contains(prefix + name)) {
+                return prefix + name;
+            }
+        }
+        return name;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+    }
+
+    // A name test: after "/", "(", "|", "::" or at the start, and not followed by "(" (function) or "::" (axis)
+    private static boolean isStep(String xpath, int start, int end) {
+        int before = start - 1;
+        while (before >= 0 && xpath.charAt(before) == ' ') {
+            before--;
+        }
+        if (before >= 0) {
+            char p = xpath.charAt(before);
+            if (p != '/' && p != '(' && p != '|' && p != ':') {
+                return false;
+            }
+        }
+        int after = end;
+        while (after < xpath.length() && xpath.charAt(after) == ' ') {
+            after++;
+        }
+        return after == xpath.length() || (xpath.charAt(after) != '(' && xpath.charAt(after) != ':');
+    }
+
+    /**
+     * Minified markup with the header lines it relies on, and its size before minification
+     */
+    public static final class Minified {
+        private final String header;
+        private final String body;
+        private final int originalLength;
+
+        Minified(String header, String body, int originalLength) {
+            this.header = header;
+            this.body = body;
+            this.originalLength = originalLength;
+        }
+
+        /**
+         * Header lines (collapsed package, cut prefixes) followed by the body, as sent to the LLM
+         */
+        public String getText() {
+            return header.isEmpty() ? body : header + "\n" + body;
+        }
+
+        /**
+         * Minified markup without the header, for sizing fragments that share one header
+         */
+        public String getBody() {
+            return body;
+        }
+
+        public int getOriginalLength() {
+            return originalLength;
+        }
+
+        public int length() {
+            return header.isEmpty() ? body.length() : header.length() + 1 + body.length();
+        }
+    }
+
+    // One pass over the markup: text is copied with collapsed whitespace, tags are re-emitted attribute by attribute
+    private final class Scan {
+        final String in;
+        final int length;
+        final StringBuilder out;
+        String packageName;
+        boolean prefixCut;
+        int i;
+
+        Scan(String in) {
+            this.in = in;
+            this.length = in.length();
+            this.out = new StringBuilder(in.length() / 2);
+        }
+
+        Minified run() {
+            boolean lineStart = true;
+            boolean pendingSpace = false;
+            int lineBegin = 0;
+            while (i < length) {
+                char c = in.charAt(i);
+                if (c == '\n' || c == '\r') {
+                    // trailing spaces and blank lines go away, indentation of the next line is kept
+                    if (lineStart) {
+                        out.setLength(lineBegin);
+                    } else {
+                        out.append('\n');
+                    }
+                    lineBegin = out.length();
+                    lineStart = true;
+                    pendingSpace = false;
+                    i++;
+                } else if (c == ' ' || c == '\t') {
+                    if (lineStart) {
+                        out.append(c);
+                    } else {
+                        pendingSpace = true;
+                    }
+                    i++;
+                } else {
+                    if (pendingSpace) {
+                        out.append(' ');
+                        pendingSpace = false;
+                    }
+                    lineStart = false;
+                    if (c == '<') {
+                        markup();
+                    } else {
+                        out.append(c);
+                        i++;
+                    }
+                }
+            }
+            trimTrailing();
+            return new Minified(header(), out.toString(), length);
+        }
+
+        private void trimTrailing() {
+            int end = out.length();
+            while (end > 0 && Character.isWhitespace(out.charAt(end - 1))) {
+                end--;
+            }
+            out.setLength(end);
+        }
+
+        private String header() {
+            StringBuilder header = new StringBuilder();
+            if (packageName != null) {
+                header.append("<!-- package=\"").append(packageName).append("\" on every element unless stated -->");
+            }
+            if (prefixCut) {
+                if (header.length() > 0) {
+                    header.append('\n');
+                }
+                header.append("<!-- class prefixes omitted: ").append(String.join(", ", shortenedPrefixes)).append(" -->");
+            }
+            return header.toString();
+        }
+
+        private void markup() {
+            if (in.startsWith("<!--", i)) {
+                int close = in.indexOf("-->", i + 4);
+                int end = close < 0 ? length : close + 3;
+                out.append(shorten(in.substring(i, end)));
+                i = end;
+            } else if (in.startsWith("<?", i) || in.startsWith("<!", i)) {
+                int close = in.indexOf('>', i);
+                int end = close < 0 ? length : close + 1;
+                out.append(in, i, end);
+                i = end;
+            } else {
+                tag();
+            }
+        }
+
+        private void tag() {
+            int start = i;
+            i++;
+            boolean closing = i < length && in.charAt(i) == '/';
+            if (closing) {
+                i++;
+            }
+            int nameStart = i;
+            while (i < length && !Character.isWhitespace(in.charAt(i)) && in.charAt(i) != '>' && in.charAt(i) != '/') {
+                i++;
+            }
+            String tagName = in.substring(nameStart, i);
+            if (tagName.isEmpty()) {
+                // a lone '<' in text
+                out.append(in, start, i);
+                return;
+            }
+            out.append(closing ? "</" : "<").append(shorten(tagName));
+            while (i < length) {
+                char c = in.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '>') {
+                    out.append('>');
+                    i++;
+                    return;
+                } else if (c == '/') {
+                    out.append('/');
+                    i++;
+                } else {
+                    attribute(tagName);
+                }
+            }
+        }
+
+        private void attribute(String tagName) {
+            int nameStart = i;
+            while (i < length && !Character.isWhitespace(in.charAt(i)) && "=>/".indexOf(in.charAt(i)) < 0) {
+                i++;
+            }
+            String name = in.substring(nameStart, i);
+            while (i < length && Character.isWhitespace(in.charAt(i))) {
+                i++;
+            }
+            if (i >= length || in.charAt(i) != '=') {
+                // valueless (HTML) attribute
+                out.append(' ').append(name);
+                return;
+            }
+            i++;
+            while (i < length && Character.isWhitespace(in.charAt(i))) {
+                i++;
+            }
+            char quote = i < length ? in.charAt(i) : '"';
+            String value;
+            if (quote == '"' || quote == '\'') {
+                int close = in.indexOf(quote, i + 1);
+                int end = close < 0 ? length : close;
+                value = in.substring(i + 1, end);
+                i = Math.min(length, end + 1);
+            } else {
+                int valueStart = i;
+                while (i < length && !Character.isWhitespace(in.charAt(i)) && in.charAt(i) != '>') {
+                    i++;
+                }
+                value = in.substring(valueStart, i);
+                quote = '"';
+            }
+            if (dropped(name, value, tagName)) {
+                return;
+            }
+            if (CLASS.equals(name)) {
+                value = shorten(value);
+            }
+            out.append(' ').append(name).append('=').append(quote).append(value).append(quote);
+        }
+
+        private boolean dropped(String name, String value, String tagName) {
+            if (droppedAttributes.contains(name) || value.equals(defaultValues.get(name))) {
+                return true;
+            }
+            if (CLASS.equals(name) && value.equals(tagName) && !shortenedPrefixes.isEmpty()) {
+                return true;
+            }
+            if (collapsePackage && PACKAGE.equals(name)) {
+                if (packageName == null) {
+                    packageName = value;
+                }
+                return value.equals(packageName);
+            }
+            return false;
+        }
+
+        private String shorten(String text) {
+            String result = text;
+            for (String prefix : shortenedPrefixes) {
+                if (result.contains(prefix)) {
+                    result = result.replace(prefix, "");
+                    prefixCut = true;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package self.heal.locators.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.log4j.Logger;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import self.heal.locators.config.HealingConfiguration;
+import self.heal.locators.model.HealedElement;
+import self.heal.locators.model.PageSourceBlob;
+import self.heal.locators.utils.BoundedCache;
+
+/**
+ * Content-addressed store of page sources. A healing keeps only the SHA-256 of its page source (the key of the
+ * parsed page cache too); the text is stored once per distinct page in page_source_blob, deflate-compressed, so
+ * healed_element no longer carries a copy of the page per document.
+ * <p>
+ * Page sources are loaded lazily: from the parsed page cache when the page is still in memory, then from a small
+ * cache of inflated blobs, then from Mongo. Documents written before the store existed keep their inline page
+ * source until {@link #migrate()} moves it out.
+ */
+@Service
+public class PageSourceStore {
+
+    private static final Logger LOGGER = Logger.getLogger(PageSourceStore.class);
+
+    private static final String ENCODING = "deflate";
+    private static final int MIGRATION_BATCH_SIZE = 100;
+    // Hashes known to be stored, so a page healed again is not compressed and upserted again
+    private static final int KNOWN_HASHES = 10000;
+
+    private final HealingConfiguration healingConfig;
+    private final MongoTemplate mongoTemplate;
+    private final ParsedPageCache parsedPageCache;
+    private final BoundedCache<String, Boolean> storedHashes = new BoundedCache<>(KNOWN_HASHES);
+    private final BoundedCache<String, String> loaded;
+    private final AtomicBoolean migrating = new AtomicBoolean();
+
+    private final AtomicLong blobsWritten = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesStored = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    @Autowired
+    public PageSourceStore(HealingConfiguration healingConfig, MongoTemplate mongoTemplate, ParsedPageCache parsedPageCache) {
+        this.healingConfig = healingConfig;
+        this.mongoTemplate = mongoTemplate;
+        this.parsedPageCache = parsedPageCache;
+        this.loaded = new BoundedCache<>(healingConfig.getPageSourceCacheSize());
+    }
+
+    public boolean isEnabled() {
+        return healingConfig.isPageSourceStoreEnabled();
+    }
+
+    /**
+     * Set the page source hash of a healing that has an inline page source
+     */
+    public void assignHash(HealedElement healing) {
+        if (isEnabled() && healing.getPageSourceHash() == null && healing.getPageSource() != null) {
+            healing.setPageSourceHash(ParsedPage.hash(healing.getPageSource()));
+        }
+    }
+
+    /**
+     * Compressed blobs of the page sources of these healings that are not known to be stored yet, one per hash
+     */
+    public List<PageSourceBlob> pendingBlobs(Collection<HealedElement> healings) {
+        Map<String, PageSourceBlob> blobs = new LinkedHashMap<>();
+        for (HealedElement healing : healings) {
+            assignHash(healing);
+            addPending(blobs, healing.getPageSourceHash(), healing.getPageSource());
+        }
+        return new ArrayList<>(blobs.values());
+    }
+
+    /**
+     * Add the compressed blob of a page source to {@code blobs} unless it is known to be stored or already there
+     */
+    public void addPending(Map<String, PageSourceBlob> blobs, String hash, String pageSource) {
+        if (hash != null && pageSource != null && !blobs.containsKey(hash) && storedHashes.get(hash) == null) {
+            blobs.put(hash, blob(hash, pageSource));
+        }
+    }
+
+    /**
+     * Add blobs to a bulk as inserts that leave an existing blob untouched
+     */
+    public void upsertBlobs(BulkOperations bulk, List<PageSourceBlob> blobs) {
+        for (PageSourceBlob blob : blobs) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(blob, document);
+            document.remove("_id");
+            Update update = new Update();
+            document.forEach(update::setOnInsert);
+            bulk.upsert(new Query(Criteria.where("_id").is(blob.getHash())), update);
+        }
+    }
+
+    /**
+     * Record blobs as written once their bulk succeeded
+     */
+    public void markStored(List<PageSourceBlob> blobs) {
+        for (PageSourceBlob blob : blobs) {
+            storedHashes.put(blob.getHash(), Boolean.TRUE);
+            blobsWritten.incrementAndGet();
+            bytesIn.addAndGet(blob.getOriginalLength());
+            bytesStored.addAndGet(blob.getCompressedLength());
+        }
+    }
+
+    /**
+     * Store the page source of a healing now and leave only its hash on it, for synchronous saves
+     */
+    public void externalize(HealedElement healing) {
+        if (!isEnabled() || healing.getPageSource() == null) {
+            return;
+        }
+        List<PageSourceBlob> blobs = pendingBlobs(List.of(healing));
+        if (!blobs.isEmpty()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PageSourceBlob.class);
+            upsertBlobs(bulk, blobs);
+            bulk.execute();
+            markStored(blobs);
+        }
+        healing.setPageSource(null);
+    }
+
+    /**
+     * Parsed page a healing was made on, shared through the parsed page cache
+     *
+     * @return the page, or null when the healing has no page source or its blob is missing
+     */
+    public ParsedPage page(HealedElement healing) {
+        if (healing.getPageSourceHash() != null) {
+            ParsedPage cached = parsedPageCache.getCache().get(healing.getPageSourceHash());
+            if (cached != null) {
+                return cached;
+            }
+        }
+        String pageSource = pageSource(healing);
+        return pageSource != null && !pageSource.isEmpty() ? parsedPageCache.get(pageSource) : null;
+    }
+
+    /**
+     * Parsed page of a stored page source by hash
+     *
+     * @return the page, or null when no blob has it
+     */
+    public ParsedPage page(String hash) {
+        ParsedPage cached = parsedPageCache.getCache().get(hash);
+        if (cached != null) {
+            return cached;
+        }
+        String pageSource = load(hash);
+        return pageSource != null && !pageSource.isEmpty() ? parsedPageCache.get(pageSource) : null;
+    }
+
+    /**
+     * Page source of a healing, inline or loaded from its blob
+     */
+    public String pageSource(HealedElement healing) {
+        if (healing.getPageSource() != null) {
+            return healing.getPageSource();
+        }
+        return healing.getPageSourceHash() != null ? load(healing.getPageSourceHash()) : null;
+    }
+
+    /**
+     * Page source by hash, or null when no blob has it
+     */
+    public String load(String hash) {
+        return loaded.computeIfAbsent(hash, this::read);
+    }
+
+    /**
+     * Page source by hash straight from Mongo, for bulk readers that would only churn the cache
+     */
+    public String read(String hash) {
+        PageSourceBlob blob = mongoTemplate.findById(hash, PageSourceBlob.class);
+        if (blob == null) {
+            LOGGER.warn("Page source blob " + hash + " not found");
+            return null;
+        }
+        loads.incrementAndGet();
+        storedHashes.put(hash, Boolean.TRUE);
+        return inflate(blob);
+    }
+
+    /**
+     * Move inline page sources of healed_element into the blob store. Streams the documents that still have one,
+     * writes each distinct page once and replaces the inline copy with its hash, in bulks of 100.
+     */
+    public Map<String, Object> migrate() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        if (!isEnabled()) {
+            summary.put("message", "Page source store is disabled");
+            return summary;
+        }
+        if (!migrating.compareAndSet(false, true)) {
+            summary.put("message", "Page source migration already running");
+            return summary;
+        }
+        long start = System.currentTimeMillis();
+        long scanned = 0;
+        long migratedBytes = 0;
+        long blobsBefore = blobsWritten.get();
+        long storedBefore = bytesStored.get();
+        try {
+            Query query = new Query(Criteria.where("pageSource").exists(true).ne(null));
+            query.fields().include("_id", "pageSource", "pageSourceHash");
+            query.cursorBatchSize(MIGRATION_BATCH_SIZE);
+            List<HealedElement> batch = new ArrayList<>(MIGRATION_BATCH_SIZE);
+            try (Stream<HealedElement> rows = mongoTemplate.stream(query, HealedElement.class)) {
+                for (HealedElement row : (Iterable<HealedElement>) rows::iterator) {
+                    scanned++;
+                    migratedBytes += row.getPageSource().length();
+                    batch.add(row);
+                    if (batch.size() == MIGRATION_BATCH_SIZE) {
+                        migrateBatch(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                migrateBatch(batch);
+            }
+            summary.put("documents", scanned);
+            summary.put("inline_chars", migratedBytes);
+            summary.put("blobs_written", blobsWritten.get() - blobsBefore);
+            summary.put("blob_bytes_written", bytesStored.get() - storedBefore);
+            summary.put("duration_ms", System.currentTimeMillis() - start);
+            LOGGER.info("Page source migration: " + summary);
+            return summary;
+        } finally {
+            migrating.set(false);
+        }
+    }
+
+    private void migrateBatch(List<HealedElement> batch) {
+        List<PageSourceBlob> blobs = pendingBlobs(batch);
+        if (!blobs.isEmpty()) {
+            BulkOperations blobBulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PageSourceBlob.class);
+            upsertBlobs(blobBulk, blobs);
+            blobBulk.execute();
+            markStored(blobs);
+        }
+        // the inline copy is only removed once its blob is stored
+        BulkOperations healBulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, HealedElement.class);
+        for (HealedElement row : batch) {
+            healBulk.updateOne(new Query(Criteria.where("_id").is(row.getId())),
+                new Update().set("pageSourceHash", row.getPageSourceHash()).unset("pageSource"));
+        }
+        healBulk.execute();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("blobs_written", blobsWritten.get());
+        stats.put("bytes_in", bytesIn.get());
+        stats.put("bytes_stored", bytesStored.get());
+        stats.put("blob_loads", loads.get());
+        stats.put("known_hashes", storedHashes.size());
+        stats.put("migrating", migrating.get());
+        return stats;
+    }
+
+    private PageSourceBlob blob(String hash, String pageSource) {
+        byte[] raw = pageSource.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = deflate(raw, healingConfig.getPageSourceCompressionLevel());
+        PageSourceBlob blob = new PageSourceBlob();
+        blob.setHash(hash);
+        blob.setData(compressed);
+        blob.setEncoding(ENCODING);
+        blob.setOriginalLength(raw.length);
+        blob.setCompressedLength(compressed.length);
+        blob.setCreatedAt(System.currentTimeMillis());
+        return blob;
+    }
+
+    static byte[] deflate(byte[] raw, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 8));
+            byte[] buffer = new byte[16384];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String inflate(PageSourceBlob blob) {
+        if (!ENCODING.equals(blob.getEncoding())) {
+            throw new IllegalStateException("Unsupported page source encoding " + blob.getEncoding());
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob.getData());
+            byte[] raw = new byte[blob.getOriginalLength()];
+            int length = 0;
+            while (!inflater.finished() && length < raw.length) {
+                int n = inflater.inflate(raw, length, raw.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            return new String(raw, 0, length, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt page source blob " + blob.getHash(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package self.heal.locators.service;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import javax.xml.xpath.XPathExpressionException;
+
+import org.apache.log4j.Logger;
+import org.jsoup.Jsoup;
+import org.jsoup.helper.W3CDom;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Page source parsed once and shared by every step of a healing request.
+ * Holds the W3C DOM, the lowercased source, a flat element/attribute table and the detected automation type.
+ * All views are built lazily on first use and are read-only afterwards.
+ * <p>
+ * A cached page is handed by {@link ParsedPageCache} to concurrent requests, and the batch endpoint resolves
+ * several locators on it in parallel. Xerces does not guarantee that concurrent reads of one DOM are safe, so
+ * XPath is only evaluated through {@link #matches} / {@link #select}: an evaluation uses the DOM no other thread
+ * is evaluating on, the primary one when it is free, otherwise a spare copy parsed from the same source and kept
+ * for the next concurrent reader. Outside XPath, the DOM is only read through sibling pointers, attribute maps and
+ * text content.
+ */
+public class ParsedPage {
+
+    private static final Logger LOGGER = Logger.getLogger(ParsedPage.class);
+
+    // Attributes that describe the page skeleton; bounds, text and state attributes change between devices/runs
+    private static final String[] STRUCTURAL_ATTRIBUTES = {"resource-id", "id", "name", "type"};
+    // DOM copies kept per page for concurrent XPath evaluation, more readers parse a throwaway copy
+    private static final int MAX_SPARE_DOCUMENTS = 4;
+
+    private final String pageSource;
+    private volatile String contentHash;
+
+    private volatile String lowerCase;
+    private volatile ContextAnalyzerService.AutomationType automationType;
+    private volatile org.w3c.dom.Document document;
+    private volatile boolean documentParsed;
+    private volatile List<PageElement> elements;
+    private volatile String structureFingerprint;
+
+    // Per-page results derived by the services (RAG context per locator, analysis, ...)
+    private final Map<String, Object> derived = new ConcurrentHashMap<>();
+
+    // XPath evaluation on the primary DOM in progress, and the copies for concurrent evaluations
+    private final AtomicBoolean primaryInUse = new AtomicBoolean();
+    private final Queue<DocumentCopy> spareDocuments = new ConcurrentLinkedQueue<>();
+
+    ParsedPage(String pageSource, String contentHash) {
+        this.pageSource = pageSource != null ? pageSource : "";
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Build an uncached page, for callers that only have a raw page source
+     */
+    public static ParsedPage of(String pageSource) {
+        return new ParsedPage(pageSource, null);
+    }
+
+    /**
+     * SHA-256 hex digest of the page source, used as cache key
+     */
+    public static String hash(String pageSource) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest((pageSource != null ? pageSource : "").getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public String getPageSource() {
+        return pageSource;
+    }
+
+    public String getContentHash() {
+        String hash = contentHash;
+        if (hash == null) {
+            hash = hash(pageSource);
+            contentHash = hash;
+        }
+        return hash;
+    }
+
+    public boolean isEmpty() {
+        return pageSource.isEmpty();
+    }
+
+    public int length() {
+        return pageSource.length();
+    }
+
+    public String getLowerCase() {
+        String lower = lowerCase;
+        if (lower == null) {
+            lower = pageSource.toLowerCase();
+            lowerCase = lower;
+        }
+        return lower;
+    }
+
+    public ContextAnalyzerService.AutomationType getAutomationType() {
+        ContextAnalyzerService.AutomationType type = automationType;
+        if (type == null) {
+            type = ContextAnalyzerService.detectAutomationTypeInLowerCase(getLowerCase());
+            automationType = type;
+        }
+        return type;
+    }
+
+    /**
+     * W3C DOM of the page. XML parse first (Android / iOS page sources), Jsoup HTML parse as fallback.
+     * The returned document must be treated as read-only, and XPath evaluated through {@link #matches} or
+     * {@link #select} rather than on it directly.
+     *
+     * @return parsed document, or null if the page could not be parsed at all
+     */
+    public org.w3c.dom.Document getDocument() {
+        if (!documentParsed) {
+            synchronized (this) {
+                if (!documentParsed) {
+                    document = parseDocument(pageSource);
+                    documentParsed = true;
+                }
+            }
+        }
+        return document;
+    }
+
+    /**
+     * @return whether the DOM has already been built (no parsing is triggered)
+     */
+    public boolean isDocumentParsed() {
+        return documentParsed;
+    }
+
+    /**
+     * Flat list of all elements in document order with their attributes, built in one DOM walk
+     */
+    public List<PageElement> getElements() {
+        List<PageElement> list = elements;
+        if (list == null) {
+            synchronized (this) {
+                list = elements;
+                if (list == null) {
+                    list = Collections.unmodifiableList(buildElements(getDocument()));
+                    elements = list;
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * SHA-256 of the tag / resource-id skeleton of the page (depth, tag, structural ids), ignoring bounds,
+     * text and state attributes. Two captures of the same screen on different devices share the fingerprint.
+     * Falls back to the content hash when the page cannot be parsed.
+     */
+    public String getStructureFingerprint() {
+        String fingerprint = structureFingerprint;
+        if (fingerprint == null) {
+            List<PageElement> list = getElements();
+            if (list.isEmpty()) {
+                fingerprint = getContentHash();
+            } else {
+                StringBuilder skeleton = new StringBuilder(list.size() * 32);
+                for (PageElement element : list) {
+                    skeleton.append(element.depth).append(':').append(element.tagName);
+                    for (String name : STRUCTURAL_ATTRIBUTES) {
+                        String value = element.attr(name);
+                        if (value != null && !value.isEmpty()) {
+                            skeleton.append('|').append(name).append('=').append(value);
+                        }
+                    }
+                    skeleton.append('\n');
+                }
+                fingerprint = hash(skeleton.toString());
+            }
+            structureFingerprint = fingerprint;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Whether an XPath expression template selects at least one node of the page
+     *
+     * @param template : expression, may reference the value as {@code $value} / {@code $valueLower}
+     * @param value    : value bound to the template variables, or null
+     * @throws XPathExpressionException if the expression does not compile
+     */
+    public boolean matches(String template, String value) throws XPathExpressionException {
+        return evaluate(template, value, (nodes, positions) -> nodes != null && nodes.getLength() > 0, false);
+    }
+
+    /**
+     * Elements an XPath expression template selects, as indexes in {@link #getElements()} in document order.
+     * Selected nodes that are not elements (attributes, text) are left out.
+     *
+     * @throws XPathExpressionException if the expression does not compile
+     */
+    public List<Integer> select(String template, String value) throws XPathExpressionException {
+        return evaluate(template, value, (nodes, positions) -> {
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; nodes != null && i < nodes.getLength(); i++) {
+                Integer index = positions.get(nodes.item(i));
+                if (index != null) {
+                    indexes.add(index);
+                }
+            }
+            return indexes;
+        }, true);
+    }
+
+    // Evaluate on a DOM this thread has to itself; the result is read before the DOM is handed back
+    private <T> T evaluate(String template, String value, BiFunction<NodeList, Map<Node, Integer>, T> read,
+                           boolean needPositions) throws XPathExpressionException {
+        org.w3c.dom.Document primary = getDocument();
+        if (primary == null) {
+            return read.apply(null, Collections.emptyMap());
+        }
+        if (primaryInUse.compareAndSet(false, true)) {
+            try {
+                Map<Node, Integer> positions = needPositions
+                    ? derive("element-positions", () -> positions(getElements())) : Collections.emptyMap();
+                return read.apply(XPathSupport.nodes(primary, template, value), positions);
+            } finally {
+                primaryInUse.set(false);
+            }
+        }
+        DocumentCopy copy = spareDocuments.poll();
+        if (copy == null) {
+            copy = new DocumentCopy(parseDocument(pageSource));
+        }
+        try {
+            return read.apply(XPathSupport.nodes(copy.document, template, value), copy.positions);
+        } finally {
+            if (spareDocuments.size() < MAX_SPARE_DOCUMENTS) {
+                spareDocuments.offer(copy);
+            }
+        }
+    }
+
+    private static Map<Node, Integer> positions(List<PageElement> elements) {
+        Map<Node, Integer> positions = new IdentityHashMap<>(elements.size() * 2);
+        for (PageElement element : elements) {
+            positions.put(element.node, element.index);
+        }
+        return positions;
+    }
+
+    /**
+     * Memoize a value derived from this page, so repeated steps of the same request reuse it
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T derive(String key, Supplier<T> supplier) {
+        Object value = derived.get(key);
+        if (value == null) {
+            value = supplier.get();
+            if (value != null) {
+                Object previous = derived.putIfAbsent(key, value);
+                if (previous != null) {
+                    value = previous;
+                }
+            }
+        }
+        return (T) value;
+    }
+
+    private static org.w3c.dom.Document parseDocument(String pageSource) {
+        if (pageSource.isEmpty()) {
+            return null;
+        }
+        try {
+            // Per-thread builder: XXE protected, fully expanded DOM
+            return XPathSupport.documentBuilder().parse(new ByteArrayInputStream(pageSource.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception xmlEx) {
+            try {
+                // fallback: parse as HTML with Jsoup and convert to W3C DOM
+                return new W3CDom().fromJsoup(Jsoup.parse(pageSource));
+            } catch (Exception htmlEx) {
+                LOGGER.warn("Unable to parse page source: " + htmlEx.getMessage());
+                return null;
+            }
+        }
+    }
+
+    // Parsed from the same source, so its elements come in the same order as the primary DOM's
+    private static final class DocumentCopy {
+        final org.w3c.dom.Document document;
+        final Map<Node, Integer> positions;
+
+        DocumentCopy(org.w3c.dom.Document document) {
+            this.document = document;
+            this.positions = positions(buildElements(document));
+        }
+    }
+
+    private static List<PageElement> buildElements(org.w3c.dom.Document doc) {
+        List<PageElement> list = new ArrayList<>();
+        if (doc == null || doc.getDocumentElement() == null) {
+            return list;
+        }
+        // Iterative pre-order walk using sibling pointers only (no NodeList caches on the shared DOM)
+        List<Integer> parentStack = new ArrayList<>();
+        Node node = doc.getDocumentElement();
+        int parentIndex = -1;
+        while (node != null) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                PageElement element = new PageElement((Element) node, list.size(), parentIndex, parentStack.size());
+                list.add(element);
+                if (node.getFirstChild() != null) {
+                    parentStack.add(parentIndex);
+                    parentIndex = element.index;
+                    node = node.getFirstChild();
+                    continue;
+                }
+            }
+            while (node != null && node.getNextSibling() == null) {
+                node = node.getParentNode();
+                if (node == null || node.getNodeType() == Node.DOCUMENT_NODE || parentStack.isEmpty()) {
+                    node = null;
+                    break;
+                }
+                parentIndex = parentStack.remove(parentStack.size() - 1);
+            }
+            if (node != null) {
+                node = node.getNextSibling();
+            }
+        }
+        return list;
+    }
+
+    /**
+     * One element of the page with its attributes and own (direct child) text
+     */
+    public static class PageElement {
+        public final Element node;
+        public final String tagName;
+        public final Map<String, String> attributes;
+        public final String ownText;
+        public final int index;
+        public final int parentIndex;
+        public final int depth;
+
+        PageElement(Element node, int index, int parentIndex, int depth) {
+            this.node = node;
+            this.tagName = node.getNodeName();
+            this.index = index;
+            this.parentIndex = parentIndex;
+            this.depth = depth;
+
+            Map<String, String> attrs = new LinkedHashMap<>();
+            NamedNodeMap map = node.getAttributes();
+            if (map != null) {
+                for (int i = 0; i < map.getLength(); i++) {
+                    Node attr = map.item(i);
+                    attrs.put(attr.getNodeName(), attr.getNodeValue());
+                }
+            }
+            this.attributes = Collections.unmodifiableMap(attrs);
+
+            StringBuilder text = new StringBuilder();
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                    text.append(child.getNodeValue());
+                }
+            }
+            this.ownText = text.toString().trim();
+        }
+
+        public String attr(String name) {
+            return attributes.get(name);
+        }
+
+        public String tagNameLower() {
+            return tagName.toLowerCase(Locale.ROOT);
+        }
+    }
+}
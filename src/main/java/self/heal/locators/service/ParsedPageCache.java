@@ -0,0 +1,34 @@
+package self.heal.locators.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import self.heal.locators.config.HealingConfiguration;
+import self.heal.locators.utils.BoundedCache;
+
+/**
+ * Bounded cache of {@link ParsedPage} keyed by the SHA-256 of the page source.
+ * The same page posted by several devices / retries is parsed only once.
+ */
+@Service
+public class ParsedPageCache {
+
+    private final BoundedCache<String, ParsedPage> cache;
+
+    @Autowired
+    public ParsedPageCache(HealingConfiguration healingConfig) {
+        this.cache = new BoundedCache<>(healingConfig.getParsedPageCacheSize(), healingConfig.getParsedPageCacheTtlMs());
+    }
+
+    /**
+     * Return the shared parsed view of the page source, parsing it on first use
+     */
+    public ParsedPage get(String pageSource) {
+        String hash = ParsedPage.hash(pageSource);
+        return cache.computeIfAbsent(hash, key -> new ParsedPage(pageSource, key));
+    }
+
+    public BoundedCache<String, ParsedPage> getCache() {
+        return cache;
+    }
+}
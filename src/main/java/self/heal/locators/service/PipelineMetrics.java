@@ -0,0 +1,146 @@
+package self.heal.locators.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Per-stage timing of the healing pipeline (DOM parse, presence check, RAG retrieval, prompt build, LLM call per
+ * provider, response parse, persistence...). Every stage is a {@value #STAGE_TIMER} timer tagged with the stage
+ * and the provider, published through the actuator metrics endpoint with p50/p95/p99/p999 and a percentile
+ * histogram, whose buckets add up across instances.
+ * <p>
+ * A request times its stages through {@link Stages}, which also keeps the breakdown of that request for its
+ * rag_stats block and its rag_performance record.
+ */
+@Service
+public class PipelineMetrics {
+
+    public static final String STAGE_TIMER = "healing.stage";
+    private static final String NO_PROVIDER = "none";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Stage timings of a new request
+     */
+    public Stages start() {
+        return new Stages();
+    }
+
+    /**
+     * Time a stage outside of a request breakdown
+     */
+    public <T> T time(String stage, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Record a stage outside of a request (background writes)
+     */
+    public void record(String stage, long nanos) {
+        record(stage, null, nanos);
+    }
+
+    public void record(String stage, String provider, long nanos) {
+        String tag = provider != null ? provider : NO_PROVIDER;
+        timers.computeIfAbsent(stage + '|' + tag, key -> Timer.builder(STAGE_TIMER)
+                .description("Time spent in a stage of the healing pipeline")
+                .tag("stage", stage)
+                .tag("provider", tag)
+                .publishPercentiles(0.5, 0.95, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofMinutes(2))
+                .register(registry))
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stage timings of one request. Stages may complete on other threads (LLM callbacks); a stage run more than
+     * once adds up.
+     */
+    public final class Stages {
+
+        private final Map<String, Long> nanos = new LinkedHashMap<>();
+
+        public <T> T time(String stage, Supplier<T> work) {
+            long start = System.nanoTime();
+            try {
+                return work.get();
+            } finally {
+                record(stage, System.nanoTime() - start);
+            }
+        }
+
+        public void run(String stage, Runnable work) {
+            long start = System.nanoTime();
+            try {
+                work.run();
+            } finally {
+                record(stage, System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Time an asynchronous call from its start to its completion; a cancelled call (the losing provider of a
+         * race) is not recorded
+         */
+        public <T> CompletableFuture<T> timeAsync(String stage, String provider, Supplier<CompletableFuture<T>> call) {
+            long start = System.nanoTime();
+            CompletableFuture<T> future = call.get();
+            future.whenComplete((value, e) -> {
+                if (!future.isCancelled()) {
+                    record(stage, provider, System.nanoTime() - start);
+                }
+            });
+            return future;
+        }
+
+        public void record(String stage, long elapsed) {
+            record(stage, null, elapsed);
+        }
+
+        public void record(String stage, String provider, long elapsed) {
+            long positive = Math.max(0, elapsed);
+            synchronized (this) {
+                nanos.merge(provider != null ? stage + "." + provider : stage, positive, Long::sum);
+            }
+            PipelineMetrics.this.record(stage, provider, positive);
+        }
+
+        public synchronized long nanos(String stage) {
+            return nanos.getOrDefault(stage, 0L);
+        }
+
+        /**
+         * Time per stage so far in ms, in the order the stages ran
+         */
+        public synchronized Map<String, Double> breakdownMs() {
+            Map<String, Double> breakdown = new LinkedHashMap<>();
+            nanos.forEach((stage, elapsed) -> breakdown.put(stage, Math.round(elapsed / 10_000.0) / 100.0));
+            return breakdown;
+        }
+    }
+}
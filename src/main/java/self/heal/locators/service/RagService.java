@@ -4,6 +4,7 @@ import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import self.heal.locators.config.RagConfiguration;
+import self.heal.locators.utils.AhoCorasick;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -18,19 +19,106 @@ public class RagService {
     
     private static final Logger LOGGER = Logger.getLogger(RagService.class);
     
+    // Quoted string literals of an XPath / CSS locator
+    private static final Pattern LITERAL_PATTERN = Pattern.compile("'([^']*)'|\"([^\"]*)\"");
+    
     private final RagConfiguration ragConfig;
+    private final BpeTokenizer tokenizer;
+    private final PageMinifier minifier;
+    private final AttributeWeights attributeWeights;
+    
+    public RagService(RagConfiguration ragConfig, BpeTokenizer tokenizer) {
+        this(ragConfig, tokenizer, null);
+    }
     
     @Autowired
-    public RagService(RagConfiguration ragConfig) {
+    public RagService(RagConfiguration ragConfig, BpeTokenizer tokenizer, AttributeWeights attributeWeights) {
         this.ragConfig = ragConfig;
+        this.tokenizer = tokenizer;
+        this.attributeWeights = attributeWeights;
+        this.minifier = ragConfig != null && ragConfig.isMinifyEnabled() ? PageMinifier.of(ragConfig) : null;
         LOGGER.info("RagService initialized with configuration: " + 
             (ragConfig != null ? "enabled=" + ragConfig.isEnabled() : "NULL"));
     }
     
     /**
-     * Simplified RAG: Divide page source into 5 chunks and return the most relevant one
+     * Simplified RAG: Return the page elements that best match the locator (BM25), or the most relevant
+     * subtree-aligned chunk when none does
      */
     public String retrieveRelevantContext(String failedLocator, String pageSource) {
+        return retrieveRelevantContext(failedLocator, pageSource != null ? ParsedPage.of(pageSource) : null);
+    }
+    
+    /**
+     * Same as {@link #retrieveRelevantContext(String, String)} against a shared parsed page.
+     * The result is memoized on the page so prompt building, statistics and training data reuse one retrieval.
+     */
+    public String retrieveRelevantContext(String failedLocator, ParsedPage page) {
+        if (page == null) {
+            return "";
+        }
+        if (failedLocator == null) {
+            return page.getPageSource();
+        }
+        return page.derive("rag-context:" + failedLocator, () -> computeRelevantContext(failedLocator, page, charMeasure()));
+    }
+    
+    /**
+     * Context for a prompt, packed greedily (best elements / subtree first) into a token budget, then minified
+     * when {@code rag.minify-enabled} is set (elements are sized minified, so more of them fit).
+     * Memoized on the page per locator and budget.
+     *
+     * @param tokenBudget : tokens the context may use, after the system prompt, examples and instructions
+     */
+    public PackedContext packContext(String failedLocator, ParsedPage page, int tokenBudget) {
+        int budget = Math.max(0, tokenBudget);
+        if (page == null || failedLocator == null) {
+            return minified(page != null ? tokenizer.truncate(page.getPageSource(), budget) : "", budget);
+        }
+        return page.derive("rag-packed:" + budget + ":" + failedLocator,
+            () -> minified(computeRelevantContext(failedLocator, page, tokenMeasure(budget)), budget));
+    }
+    
+    /**
+     * Context made of a given set of elements (e.g. the region of the page that changed), packed into a token budget
+     */
+    public PackedContext packRegion(ParsedPage page, BitSet region, int tokenBudget) {
+        int budget = Math.max(0, tokenBudget);
+        String rendered = PageChunker.renderSelection(page, region);
+        if (tokenizer.count(rendered) > budget && minifier == null) {
+            rendered = tokenizer.truncate(rendered, budget);
+        }
+        return minified(rendered, budget);
+    }
+    
+    /**
+     * Put back what the minifier cut from class names into a locator the LLM wrote against packed context
+     */
+    public String restoreLocator(String healedLocator, ParsedPage page) {
+        return minifier != null ? minifier.restoreLocator(healedLocator, page) : healedLocator;
+    }
+    
+    private PackedContext minified(String context, int budget) {
+        int rawTokens = tokenizer.count(context);
+        if (minifier == null) {
+            return new PackedContext(context, rawTokens, budget, context.length(), rawTokens);
+        }
+        String text = minifier.minify(context).getText();
+        int tokens = tokenizer.count(text);
+        if (tokens > budget) {
+            // the header lines come on top of the packed elements
+            text = tokenizer.truncate(text, budget);
+            tokens = tokenizer.count(text);
+        }
+        if (ragConfig.isDetailedLoggingEnabled()) {
+            LOGGER.info("Minified context: " + context.length() + " -> " + text.length() + " chars, "
+                + rawTokens + " -> " + tokens + " tokens");
+        }
+        return new PackedContext(text, tokens, budget, context.length(), rawTokens);
+    }
+    
+    private String computeRelevantContext(String failedLocator, ParsedPage page, ContextMeasure measure) {
+        String pageSource = page.getPageSource();
         // Null safety checks
         if (ragConfig == null || failedLocator == null || pageSource == null) {
             return pageSource != null ? pageSource : "";
@@ -38,7 +126,7 @@ public class RagService {
         
         // Check if RAG is enabled
         if (!ragConfig.isEnabled()) {
-            return truncatePageSource(pageSource, ragConfig.getMaxContextLength());
+            return measure.truncate(pageSource);
         }
         
         try {
@@ -48,18 +136,35 @@ public class RagService {
             
             // Step 1: Extract locator attributes
             LocatorAttributes attributes = extractLocatorAttributes(failedLocator);
+            attributes.weightFactors = learnedWeightFactors(page);
             if (ragConfig.isDetailedLoggingEnabled()) {
                 LOGGER.debug("Extracted attributes: " + attributes);
             }
             
-            // Step 2: Divide page source into exactly 5 chunks
-            List<String> fiveChunks = divideIntoFiveChunks(pageSource);
+            // Step 2: BM25 over the page's element index, top elements and their parents
+            String retrieved = retrieveTopElements(page, buildQueryTerms(failedLocator, attributes), measure);
+            if (retrieved != null) {
+                if (ragConfig.isDetailedLoggingEnabled()) {
+                    LOGGER.info("RAG selected top elements. Length: " + retrieved.length());
+                }
+                return retrieved;
+            }
+            
+            // Step 3: No term of the locator is on the page, split the hierarchy into subtree-aligned chunks
+            List<PageChunker.Chunk> chunks = PageChunker.chunk(page, ragConfig.getMaxChunkLength());
+            if (chunks.isEmpty()) {
+                // Not parseable as a tree, nothing structural to select from
+                return measure.truncate(pageSource);
+            }
             if (ragConfig.isDetailedLoggingEnabled()) {
-                LOGGER.debug("Divided page source into " + fiveChunks.size() + " chunks");
+                LOGGER.debug("Divided page source into " + chunks.size() + " structural chunks");
             }
             
-            // Step 3: Find the most relevant chunk
-            String bestChunk = findMostRelevantChunk(fiveChunks, attributes, failedLocator);
+            // Step 4: Find the most relevant chunk
+            String bestChunk = findMostRelevantChunk(chunks, attributes, failedLocator);
+            if (measure.cost(bestChunk) > measure.limit()) {
+                bestChunk = measure.truncate(bestChunk);
+            }
             
             if (ragConfig.isDetailedLoggingEnabled()) {
                 LOGGER.info("RAG selected best chunk. Length: " + bestChunk.length());
@@ -70,8 +175,115 @@ public class RagService {
         } catch (Exception e) {
             LOGGER.error("Error in simplified RAG: " + e.getMessage(), e);
             // Fallback: return truncated original page source
-            return truncatePageSource(pageSource, ragConfig.getMaxContextLength());
+            return measure.truncate(pageSource);
+        }
+    }
+    
+    /**
+     * Query terms of a locator: words and whole values of its quoted literals (the locator itself when it is
+     * a bare value) and the tag names it targets
+     */
+    private List<String> buildQueryTerms(String locator, LocatorAttributes attributes) {
+        List<String> terms = new ArrayList<>();
+        Matcher literal = LITERAL_PATTERN.matcher(locator);
+        boolean hasLiteral = false;
+        while (literal.find()) {
+            String value = literal.group(1) != null ? literal.group(1) : literal.group(2);
+            if (!value.trim().isEmpty()) {
+                hasLiteral = true;
+                ElementIndex.tokenize(value, terms);
+                terms.add(ElementIndex.exact(value));
+            }
+        }
+        if (!hasLiteral && !locator.startsWith("/") && !locator.startsWith("(")) {
+            ElementIndex.tokenize(locator, terms);
+            terms.add(ElementIndex.exact(locator));
+        }
+        for (String tagName : attributes.tagNames) {
+            ElementIndex.tokenize(tagName, terms);
+        }
+        return terms;
+    }
+    
+    /**
+     * Render the best BM25 hits and their parents, as many as fit the measure's limit.
+     * Hits far below the best one are left out.
+     *
+     * @return the rendered elements, or null if no element matches the query
+     */
+    private String retrieveTopElements(ParsedPage page, List<String> terms, ContextMeasure measure) {
+        ElementIndex index = ElementIndex.of(page);
+        List<ElementIndex.Hit> hits = index.search(terms, ragConfig.getRetrievalTopK());
+        if (hits.isEmpty()) {
+            return null;
+        }
+        List<ParsedPage.PageElement> elements = page.getElements();
+        BitSet selected = new BitSet(elements.size());
+        // elements added per accepted hit, to back out the last ones if headers push the total over the limit
+        List<int[]> added = new ArrayList<>();
+        int size = 0;
+        // terms shared by most elements (package, "id", widget class) still give everything a small score
+        double minScore = hits.get(0).score * ragConfig.getRetrievalMinScoreRatio();
+        for (ElementIndex.Hit hit : hits) {
+            if (hit.score < minScore) {
+                break;
+            }
+            ParsedPage.PageElement element = elements.get(hit.elementIndex);
+            boolean withElement = !selected.get(element.index);
+            boolean withParent = element.parentIndex >= 0 && !selected.get(element.parentIndex);
+            int cost = (withElement ? measure.cost(PageChunker.render(element)) + 1 : 0)
+                + (withParent ? measure.cost(PageChunker.render(elements.get(element.parentIndex))) + 1 : 0);
+            if (size > 0 && size + cost > measure.limit()) {
+                break;
+            }
+            int[] indexes = {withElement ? element.index : -1, withParent ? element.parentIndex : -1};
+            for (int i : indexes) {
+                if (i >= 0) {
+                    selected.set(i);
+                }
+            }
+            added.add(indexes);
+            size += cost;
+            if (ragConfig.isDetailedLoggingEnabled()) {
+                LOGGER.debug("BM25 hit " + pathOf(elements, element) + " score " + String.format("%.3f", hit.score));
+            }
         }
+        String rendered = PageChunker.renderSelection(page, selected);
+        while (added.size() > 1 && measure.cost(rendered) > measure.limit()) {
+            for (int i : added.remove(added.size() - 1)) {
+                if (i >= 0) {
+                    selected.clear(i);
+                }
+            }
+            rendered = PageChunker.renderSelection(page, selected);
+        }
+        return measure.cost(rendered) > measure.limit() ? measure.truncate(rendered) : rendered;
+    }
+    
+    private static String pathOf(List<ParsedPage.PageElement> elements, ParsedPage.PageElement element) {
+        return element.parentIndex >= 0 ? PageChunker.pathSegment(elements.get(element.parentIndex)) + "/" + PageChunker.pathSegment(element)
+            : PageChunker.pathSegment(element);
+    }
+    
+    /**
+     * Factors of the configured match weights from the attribute weights learned for the app of the page
+     */
+    private Map<MatchCategory, Double> learnedWeightFactors(ParsedPage page) {
+        Map<MatchCategory, Double> factors = new EnumMap<>(MatchCategory.class);
+        if (attributeWeights == null) {
+            return factors;
+        }
+        double resourceId = attributeWeights.ragMultiplier(page, WeightedLocalHealer.Feature.RESOURCE_ID.getKey());
+        double text = attributeWeights.ragMultiplier(page, WeightedLocalHealer.Feature.TEXT.getKey());
+        double tag = attributeWeights.ragMultiplier(page, WeightedLocalHealer.Feature.TAG.getKey());
+        factors.put(MatchCategory.ID, resourceId);
+        factors.put(MatchCategory.RESOURCE_ID, resourceId);
+        factors.put(MatchCategory.RESOURCE_ID_PART, resourceId);
+        factors.put(MatchCategory.TEXT, text);
+        factors.put(MatchCategory.CLASS, tag);
+        factors.put(MatchCategory.PACKAGE, tag);
+        factors.put(MatchCategory.TAG, tag);
+        return factors;
     }
     
     /**
@@ -189,240 +401,73 @@ public class RagService {
     }
     
     /**
-     * Divide page source into exactly 5 equal chunks
+     * Relevance of each chunk to a locator, as scored when no element of the page matches the locator terms
+     *
+     * @return scores in the order of the chunks
      */
-    private List<String> divideIntoFiveChunks(String pageSource) {
-        List<String> chunks = new ArrayList<>();
-        
-        if (pageSource == null || pageSource.trim().isEmpty()) {
-            // Return 5 empty chunks if no content
-            for (int i = 0; i < 5; i++) {
-                chunks.add("");
-            }
-            return chunks;
-        }
-        
-        int totalLength = pageSource.length();
-        int chunkSize = totalLength / 5;
-        
-        if (ragConfig.isDetailedLoggingEnabled()) {
-            LOGGER.debug("Dividing " + totalLength + " chars into 5 chunks of ~" + chunkSize + " chars each");
-        }
-        
-        for (int i = 0; i < 5; i++) {
-            int start = i * chunkSize;
-            int end;
-            
-            if (i == 4) { // Last chunk gets all remaining content
-                end = totalLength;
-            } else {
-                end = Math.min(start + chunkSize, totalLength);
-                // Try to end at a complete XML tag to maintain structure
-                end = findBestBreakPoint(pageSource, end);
-            }
-            
-            if (start < totalLength) {
-                String chunk = pageSource.substring(start, end);
-                chunks.add(chunk);
-                
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("Chunk " + (i + 1) + ": " + start + "-" + end + " (" + chunk.length() + " chars)");
-                }
-            } else {
-                chunks.add(""); // Empty chunk if we've exceeded content
-            }
-        }
-        
-        return chunks;
-    }
-    
-    /**
-     * Find the best break point near the target position to maintain XML structure
-     */
-    private int findBestBreakPoint(String pageSource, int targetEnd) {
-        if (targetEnd >= pageSource.length()) {
-            return pageSource.length();
-        }
-        
-        // Look for a good break point within 100 characters of the target
-        int searchStart = Math.max(0, targetEnd - 50);
-        int searchEnd = Math.min(pageSource.length(), targetEnd + 50);
-        
-        // Priority 1: End of complete XML element (after >)
-        for (int i = targetEnd; i >= searchStart; i--) {
-            if (pageSource.charAt(i) == '>' && i + 1 < pageSource.length() &&
-                (pageSource.charAt(i + 1) == '<' || Character.isWhitespace(pageSource.charAt(i + 1)))) {
-                return i + 1;
-            }
-        }
-        
-        // Priority 2: Look forward for end of element
-        for (int i = targetEnd; i < searchEnd; i++) {
-            if (pageSource.charAt(i) == '>' && i + 1 < pageSource.length() &&
-                (pageSource.charAt(i + 1) == '<' || Character.isWhitespace(pageSource.charAt(i + 1)))) {
-                return i + 1;
-            }
-        }
-        
-        // Priority 3: At least don't break in middle of a tag
-        for (int i = targetEnd; i >= searchStart; i--) {
-            if (pageSource.charAt(i) == '>') {
-                return i + 1;
-            }
+    public double[] scoreChunks(String failedLocator, ParsedPage page, List<PageChunker.Chunk> chunks) {
+        LocatorAttributes attributes = extractLocatorAttributes(failedLocator);
+        attributes.weightFactors = learnedWeightFactors(page);
+        double[] scores = new double[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            scores[i] = calculateSimplifiedRelevanceScore(chunks.get(i).render(), attributes, failedLocator);
         }
-        
-        // If no good break point found, use original target
-        return targetEnd;
+        return scores;
     }
     
     /**
-     * Find the most relevant chunk from the 5 chunks
+     * Find the most relevant structural chunk, rendered with its ancestor path header
      */
-    private String findMostRelevantChunk(List<String> chunks, LocatorAttributes attributes, String originalLocator) {
+    private String findMostRelevantChunk(List<PageChunker.Chunk> chunks, LocatorAttributes attributes, String originalLocator) {
         double bestScore = -1.0;
-        int bestChunkIndex = 0;
-        String bestChunk = "";
+        PageChunker.Chunk bestChunk = null;
         
         if (ragConfig.isDetailedLoggingEnabled()) {
             LOGGER.debug("Analyzing " + chunks.size() + " chunks for relevance to locator: " + originalLocator);
         }
         
-        for (int i = 0; i < chunks.size(); i++) {
-            String chunk = chunks.get(i);
-            if (chunk == null || chunk.trim().isEmpty()) {
-                continue;
-            }
-            
-            double score = calculateSimplifiedRelevanceScore(chunk, attributes, originalLocator);
+        for (PageChunker.Chunk chunk : chunks) {
+            // the header is scored too, an ancestor id is a good hint for the subtree
+            double score = calculateSimplifiedRelevanceScore(chunk.render(), attributes, originalLocator);
             
             if (ragConfig.isDetailedLoggingEnabled()) {
-                LOGGER.debug("Chunk " + (i + 1) + " score: " + String.format("%.3f", score) + 
+                LOGGER.debug("Chunk " + (chunk.getIndex() + 1) + " score: " + String.format("%.3f", score) + 
                            " (length: " + chunk.length() + ")");
             }
             
             if (score > bestScore) {
                 bestScore = score;
-                bestChunkIndex = i;
                 bestChunk = chunk;
             }
         }
         
-        // If no chunk scored above 0, return the middle chunk (index 2) as fallback
-        if (bestScore <= 0.0 && chunks.size() >= 3) {
-            bestChunk = chunks.get(2); // Middle chunk
-            bestChunkIndex = 2;
+        // If no chunk scored above 0, return the middle chunk as fallback
+        if (bestScore <= 0.0) {
+            bestChunk = chunks.get(chunks.size() / 2);
             if (ragConfig.isDetailedLoggingEnabled()) {
                 LOGGER.debug("No chunks scored above 0. Using middle chunk as fallback.");
             }
         }
         
-        // Final fallback - return first non-empty chunk
-        if (bestChunk.trim().isEmpty()) {
-            for (String chunk : chunks) {
-                if (chunk != null && !chunk.trim().isEmpty()) {
-                    bestChunk = chunk;
-                    break;
-                }
-            }
-        }
-        
         if (ragConfig.isDetailedLoggingEnabled()) {
-            LOGGER.info("Selected chunk " + (bestChunkIndex + 1) + " with score " + 
+            LOGGER.info("Selected chunk " + (bestChunk.getIndex() + 1) + " of " + chunks.size() + " with score " + 
                        String.format("%.3f", bestScore) + " (length: " + bestChunk.length() + ")");
         }
         
-        return bestChunk;
+        return bestChunk.render();
     }
     
     /**
-     * Simplified relevance scoring for 5-chunk approach
+     * Relevance of one chunk: a single pass of the locator's attribute automaton
      */
     private double calculateSimplifiedRelevanceScore(String chunk, LocatorAttributes attributes, String originalLocator) {
-        double score = 0.0;
-        String chunkLower = chunk.toLowerCase();
-        String locatorLower = originalLocator.toLowerCase();
-        
-        // Score 1: Direct locator match (highest priority)
-        if (chunkLower.contains(locatorLower)) {
-            score += 10.0;
-            if (ragConfig.isDetailedLoggingEnabled()) {
-                LOGGER.debug("Direct locator match found (+10.0)");
-            }
-        }
-        
-        // Score 2: Resource ID matches
-        for (String resourceId : attributes.resourceIds) {
-            if (chunkLower.contains(resourceId.toLowerCase())) {
-                score += 8.0;
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("Resource ID match: " + resourceId + " (+8.0)");
-                }
-            }
-        }
-        
-        // Score 3: Resource ID parts
-        for (String part : attributes.resourceIdParts) {
-            if (chunkLower.contains(part.toLowerCase())) {
-                score += 5.0;
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("Resource ID part match: " + part + " (+5.0)");
-                }
-            }
-        }
-        
-        // Score 4: Package names
-        for (String packageName : attributes.packageNames) {
-            if (chunkLower.contains(packageName.toLowerCase())) {
-                score += 3.0;
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("Package name match: " + packageName + " (+3.0)");
-                }
-            }
-        }
-        
-        // Score 5: ID matches
-        for (String id : attributes.ids) {
-            if (chunkLower.contains(id.toLowerCase())) {
-                score += 6.0;
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("ID match: " + id + " (+6.0)");
-                }
-            }
-        }
-        
-        // Score 6: Text content matches
-        for (String text : attributes.textContent) {
-            if (chunkLower.contains(text.toLowerCase())) {
-                score += 4.0;
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("Text match: " + text + " (+4.0)");
-                }
-            }
-        }
-        
-        // Score 7: Class/tag matches
-        for (String className : attributes.classes) {
-            if (chunkLower.contains(className.toLowerCase())) {
-                score += 2.0;
-            }
-        }
-        
-        for (String tagName : attributes.tagNames) {
-            if (chunkLower.contains(tagName.toLowerCase())) {
-                score += 2.0;
-            }
-        }
-        
-        // Bonus: Android/mobile specific content
-        if (chunkLower.contains("android.widget.") || chunkLower.contains("resource-id=") || 
-            chunkLower.contains("bounds=") || chunkLower.contains("class=")) {
-            score += 1.0;
+        ChunkScore score = attributes.scanner(originalLocator, ragConfig).score(chunk);
+        if (ragConfig.isDetailedLoggingEnabled()) {
+            LOGGER.debug("Chunk hits " + score);
         }
-        
-        return score;
+        return score.score;
     }
     
-    
     /**
      * Split page source into overlapping chunks (DEPRECATED - keeping for backward compatibility)
      */
@@ -561,111 +606,11 @@ public class RagService {
      * Enhanced for better mobile automation support
      */
     private double calculateRelevanceScore(String chunk, LocatorAttributes attributes) {
-        double score = 0.0;
-        String chunkLower = chunk.toLowerCase();
-        
-        if (ragConfig.isDetailedLoggingEnabled() && chunk.length() < 200) {
-            LOGGER.debug("Scoring chunk: " + chunk.substring(0, Math.min(100, chunk.length())) + "...");
-        }
-        
-        // Score based on ID matches (highest priority)
-        for (String id : attributes.ids) {
-            if (chunkLower.contains(id.toLowerCase())) {
-                score += ragConfig.getIdMatchWeight();
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("ID match found: " + id + " (+" + ragConfig.getIdMatchWeight() + ")");
-                }
-            }
-        }
-        
-        // Score based on full resource-id matches (highest priority for mobile)
-        for (String resourceId : attributes.resourceIds) {
-            if (chunkLower.contains(resourceId.toLowerCase())) {
-                score += ragConfig.getResourceIdMatchWeight() * 2; // Double weight for exact resource ID match
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("Full resource-id match found: " + resourceId + " (+" + (ragConfig.getResourceIdMatchWeight() * 2) + ")");
-                }
-            }
-        }
-        
-        // Score based on resource-id parts matches (good priority for mobile)
-        for (String resourceIdPart : attributes.resourceIdParts) {
-            if (chunkLower.contains(resourceIdPart.toLowerCase())) {
-                score += ragConfig.getResourceIdMatchWeight();
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("Resource-id part match found: " + resourceIdPart + " (+" + ragConfig.getResourceIdMatchWeight() + ")");
-                }
-            }
-        }
-        
-        // Score based on package name matches (medium priority for mobile)
-        for (String packageName : attributes.packageNames) {
-            if (chunkLower.contains(packageName.toLowerCase())) {
-                score += ragConfig.getClassMatchWeight(); // Use class weight for package matches
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("Package match found: " + packageName + " (+" + ragConfig.getClassMatchWeight() + ")");
-                }
-            }
-        }
-        
-        // Score based on class matches
-        for (String className : attributes.classes) {
-            if (chunkLower.contains(className.toLowerCase())) {
-                score += ragConfig.getClassMatchWeight();
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("Class match found: " + className + " (+" + ragConfig.getClassMatchWeight() + ")");
-                }
-            }
-        }
-        
-        // Score based on text content matches
-        for (String text : attributes.textContent) {
-            if (chunkLower.contains(text.toLowerCase())) {
-                score += ragConfig.getTextMatchWeight();
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("Text match found: " + text + " (+" + ragConfig.getTextMatchWeight() + ")");
-                }
-            }
-        }
-        
-        // Score based on tag name matches (for both XML tags and Android class names)
-        for (String tagName : attributes.tagNames) {
-            if (chunkLower.contains("<" + tagName) || chunkLower.contains("android.widget." + tagName) || 
-                chunkLower.contains("android.view." + tagName)) {
-                score += ragConfig.getTagMatchWeight();
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("Tag match found: " + tagName + " (+" + ragConfig.getTagMatchWeight() + ")");
-                }
-            }
-        }
-        
-        // Score based on other attributes
-        for (Map.Entry<String, String> entry : attributes.otherAttributes.entrySet()) {
-            if (chunkLower.contains(entry.getValue().toLowerCase())) {
-                score += ragConfig.getOtherAttributeMatchWeight();
-                if (ragConfig.isDetailedLoggingEnabled()) {
-                    LOGGER.debug("Other attribute match found: " + entry.getKey() + "=" + entry.getValue() + 
-                               " (+" + ragConfig.getOtherAttributeMatchWeight() + ")");
-                }
-            }
-        }
-        
-        // For mobile automation, boost score if chunk contains Android-specific attributes
-        if (chunk.contains("android.widget.") || chunk.contains("android.view.") || 
-            chunk.contains("resource-id=") || chunk.contains("bounds=") || chunk.contains("class=")) {
-            score += 0.5; // Small boost for mobile-specific content
-            if (ragConfig.isDetailedLoggingEnabled()) {
-                LOGGER.debug("Mobile automation content boost (+0.5)");
-            }
-        }
-        
-        // Don't normalize by length for mobile XML as elements can be short but highly relevant
-        
+        ChunkScore score = attributes.scanner(null, ragConfig).score(chunk);
         if (ragConfig.isDetailedLoggingEnabled()) {
-            LOGGER.debug("Final chunk score: " + String.format("%.3f", score));
+            LOGGER.debug("Final chunk score: " + score);
         }
-        
-        return score;
+        return score.score;
     }
     
     /**
@@ -763,7 +708,12 @@ public class RagService {
      * Get context statistics for debugging/monitoring
      */
     public ContextStats getContextStats(String failedLocator, String pageSource) {
-        String relevantContext = retrieveRelevantContext(failedLocator, pageSource);
+        return getContextStats(failedLocator, pageSource != null ? ParsedPage.of(pageSource) : null);
+    }
+    
+    public ContextStats getContextStats(String failedLocator, ParsedPage page) {
+        String pageSource = page != null ? page.getPageSource() : null;
+        String relevantContext = retrieveRelevantContext(failedLocator, page);
         
         // Validate that context is not empty
         if (relevantContext == null || relevantContext.trim().isEmpty()) {
@@ -782,8 +732,12 @@ public class RagService {
      * Validate that RAG is working correctly for a given input
      */
     public boolean validateRagOutput(String failedLocator, String pageSource) {
+        return validateRagOutput(failedLocator, pageSource != null ? ParsedPage.of(pageSource) : null);
+    }
+    
+    public boolean validateRagOutput(String failedLocator, ParsedPage page) {
         try {
-            String context = retrieveRelevantContext(failedLocator, pageSource);
+            String context = retrieveRelevantContext(failedLocator, page);
             boolean isValid = context != null && !context.trim().isEmpty();
             
             if (!isValid) {
@@ -798,6 +752,58 @@ public class RagService {
     }
     
     // Helper classes
+    private ContextMeasure charMeasure() {
+        return new ContextMeasure() {
+            @Override
+            public int cost(String text) {
+                return text.length();
+            }
+            
+            @Override
+            public int limit() {
+                return ragConfig.getMaxChunkLength();
+            }
+            
+            @Override
+            public String truncate(String text) {
+                return truncatePageSource(text, ragConfig.getMaxContextLength());
+            }
+        };
+    }
+    
+    private ContextMeasure tokenMeasure(int budget) {
+        return new ContextMeasure() {
+            @Override
+            public int cost(String text) {
+                return tokenizer.count(minifier != null ? minifier.minify(text).getBody() : text);
+            }
+            
+            @Override
+            public int limit() {
+                return budget;
+            }
+            
+            @Override
+            public String truncate(String text) {
+                return tokenizer.truncate(text, budget);
+            }
+        };
+    }
+    
+    /**
+     * Unit the context is sized in: characters for the plain retrieval, tokens for prompt packing
+     */
+    private interface ContextMeasure {
+        int cost(String text);
+        
+        int limit();
+        
+        /**
+         * Cut a text that is over the limit
+         */
+        String truncate(String text);
+    }
+    
     private static class LocatorAttributes {
         Set<String> ids = new HashSet<>();
         Set<String> classes = new HashSet<>();
@@ -807,6 +813,19 @@ public class RagService {
         Set<String> textContent = new HashSet<>();
         Set<String> tagNames = new HashSet<>();
         Map<String, String> otherAttributes = new HashMap<>();
+        // learned factors of the configured weights, per category (1 when absent)
+        Map<MatchCategory, Double> weightFactors = Collections.emptyMap();
+        private AttributeScanner scanner;
+        
+        /**
+         * Automaton over all attribute values, built once per request on first use
+         */
+        AttributeScanner scanner(String originalLocator, RagConfiguration config) {
+            if (scanner == null) {
+                scanner = new AttributeScanner(this, originalLocator, config);
+            }
+            return scanner;
+        }
         
         @Override
         public String toString() {
@@ -823,6 +842,116 @@ public class RagService {
         }
     }
     
+    /**
+     * Kinds of locator attribute a chunk can match, each weighted from {@link RagConfiguration}
+     */
+    private enum MatchCategory {
+        LOCATOR, ID, RESOURCE_ID, RESOURCE_ID_PART, PACKAGE, CLASS, TEXT, TAG, OTHER
+    }
+    
+    /**
+     * All locator attribute values compiled into one Aho-Corasick automaton. A chunk is scored in a single
+     * case-insensitive pass: each matched value adds its category weight once, occurrences are counted per category.
+     */
+    private static class AttributeScanner {
+        private final List<String> patterns = new ArrayList<>();
+        // per pattern: category and the value it stands for (a tag is searched under several spellings)
+        private final List<MatchCategory> patternCategory = new ArrayList<>();
+        private final List<Integer> patternValue = new ArrayList<>();
+        private final List<Double> valueWeight = new ArrayList<>();
+        private final AhoCorasick automaton;
+        private final Map<MatchCategory, Double> weightFactors;
+        
+        AttributeScanner(LocatorAttributes attributes, String originalLocator, RagConfiguration config) {
+            weightFactors = attributes.weightFactors;
+            if (originalLocator != null) {
+                add(MatchCategory.LOCATOR, config.getDirectLocatorMatchWeight(), originalLocator);
+            }
+            for (String id : attributes.ids) {
+                add(MatchCategory.ID, config.getIdMatchWeight(), id);
+            }
+            // a full resource-id is worth twice a part of it
+            for (String resourceId : attributes.resourceIds) {
+                add(MatchCategory.RESOURCE_ID, config.getResourceIdMatchWeight() * 2, resourceId);
+            }
+            for (String part : attributes.resourceIdParts) {
+                add(MatchCategory.RESOURCE_ID_PART, config.getResourceIdMatchWeight(), part);
+            }
+            for (String packageName : attributes.packageNames) {
+                add(MatchCategory.PACKAGE, config.getClassMatchWeight(), packageName);
+            }
+            for (String className : attributes.classes) {
+                add(MatchCategory.CLASS, config.getClassMatchWeight(), className);
+            }
+            for (String text : attributes.textContent) {
+                add(MatchCategory.TEXT, config.getTextMatchWeight(), text);
+            }
+            for (String tagName : attributes.tagNames) {
+                add(MatchCategory.TAG, config.getTagMatchWeight(), "<" + tagName, "android.widget." + tagName, "android.view." + tagName);
+            }
+            for (String value : attributes.otherAttributes.values()) {
+                add(MatchCategory.OTHER, config.getOtherAttributeMatchWeight(), value);
+            }
+            automaton = new AhoCorasick(patterns);
+        }
+        
+        private void add(MatchCategory category, double weight, String... spellings) {
+            int value = valueWeight.size();
+            valueWeight.add(weight * weightFactors.getOrDefault(category, 1.0));
+            for (String spelling : spellings) {
+                if (spelling == null || spelling.isEmpty()) {
+                    continue;
+                }
+                patterns.add(spelling);
+                patternCategory.add(category);
+                patternValue.add(value);
+            }
+        }
+        
+        ChunkScore score(String chunk) {
+            int[] counts = automaton.count(chunk);
+            boolean[] valueMatched = new boolean[valueWeight.size()];
+            int[] categoryHits = new int[MatchCategory.values().length];
+            double score = 0.0;
+            for (int p = 0; p < counts.length; p++) {
+                if (counts[p] == 0) {
+                    continue;
+                }
+                categoryHits[patternCategory.get(p).ordinal()] += counts[p];
+                int value = patternValue.get(p);
+                if (!valueMatched[value]) {
+                    valueMatched[value] = true;
+                    score += valueWeight.get(value);
+                }
+            }
+            return new ChunkScore(score, categoryHits);
+        }
+    }
+    
+    /**
+     * Weighted score of a chunk and its occurrence counts per {@link MatchCategory}
+     */
+    private static class ChunkScore {
+        final double score;
+        final int[] categoryHits;
+        
+        ChunkScore(double score, int[] categoryHits) {
+            this.score = score;
+            this.categoryHits = categoryHits;
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("ChunkScore{score=").append(String.format("%.3f", score));
+            for (MatchCategory category : MatchCategory.values()) {
+                if (categoryHits[category.ordinal()] > 0) {
+                    sb.append(", ").append(category.name().toLowerCase()).append('=').append(categoryHits[category.ordinal()]);
+                }
+            }
+            return sb.append('}').toString();
+        }
+    }
+    
     private static class ScoredChunk {
         String content;
         double score;
@@ -835,6 +964,25 @@ public class RagService {
         }
     }
     
+    /**
+     * Context packed into a token budget, with its token count, and its size before minification
+     */
+    public static class PackedContext {
+        public final String text;
+        public final int tokens;
+        public final int budget;
+        public final int rawLength;
+        public final int rawTokens;
+        
+        public PackedContext(String text, int tokens, int budget, int rawLength, int rawTokens) {
+            this.text = text;
+            this.tokens = tokens;
+            this.budget = budget;
+            this.rawLength = rawLength;
+            this.rawTokens = rawTokens;
+        }
+    }
+    
     public static class ContextStats {
         public final int originalLength;
         public final int optimizedLength;
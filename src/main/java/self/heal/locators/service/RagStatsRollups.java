@@ -0,0 +1,445 @@
+package self.heal.locators.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import self.heal.locators.config.HealingConfiguration;
+import self.heal.locators.model.RagStatsRollup;
+
+/**
+ * Minute, hour and day rollups of rag_performance in rag_stats_rollup, so /rag/stats reads a number of buckets
+ * instead of every operation ever recorded.
+ * <p>
+ * The rollups are recomputed by aggregation pipelines that {@code $merge} into rag_stats_rollup: every
+ * {@code healing.rag-stats-rollup-ms} the minutes of the last {@code healing.rag-stats-rollup-lookback-ms} from
+ * rag_performance, then the hours and days they fall in from the finer rollups. A bucket is always replaced as a
+ * whole, so recomputing is idempotent, several nodes can run it, and operations written late by the write-behind
+ * store are picked up as long as they land within the lookback. The operation time is the timestamp of its
+ * ObjectId, assigned when the operation was recorded.
+ * <p>
+ * Processing times are kept as log histograms ({@value #BUCKETS_PER_DOUBLING} buckets per doubling, about 9% wide)
+ * that add up across buckets, which gives percentiles over any range.
+ */
+@Service
+public class RagStatsRollups {
+
+    private static final Logger LOGGER = Logger.getLogger(RagStatsRollups.class);
+
+    static final String MINUTE = "minute";
+    static final String HOUR = "hour";
+    static final String DAY = "day";
+    private static final long MINUTE_MS = 60_000L;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    static final int BUCKETS_PER_DOUBLING = 8;
+
+    private static final String SOURCE = "rag_performance";
+    private static final String TARGET = "rag_stats_rollup";
+    // Counters and sums of a rollup, added up when buckets are merged
+    private static final String[] SUMS = {
+        "operations", "successes", "compressionRatioSum", "compressionRatioCount", "processingTimeSum",
+        "processingTimeCount", "originalLengthSum", "originalLengthCount", "optimizedLengthSum", "optimizedLengthCount"};
+
+    private final HealingConfiguration healingConfig;
+    private final MongoTemplate mongoTemplate;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile boolean backfilled;
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private volatile long lastRefreshAt;
+    private volatile long lastRefreshMs;
+
+    @Autowired
+    public RagStatsRollups(HealingConfiguration healingConfig, MongoTemplate mongoTemplate) {
+        this.healingConfig = healingConfig;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Recompute the rollups of the lookback window, or of the whole history the first time when there are none
+     */
+    @Scheduled(fixedDelayString = "${healing.rag-stats-rollup-ms:60000}", initialDelayString = "${healing.rag-stats-rollup-ms:60000}")
+    public void refresh() {
+        if (!backfilled) {
+            backfilled = true;
+            if (!mongoTemplate.exists(new Query(), RagStatsRollup.class)) {
+                rebuild(0);
+                return;
+            }
+        }
+        rebuild(System.currentTimeMillis() - healingConfig.getRagStatsRollupLookbackMs());
+    }
+
+    /**
+     * Recompute the rollups of every bucket from a point in time
+     *
+     * @param from : epoch ms, 0 for the whole history
+     * @return false when a recompute was already running
+     */
+    public boolean rebuild(long from) {
+        if (!refreshing.compareAndSet(false, true)) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            long minuteFrom = floor(Math.max(0, from), MINUTE_MS);
+            List<Document> fromOperations = new ArrayList<>();
+            fromOperations.add(new Document("$match", new Document("_id", new Document("$gte", objectIdAt(minuteFrom)))));
+            fromOperations.add(new Document("$addFields", new Document("ts", new Document("$toLong", new Document("$toDate", "$_id")))
+                .append("ok", new Document("$eq", List.of("$success", true)))));
+            fromOperations.add(new Document("$project", operationShape()));
+            merge(SOURCE, fromOperations, MINUTE, MINUTE_MS);
+
+            merge(TARGET, fromRollups(MINUTE, floor(minuteFrom, HOUR_MS), HOUR_MS), HOUR, HOUR_MS);
+            merge(TARGET, fromRollups(HOUR, floor(minuteFrom, DAY_MS), DAY_MS), DAY, DAY_MS);
+
+            refreshes.incrementAndGet();
+            lastRefreshAt = start;
+            lastRefreshMs = System.currentTimeMillis() - start;
+            return true;
+        } catch (Exception e) {
+            LOGGER.warn("RAG stats rollup failed: " + e.getMessage());
+            return false;
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * Statistics over a time range from the rollups
+     *
+     * @param from        : epoch ms, inclusive, null for the whole history
+     * @param to          : epoch ms, exclusive, null for now
+     * @param granularity : minute, hour or day, null to pick from the range
+     * @param percentiles : processing time percentiles to report, between 0 and 100
+     * @param series      : include the statistics of every bucket
+     */
+    public Map<String, Object> statistics(Long from, Long to, String granularity, List<Double> percentiles, boolean series) {
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : 0;
+        String resolved = granularity != null ? granularity : granularityFor(end - start);
+        long unit = unitOf(resolved);
+
+        Query query = new Query(Criteria.where("granularity").is(resolved)
+            .and("bucketStart").gte(floor(start, unit)).lt(end))
+            .with(Sort.by("bucketStart"));
+        List<RagStatsRollup> rollups = mongoTemplate.find(query, RagStatsRollup.class);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Totals total = new Totals();
+        Map<String, Long> byAutomationType = new TreeMap<>();
+        Map<String, Long> byProvider = new TreeMap<>();
+        Map<Long, Totals> byBucket = new TreeMap<>();
+        for (RagStatsRollup rollup : rollups) {
+            total.add(rollup);
+            byAutomationType.merge(rollup.getAutomationType(), value(rollup.getSuccesses()), Long::sum);
+            byProvider.merge(rollup.getProvider(), value(rollup.getSuccesses()), Long::sum);
+            if (series) {
+                byBucket.computeIfAbsent(rollup.getBucketStart(), k -> new Totals()).add(rollup);
+            }
+        }
+        stats.put("granularity", resolved);
+        stats.put("from", floor(start, unit));
+        stats.put("to", end);
+        stats.put("buckets", rollups.size());
+        if (total.successes == 0) {
+            stats.put("message", "No RAG operations found");
+            return stats;
+        }
+        stats.putAll(total.toMap(percentiles));
+        byAutomationType.values().removeIf(count -> count == 0);
+        byProvider.values().removeIf(count -> count == 0);
+        stats.put("automation_type_distribution", byAutomationType);
+        stats.put("provider_distribution", byProvider);
+        if (series) {
+            List<Map<String, Object>> points = new ArrayList<>();
+            byBucket.forEach((bucketStart, totals) -> {
+                Map<String, Object> point = new LinkedHashMap<>();
+                point.put("bucket_start", bucketStart);
+                point.put("operations", totals.operations);
+                point.putAll(totals.toMap(percentiles));
+                points.add(point);
+            });
+            stats.put("series", points);
+        }
+        return stats;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("refreshes", refreshes.get());
+        stats.put("last_refresh_at", lastRefreshAt);
+        stats.put("last_refresh_ms", lastRefreshMs);
+        stats.put("refreshing", refreshing.get());
+        return stats;
+    }
+
+    // rag_performance operation in the shape of a rollup of one operation, histogram as [{k, v}]
+    private static Document operationShape() {
+        Document shape = new Document("bucket", "$ts")
+            .append("automationType", new Document("$ifNull", List.of("$automationType", "unknown")))
+            .append("provider", new Document("$ifNull", List.of("$provider", "none")))
+            .append("operations", new Document("$literal", 1))
+            .append("successes", new Document("$cond", List.of("$ok", 1, 0)));
+        sumAndCount(shape, "compressionRatio", "$compressionRatio");
+        sumAndCount(shape, "processingTime", "$processingTimeMs");
+        sumAndCount(shape, "originalLength", "$originalPageSourceLength");
+        sumAndCount(shape, "optimizedLength", "$optimizedContextLength");
+        Document timed = successfulValue("$processingTimeMs");
+        shape.append("processingTimeMin", new Document("$cond", Arrays.asList(timed, "$processingTimeMs", null)))
+            .append("processingTimeMax", new Document("$cond", Arrays.asList(timed, "$processingTimeMs", null)))
+            .append("histogram", new Document("$cond", List.of(timed,
+                List.of(new Document("k", new Document("$toString", new Document("$toLong", latencyBucketExpression("$processingTimeMs")))).append("v", 1)),
+                List.of())));
+        return shape;
+    }
+
+    private static void sumAndCount(Document shape, String name, String field) {
+        Document present = successfulValue(field);
+        shape.append(name + "Sum", new Document("$cond", List.of(present, field, 0)))
+            .append(name + "Count", new Document("$cond", List.of(present, 1, 0)));
+    }
+
+    // numbers sort above null, a missing field does not
+    private static Document successfulValue(String field) {
+        return new Document("$and", List.of("$ok", new Document("$gt", Arrays.asList(field, null))));
+    }
+
+    // floor(log2(max(ms, 1)) * BUCKETS_PER_DOUBLING), the server side twin of latencyBucket
+    private static Document latencyBucketExpression(String field) {
+        return new Document("$floor", new Document("$multiply", List.of(
+            new Document("$ln", new Document("$max", List.of(field, 1))),
+            BUCKETS_PER_DOUBLING / Math.log(2))));
+    }
+
+    // Rollups of a finer granularity in the shape of the per-operation documents
+    private static List<Document> fromRollups(String granularity, long from, long unit) {
+        List<Document> stages = new ArrayList<>();
+        stages.add(new Document("$match", new Document("granularity", granularity)
+            .append("bucketStart", new Document("$gte", from))));
+        Document shape = new Document("bucket", "$bucketStart")
+            .append("automationType", 1)
+            .append("provider", 1)
+            .append("processingTimeMin", 1)
+            .append("processingTimeMax", 1)
+            .append("histogram", new Document("$objectToArray", new Document("$ifNull", List.of("$latencyHistogram", new Document()))));
+        for (String sum : SUMS) {
+            shape.append(sum, 1);
+        }
+        stages.add(new Document("$project", shape));
+        return stages;
+    }
+
+    /**
+     * Group documents in the rollup shape into buckets of a granularity and replace those buckets in
+     * rag_stats_rollup. Histograms are merged by unwinding their entries, summing per bucket index and folding
+     * them back into an object.
+     */
+    private void merge(String collection, List<Document> source, String granularity, long unit) {
+        List<Document> pipeline = new ArrayList<>(source);
+        Document bucketKey = new Document("b", new Document("$subtract", List.of("$bucket", new Document("$mod", List.of("$bucket", unit)))))
+            .append("t", "$automationType")
+            .append("p", "$provider");
+
+        Document byBucket = new Document("_id", bucketKey);
+        for (String sum : SUMS) {
+            byBucket.append(sum, new Document("$sum", "$" + sum));
+        }
+        byBucket.append("processingTimeMin", new Document("$min", "$processingTimeMin"))
+            .append("processingTimeMax", new Document("$max", "$processingTimeMax"))
+            .append("histograms", new Document("$push", "$histogram"));
+        pipeline.add(new Document("$group", byBucket));
+        pipeline.add(new Document("$addFields", new Document("histogram", new Document("$reduce", new Document("input", "$histograms")
+            .append("initialValue", List.of())
+            .append("in", new Document("$concatArrays", List.of("$$value", "$$this")))))));
+        pipeline.add(new Document("$unwind", new Document("path", "$histogram").append("preserveNullAndEmptyArrays", true)));
+
+        Document byHistogramBucket = new Document("_id", new Document("b", "$_id.b").append("t", "$_id.t").append("p", "$_id.p")
+            .append("k", "$histogram.k"))
+            .append("v", new Document("$sum", "$histogram.v"));
+        Document byBucketAgain = new Document("_id", new Document("b", "$_id.b").append("t", "$_id.t").append("p", "$_id.p"))
+            .append("histogram", new Document("$push", new Document("k", "$_id.k").append("v", "$v")));
+        List<String> carried = new ArrayList<>(List.of(SUMS));
+        carried.add("processingTimeMin");
+        carried.add("processingTimeMax");
+        for (String field : carried) {
+            byHistogramBucket.append(field, new Document("$first", "$" + field));
+            byBucketAgain.append(field, new Document("$first", "$" + field));
+        }
+        pipeline.add(new Document("$group", byHistogramBucket));
+        pipeline.add(new Document("$group", byBucketAgain));
+
+        Document rollup = new Document("_id", new Document("$concat", List.of(granularity, "|", new Document("$toString", "$_id.b"),
+            "|", "$_id.t", "|", "$_id.p")))
+            .append("granularity", new Document("$literal", granularity))
+            .append("bucketStart", new Document("$toLong", "$_id.b"))
+            .append("automationType", "$_id.t")
+            .append("provider", "$_id.p")
+            .append("latencyHistogram", new Document("$arrayToObject", new Document("$filter", new Document("input", "$histogram")
+                .append("as", "entry")
+                .append("cond", new Document("$gt", Arrays.asList("$$entry.k", null))))));
+        for (String field : carried) {
+            rollup.append(field, 1);
+        }
+        pipeline.add(new Document("$project", rollup));
+        pipeline.add(new Document("$merge", new Document("into", TARGET).append("on", "_id")
+            .append("whenMatched", "replace").append("whenNotMatched", "insert")));
+
+        mongoTemplate.getCollection(collection).aggregate(pipeline).allowDiskUse(true).toCollection();
+    }
+
+    private static ObjectId objectIdAt(long epochMs) {
+        return new ObjectId(String.format("%08x", epochMs / 1000) + "0000000000000000");
+    }
+
+    static long floor(long epochMs, long unit) {
+        return epochMs - Math.floorMod(epochMs, unit);
+    }
+
+    static String granularityFor(long rangeMs) {
+        if (rangeMs <= 6 * HOUR_MS) {
+            return MINUTE;
+        }
+        return rangeMs <= 14 * DAY_MS ? HOUR : DAY;
+    }
+
+    static long unitOf(String granularity) {
+        switch (granularity) {
+            case MINUTE:
+                return MINUTE_MS;
+            case HOUR:
+                return HOUR_MS;
+            case DAY:
+                return DAY_MS;
+            default:
+                throw new IllegalArgumentException("Unknown granularity " + granularity + ", expected minute, hour or day");
+        }
+    }
+
+    /**
+     * Histogram bucket of a processing time, the same as the rollup pipelines compute
+     */
+    static int latencyBucket(long ms) {
+        return (int) Math.floor(Math.log(Math.max(ms, 1)) * BUCKETS_PER_DOUBLING / Math.log(2));
+    }
+
+    // Geometric middle of a histogram bucket
+    static long bucketValue(int bucket) {
+        return Math.round(Math.pow(2, (bucket + 0.5) / BUCKETS_PER_DOUBLING));
+    }
+
+    private static long value(Long value) {
+        return value != null ? value : 0;
+    }
+
+    private static double value(Double value) {
+        return value != null ? value : 0;
+    }
+
+    /**
+     * Rollups added up
+     */
+    static final class Totals {
+        long operations;
+        long successes;
+        double compressionRatioSum;
+        long compressionRatioCount;
+        long processingTimeSum;
+        long processingTimeCount;
+        long originalLengthSum;
+        long originalLengthCount;
+        long optimizedLengthSum;
+        long optimizedLengthCount;
+        Long processingTimeMin;
+        Long processingTimeMax;
+        final TreeMap<Integer, Long> histogram = new TreeMap<>();
+
+        void add(RagStatsRollup rollup) {
+            operations += value(rollup.getOperations());
+            successes += value(rollup.getSuccesses());
+            compressionRatioSum += value(rollup.getCompressionRatioSum());
+            compressionRatioCount += value(rollup.getCompressionRatioCount());
+            processingTimeSum += value(rollup.getProcessingTimeSum());
+            processingTimeCount += value(rollup.getProcessingTimeCount());
+            originalLengthSum += value(rollup.getOriginalLengthSum());
+            originalLengthCount += value(rollup.getOriginalLengthCount());
+            optimizedLengthSum += value(rollup.getOptimizedLengthSum());
+            optimizedLengthCount += value(rollup.getOptimizedLengthCount());
+            if (rollup.getProcessingTimeMin() != null) {
+                processingTimeMin = processingTimeMin == null ? rollup.getProcessingTimeMin() : Math.min(processingTimeMin, rollup.getProcessingTimeMin());
+            }
+            if (rollup.getProcessingTimeMax() != null) {
+                processingTimeMax = processingTimeMax == null ? rollup.getProcessingTimeMax() : Math.max(processingTimeMax, rollup.getProcessingTimeMax());
+            }
+            if (rollup.getLatencyHistogram() != null) {
+                rollup.getLatencyHistogram().forEach((bucket, count) -> histogram.merge(Integer.parseInt(bucket), count, Long::sum));
+            }
+        }
+
+        /**
+         * @param percentile : between 0 and 100
+         * @return the processing time at that percentile, within the histogram resolution and the observed range,
+         * or -1 without timed operations
+         */
+        long percentile(double percentile) {
+            long count = histogram.values().stream().mapToLong(Long::longValue).sum();
+            if (count == 0) {
+                return -1;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (Map.Entry<Integer, Long> entry : histogram.entrySet()) {
+                seen += entry.getValue();
+                if (seen >= rank) {
+                    long estimate = bucketValue(entry.getKey());
+                    if (processingTimeMin != null) {
+                        estimate = Math.max(estimate, processingTimeMin);
+                    }
+                    return processingTimeMax != null ? Math.min(estimate, processingTimeMax) : estimate;
+                }
+            }
+            return processingTimeMax != null ? processingTimeMax : -1;
+        }
+
+        Map<String, Object> toMap(List<Double> percentiles) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            double avgCompression = compressionRatioCount == 0 ? 0.0 : compressionRatioSum / compressionRatioCount;
+            double avgProcessingTime = processingTimeCount == 0 ? 0.0 : (double) processingTimeSum / processingTimeCount;
+            double avgOriginalLength = originalLengthCount == 0 ? 0.0 : (double) originalLengthSum / originalLengthCount;
+            double avgOptimizedLength = optimizedLengthCount == 0 ? 0.0 : (double) optimizedLengthSum / optimizedLengthCount;
+            stats.put("total_operations", successes);
+            stats.put("avg_compression_ratio", String.format("%.2f%%", avgCompression));
+            stats.put("avg_processing_time_ms", String.format("%.2f", avgProcessingTime));
+            stats.put("avg_original_length", String.format("%.0f", avgOriginalLength));
+            stats.put("avg_optimized_length", String.format("%.0f", avgOptimizedLength));
+            stats.put("avg_token_reduction", String.format("%.0f", avgOriginalLength - avgOptimizedLength));
+            stats.put("success_rate", String.format("%.2f%%", operations == 0 ? 0.0 : successes * 100.0 / operations));
+            stats.put("min_processing_time_ms", processingTimeMin);
+            stats.put("max_processing_time_ms", processingTimeMax);
+            Map<String, Long> latency = new LinkedHashMap<>();
+            for (Double percentile : percentiles) {
+                latency.put("p" + (percentile % 1 == 0 ? String.valueOf(percentile.intValue()) : String.valueOf(percentile)), percentile(percentile));
+            }
+            stats.put("processing_time_percentiles_ms", latency);
+            return stats;
+        }
+    }
+}
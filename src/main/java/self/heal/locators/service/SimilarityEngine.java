@@ -0,0 +1,18 @@
+package self.heal.locators.service;
+
+/**
+ * String similarity used by the local fuzzy text healing in {@link LocatorMatcher}.
+ * Implementations return a score in [0, 1], 1 meaning identical.
+ */
+public interface SimilarityEngine {
+
+    double similarity(String a, String b);
+
+    /**
+     * Similarity of a and b when it is strictly greater than {@code mustBeat}; any value &lt;= mustBeat otherwise.
+     * Lets implementations stop early once a candidate cannot beat the current best.
+     */
+    default double similarityAbove(String a, String b, double mustBeat) {
+        return similarity(a, b);
+    }
+}
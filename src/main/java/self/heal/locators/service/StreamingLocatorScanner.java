@@ -0,0 +1,119 @@
+package self.heal.locators.service;
+
+import java.io.StringReader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Answers simple presence questions by streaming the page source with StAX and stopping at the first match,
+ * without building a DOM. Handles attribute equality locators ({@code resource-id} / {@code text} /
+ * {@code content-desc}) and XPaths of the shape {@code //*[@attr='v']} or {@code //tag[@attr='v']}.
+ * <p>
+ * Every method returns null when the question cannot be answered by streaming (complex XPath, page that
+ * is not well-formed XML, DTD, ...) so callers fall back to the DOM path.
+ */
+public final class StreamingLocatorScanner {
+
+    private static final Logger LOGGER = Logger.getLogger(StreamingLocatorScanner.class);
+
+    // //*[@attr='v'] or //tag[@attr="v"]
+    private static final Pattern SIMPLE_XPATH = Pattern.compile(
+        "^//(\\*|[A-Za-z_][\\w.\\-]*)\\[\\s*@([A-Za-z_][\\w.\\-]*)\\s*=\\s*(?:'([^']*)'|\"([^\"]*)\")\\s*\\]$");
+
+    private static final String[] MOBILE_ATTRIBUTES = {"resource-id", "text", "content-desc"};
+
+    // Configured once, XMLInputFactory is thread-safe for creating readers
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private StreamingLocatorScanner() {
+    }
+
+    /**
+     * @return TRUE / FALSE if the XPath has a simple attribute-equality shape and the page streams, otherwise null
+     */
+    public static Boolean matchesSimpleXPath(String xpath, ParsedPage page) {
+        Matcher m = SIMPLE_XPATH.matcher(xpath.trim());
+        if (!m.matches()) {
+            return null;
+        }
+        String tag = "*".equals(m.group(1)) ? null : m.group(1);
+        String value = m.group(3) != null ? m.group(3) : m.group(4);
+        return anyAttributeEquals(page, tag, new String[]{m.group(2)}, value);
+    }
+
+    /**
+     * Mobile locator given as a bare value: matches resource-id, text or content-desc exactly
+     */
+    public static Boolean matchesMobileValue(String locator, ParsedPage page) {
+        return anyAttributeEquals(page, null, MOBILE_ATTRIBUTES, locator);
+    }
+
+    /**
+     * Stream the page until an element (optionally restricted to a tag name) has one of the attributes equal to value
+     *
+     * @return TRUE on the first match, FALSE if the whole page streamed without a match, null if it could not be streamed
+     */
+    static Boolean anyAttributeEquals(ParsedPage page, String tagName, String[] attributes, String value) {
+        if (FACTORY == null || page.isEmpty()) {
+            return null;
+        }
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.createXMLStreamReader(new StringReader(page.getPageSource()));
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.DTD) {
+                    // the DOM path rejects doctypes, let it decide
+                    return null;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (tagName != null && !tagName.equals(reader.getLocalName())) {
+                    continue;
+                }
+                for (int i = 0, n = reader.getAttributeCount(); i < n; i++) {
+                    String name = reader.getAttributeLocalName(i);
+                    for (String attribute : attributes) {
+                        if (attribute.equals(name) && value.equals(reader.getAttributeValue(i))) {
+                            return Boolean.TRUE;
+                        }
+                    }
+                }
+            }
+            return Boolean.FALSE;
+        } catch (XMLStreamException e) {
+            // not well-formed XML (e.g. HTML), the DOM path parses it leniently
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                    // nothing to release for a string reader
+                }
+            }
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        try {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+            return factory;
+        } catch (Exception e) {
+            LOGGER.warn("StAX not available, presence checks use the DOM: " + e.getMessage());
+            return null;
+        }
+    }
+}
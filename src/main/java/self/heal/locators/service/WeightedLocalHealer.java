@@ -0,0 +1,502 @@
+package self.heal.locators.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import jakarta.annotation.PreDestroy;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Local healing tier run before the LLM (Similo-style): every element of the page is compared with a reference
+ * on a weighted set of attributes, and the best one is returned with a confidence that drops when a runner-up
+ * scores close to it.
+ * <p>
+ * The reference is the element the locator matched on the last known-good page when one is known (all
+ * attributes available), otherwise what the locator itself says (resource-id, text, content-desc, class, index).
+ * Only attributes the reference has take part in the score, which is the weighted mean of the per-attribute
+ * similarities in [0, 1] under the weights {@link AttributeWeights} holds for the app of the page. Per-element
+ * features are extracted once per page; scoring splits the element table over a ForkJoin pool of its own,
+ * so it never waits behind blocking work on the common pool.
+ */
+@Service
+public class WeightedLocalHealer {
+
+    private static final Logger LOGGER = Logger.getLogger(WeightedLocalHealer.class);
+
+    // Element ranges scored by one fork/join task
+    private static final int SPLIT_THRESHOLD = 256;
+    // A runner-up within this distance of the best score lowers the confidence by as much as it encroaches
+    private static final double AMBIGUITY_MARGIN = 0.25;
+
+    private static final Pattern RESOURCE_ID = Pattern.compile("@resource-id\\s*[=,]\\s*(['\"])(.*?)\\1");
+    private static final Pattern BARE_RESOURCE_ID = Pattern.compile("^[\\w.]+:id/[\\w.\\-]+$");
+    private static final Pattern TEXT = Pattern.compile("(?:@text|text\\(\\)|normalize-space\\([^)]*\\)|translate\\(@text[^)]*\\))\\s*[=,]\\s*(['\"])(.*?)\\1");
+    private static final Pattern CONTENT_DESC = Pattern.compile("@content-desc\\s*[=,]\\s*(['\"])(.*?)\\1");
+    private static final Pattern CLASS = Pattern.compile("@class\\s*=\\s*(['\"])(.*?)\\1");
+    private static final Pattern TAG_STEP = Pattern.compile("(?:^|/)([A-Za-z][\\w.]*)(?=\\[|$)");
+    private static final Pattern INDEX = Pattern.compile("@index\\s*=\\s*(['\"])(\\d+)\\1");
+
+    /**
+     * Attributes compared between the reference and a candidate, with their configuration keys
+     */
+    public enum Feature {
+        TAG("tag"), RESOURCE_ID("resource-id"), TEXT("text"), CONTENT_DESC("content-desc"), PARENT("parent"),
+        SIBLINGS("siblings"), INDEX("index"), NEIGHBOUR_TEXT("neighbour-text");
+
+        private final String key;
+
+        Feature(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private final AttributeWeights attributeWeights;
+    private final SimilarityEngine similarity = new LevenshteinSimilarity();
+    private final ForkJoinPool scoringPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    @Autowired
+    public WeightedLocalHealer(AttributeWeights attributeWeights) {
+        this.attributeWeights = attributeWeights;
+    }
+
+    /**
+     * Best candidate for a failed locator
+     *
+     * @param locator   : failed locator
+     * @param page      : current page
+     * @param oldPage   : page the locator last worked on, or null
+     * @param oldTarget : element the locator matched on oldPage, or -1
+     * @return the best candidate, or null when the locator gives nothing to compare or the page has no elements
+     */
+    public Result heal(String locator, ParsedPage page, ParsedPage oldPage, int oldTarget) {
+        Reference reference = oldPage != null && oldTarget >= 0
+            ? Reference.of(features(oldPage), oldTarget) : Reference.of(locator);
+        if (reference.isEmpty() || page.getElements().isEmpty()) {
+            return null;
+        }
+        Map<Feature, Double> weights = weights(attributeWeights.localHealWeights(page));
+        ElementFeatures[] candidates = features(page);
+        long start = System.nanoTime();
+        ScoreTask task = new ScoreTask(reference, candidates, weights, similarity, 0, candidates.length);
+        Best best = candidates.length > SPLIT_THRESHOLD ? scoringPool.invoke(task) : task.compute();
+        if (best.index < 0 || best.score <= 0) {
+            return null;
+        }
+        String xpath = PageDiff.uniqueXPath(page, best.index);
+        double confidence = Math.max(0.0, best.score - Math.max(0.0, best.second - (best.score - AMBIGUITY_MARGIN)));
+        Map<String, Double> breakdown = new LinkedHashMap<>();
+        for (Feature feature : Feature.values()) {
+            Double value = reference.similarity(feature, candidates[best.index], similarity);
+            if (value != null && weights.getOrDefault(feature, 0.0) > 0) {
+                breakdown.put(feature.getKey(), Math.round(value * 1000) / 1000.0);
+            }
+        }
+        LOGGER.debug("Local heal of " + locator + ": " + xpath + " score " + String.format("%.3f", best.score)
+            + " runner-up " + String.format("%.3f", best.second) + " over " + candidates.length + " elements in "
+            + (System.nanoTime() - start) / 1000 + " us");
+        return new Result(best.index, xpath, best.score, best.second, confidence, oldPage != null && oldTarget >= 0, breakdown);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scoringPool.shutdown();
+    }
+
+    private static Map<Feature, Double> weights(Map<String, Double> configured) {
+        Map<Feature, Double> weights = new EnumMap<>(Feature.class);
+        for (Feature feature : Feature.values()) {
+            Double weight = configured != null ? configured.get(feature.getKey()) : null;
+            weights.put(feature, weight != null ? weight : 0.0);
+        }
+        return weights;
+    }
+
+    static ElementFeatures[] features(ParsedPage page) {
+        return page.derive("local-heal-features", () -> ElementFeatures.extract(page.getElements()));
+    }
+
+    // Fork/join over the element table, keeping the best and runner-up scores
+    private static final class ScoreTask extends RecursiveTask<Best> {
+        private static final long serialVersionUID = 1L;
+
+        final transient Reference reference;
+        final transient ElementFeatures[] candidates;
+        final transient Map<Feature, Double> weights;
+        final transient SimilarityEngine similarity;
+        final int from;
+        final int to;
+
+        ScoreTask(Reference reference, ElementFeatures[] candidates, Map<Feature, Double> weights,
+                  SimilarityEngine similarity, int from, int to) {
+            this.reference = reference;
+            this.candidates = candidates;
+            this.weights = weights;
+            this.similarity = similarity;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Best compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                ScoreTask left = new ScoreTask(reference, candidates, weights, similarity, from, middle);
+                left.fork();
+                Best right = new ScoreTask(reference, candidates, weights, similarity, middle, to).compute();
+                return left.join().merge(right);
+            }
+            Best best = new Best();
+            for (int i = from; i < to; i++) {
+                best.offer(i, reference.score(candidates[i], weights, similarity));
+            }
+            return best;
+        }
+    }
+
+    private static final class Best {
+        int index = -1;
+        double score;
+        double second;
+
+        void offer(int i, double s) {
+            if (s > score) {
+                second = score;
+                score = s;
+                index = i;
+            } else if (s > second) {
+                second = s;
+            }
+        }
+
+        Best merge(Best other) {
+            // the left range comes first in document order and wins ties
+            Best merged = new Best();
+            merged.offer(index, score);
+            merged.offer(other.index, other.score);
+            merged.second = Math.max(merged.second, Math.max(second, other.second));
+            return merged;
+        }
+    }
+
+    /**
+     * Attributes of one element used for comparison, normalized
+     */
+    static final class ElementFeatures {
+        String tag;
+        String resourceId;
+        Set<String> resourceIdTokens;
+        String text;
+        String contentDesc;
+        String parentSignature;
+        Set<String> siblings;
+        int index;
+        Set<String> ownTokens;
+        // text tokens of the siblings (shared per parent) and of the children, and the size of their union
+        Set<String> siblingTokens;
+        Set<String> childTokens;
+        int neighbourCount;
+
+        static ElementFeatures[] extract(List<ParsedPage.PageElement> elements) {
+            int n = elements.size();
+            ElementFeatures[] features = new ElementFeatures[n];
+            Map<Integer, Set<String>> childSignatures = new HashMap<>();
+            Map<Integer, Set<String>> childTokens = new HashMap<>();
+            Map<Integer, Integer> childCount = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                ParsedPage.PageElement element = elements.get(i);
+                ElementFeatures f = new ElementFeatures();
+                f.tag = shortName(element.tagName);
+                f.resourceId = emptyToNull(element.attr("resource-id") != null ? element.attr("resource-id") : element.attr("id"));
+                f.resourceIdTokens = f.resourceId != null ? tokens(idPart(f.resourceId)) : Collections.emptySet();
+                String text = element.attr("text");
+                f.text = normalize(text != null && !text.isEmpty() ? text : element.ownText);
+                f.contentDesc = normalize(element.attr("content-desc"));
+                f.ownTokens = new HashSet<>();
+                addTokens(f.text, f.ownTokens);
+                addTokens(f.contentDesc, f.ownTokens);
+                int parent = element.parentIndex;
+                String indexAttr = element.attr("index");
+                int position = childCount.merge(parent, 1, Integer::sum) - 1;
+                f.index = indexAttr != null && indexAttr.matches("\\d+") ? Integer.parseInt(indexAttr) : position;
+                if (parent >= 0) {
+                    ElementFeatures p = features[parent];
+                    f.parentSignature = p.tag + "|" + (p.resourceId != null ? p.resourceId : "");
+                }
+                // siblings and neighbour text are shared per parent; the sets fill up as siblings are visited
+                f.siblings = childSignatures.computeIfAbsent(parent, k -> new HashSet<>());
+                f.siblings.add(f.tag + "|" + (f.resourceId != null ? f.resourceId : ""));
+                f.siblingTokens = childTokens.computeIfAbsent(parent, k -> new HashSet<>());
+                f.siblingTokens.addAll(f.ownTokens);
+                f.childTokens = childTokens.computeIfAbsent(i, k -> new HashSet<>());
+                features[i] = f;
+            }
+            for (ElementFeatures f : features) {
+                f.neighbourCount = f.siblingTokens.size() + f.childTokens.size() - shared(f.siblingTokens, f.childTokens);
+            }
+            return features;
+        }
+    }
+
+    /**
+     * What a candidate is compared with; null fields are not compared
+     */
+    static final class Reference {
+        String tag;
+        String resourceId;
+        Set<String> resourceIdTokens = Collections.emptySet();
+        String text;
+        boolean partialText;
+        String contentDesc;
+        String parentSignature;
+        Set<String> siblings;
+        Integer index;
+        String resourceIdPart;
+        Set<String> neighbourTokens;
+
+        static Reference of(ElementFeatures[] features, int target) {
+            ElementFeatures f = features[target];
+            Reference r = new Reference();
+            r.tag = f.tag;
+            r.resourceId = f.resourceId;
+            r.resourceIdTokens = f.resourceIdTokens;
+            r.text = f.text;
+            r.contentDesc = f.contentDesc;
+            r.parentSignature = f.parentSignature;
+            r.siblings = f.siblings;
+            r.index = f.index;
+            r.resourceIdPart = f.resourceId != null ? idPart(f.resourceId) : null;
+            Set<String> neighbours = new HashSet<>(f.siblingTokens);
+            neighbours.addAll(f.childTokens);
+            r.neighbourTokens = neighbours.isEmpty() ? null : neighbours;
+            return r;
+        }
+
+        static Reference of(String locator) {
+            Reference r = new Reference();
+            if (locator == null || locator.isBlank()) {
+                return r;
+            }
+            String trimmed = locator.trim();
+            r.resourceId = BARE_RESOURCE_ID.matcher(trimmed).matches() ? trimmed : group(RESOURCE_ID, trimmed);
+            if (r.resourceId != null) {
+                r.resourceIdPart = idPart(r.resourceId);
+                r.resourceIdTokens = tokens(r.resourceIdPart);
+            }
+            String text = group(TEXT, trimmed);
+            r.text = normalize(text);
+            r.partialText = text != null && trimmed.contains("contains(");
+            r.contentDesc = normalize(group(CONTENT_DESC, trimmed));
+            String className = group(CLASS, trimmed);
+            if (className == null) {
+                Matcher m = TAG_STEP.matcher(trimmed);
+                String last = null;
+                while (m.find()) {
+                    last = m.group(1);
+                }
+                className = last != null && !"*".equals(last) ? last : null;
+            }
+            r.tag = className != null ? shortName(className) : null;
+            String index = group(INDEX, trimmed);
+            r.index = index != null ? Integer.valueOf(index) : null;
+            if (r.resourceId == null && r.text == null && r.contentDesc == null && !trimmed.startsWith("/") && !trimmed.startsWith("(")) {
+                // a bare value: could be a resource-id suffix, a text or a content-desc
+                r.text = normalize(trimmed);
+                r.partialText = true;
+                r.resourceIdTokens = tokens(trimmed);
+            }
+            return r;
+        }
+
+        boolean isEmpty() {
+            return resourceId == null && resourceIdTokens.isEmpty() && text == null && contentDesc == null && tag == null;
+        }
+
+        double score(ElementFeatures candidate, Map<Feature, Double> weights, SimilarityEngine engine) {
+            double total = 0;
+            double weightSum = 0;
+            for (Map.Entry<Feature, Double> weight : weights.entrySet()) {
+                if (weight.getValue() <= 0) {
+                    continue;
+                }
+                Double value = similarity(weight.getKey(), candidate, engine);
+                if (value != null) {
+                    total += weight.getValue() * value;
+                    weightSum += weight.getValue();
+                }
+            }
+            return weightSum > 0 ? total / weightSum : 0;
+        }
+
+        // Similarity in [0, 1] on one feature, null when the reference does not have it
+        Double similarity(Feature feature, ElementFeatures c, SimilarityEngine engine) {
+            switch (feature) {
+                case TAG:
+                    return tag == null ? null : tag.equals(c.tag) ? 1.0 : 0.0;
+                case RESOURCE_ID:
+                    if (resourceId == null && resourceIdTokens.isEmpty()) {
+                        return null;
+                    }
+                    if (resourceId != null && resourceId.equals(c.resourceId)) {
+                        return 1.0;
+                    }
+                    if (c.resourceId == null) {
+                        return 0.0;
+                    }
+                    double tokenSimilarity = jaccard(resourceIdTokens, c.resourceIdTokens);
+                    return resourceIdPart != null ? Math.max(tokenSimilarity, engine.similarity(resourceIdPart, idPart(c.resourceId))) : tokenSimilarity;
+                case TEXT:
+                    return text == null ? null : textSimilarity(text, c.text, partialText, engine);
+                case CONTENT_DESC:
+                    return contentDesc == null ? null : textSimilarity(contentDesc, c.contentDesc, false, engine);
+                case PARENT:
+                    if (parentSignature == null) {
+                        return null;
+                    }
+                    if (parentSignature.equals(c.parentSignature)) {
+                        return 1.0;
+                    }
+                    return c.parentSignature != null && tagOf(parentSignature).equals(tagOf(c.parentSignature)) ? 0.5 : 0.0;
+                case SIBLINGS:
+                    return siblings == null ? null : jaccard(siblings, c.siblings);
+                case INDEX:
+                    return index == null ? null : 1.0 / (1 + Math.abs(index - c.index));
+                case NEIGHBOUR_TEXT:
+                    if (neighbourTokens == null) {
+                        return null;
+                    }
+                    if (c.neighbourCount == 0) {
+                        return 0.0;
+                    }
+                    int common = 0;
+                    for (String token : neighbourTokens) {
+                        if (c.siblingTokens.contains(token) || c.childTokens.contains(token)) {
+                            common++;
+                        }
+                    }
+                    return (double) common / (neighbourTokens.size() + c.neighbourCount - common);
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private static double textSimilarity(String reference, String candidate, boolean partial, SimilarityEngine engine) {
+        if (candidate == null) {
+            return 0.0;
+        }
+        if (reference.equals(candidate)) {
+            return 1.0;
+        }
+        if (candidate.contains(reference)) {
+            return partial ? 1.0 : 0.5 + 0.4 * reference.length() / candidate.length();
+        }
+        return engine.similarity(reference, candidate);
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b == null || b.isEmpty()) {
+            return 0.0;
+        }
+        int common = shared(a, b);
+        return (double) common / (a.size() + b.size() - common);
+    }
+
+    private static int shared(Set<String> a, Set<String> b) {
+        Set<String> small = a.size() <= b.size() ? a : b;
+        Set<String> large = small == a ? b : a;
+        int shared = 0;
+        for (String s : small) {
+            if (large.contains(s)) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    private static String group(Pattern pattern, String s) {
+        Matcher m = pattern.matcher(s);
+        return m.find() ? m.group(2) : null;
+    }
+
+    private static String tagOf(String signature) {
+        return signature.substring(0, signature.indexOf('|'));
+    }
+
+    static String shortName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    private static String idPart(String resourceId) {
+        int slash = resourceId.lastIndexOf('/');
+        return slash >= 0 ? resourceId.substring(slash + 1) : resourceId;
+    }
+
+    private static Set<String> tokens(String value) {
+        List<String> tokens = new ArrayList<>();
+        ElementIndex.tokenize(value, tokens);
+        return new HashSet<>(tokens);
+    }
+
+    private static void addTokens(String value, Set<String> out) {
+        if (value != null) {
+            ElementIndex.tokenize(value, out);
+        }
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String normalized = CandidateMatcher.normalizeSpace(value).toLowerCase(Locale.ROOT);
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Best candidate of a local heal
+     */
+    public static final class Result {
+        public final int elementIndex;
+        public final String healedLocator;
+        public final double score;
+        public final double runnerUpScore;
+        /** Score, lowered when the runner-up is close */
+        public final double confidence;
+        /** Whether the reference was the element from the last known-good page rather than the locator */
+        public final boolean fromPreviousPage;
+        public final Map<String, Double> features;
+
+        Result(int elementIndex, String healedLocator, double score, double runnerUpScore, double confidence,
+               boolean fromPreviousPage, Map<String, Double> features) {
+            this.elementIndex = elementIndex;
+            this.healedLocator = healedLocator;
+            this.score = score;
+            this.runnerUpScore = runnerUpScore;
+            this.confidence = confidence;
+            this.fromPreviousPage = fromPreviousPage;
+            this.features = features;
+        }
+    }
+}
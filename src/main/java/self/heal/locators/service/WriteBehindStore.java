@@ -0,0 +1,588 @@
+package self.heal.locators.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PreDestroy;
+
+import org.apache.log4j.Logger;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+
+import self.heal.locators.config.HealingConfiguration;
+import self.heal.locators.model.HealedElement;
+import self.heal.locators.model.HealingStatusUpdate;
+import self.heal.locators.model.ImageDataModel;
+import self.heal.locators.model.PageSourceBlob;
+import self.heal.locators.model.RagPerformanceModel;
+import self.heal.locators.model.TrainingModel;
+import self.heal.locators.utils.BoundedCache;
+
+/**
+ * Write-behind persistence for the documents a healing produces (healed_element, rag_performance,
+ * training_model, image_data). Callers get ids assigned immediately and continue without reading Mongo; a single
+ * writer thread drains a bounded queue and writes one unordered bulk per collection every
+ * {@code healing.write-behind-batch-size} documents or {@code healing.write-behind-flush-ms}.
+ * <ul>
+ *     <li>Every write is idempotent (upsert by id, healings by their unique locator and score), so a batch is
+ *     retried as a whole with backoff: delivery is at least once.</li>
+ *     <li>When the queue is full a caller waits up to {@code healing.write-behind-offer-timeout-ms}; past that, and
+ *     for batches that exhausted their retries, documents are appended to a local spill file instead of being
+ *     dropped. The spill file is replayed at startup and whenever a flush succeeds, and probed every 30 s while
+ *     Mongo keeps failing.</li>
+ * </ul>
+ * With write-behind disabled every save is written synchronously through the same path.
+ */
+@Service
+public class WriteBehindStore {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteBehindStore.class);
+
+    // Only these types are read back from the spill file
+    private static final Set<Class<?>> ENTITY_TYPES = Set.of(
+        HealedElement.class, HealingStatusUpdate.class, RagPerformanceModel.class, TrainingModel.class, ImageDataModel.class);
+    private static final long MAX_BACKOFF_MS = 5000;
+    // After a failed write the idle writer only retries the spill file this often
+    private static final long REPLAY_PROBE_MS = 30000;
+    // Handed-out healing ids replaced by the id of an already stored healing, kept for the documents referring to them
+    private static final int SETTLED_IDS = 10000;
+
+    private final HealingConfiguration healingConfig;
+    private final MongoTemplate mongoTemplate;
+    private final PageSourceStore pageSources;
+    private final LocatorLookupCache locatorCache;
+    private final HealingResultCache healingResultCache;
+    private final PipelineMetrics pipelineMetrics;
+    private final BlockingQueue<Object> queue;
+    private final Path spillFile;
+    private final Object spillLock = new Object();
+    private final Thread writer;
+
+    private volatile boolean running = true;
+    private volatile boolean spillPending;
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private volatile long nextIdleReplay;
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong blockedOffers = new AtomicLong();
+    private final AtomicLong settledHealingIds = new AtomicLong();
+    private final BoundedCache<String, String> settledIds = new BoundedCache<>(SETTLED_IDS);
+
+    @Autowired
+    public WriteBehindStore(HealingConfiguration healingConfig, MongoTemplate mongoTemplate, PageSourceStore pageSources,
+                            LocatorLookupCache locatorCache, HealingResultCache healingResultCache, PipelineMetrics pipelineMetrics) {
+        this.healingConfig = healingConfig;
+        this.mongoTemplate = mongoTemplate;
+        this.pageSources = pageSources;
+        this.locatorCache = locatorCache;
+        this.healingResultCache = healingResultCache;
+        this.pipelineMetrics = pipelineMetrics;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, healingConfig.getWriteBehindQueueCapacity()));
+        this.spillFile = Paths.get(healingConfig.getWriteBehindSpillFile());
+        this.spillPending = Files.exists(spillFile);
+        this.writer = new Thread(this::drain, "write-behind");
+        this.writer.setDaemon(true);
+        if (healingConfig.isWriteBehindEnabled()) {
+            this.writer.start();
+        }
+    }
+
+    /**
+     * Queue a document for writing, assigning a new id first when it has none. Nothing is read on the caller's
+     * thread: a healing whose (locator, confidenceScore) turns out to be stored already is given the stored id by
+     * the writer, see {@link #settleHealingIds}.
+     */
+    public void save(Object entity) {
+        if (entity == null) {
+            return;
+        }
+        assignId(entity);
+        if (entity instanceof HealedElement) {
+            pageSources.assignHash((HealedElement) entity);
+        }
+        if (!healingConfig.isWriteBehindEnabled()) {
+            writeOrSpill(List.of(entity));
+            return;
+        }
+        enqueued.incrementAndGet();
+        if (queue.offer(entity)) {
+            return;
+        }
+        blockedOffers.incrementAndGet();
+        try {
+            if (queue.offer(entity, healingConfig.getWriteBehindOfferTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.warn("Write-behind queue full, spilling " + entity.getClass().getSimpleName() + " to " + spillFile);
+        spill(List.of(entity));
+    }
+
+    /**
+     * Queue a status change of a stored healing. The writer stores the page source blob first and then sets only
+     * the status and page source of the healing, after any upsert of the same healing queued before it.
+     */
+    public void updateStatus(HealingStatusUpdate update) {
+        if (pageSources.isEnabled() && update.getPageSourceHash() == null && update.getPageSource() != null) {
+            update.setPageSourceHash(ParsedPage.hash(update.getPageSource()));
+        }
+        save(update);
+    }
+
+    public void saveAll(Iterable<?> entities) {
+        for (Object entity : entities) {
+            save(entity);
+        }
+    }
+
+    /**
+     * Replay what an earlier run spilled; with write-behind enabled the writer does it once idle
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayAtStartup() {
+        if (spillPending && !healingConfig.isWriteBehindEnabled()) {
+            CompletableFuture.runAsync(this::replaySpill);
+        }
+    }
+
+    /**
+     * Write what is queued before the Mongo client goes away
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(healingConfig.getWriteBehindFlushMs() * 10L + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Object> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            writeOrSpill(rest);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", healingConfig.isWriteBehindEnabled());
+        stats.put("queued", queue.size());
+        stats.put("capacity", healingConfig.getWriteBehindQueueCapacity());
+        stats.put("enqueued", enqueued.get());
+        stats.put("written", written.get());
+        stats.put("batches", batches.get());
+        stats.put("retries", retries.get());
+        stats.put("blocked_offers", blockedOffers.get());
+        stats.put("settled_healing_ids", settledHealingIds.get());
+        stats.put("spilled", spilled.get());
+        stats.put("replayed", replayed.get());
+        stats.put("spill_pending", spillPending);
+        return stats;
+    }
+
+    // Writer thread: collect up to a batch or until the flush interval is over, then write
+    private void drain() {
+        int batchSize = Math.max(1, healingConfig.getWriteBehindBatchSize());
+        List<Object> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Object first = queue.poll(healingConfig.getWriteBehindFlushMs(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (spillPending && System.currentTimeMillis() >= nextIdleReplay) {
+                        replaySpill();
+                    }
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(healingConfig.getWriteBehindFlushMs());
+                while (batch.size() < batchSize) {
+                    long left = deadline - System.nanoTime();
+                    Object next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                if (!running) {
+                    queue.drainTo(batch);
+                }
+            }
+            if (!batch.isEmpty()) {
+                if (writeOrSpill(batch) && spillPending) {
+                    replaySpill();
+                }
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+    }
+
+    /**
+     * Write a batch, retrying with exponential backoff, and spill it when the retries are exhausted
+     *
+     * @return whether the batch reached Mongo
+     */
+    private boolean writeOrSpill(List<Object> batch) {
+        long backoff = Math.max(1, healingConfig.getWriteBehindRetryBackoffMs());
+        for (int attempt = 0; ; attempt++) {
+            try {
+                write(batch);
+                written.addAndGet(batch.size());
+                batches.incrementAndGet();
+                nextIdleReplay = 0;
+                return true;
+            } catch (Exception e) {
+                if (attempt >= healingConfig.getWriteBehindMaxRetries()) {
+                    LOGGER.error("Write-behind batch of " + batch.size() + " failed after " + (attempt + 1)
+                        + " attempts, spilling to " + spillFile + ": " + e.getMessage());
+                    spill(batch);
+                    nextIdleReplay = System.currentTimeMillis() + REPLAY_PROBE_MS;
+                    return false;
+                }
+                retries.incrementAndGet();
+                LOGGER.warn("Write-behind batch of " + batch.size() + " failed, retrying in " + backoff + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    // shutting down: one more immediate attempt, then spill
+                    Thread.currentThread().interrupt();
+                    backoff = 0;
+                }
+                backoff = Math.min(MAX_BACKOFF_MS, backoff * 2);
+            }
+        }
+    }
+
+    // One unordered bulk per collection: page source blobs, then healings and their status changes, then the
+    // documents that refer to them
+    private void write(List<Object> batch) {
+        Map<Class<?>, List<Object>> byType = new LinkedHashMap<>();
+        List<HealedElement> healings = new ArrayList<>();
+        List<HealingStatusUpdate> statusUpdates = new ArrayList<>();
+        for (Object entity : batch) {
+            if (entity instanceof HealingStatusUpdate) {
+                statusUpdates.add((HealingStatusUpdate) entity);
+                continue;
+            }
+            byType.computeIfAbsent(entity.getClass(), k -> new ArrayList<>()).add(entity);
+            if (entity instanceof HealedElement) {
+                healings.add((HealedElement) entity);
+            }
+        }
+        if (pageSources.isEnabled() && (!healings.isEmpty() || !statusUpdates.isEmpty())) {
+            Map<String, PageSourceBlob> pending = new LinkedHashMap<>();
+            pageSources.pendingBlobs(healings).forEach(blob -> pending.put(blob.getHash(), blob));
+            statusUpdates.forEach(update -> pageSources.addPending(pending, update.getPageSourceHash(), update.getPageSource()));
+            List<PageSourceBlob> blobs = new ArrayList<>(pending.values());
+            if (!blobs.isEmpty()) {
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PageSourceBlob.class);
+                pageSources.upsertBlobs(bulk, blobs);
+                timedExecute(bulk, PageSourceBlob.class);
+                pageSources.markStored(blobs);
+            }
+        }
+        if (!healings.isEmpty()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, HealedElement.class);
+            healings.forEach(healing -> upsertHealing(bulk, healing));
+            settleHealingIds(healings, timedExecute(bulk, HealedElement.class));
+            byType.remove(HealedElement.class);
+        }
+        if (!statusUpdates.isEmpty()) {
+            // ordered: the last of several changes of a healing wins
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, HealedElement.class);
+            statusUpdates.forEach(update -> bulk.updateOne(byHealingKey(update.getLocator(), update.getConfidenceScore()), statusChange(update)));
+            timedExecute(bulk, HealedElement.class);
+        }
+        for (Map.Entry<Class<?>, List<Object>> entry : byType.entrySet()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, entry.getKey());
+            for (Object entity : entry.getValue()) {
+                referToStoredHealing(entity);
+                Query byId = new Query(Criteria.where("_id").is(idOf(entity)));
+                bulk.replaceOne(byId, entity, FindAndReplaceOptions.options().upsert());
+            }
+            timedExecute(bulk, entry.getKey());
+        }
+        // only once applied, a lookup in between would cache the previous healing again
+        healings.forEach(healing -> locatorCache.invalidate(healing.getLocator()));
+        statusUpdates.forEach(update -> locatorCache.invalidate(update.getLocator()));
+    }
+
+    // persistence stage of the pipeline metrics, per collection
+    private BulkWriteResult timedExecute(BulkOperations bulk, Class<?> type) {
+        long start = System.nanoTime();
+        BulkWriteResult result = bulk.execute();
+        pipelineMetrics.record("persist." + mongoTemplate.getCollectionName(type), System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * (locator, confidenceScore) is unique: a healing with the same score updates the stored one, which keeps its
+     * id ({@code $setOnInsert}). A page source already in the blob store is stored as its hash only.
+     */
+    private void upsertHealing(BulkOperations bulk, HealedElement healing) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(healing, document);
+        Object id = document.remove("_id");
+        Update update = new Update();
+        if (pageSources.isEnabled() && healing.getPageSourceHash() != null) {
+            document.remove("pageSource");
+            update.unset("pageSource");
+        }
+        document.forEach(update::set);
+        update.setOnInsert("_id", id);
+        bulk.upsert(byHealingKey(healing), update);
+    }
+
+    /**
+     * Status and page source of a healing; a page source in the blob store is set as its hash only
+     */
+    private Update statusChange(HealingStatusUpdate update) {
+        Update change = new Update().set("status", update.getStatus());
+        if (pageSources.isEnabled() && update.getPageSourceHash() != null) {
+            change.set("pageSourceHash", update.getPageSourceHash()).unset("pageSource");
+        } else {
+            change.set("pageSource", update.getPageSource()).unset("pageSourceHash");
+        }
+        return change;
+    }
+
+    /**
+     * Healings the bulk did not insert updated a stored healing and were stored under its id. Read those ids in one
+     * query from unique_locator_score, give them to the healings and to their result cache entries, and remember
+     * them for the documents (RAG performance, image links) that refer to a healing by the id handed out.
+     */
+    private void settleHealingIds(List<HealedElement> healings, BulkWriteResult result) {
+        Set<Integer> inserted = new HashSet<>();
+        for (BulkWriteUpsert upsert : result.getUpserts()) {
+            inserted.add(upsert.getIndex());
+        }
+        List<HealedElement> updated = new ArrayList<>();
+        List<Criteria> keys = new ArrayList<>();
+        for (int i = 0; i < healings.size(); i++) {
+            HealedElement healing = healings.get(i);
+            if (!inserted.contains(i) && healing.getLocator() != null && healing.getConfidenceScore() != null) {
+                updated.add(healing);
+                keys.add(healingKeyCriteria(healing));
+            }
+        }
+        if (updated.isEmpty()) {
+            return;
+        }
+        Query stored = new Query(new Criteria().orOperator(keys));
+        stored.fields().include("_id", "locator", "confidenceScore");
+        Map<String, String> storedIds = new HashMap<>();
+        for (HealedElement healing : mongoTemplate.find(stored, HealedElement.class)) {
+            storedIds.put(healingKey(healing), healing.getId());
+        }
+        for (HealedElement healing : updated) {
+            String handedOut = healing.getId();
+            String storedId = storedIds.get(healingKey(healing));
+            if (storedId != null && !storedId.equals(handedOut)) {
+                healing.setId(storedId);
+                settledIds.put(handedOut, storedId);
+                healingResultCache.settleId(healing, handedOut);
+                settledHealingIds.incrementAndGet();
+            }
+        }
+    }
+
+    // Point a document at the stored id of the healing it was linked to
+    private void referToStoredHealing(Object entity) {
+        if (entity instanceof RagPerformanceModel) {
+            RagPerformanceModel performance = (RagPerformanceModel) entity;
+            String storedId = storedHealingId(performance.getHealedElementId());
+            if (storedId != null) {
+                performance.setHealedElementId(storedId);
+            }
+        } else if (entity instanceof ImageDataModel) {
+            ImageDataModel image = (ImageDataModel) entity;
+            String storedId = storedHealingId(image.getHealedElementId());
+            if (storedId != null) {
+                image.setHealedElementId(storedId);
+            }
+        }
+    }
+
+    private String storedHealingId(String handedOut) {
+        return handedOut != null ? settledIds.get(handedOut) : null;
+    }
+
+    private static String healingKey(HealedElement healing) {
+        return healing.getLocator() + '\u0000' + healing.getConfidenceScore();
+    }
+
+    private static Query byHealingKey(HealedElement healing) {
+        return byHealingKey(healing.getLocator(), healing.getConfidenceScore());
+    }
+
+    private static Query byHealingKey(String locator, Double confidenceScore) {
+        return new Query(healingKeyCriteria(locator, confidenceScore));
+    }
+
+    private static Criteria healingKeyCriteria(HealedElement healing) {
+        return healingKeyCriteria(healing.getLocator(), healing.getConfidenceScore());
+    }
+
+    private static Criteria healingKeyCriteria(String locator, Double confidenceScore) {
+        return Criteria.where("locator").is(locator).and("confidenceScore").is(confidenceScore);
+    }
+
+    private void assignId(Object entity) {
+        MongoPersistentEntity<?> persistent = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(entity.getClass());
+        if (persistent.getIdProperty() != null && persistent.getIdentifierAccessor(entity).getIdentifier() == null
+            && String.class.equals(persistent.getIdProperty().getType())) {
+            persistent.getPropertyAccessor(entity).setProperty(persistent.getIdProperty(), new ObjectId().toHexString());
+        }
+    }
+
+    private Object idOf(Object entity) {
+        MongoPersistentEntity<?> persistent = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(entity.getClass());
+        Object id = persistent.getIdentifierAccessor(entity).getIdentifier();
+        // hex string ids are stored as ObjectIds
+        return id instanceof String && ObjectId.isValid((String) id) ? new ObjectId((String) id) : id;
+    }
+
+    // One JSON line per document: {"c": entity class, "d": stored form}
+    private void spill(List<Object> entities) {
+        synchronized (spillLock) {
+            try {
+                if (spillFile.getParent() != null) {
+                    Files.createDirectories(spillFile.getParent());
+                }
+                try (BufferedWriter out = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (Object entity : entities) {
+                        Document document = new Document();
+                        mongoTemplate.getConverter().write(entity, document);
+                        out.write(new Document("c", entity.getClass().getName()).append("d", document).toJson());
+                        out.newLine();
+                    }
+                }
+                spilled.addAndGet(entities.size());
+                spillPending = true;
+            } catch (IOException e) {
+                LOGGER.error("Could not spill " + entities.size() + " documents to " + spillFile + ", they are lost", e);
+            }
+        }
+    }
+
+    /**
+     * Write the spilled documents back in batches. The file is moved aside first, so documents spilled meanwhile
+     * go to a fresh file; whatever fails again is spilled again.
+     */
+    private void replaySpill() {
+        if (!replaying.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            replaySpillFile();
+        } finally {
+            replaying.set(false);
+        }
+    }
+
+    private void replaySpillFile() {
+        Path replayFile = spillFile.resolveSibling(spillFile.getFileName() + ".replaying");
+        synchronized (spillLock) {
+            if (!Files.exists(spillFile) && !Files.exists(replayFile)) {
+                spillPending = false;
+                return;
+            }
+            try {
+                // a file left by an interrupted replay is finished first
+                if (!Files.exists(replayFile)) {
+                    Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+                }
+                spillPending = Files.exists(spillFile);
+            } catch (IOException e) {
+                LOGGER.warn("Could not move the spill file aside: " + e.getMessage());
+                return;
+            }
+        }
+        int batchSize = Math.max(1, healingConfig.getWriteBehindBatchSize());
+        int count = 0;
+        try (BufferedReader in = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+            List<Object> batch = new ArrayList<>(batchSize);
+            String line;
+            while ((line = in.readLine()) != null) {
+                Object entity = readSpilled(line);
+                if (entity == null) {
+                    continue;
+                }
+                batch.add(entity);
+                if (batch.size() == batchSize) {
+                    count += writeOrSpill(batch) ? batch.size() : 0;
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                count += writeOrSpill(batch) ? batch.size() : 0;
+            }
+            Files.delete(replayFile);
+            replayed.addAndGet(count);
+            LOGGER.info("Replayed " + count + " spilled documents");
+        } catch (IOException e) {
+            LOGGER.error("Could not replay " + replayFile + ": " + e.getMessage(), e);
+            spillPending = true;
+        }
+    }
+
+    private Object readSpilled(String line) {
+        if (line.isBlank()) {
+            return null;
+        }
+        try {
+            Document entry = Document.parse(line);
+            Class<?> type = Class.forName(entry.getString("c"));
+            if (!ENTITY_TYPES.contains(type)) {
+                LOGGER.warn("Skipping spilled document of unexpected type " + type.getName());
+                return null;
+            }
+            return mongoTemplate.getConverter().read(type, entry.get("d", Document.class));
+        } catch (Exception e) {
+            LOGGER.warn("Skipping unreadable spilled document: " + e.getMessage());
+            return null;
+        }
+    }
+}
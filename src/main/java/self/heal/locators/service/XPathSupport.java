@@ -0,0 +1,181 @@
+package self.heal.locators.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathVariableResolver;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Thread-confined XPath / DocumentBuilder instances and compiled expression cache.
+ * Neither the JAXP factories nor {@link XPathExpression} are thread-safe, so every thread gets its own
+ * XPath, DocumentBuilder and LRU of compiled expressions. Factory lookup and compilation therefore happen
+ * once per thread and expression instead of on every call.
+ * <p>
+ * Candidate templates reference the locator as the XPath variables {@code $value} and {@code $valueLower}
+ * (see {@link #VALUE}), so one compiled template serves every locator.
+ */
+public final class XPathSupport {
+
+    /** Variable holding the locator in expression templates */
+    public static final String VALUE = "$value";
+    /** Variable holding the lowercased locator in expression templates */
+    public static final String VALUE_LOWER = "$valueLower";
+
+    private static final QName VALUE_NAME = new QName("value");
+    private static final QName VALUE_LOWER_NAME = new QName("valueLower");
+    private static final int MAX_EXPRESSIONS_PER_THREAD = 256;
+
+    private static final ThreadLocal<ThreadState> STATE = ThreadLocal.withInitial(ThreadState::new);
+
+    private XPathSupport() {
+    }
+
+    /**
+     * @return whether the expression selects at least one node
+     * @throws XPathExpressionException if the expression does not compile
+     */
+    public static boolean exists(Node context, String expression) throws XPathExpressionException {
+        return exists(context, expression, null);
+    }
+
+    /**
+     * Evaluate an expression template with {@code $value} / {@code $valueLower} bound to the given value
+     */
+    public static boolean exists(Node context, String template, String value) throws XPathExpressionException {
+        NodeList nodes = nodes(context, template, value);
+        return nodes != null && nodes.getLength() > 0;
+    }
+
+    public static NodeList nodes(Node context, String expression) throws XPathExpressionException {
+        return nodes(context, expression, null);
+    }
+
+    public static NodeList nodes(Node context, String template, String value) throws XPathExpressionException {
+        ThreadState state = STATE.get();
+        XPathExpression compiled = state.compile(template);
+        state.variables.bind(value);
+        try {
+            return (NodeList) compiled.evaluate(context, XPathConstants.NODESET);
+        } finally {
+            state.variables.bind(null);
+        }
+    }
+
+    /**
+     * Render a template as a standalone XPath, with the value inlined as a string literal
+     */
+    public static String render(String template, String value) {
+        return template
+            .replace(VALUE_LOWER, literal(value.toLowerCase(java.util.Locale.ROOT)))
+            .replace(VALUE, literal(value));
+    }
+
+    /**
+     * Construct a safe XPath string literal for arbitrary input (handles single/double quotes via concat(...) if needed)
+     */
+    public static String literal(String s) {
+        if (!s.contains("'")) {
+            return "'" + s + "'";
+        }
+        if (!s.contains("\"")) {
+            return "\"" + s + "\"";
+        }
+        String[] parts = s.split("'", -1);
+        StringBuilder sb = new StringBuilder("concat(");
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                sb.append(", \"'\", ");
+            }
+            sb.append("'").append(parts[i]).append("'");
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+
+    /**
+     * Per-thread DocumentBuilder with XXE protection and a fully expanded DOM (no deferred nodes expanded on read).
+     * XPath over a shared page goes through {@link ParsedPage#matches} / {@link ParsedPage#select}, which keep
+     * evaluations on one DOM to one thread at a time
+     */
+    public static DocumentBuilder documentBuilder() {
+        DocumentBuilder builder = STATE.get().documentBuilder();
+        builder.reset();
+        return builder;
+    }
+
+    private static final class ThreadState {
+        final Variables variables = new Variables();
+        final XPath xpath;
+        private DocumentBuilder documentBuilder;
+        private final Map<String, XPathExpression> expressions = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+                return size() > MAX_EXPRESSIONS_PER_THREAD;
+            }
+        };
+
+        ThreadState() {
+            xpath = XPathFactory.newInstance().newXPath();
+            xpath.setXPathVariableResolver(variables);
+        }
+
+        XPathExpression compile(String expression) throws XPathExpressionException {
+            XPathExpression compiled = expressions.get(expression);
+            if (compiled == null) {
+                compiled = xpath.compile(expression);
+                expressions.put(expression, compiled);
+            }
+            return compiled;
+        }
+
+        DocumentBuilder documentBuilder() {
+            if (documentBuilder == null) {
+                try {
+                    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+                    dbf.setNamespaceAware(false);
+                    // Prevent XXE
+                    dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                    // Fully expanded DOM, reads do not build nodes
+                    dbf.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
+                    documentBuilder = dbf.newDocumentBuilder();
+                } catch (ParserConfigurationException e) {
+                    throw new IllegalStateException("XML parser not available", e);
+                }
+            }
+            return documentBuilder;
+        }
+    }
+
+    // Resolver bound to the thread's XPath; holds the value of the expression currently being evaluated
+    private static final class Variables implements XPathVariableResolver {
+        private final Map<QName, Object> values = new HashMap<>();
+
+        void bind(String value) {
+            values.clear();
+            if (value != null) {
+                values.put(VALUE_NAME, value);
+                values.put(VALUE_LOWER_NAME, value.toLowerCase(java.util.Locale.ROOT));
+            }
+        }
+
+        @Override
+        public Object resolveVariable(QName name) {
+            Object value = values.get(name);
+            // unbound variables evaluate as empty string rather than failing the expression
+            return value != null ? value : "";
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package self.heal.locators.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Case-insensitive multi-pattern matcher. The patterns are compiled into a deterministic automaton
+ * (trie, failure links folded into the transition table, outputs merged along dictionary suffix links),
+ * so {@link #count(CharSequence)} finds every occurrence of every pattern, overlaps included, in one pass
+ * over the text with a single table lookup per character.
+ * <p>
+ * Characters that appear in no pattern share one alphabet slot, so the table is sized by the patterns,
+ * not by the text. Instances are immutable and thread-safe.
+ */
+public class AhoCorasick {
+
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final int patternCount;
+    // alphabet slot of each lowercased char; 0 is "in no pattern"
+    private final int[] asciiSlot = new int[128];
+    private final Map<Character, Integer> otherSlot = new HashMap<>();
+    private final int[][] next;
+    private final int[][] output;
+
+    /**
+     * @param patterns : patterns, matched ignoring case; empty patterns never match
+     */
+    public AhoCorasick(List<String> patterns) {
+        this.patternCount = patterns.size();
+        int slots = 1;
+        for (String pattern : patterns) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = Character.toLowerCase(pattern.charAt(i));
+                if (slot(c) == 0) {
+                    if (c < 128) {
+                        asciiSlot[c] = slots++;
+                    } else {
+                        otherSlot.put(c, slots++);
+                    }
+                }
+            }
+        }
+
+        // trie
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> outputs = new ArrayList<>();
+        trie.add(new int[slots]);
+        outputs.add(new ArrayList<>());
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int s = slot(Character.toLowerCase(pattern.charAt(i)));
+                if (trie.get(state)[s] == 0) {
+                    trie.get(state)[s] = trie.size();
+                    trie.add(new int[slots]);
+                    outputs.add(new ArrayList<>());
+                }
+                state = trie.get(state)[s];
+            }
+            outputs.get(state).add(p);
+        }
+
+        // breadth-first: complete the transitions through failure links and inherit the failure state's outputs
+        int states = trie.size();
+        next = trie.toArray(new int[0][]);
+        output = new int[states][];
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int s = 0; s < slots; s++) {
+            if (next[0][s] != 0) {
+                queue.add(next[0][s]);
+            }
+        }
+        output[0] = NO_OUTPUT;
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            List<Integer> own = outputs.get(state);
+            int[] inherited = output[fail[state]];
+            int[] merged = new int[own.size() + inherited.length];
+            for (int i = 0; i < own.size(); i++) {
+                merged[i] = own.get(i);
+            }
+            System.arraycopy(inherited, 0, merged, own.size(), inherited.length);
+            output[state] = merged.length == 0 ? NO_OUTPUT : merged;
+            for (int s = 0; s < slots; s++) {
+                int child = next[state][s];
+                if (child != 0) {
+                    fail[child] = next[fail[state]][s];
+                    queue.add(child);
+                } else {
+                    next[state][s] = next[fail[state]][s];
+                }
+            }
+        }
+    }
+
+    /**
+     * Occurrences of each pattern in the text, ignoring case
+     *
+     * @return counts indexed like the pattern list given to the constructor
+     */
+    public int[] count(CharSequence text) {
+        int[] counts = new int[patternCount];
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            state = next[state][slot(Character.toLowerCase(text.charAt(i)))];
+            for (int p : output[state]) {
+                counts[p]++;
+            }
+        }
+        return counts;
+    }
+
+    public int getStateCount() {
+        return next.length;
+    }
+
+    private int slot(char c) {
+        if (c < 128) {
+            return asciiSlot[c];
+        }
+        Integer s = otherSlot.get(c);
+        return s != null ? s : 0;
+    }
+}
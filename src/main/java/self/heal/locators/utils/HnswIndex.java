@@ -0,0 +1,292 @@
+package self.heal.locators.utils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Approximate nearest-neighbour index (Hierarchical Navigable Small World graph) over unit-length float vectors,
+ * compared by cosine distance. Every vector is linked to its closest neighbours on layer 0 and, with an
+ * exponentially decaying probability, on sparser upper layers; a query descends greedily through the upper
+ * layers and finishes with a beam search of width ef on layer 0, so it visits a few hundred vectors whatever
+ * the size of the index.
+ * <p>
+ * Vectors are only added, ids are assigned in insertion order starting at 0. Searches run concurrently,
+ * inserts are serialized.
+ */
+public class HnswIndex {
+
+    private final int dimensions;
+    private final int maxConnections;
+    private final int maxConnectionsLayer0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+    private final List<Node> nodes = new ArrayList<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int entryPoint = -1;
+    private int topLevel = -1;
+
+    /**
+     * @param dimensions     : length of the vectors
+     * @param maxConnections : links per node on the upper layers, twice as many on layer 0
+     * @param efConstruction : beam width used to find the neighbours of an inserted vector
+     */
+    public HnswIndex(int dimensions, int maxConnections, int efConstruction) {
+        this.dimensions = dimensions;
+        this.maxConnections = Math.max(2, maxConnections);
+        this.maxConnectionsLayer0 = 2 * this.maxConnections;
+        this.efConstruction = Math.max(this.maxConnections, efConstruction);
+        this.levelMultiplier = 1.0 / Math.log(this.maxConnections);
+    }
+
+    /**
+     * Add a unit-length vector
+     *
+     * @return id of the vector
+     */
+    public int add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        lock.writeLock().lock();
+        try {
+            int id = nodes.size();
+            int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+            Node node = new Node(vector, level, maxConnections, maxConnectionsLayer0);
+            nodes.add(node);
+            if (entryPoint < 0) {
+                entryPoint = id;
+                topLevel = level;
+                return id;
+            }
+            int nearest = entryPoint;
+            for (int l = topLevel; l > level; l--) {
+                nearest = greedy(vector, nearest, l);
+            }
+            for (int l = Math.min(level, topLevel); l >= 0; l--) {
+                List<Scored> candidates = searchLayer(vector, nearest, efConstruction, l);
+                int cap = l == 0 ? maxConnectionsLayer0 : maxConnections;
+                for (Scored neighbour : selectNeighbours(candidates, maxConnections)) {
+                    node.link(l, neighbour.id);
+                    connect(neighbour.id, id, l, cap);
+                }
+                nearest = candidates.get(0).id;
+            }
+            if (level > topLevel) {
+                entryPoint = id;
+                topLevel = level;
+            }
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate k nearest vectors of the query
+     *
+     * @param query : unit-length vector
+     * @param k     : number of results
+     * @param ef    : beam width on layer 0, larger is more accurate and slower (at least k is used)
+     * @return ids with their cosine similarity, most similar first
+     */
+    public List<Scored> search(float[] query, int k, int ef) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return Collections.emptyList();
+            }
+            int nearest = entryPoint;
+            for (int l = topLevel; l > 0; l--) {
+                nearest = greedy(query, nearest, l);
+            }
+            List<Scored> found = searchLayer(query, nearest, Math.max(ef, k), 0);
+            List<Scored> result = new ArrayList<>(Math.min(k, found.size()));
+            for (int i = 0; i < found.size() && i < k; i++) {
+                result.add(new Scored(found.get(i).id, 1.0 - found.get(i).value));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Link from -> to on a layer, keeping only the closest links when the node is full
+    private void connect(int from, int to, int level, int cap) {
+        Node node = nodes.get(from);
+        if (node.size[level] < cap) {
+            node.link(level, to);
+            return;
+        }
+        List<Scored> links = new ArrayList<>(cap + 1);
+        for (int i = 0; i < node.size[level]; i++) {
+            int neighbour = node.links[level][i];
+            links.add(new Scored(neighbour, distance(node.vector, nodes.get(neighbour).vector)));
+        }
+        links.add(new Scored(to, distance(node.vector, nodes.get(to).vector)));
+        links.sort(Comparator.comparingDouble(s -> s.value));
+        node.size[level] = 0;
+        for (Scored link : selectNeighbours(links, cap)) {
+            node.link(level, link.id);
+        }
+    }
+
+    /**
+     * Keep a candidate only if it is closer to the base than to every neighbour kept so far, so near-duplicates
+     * do not take all the links of a node and clusters stay connected to each other
+     *
+     * @param candidates : candidates sorted by distance to the base
+     */
+    private List<Scored> selectNeighbours(List<Scored> candidates, int count) {
+        List<Scored> selected = new ArrayList<>(count);
+        for (Scored candidate : candidates) {
+            if (selected.size() >= count) {
+                break;
+            }
+            float[] vector = nodes.get(candidate.id).vector;
+            boolean diverse = true;
+            for (Scored kept : selected) {
+                if (distance(vector, nodes.get(kept.id).vector) < candidate.value) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            }
+        }
+        return selected;
+    }
+
+    // Move to closer neighbours on one layer until none is closer
+    private int greedy(float[] query, int start, int level) {
+        int current = start;
+        double best = distance(query, nodes.get(current).vector);
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            Node node = nodes.get(current);
+            for (int i = 0; i < node.size[level]; i++) {
+                int neighbour = node.links[level][i];
+                double d = distance(query, nodes.get(neighbour).vector);
+                if (d < best) {
+                    best = d;
+                    current = neighbour;
+                    moved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Beam search on one layer, closest first
+    private List<Scored> searchLayer(float[] query, int start, int ef, int level) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Scored> candidates = new PriorityQueue<>(Comparator.comparingDouble(s -> s.value));
+        PriorityQueue<Scored> results = new PriorityQueue<>(Comparator.comparingDouble((Scored s) -> s.value).reversed());
+        Scored first = new Scored(start, distance(query, nodes.get(start).vector));
+        visited.set(start);
+        candidates.add(first);
+        results.add(first);
+        while (!candidates.isEmpty()) {
+            Scored current = candidates.poll();
+            if (current.value > results.peek().value && results.size() >= ef) {
+                break;
+            }
+            Node node = nodes.get(current.id);
+            for (int i = 0; i < node.size[level]; i++) {
+                int neighbour = node.links[level][i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                double d = distance(query, nodes.get(neighbour).vector);
+                if (results.size() < ef || d < results.peek().value) {
+                    Scored scored = new Scored(neighbour, d);
+                    candidates.add(scored);
+                    results.add(scored);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        List<Scored> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(s -> s.value));
+        return sorted;
+    }
+
+    // Four independent sums let the JIT pipeline the multiply-adds
+    private static double distance(float[] a, float[] b) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (int n = a.length - 3; i < n; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return 1.0 - (s0 + s1 + s2 + s3);
+    }
+
+    /**
+     * A vector id with its distance (during search) or cosine similarity (in search results)
+     */
+    public static final class Scored {
+        public final int id;
+        private final double value;
+
+        Scored(int id, double value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        /**
+         * Cosine similarity to the query, for search results
+         */
+        public double similarity() {
+            return value;
+        }
+    }
+
+    private static final class Node {
+        final float[] vector;
+        final int[][] links;
+        final int[] size;
+
+        Node(float[] vector, int level, int maxConnections, int maxConnectionsLayer0) {
+            this.vector = vector;
+            this.links = new int[level + 1][];
+            this.size = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                links[l] = new int[l == 0 ? maxConnectionsLayer0 : maxConnections];
+            }
+        }
+
+        void link(int level, int neighbour) {
+            links[level][size[level]++] = neighbour;
+        }
+    }
+}
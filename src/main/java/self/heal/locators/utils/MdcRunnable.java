@@ -5,6 +5,7 @@ import org.apache.log4j.MDC;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 
 public class MdcRunnable implements Runnable {
     private final Runnable delegate;
@@ -17,6 +18,20 @@ public class MdcRunnable implements Runnable {
         this.contextMap = copyMdcContext();
     }
 
+    private MdcRunnable(Runnable delegate, Map<String, Object> contextMap) {
+        this.delegate = Objects.requireNonNull(delegate, "Runnable delegate cannot be null");
+        this.contextMap = contextMap;
+    }
+
+    /**
+     * Executor that runs every task with the MDC context of the calling thread at the time this method is called.
+     * Useful for async callbacks which are scheduled from threads that do not carry the request context.
+     */
+    public static Executor withCurrentContext(Executor delegate) {
+        Map<String, Object> context = new MdcRunnable(() -> {}).contextMap;
+        return task -> delegate.execute(new MdcRunnable(task, context));
+    }
+
     @Override
     public void run() {
         if (contextMap != null) {
@@ -32,6 +47,9 @@ public class MdcRunnable implements Runnable {
     // Helper method to copy the MDC context
     private Map<String, Object> copyMdcContext() {
         Map<String, Object> context = new HashMap<>();
+        if (MDC.getContext() == null) {
+            return context;
+        }
         for (Object key : MDC.getContext().keySet()) { // Access the internal MDC context map
             context.put(String.valueOf(key), MDC.get(String.valueOf(key)));
         }
@@ -0,0 +1,46 @@
+package self.heal.locators.utils;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size ring buffer of the most recent latencies, used to derive rolling percentiles
+ */
+public class RollingLatencyWindow {
+
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    public RollingLatencyWindow(int size) {
+        this.samples = new long[Math.max(1, size)];
+    }
+
+    public synchronized void record(long latencyMs) {
+        samples[next] = latencyMs;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @param percentile : between 0.0 and 1.0, e.g. 0.95
+     * @return the percentile of the recorded latencies, or -1 when nothing has been recorded yet
+     */
+    public long percentile(double percentile) {
+        long[] copy;
+        synchronized (this) {
+            if (count == 0) {
+                return -1;
+            }
+            copy = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(copy);
+        int index = (int) Math.ceil(percentile * copy.length) - 1;
+        return copy[Math.max(0, Math.min(copy.length - 1, index))];
+    }
+}
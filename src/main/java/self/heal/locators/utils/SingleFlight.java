@@ -0,0 +1,70 @@
+package self.heal.locators.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * De-duplicates concurrent asynchronous calls by key: while a call for a key is in flight, further
+ * callers attach to it instead of starting their own. The entry is dropped as soon as the call completes,
+ * so results are never served after the fact (that is the job of the caches).
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong originated = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param key  : identity of the call
+     * @param call : starts the call, only invoked by the first caller for the key
+     * @return a per-caller view of the shared future; cancelling it does not cancel the call for the other callers
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        return execute(key, call, null);
+    }
+
+    /**
+     * @param key    : identity of the call
+     * @param call   : starts the call, only invoked by the first caller for the key
+     * @param follow : applied to the shared result for every later caller, e.g. to check that it holds for that
+     *               caller too; null to hand the result over as is
+     * @return a per-caller view of the shared future; cancelling it does not cancel the call for the other callers
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call, Function<V, CompletableFuture<V>> follow) {
+        CompletableFuture<V> placeholder = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, placeholder);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return follow != null ? existing.thenCompose(follow) : existing.copy();
+        }
+        originated.incrementAndGet();
+        placeholder.whenComplete((value, e) -> inFlight.remove(key, placeholder));
+        try {
+            call.get().whenComplete((value, e) -> {
+                if (e != null) {
+                    placeholder.completeExceptionally(e);
+                } else {
+                    placeholder.complete(value);
+                }
+            });
+        } catch (Exception e) {
+            placeholder.completeExceptionally(e);
+        }
+        return placeholder.copy();
+    }
+
+    public long getOriginated() {
+        return originated.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
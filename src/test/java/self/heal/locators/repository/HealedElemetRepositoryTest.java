@@ -0,0 +1,103 @@
+package self.heal.locators.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import self.heal.locators.model.HealedElement;
+import self.heal.locators.model.HealedLocatorView;
+
+@DataMongoTest
+@Testcontainers(disabledWithoutDocker = true)
+class HealedElemetRepositoryTest {
+
+    @Container
+    static final MongoDBContainer MONGO = new MongoDBContainer("mongo:6.0");
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.host", MONGO::getHost);
+        registry.add("spring.data.mongodb.port", MONGO::getFirstMappedPort);
+    }
+
+    @Autowired
+    private HealedElemetRepository healRepo;
+
+    @BeforeEach
+    void clean() {
+        healRepo.deleteAll();
+    }
+
+    @Test
+    void bestViewIsTheHighestScoringOfSeveralHealings() {
+        healRepo.save(healing("//button[@text='Login']", "//button[@id='login']", 0.6));
+        healRepo.save(healing("//button[@text='Login']", "//button[@content-desc='login']", 0.9));
+        healRepo.save(healing("//button[@text='Cancel']", "//button[@id='cancel']", 0.95));
+
+        Optional<HealedLocatorView> best = healRepo.findFirstByLocatorOrderByConfidenceScoreDesc("//button[@text='Login']");
+
+        assertThat(best).isPresent();
+        assertThat(best.get().getHealedLocator()).isEqualTo("//button[@content-desc='login']");
+        assertThat(best.get().getConfidenceScore()).isEqualTo(0.9);
+        assertThat(best.get().getId()).isNotNull();
+    }
+
+    @Test
+    void bestViewOfOnlyFailedAttemptsIsStillReturned() {
+        healRepo.save(healing("//input[@text='Email']", null, 0.0));
+        healRepo.save(healing("//input[@text='Email']", "//input[@id='email']", 0.3));
+
+        Optional<HealedLocatorView> best = healRepo.findFirstByLocatorOrderByConfidenceScoreDesc("//input[@text='Email']");
+
+        assertThat(best).map(HealedLocatorView::getConfidenceScore).contains(0.3);
+    }
+
+    @Test
+    void bestViewOfAnUnknownLocatorIsEmpty() {
+        healRepo.save(healing("//button[@text='Login']", "//button[@id='login']", 0.9));
+
+        assertThat(healRepo.findFirstByLocatorOrderByConfidenceScoreDesc("//button[@text='Logout']")).isEmpty();
+    }
+
+    @Test
+    void bestViewCarriesThePageSourceHashOnly() {
+        HealedElement stored = healing("//button[@text='Login']", "//button[@id='login']", 0.9);
+        stored.setPageSource(null);
+        stored.setPageSourceHash("0f1e2d");
+        healRepo.save(stored);
+
+        Optional<HealedLocatorView> best = healRepo.findFirstByLocatorOrderByConfidenceScoreDesc("//button[@text='Login']");
+
+        assertThat(best).map(HealedLocatorView::getPageSourceHash).contains("0f1e2d");
+    }
+
+    @Test
+    void inlinePageSourceIsReadById() {
+        HealedElement stored = healRepo.save(healing("//button[@text='Login']", "//button[@id='login']", 0.9));
+
+        Optional<HealedElement> source = healRepo.findPageSourceById(stored.getId());
+
+        assertThat(source).map(HealedElement::getPageSource).contains("<hierarchy/>");
+        assertThat(source.get().getHealedLocator()).isNull();
+    }
+
+    private static HealedElement healing(String locator, String healedLocator, double score) {
+        HealedElement element = new HealedElement();
+        element.setLocator(locator);
+        element.setHealedLocator(healedLocator);
+        element.setConfidenceScore(score);
+        element.setApproach("xpath");
+        element.setPageSource("<hierarchy/>");
+        return element;
+    }
+}
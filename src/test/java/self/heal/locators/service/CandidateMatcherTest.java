@@ -0,0 +1,229 @@
+package self.heal.locators.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.xpath.XPathExpressionException;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+/**
+ * {@link CandidateMatcher#match(String, ParsedPage)} must return what probing the candidate XPaths one by one,
+ * in precedence order, returns.
+ */
+class CandidateMatcherTest {
+
+    private static final String[] MOBILE_TEMPLATES = {
+        CandidateMatcher.RESOURCE_ID, CandidateMatcher.RESOURCE_ID_CONTAINS, CandidateMatcher.TEXT,
+        CandidateMatcher.TEXT_CONTAINS_IGNORE_CASE, CandidateMatcher.CONTENT_DESC, CandidateMatcher.CONTENT_DESC_CONTAINS,
+        CandidateMatcher.STRING_VALUE_CONTAINS_IGNORE_CASE
+    };
+    private static final String[] WEB_TEMPLATES = {
+        CandidateMatcher.ID, CandidateMatcher.NAME, CandidateMatcher.OWN_TEXT,
+        CandidateMatcher.STRING_VALUE_CONTAINS_IGNORE_CASE, CandidateMatcher.CLASS_TOKEN
+    };
+
+    private static final String[] WORDS = {
+        "Login", "login", "LOGIN", "Sign in", "sign  in", "Sign\nin", "com.app:id/login", "com.app:id/login_button",
+        "btn", "btn primary", "École", "ÉCOLE", "école", "Ünïcode", "it's", "say \"hi\"", "it's \"quoted\"", "OK", "ok",
+        "Cancel", "node", "div", "span"
+    };
+    private static final String[] MOBILE_TAGS = {"node", "android.widget.Button", "android.widget.TextView"};
+    private static final String[] WEB_TAGS = {"div", "span", "button", "b"};
+
+    @Test
+    void mobileCandidatesFollowTheirPrecedence() {
+        String page = "<hierarchy>"
+            + "<node resource-id='com.app:id/login_button' text='Sign in' content-desc='Login'/>"
+            + "<node resource-id='com.app:id/title' text='Welcome back' content-desc='header'/>"
+            + "</hierarchy>";
+
+        assertMatchesProbing("com.app:id/login_button", page);
+        assertMatchesProbing("login_button", page);
+        assertMatchesProbing("Sign in", page);
+        assertMatchesProbing("SIGN IN", page);
+        assertMatchesProbing("Login", page);
+        assertMatchesProbing("head", page);
+        assertMatchesProbing("missing", page);
+    }
+
+    @Test
+    void stringValueIsMatchedOnTheDocumentElement() {
+        // no single element holds "hello world", only the string value of the root does
+        String page = "<root><a>Hello</a>\n   <b><c>World</c></b><d class='x'/></root>";
+
+        assertThat(CandidateMatcher.match("hello world", ParsedPage.of(page)))
+            .isEqualTo(XPathSupport.render(CandidateMatcher.STRING_VALUE_CONTAINS_IGNORE_CASE, "hello world"));
+        assertMatchesProbing("hello world", page);
+        assertMatchesProbing("HELLO", page);
+        assertMatchesProbing("loWor", page);
+        assertMatchesProbing("world hello", page);
+    }
+
+    @Test
+    void ignoreCaseOnlyFoldsAsciiLetters() {
+        String page = "<hierarchy><node resource-id='r' text='ÉCOLE Normale'/></hierarchy>";
+
+        // translate() only maps A-Z, so the accented capital does not fold to the lowercased locator
+        assertThat(CandidateMatcher.match("école", ParsedPage.of(page))).isNull();
+        assertMatchesProbing("école", page);
+        assertMatchesProbing("École", page);
+        assertMatchesProbing("normale", page);
+        assertMatchesProbing("ÉCOLE NORMALE", page);
+    }
+
+    @Test
+    void ownTextIsTheFirstTextNode() {
+        String page = "<html><body><p id='p'>first<b>bold</b>second</p><span class='a  b'>  spaced   out </span></body></html>";
+
+        assertThat(CandidateMatcher.match("first", ParsedPage.of(page)))
+            .isEqualTo(XPathSupport.render(CandidateMatcher.OWN_TEXT, "first"));
+        // "second" is only in the string value, text() stops at the first text node
+        assertThat(CandidateMatcher.match("second", ParsedPage.of(page)))
+            .isEqualTo(XPathSupport.render(CandidateMatcher.STRING_VALUE_CONTAINS_IGNORE_CASE, "second"));
+        assertMatchesProbing("first", page);
+        assertMatchesProbing("second", page);
+        assertMatchesProbing("spaced out", page);
+        assertMatchesProbing("b", page);
+        assertMatchesProbing("span", page);
+        assertMatchesProbing("p", page);
+    }
+
+    @Test
+    void quotesInTheLocatorAreMatchedLiterally() {
+        String page = "<hierarchy><node resource-id='r' text=\"it's\" content-desc='say &quot;hi&quot; it&apos;s'/></hierarchy>";
+
+        assertMatchesProbing("it's", page);
+        assertMatchesProbing("say \"hi\"", page);
+        assertMatchesProbing("say \"hi\" it's", page);
+    }
+
+    @Test
+    void randomPagesMatchLikeProbing() {
+        Random random = new Random(20240611L);
+        for (int i = 0; i < 400; i++) {
+            boolean mobile = random.nextBoolean();
+            String page = randomPage(random, mobile);
+            for (int j = 0; j < 8; j++) {
+                String locator = randomLocator(random).trim();
+                if (!locator.isEmpty()) {
+                    assertMatchesProbing(locator, page);
+                }
+            }
+        }
+    }
+
+    private static void assertMatchesProbing(String locator, String pageSource) {
+        ParsedPage page = ParsedPage.of(pageSource);
+        assertThat(CandidateMatcher.match(locator, page))
+            .as("locator [%s] on %s", locator, pageSource)
+            .isEqualTo(probeOneByOne(locator, ParsedPage.of(pageSource)));
+    }
+
+    // The candidate XPaths evaluated in order, the first one selecting a node wins
+    private static String probeOneByOne(String locator, ParsedPage page) {
+        Document doc = page.getDocument();
+        List<String> candidates = new ArrayList<>();
+        if (exists(doc, "//*[@resource-id]")) {
+            for (String template : MOBILE_TEMPLATES) {
+                candidates.add(XPathSupport.render(template, locator));
+            }
+        }
+        if (locator.matches("^[A-Za-z0-9_-]+$")) {
+            candidates.add("//" + locator);
+        }
+        for (String template : WEB_TEMPLATES) {
+            candidates.add(XPathSupport.render(template, locator));
+        }
+        for (String candidate : candidates) {
+            if (exists(doc, candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static boolean exists(Document doc, String xpath) {
+        try {
+            return XPathSupport.exists(doc, xpath);
+        } catch (XPathExpressionException e) {
+            // e.g. "//123" for a numeric locator, skipped like any candidate that does not compile
+            return false;
+        }
+    }
+
+    private static String randomPage(Random random, boolean mobile) {
+        StringBuilder xml = new StringBuilder(mobile ? "<hierarchy>" : "<html><body>");
+        appendChildren(xml, random, mobile, 0);
+        xml.append(mobile ? "</hierarchy>" : "</body></html>");
+        return xml.toString();
+    }
+
+    private static void appendChildren(StringBuilder xml, Random random, boolean mobile, int depth) {
+        int children = 1 + random.nextInt(depth == 0 ? 4 : 3);
+        for (int i = 0; i < children; i++) {
+            if (random.nextInt(4) == 0) {
+                xml.append(escape(pick(random, WORDS)));
+            }
+            String tag = pick(random, mobile ? MOBILE_TAGS : WEB_TAGS);
+            xml.append('<').append(tag);
+            String[] attributes = mobile ? new String[] {"resource-id", "text", "content-desc", "class"}
+                : new String[] {"id", "name", "class"};
+            for (String attribute : attributes) {
+                if (random.nextInt(3) > 0) {
+                    xml.append(' ').append(attribute).append("=\"").append(escape(randomValue(random))).append('"');
+                }
+            }
+            xml.append('>');
+            if (random.nextBoolean()) {
+                xml.append(escape(pick(random, WORDS)));
+            }
+            if (depth < 3 && random.nextInt(3) == 0) {
+                appendChildren(xml, random, mobile, depth + 1);
+            }
+            if (random.nextBoolean()) {
+                xml.append(escape(pick(random, WORDS)));
+            }
+            xml.append("</").append(tag).append('>');
+        }
+    }
+
+    private static String randomValue(Random random) {
+        String word = pick(random, WORDS);
+        switch (random.nextInt(4)) {
+            case 0:
+                return "  " + word + " ";
+            case 1:
+                return word + " " + pick(random, WORDS);
+            default:
+                return word;
+        }
+    }
+
+    private static String randomLocator(Random random) {
+        String word = pick(random, WORDS);
+        switch (random.nextInt(5)) {
+            case 0:
+                int from = random.nextInt(word.length());
+                return word.substring(from, from + 1 + random.nextInt(word.length() - from));
+            case 1:
+                return word.toUpperCase();
+            case 2:
+                return word + " " + pick(random, WORDS);
+            default:
+                return word;
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;").replace("'", "&apos;");
+    }
+}
@@ -0,0 +1,131 @@
+package self.heal.locators.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The bit-parallel (pattern of up to 64 chars) and banded (longer) distances against a plain full-matrix DP.
+ */
+class LevenshteinSimilarityTest {
+
+    // few distinct chars so random strings share runs, plus chars outside the 256-entry match table
+    private static final char[] ALPHABET = {'a', 'b', 'c', 'd', ' ', '/', 'É', '中', 'ā'};
+
+    private final LevenshteinSimilarity similarity = new LevenshteinSimilarity();
+
+    @Test
+    void bitParallelDistanceMatchesDp() {
+        Random random = new Random(7L);
+        for (int i = 0; i < 5000; i++) {
+            String a = randomString(random, random.nextInt(65));
+            String b = mutate(random, a, random.nextInt(12));
+            assertDistances(a, b, random);
+        }
+    }
+
+    @Test
+    void bandedDistanceMatchesDp() {
+        Random random = new Random(11L);
+        for (int i = 0; i < 1500; i++) {
+            String a = randomString(random, 65 + random.nextInt(120));
+            String b = random.nextInt(4) == 0 ? randomString(random, 65 + random.nextInt(120)) : mutate(random, a, random.nextInt(40));
+            assertDistances(a, b, random);
+        }
+    }
+
+    @Test
+    void distanceAtTheWordBoundary() {
+        Random random = new Random(13L);
+        for (int length = 62; length <= 66; length++) {
+            for (int i = 0; i < 300; i++) {
+                String a = randomString(random, length);
+                String b = mutate(random, a, random.nextInt(10));
+                assertDistances(a, b, random);
+            }
+        }
+    }
+
+    @Test
+    void similarityAboveMatchesDp() {
+        Random random = new Random(17L);
+        for (int i = 0; i < 3000; i++) {
+            String a = randomString(random, random.nextInt(150));
+            String b = mutate(random, a, random.nextInt(30));
+            int max = Math.max(a.length(), b.length());
+            double exact = max == 0 ? 1.0 : 1.0 - (double) dp(a, b) / max;
+            assertThat(similarity.similarity(a, b)).as("similarity of [%s] and [%s]", a, b).isEqualTo(exact);
+
+            double mustBeat = random.nextDouble();
+            double above = similarity.similarityAbove(a, b, mustBeat);
+            if (exact > mustBeat) {
+                assertThat(above).as("similarity of [%s] and [%s] above %s", a, b, mustBeat).isEqualTo(exact);
+            } else {
+                assertThat(above <= mustBeat).as("similarity of [%s] and [%s] not above %s", a, b, mustBeat).isTrue();
+            }
+        }
+    }
+
+    private static void assertDistances(String a, String b, Random random) {
+        int expected = dp(a, b);
+        assertThat(LevenshteinSimilarity.distance(a, b, Integer.MAX_VALUE))
+            .as("distance of [%s] and [%s]", a, b).isEqualTo(expected);
+        assertThat(LevenshteinSimilarity.distance(b, a, Integer.MAX_VALUE))
+            .as("distance of [%s] and [%s]", b, a).isEqualTo(expected);
+        int limit = random.nextInt(expected + 3);
+        int bounded = LevenshteinSimilarity.distance(a, b, limit);
+        if (expected <= limit) {
+            assertThat(bounded).as("distance of [%s] and [%s] within %s", a, b, limit).isEqualTo(expected);
+        } else {
+            assertThat(bounded > limit).as("distance of [%s] and [%s] beyond %s", a, b, limit).isTrue();
+        }
+    }
+
+    // Wagner-Fischer over the full matrix
+    private static int dp(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder s = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            s.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+        }
+        return s.toString();
+    }
+
+    // a few random insertions, deletions and substitutions
+    private static String mutate(Random random, String s, int edits) {
+        StringBuilder out = new StringBuilder(s);
+        for (int i = 0; i < edits; i++) {
+            int at = out.length() == 0 ? 0 : random.nextInt(out.length());
+            char c = ALPHABET[random.nextInt(ALPHABET.length)];
+            switch (out.length() == 0 ? 0 : random.nextInt(3)) {
+                case 0:
+                    out.insert(at, c);
+                    break;
+                case 1:
+                    out.deleteCharAt(at);
+                    break;
+                default:
+                    out.setCharAt(at, c);
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package self.heal.locators.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class ParsedPageTest {
+
+    private static final String[] EXPRESSIONS = {
+        "//node[@resource-id='com.app:id/item_17']",
+        "//node[contains(@text,'Item 1')]",
+        "//*[@clickable='true']",
+        "(//node[@text])[last()]",
+        "//node/node[2]",
+        "//node[normalize-space(text())='row 42']",
+        "//node[@text='missing']",
+        "//@content-desc",
+        "//node[@resource-id=$value]",
+        "//*[contains(translate(@text,'ABCDEFGHIJKLMNOPQRSTUVWXYZ','abcdefghijklmnopqrstuvwxyz'), $valueLower)]"
+    };
+    private static final String[] VALUES = {"com.app:id/item_3", "ITEM 2", "nothing"};
+
+    @Test
+    void selectReturnsElementIndexesInDocumentOrder() throws Exception {
+        ParsedPage page = ParsedPage.of("<hierarchy><node text='a'/><node><node text='b'/></node><node text='a'/></hierarchy>");
+
+        assertThat(page.select("//node[@text='a']", null)).containsExactly(1, 4);
+        assertThat(page.select("//node[@text=$value]", "b")).containsExactly(3);
+        // attributes are selected but are not elements
+        assertThat(page.select("//@text", null)).isEmpty();
+        assertThat(page.matches("//@text", null)).isTrue();
+        assertThat(page.matches("//node[@text='c']", null)).isFalse();
+    }
+
+    @Test
+    void concurrentEvaluationsMatchSequentialOnes() throws Exception {
+        String source = largePage();
+        Map<String, List<Integer>> expected = new HashMap<>();
+        Map<String, Boolean> expectedMatches = new HashMap<>();
+        ParsedPage reference = ParsedPage.of(source);
+        for (String expression : EXPRESSIONS) {
+            for (String value : VALUES) {
+                expected.put(expression + '|' + value, reference.select(expression, value));
+                expectedMatches.put(expression + '|' + value, reference.matches(expression, value));
+            }
+        }
+
+        ParsedPage shared = ParsedPage.of(source);
+        shared.getElements();
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+        try {
+            List<Runnable> readers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Random random = new Random(t);
+                readers.add(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 300; i++) {
+                            String expression = EXPRESSIONS[random.nextInt(EXPRESSIONS.length)];
+                            String value = VALUES[random.nextInt(VALUES.length)];
+                            String key = expression + '|' + value;
+                            if (!expected.get(key).equals(shared.select(expression, value))
+                                || expectedMatches.get(key) != shared.matches(expression, value)) {
+                                failures.add(key);
+                            }
+                        }
+                    } catch (Exception e) {
+                        failures.add(e.toString());
+                    }
+                });
+            }
+            readers.forEach(executor::execute);
+            start.countDown();
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        }
+        assertThat(new ArrayList<>(failures)).isEmpty();
+    }
+
+    private static String largePage() {
+        StringBuilder xml = new StringBuilder("<hierarchy>");
+        for (int i = 0; i < 200; i++) {
+            xml.append("<node resource-id='com.app:id/item_").append(i).append("' text='Item ").append(i)
+                .append("' clickable='").append(i % 3 == 0).append("' content-desc='row ").append(i).append("'>")
+                .append("<node text='Label ").append(i).append("'>row ").append(i).append("</node>")
+                .append("<node/>")
+                .append("</node>");
+        }
+        return xml.append("</hierarchy>").toString();
+    }
+}